@@ -9,6 +9,7 @@ package com.google.appinventor.client;
 import com.google.appinventor.client.editor.FileEditor;
 import com.google.appinventor.client.editor.ProjectEditor;
 import com.google.appinventor.client.editor.youngandroid.BlocklyPanel;
+import com.google.appinventor.client.editor.youngandroid.YaProjectEditor;
 import com.google.appinventor.client.explorer.commands.AddFormCommand;
 import com.google.appinventor.client.explorer.commands.ChainableCommand;
 import com.google.appinventor.client.explorer.commands.DeleteFileCommand;
@@ -27,6 +28,7 @@ import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.HorizontalPanel;
 import com.google.gwt.user.client.ui.Label;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -238,7 +240,8 @@ public class DesignToolbar extends Toolbar {
       });
   }
 
-  private void doSwitchScreen1(long projectId, String screenName, View view) {
+  private void doSwitchScreen1(final long projectId, final String screenName,
+      final View view) {
     if (!projectMap.containsKey(projectId)) {
       OdeLog.wlog("DesignToolbar: no project with id " + projectId
           + ". Ignoring SwitchScreenAction.execute().");
@@ -266,9 +269,21 @@ public class DesignToolbar extends Toolbar {
         return;
       }
     }
-    currentView = view;
     Screen screen = currentProject.screens.get(newScreenName);
     ProjectEditor projectEditor = screen.formEditor.getProjectEditor();
+    if (projectEditor instanceof YaProjectEditor
+        && !((YaProjectEditor) projectEditor).isScreenLoaded(newScreenName)) {
+      // The screen is loaded when it is first shown; switch once it is
+      ((YaProjectEditor) projectEditor).loadScreens(Collections.singletonList(newScreenName),
+          new Command() {
+            @Override
+            public void execute() {
+              doSwitchScreen(projectId, screenName, view);
+            }
+          });
+      return;
+    }
+    currentView = view;
     currentProject.setCurrentScreen(newScreenName);
     setDropDownButtonCaption(WIDGET_NAME_SCREENS_DROPDOWN, newScreenName);
     OdeLog.log("Setting currentScreen to " + newScreenName);
@@ -16,7 +16,7 @@ import com.google.appinventor.client.explorer.youngandroid.GalleryList;
 import com.google.appinventor.client.youngandroid.TextValidators;
 import com.google.appinventor.shared.rpc.project.GalleryApp;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
-import com.google.appinventor.shared.rpc.project.GalleryComment;
+import com.google.appinventor.shared.rpc.project.GalleryCommentListResult;
 import com.google.appinventor.shared.rpc.project.GallerySettings;
 import com.google.appinventor.shared.rpc.project.UserProject;
 
@@ -92,30 +92,27 @@ public class GalleryClient {
   * @param sortOrder currently unused,
   */
   public void FindApps(String keywords, int start, int count, int sortOrder, final boolean refreshable) {
-     // Callback for when the server returns us the apps
-    final Ode ode = Ode.getInstance();
-    final OdeAsyncCallback<GalleryAppListResult> callback = new OdeAsyncCallback<GalleryAppListResult>(
-    // failure message
-    MESSAGES.gallerySearchError()) {
-      @Override
-      public void onSuccess(GalleryAppListResult appsResult) {
-        // the server has returned us something
-        for (GalleryRequestListener listener:listeners) {
-          listener.onAppListRequestCompleted(appsResult, REQUEST_SEARCH, refreshable);
-        }
-      }
-    };
-
-    //this is below the call back, but of course it is done first
-    ode.getGalleryService().findApps(keywords, start,count,callback);
+    Ode.getInstance().getGalleryService().findApps(keywords, start, count,
+        appListCallback(MESSAGES.gallerySearchError(), REQUEST_SEARCH, refreshable));
+  }
+ /**
+  * FindApps gets the search results that follow the given cursor and then
+  * tells listeners when done
+  * @param keywords search keywords
+  * @param cursor cursor returned with the previous page
+  * @param count number of results
+  */
+  public void FindApps(String keywords, String cursor, int count, final boolean refreshable) {
+    Ode.getInstance().getGalleryService().findAppsAfter(keywords, cursor, count,
+        appListCallback(MESSAGES.gallerySearchError(), REQUEST_SEARCH, refreshable));
   }
  /**
   * GetAppsByDeveloper gets apps by developer and then tells listeners when done
-  * @param start staring index for search
+  * @param cursor cursor returned with the previous page, or null for the first page
   * @param count number of results
   * @param developerId id of developer
   */
-  public void GetAppsByDeveloper(int start, int count, String developerId) {
+  public void GetAppsByDeveloper(String cursor, int count, String developerId) {
     // Callback for when the server returns us the apps
     final Ode ode = Ode.getInstance();
     final OdeAsyncCallback<GalleryAppListResult> callback = new OdeAsyncCallback<GalleryAppListResult>(
@@ -130,7 +127,7 @@ public class GalleryClient {
       }
     };
     // This is below the call back, but of course it is done first
-    ode.getGalleryService().getDeveloperApps(developerId, start,count,callback);
+    ode.getGalleryService().getDeveloperAppsAfter(developerId, cursor, count, callback);
   }
  /**
   * GetFeatured gets featured apps, currently unimplemented
@@ -139,21 +136,17 @@ public class GalleryClient {
   * @param sortOrder unused sort order
   */
   public void GetFeatured(int start, int count, int sortOrder, final boolean refreshable) {
-    // Callback for when the server returns us the apps
-    final Ode ode = Ode.getInstance();
-    final OdeAsyncCallback<GalleryAppListResult> callback = new OdeAsyncCallback<GalleryAppListResult>(
-    // failure message
-    MESSAGES.galleryRecentAppsError()) {
-      @Override
-      public void onSuccess(GalleryAppListResult appsResult) {
-        // the server has returned us something
-        for (GalleryRequestListener listener:listeners) {
-          listener.onAppListRequestCompleted(appsResult, REQUEST_FEATURED, refreshable);
-        }
-      }
-    };
-    // This is below the call back, but of course it is done first
-    ode.getGalleryService().getFeaturedApp(start, count, callback);
+    Ode.getInstance().getGalleryService().getFeaturedApp(start, count,
+        appListCallback(MESSAGES.galleryRecentAppsError(), REQUEST_FEATURED, refreshable));
+  }
+ /**
+  * GetFeatured gets the featured apps that follow the given cursor
+  * @param cursor cursor returned with the previous page
+  * @param count number of results
+  */
+  public void GetFeatured(String cursor, int count, final boolean refreshable) {
+    Ode.getInstance().getGalleryService().getFeaturedAppAfter(cursor, count,
+        appListCallback(MESSAGES.galleryRecentAppsError(), REQUEST_FEATURED, refreshable));
   }
  /**
   * GetMostRecent gets most recently updated apps then tells listeners
@@ -161,21 +154,18 @@ public class GalleryClient {
   * @param count number of results
   */
   public void GetMostRecent(int start, int count, final boolean refreshable) {
-    // Callback for when the server returns us the apps
-    final Ode ode = Ode.getInstance();
-    final OdeAsyncCallback<GalleryAppListResult> callback = new OdeAsyncCallback<GalleryAppListResult>(
-    // failure message
-    MESSAGES.galleryRecentAppsError()) {
-      @Override
-      public void onSuccess(GalleryAppListResult appsResult) {
-        // the server has returned us something
-        for (GalleryRequestListener listener:listeners) {
-          listener.onAppListRequestCompleted(appsResult, REQUEST_RECENT, refreshable);
-        }
-      }
-    };
-    // This is below the call back, but of course it is done first
-    ode.getGalleryService().getRecentApps(start, count, callback);
+    Ode.getInstance().getGalleryService().getRecentApps(start, count,
+        appListCallback(MESSAGES.galleryRecentAppsError(), REQUEST_RECENT, refreshable));
+  }
+ /**
+  * GetMostRecent gets the most recently updated apps that follow the given
+  * cursor then tells listeners
+  * @param cursor cursor returned with the previous page
+  * @param count number of results
+  */
+  public void GetMostRecent(String cursor, int count, final boolean refreshable) {
+    Ode.getInstance().getGalleryService().getRecentAppsAfter(cursor, count,
+        appListCallback(MESSAGES.galleryRecentAppsError(), REQUEST_RECENT, refreshable));
   }
   /**
   * GetMostDownloaded gets the most downloaded apps then tells listeners
@@ -183,22 +173,36 @@ public class GalleryClient {
   * @param count number of results
   */
   public void GetMostDownloaded(int start, int count, final boolean refreshable) {
-    // Callback for when the server returns us the apps
-    final Ode ode = Ode.getInstance();
-    final OdeAsyncCallback<GalleryAppListResult> callback = new OdeAsyncCallback<GalleryAppListResult>(
-    // failure message
-    MESSAGES.galleryDownloadedAppsError()) {
+    Ode.getInstance().getGalleryService().getMostDownloadedApps(start, count,
+        appListCallback(MESSAGES.galleryDownloadedAppsError(), REQUEST_MOSTDOWNLOADED,
+            refreshable));
+  }
+  /**
+  * GetMostDownloaded gets the most downloaded apps that follow the given
+  * cursor then tells listeners
+  * @param cursor cursor returned with the previous page
+  * @param count number of results
+  */
+  public void GetMostDownloaded(String cursor, int count, final boolean refreshable) {
+    Ode.getInstance().getGalleryService().getMostDownloadedAppsAfter(cursor, count,
+        appListCallback(MESSAGES.galleryDownloadedAppsError(), REQUEST_MOSTDOWNLOADED,
+            refreshable));
+  }
+  /*
+   * Callback for when the server returns us a list of apps, which it passes
+   * on to the listeners.
+   */
+  private OdeAsyncCallback<GalleryAppListResult> appListCallback(String failureMessage,
+      final int requestId, final boolean refreshable) {
+    return new OdeAsyncCallback<GalleryAppListResult>(failureMessage) {
       @Override
       public void onSuccess(GalleryAppListResult appsResult) {
         // the server has returned us something
         for (GalleryRequestListener listener:listeners) {
-          listener.onAppListRequestCompleted(appsResult, REQUEST_MOSTDOWNLOADED, refreshable);
+          listener.onAppListRequestCompleted(appsResult, requestId, refreshable);
         }
       }
     };
-
-    // ok, this is below the call back, but of course it is done first
-    ode.getGalleryService().getMostDownloadedApps(start,count,callback);
   }
   /**
    * GetRemixedToList gets children list that apps remixed to then tells listeners
@@ -217,25 +221,26 @@ public class GalleryClient {
 
   }
   /**
-  * GetComments gets comments for an app then tells listeners
+  * GetComments gets one page of comments for an app then tells listeners
   * @param appId app id
-  * @param start staring index
+  * @param cursor cursor of the page, from the previous page, or null for the first page
   * @param count number of results
   */
-  public void GetComments(long appId,int start,int count) {
+  public void GetComments(long appId, final String cursor, int count) {
     final Ode ode = Ode.getInstance();
-    final OdeAsyncCallback<List<GalleryComment>> galleryCallback = new OdeAsyncCallback<List<GalleryComment>>(
+    final OdeAsyncCallback<GalleryCommentListResult> galleryCallback =
+        new OdeAsyncCallback<GalleryCommentListResult>(
     // failure message
     MESSAGES.galleryCommentError()) {
       @Override
-      public void onSuccess(List<GalleryComment> comments) {
+      public void onSuccess(GalleryCommentListResult result) {
         // now relay the result back to UI client
         for (GalleryRequestListener listener:listeners) {
-          listener.onCommentsRequestCompleted(comments);
+          listener.onCommentsRequestCompleted(result, cursor == null);
         }
       }
     };
-    ode.getGalleryService().getComments(appId,galleryCallback);
+    ode.getGalleryService().getComments(appId, cursor, count, galleryCallback);
 
   }
   // the following two methods are not implemented. we just publish/update directly
@@ -348,6 +353,34 @@ public class GalleryClient {
     }
   }
 
+  /**
+   * get cloud thumbnail url, for the app lists
+   * @param galleryId gallery id
+   * @return url of cloud thumbnail
+   */
+  public String getCloudThumbnailURL(long galleryId) {
+    if(getSystemEnvironmet() != null &&
+        getSystemEnvironmet().toString().equals("Production")){
+      return getGallerySettings().getCloudThumbnailURL(galleryId);
+    }else {
+      return getGallerySettings().getCloudThumbnailLocation(galleryId);
+    }
+  }
+
+  /**
+   * get cloud medium image url, for the app page
+   * @param galleryId gallery id
+   * @return url of cloud medium image
+   */
+  public String getCloudMediumImageURL(long galleryId) {
+    if(getSystemEnvironmet() != null &&
+        getSystemEnvironmet().toString().equals("Production")){
+      return getGallerySettings().getCloudMediumImageURL(galleryId);
+    }else {
+      return getGallerySettings().getCloudMediumImageLocation(galleryId);
+    }
+  }
+
   /**
    * get project image url
    * @param projectId project id
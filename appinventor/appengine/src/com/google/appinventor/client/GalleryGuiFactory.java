@@ -13,6 +13,7 @@ import com.google.appinventor.client.explorer.youngandroid.GalleryPage;
 import com.google.appinventor.shared.rpc.project.GalleryApp;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
 import com.google.appinventor.shared.rpc.project.GalleryComment;
+import com.google.appinventor.shared.rpc.project.GalleryCommentListResult;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.event.dom.client.ClickEvent;
@@ -67,12 +68,21 @@ public class GalleryGuiFactory implements GalleryRequestListener {
       numCommentsLabel = new Label(Integer.toString(app.getComments()));
       image = new Image();
       image.addErrorHandler(new ErrorHandler() {
+        private boolean triedFullImage = false;
         public void onError(ErrorEvent event) {
-          image.setUrl(GalleryApp.DEFAULTGALLERYIMAGE);
+          if (!triedFullImage) {
+            // Apps published before thumbnails were made only have the full image
+            triedFullImage = true;
+            image.setUrl(gallery.getCloudImageURL(app.getGalleryAppId()));
+          } else {
+            image.setUrl(GalleryApp.DEFAULTGALLERYIMAGE);
+          }
         }
       });
-      String url = gallery.getCloudImageURL(app.getGalleryAppId());
-      image.setUrl(url);
+      // The lists only load the thumbnail. It is cached for a long time, so
+      // its URL changes when the app is updated.
+      String url = gallery.getCloudThumbnailURL(app.getGalleryAppId());
+      image.setUrl(url + "?v=" + app.getUpdateDate());
 
       if(gallery.getSystemEnvironmet() != null &&
           gallery.getSystemEnvironmet().toString().equals("Development")){
@@ -351,7 +361,8 @@ public class GalleryGuiFactory implements GalleryRequestListener {
   }
 
   @Override
-  public void onCommentsRequestCompleted(List<GalleryComment> comments) {
+  public void onCommentsRequestCompleted(GalleryCommentListResult commentsResult,
+      boolean firstPage) {
     // TODO Auto-generated method stub
   }
 
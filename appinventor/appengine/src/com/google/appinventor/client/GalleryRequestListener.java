@@ -6,10 +6,8 @@
 
 package com.google.appinventor.client;
 
-import java.util.List;
-
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
-import com.google.appinventor.shared.rpc.project.GalleryComment;
+import com.google.appinventor.shared.rpc.project.GalleryCommentListResult;
 import com.google.appinventor.shared.rpc.project.UserProject;
 
 public interface GalleryRequestListener {
@@ -26,6 +24,6 @@ public interface GalleryRequestListener {
    *
    */
    public void onAppListRequestCompleted(GalleryAppListResult appsResult, int requestID, boolean refreshable);
-   public void onCommentsRequestCompleted(List<GalleryComment> comments);
+   public void onCommentsRequestCompleted(GalleryCommentListResult commentsResult, boolean firstPage);
    public void onSourceLoadCompleted(UserProject projectInfo);
 }
\ No newline at end of file
@@ -9,7 +9,6 @@ package com.google.appinventor.client;
 import java.util.Random;
 import static com.google.appinventor.client.Ode.MESSAGES;
 
-import java.util.List;
 import java.util.logging.Logger;
 
 import com.google.appinventor.client.boxes.AssetListBox;
@@ -65,10 +64,10 @@ import com.google.appinventor.shared.rpc.project.GallerySettings;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.ProjectService;
 import com.google.appinventor.shared.rpc.project.ProjectServiceAsync;
-import com.google.appinventor.shared.rpc.project.Message;
 import com.google.appinventor.shared.rpc.project.GalleryService;
 import com.google.appinventor.shared.rpc.project.GalleryServiceAsync;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidSourceNode;
+import com.google.appinventor.shared.rpc.user.BootstrapData;
 import com.google.appinventor.shared.rpc.user.Config;
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.rpc.user.UserInfoService;
@@ -303,59 +302,46 @@ public class Ode implements EntryPoint {
   }
 
   /**
-   * loads the gallery settings from server
+   * Applies the gallery settings sent with the startup data
    *
    */
-  public void  loadGallerySettings() {
-     // Callback for when the server returns us the apps
-    final Ode ode = Ode.getInstance();
-    final OdeAsyncCallback<GallerySettings> callback = new OdeAsyncCallback<GallerySettings>(
-    // failure message
-    MESSAGES.gallerySettingsError()) {
-      @Override
-      public void onSuccess(GallerySettings settings) {
-        gallerySettings = settings;
-        if(gallerySettings.galleryEnabled() == true){
-          GalleryClient.getInstance().setSystemEnvironmet(settings.getEnvironment());
-          GalleryListBox.loadGalleryList();
-          topPanel.showGalleryLink(true);
-          if(user.isModerator()){
-            ModerationPageBox.loadModerationPage();
-            topPanel.showModerationLink(true);
-          }
-          topPanel.updateAccountMessageButton();
-          PrivateUserProfileTabPanel.getPrivateUserProfileTabPanel().loadProfileImage();
-
-          final String userInfo = user.getUserName();
-          // Get the message count to display right next to user
-          final OdeAsyncCallback<List<Message>> messagesCallback = new OdeAsyncCallback<List<Message>>(
-              // failure message
-              MESSAGES.galleryError()) {
-                @Override
-                public void onSuccess(List<Message> msgs) {
-                  msgCount[0] = 0;
-                  // get the new comment list so gui updates
-                  for (Message m : msgs) {
-                    if (m.getStatus().equalsIgnoreCase("1")) {
-                      msgCount[0]++;
-                    }
-                  }
-                  String u = userInfo + " (" + Integer.toString(msgCount[0]) + ")";
-                  OdeLog.log("### MSG final = " + u);
-                  // Reset message count for further use
-                  topPanel.showUserEmail(u);
-                }
-            };
-          Ode.getInstance().getGalleryService().getMessages(messagesCallback);
-
-        }else{
-          topPanel.showModerationLink(false);
-          topPanel.showGalleryLink(false);
-        }
+  private void applyGallerySettings(GallerySettings settings) {
+    gallerySettings = settings;
+    if(gallerySettings.galleryEnabled() == true){
+      GalleryClient.getInstance().setSystemEnvironmet(settings.getEnvironment());
+      GalleryListBox.loadGalleryList();
+      topPanel.showGalleryLink(true);
+      if(user.isModerator()){
+        ModerationPageBox.loadModerationPage();
+        topPanel.showModerationLink(true);
       }
-    };
-    //this is below the call back, but of course it is done first
-    ode.getGalleryService().loadGallerySettings(callback);
+      topPanel.updateAccountMessageButton();
+      PrivateUserProfileTabPanel.getPrivateUserProfileTabPanel().loadProfileImage();
+
+      updateMessageCount();
+
+    }else{
+      topPanel.showModerationLink(false);
+      topPanel.showGalleryLink(false);
+    }
+  }
+
+  /**
+   * Fetches the number of unread messages and shows it next to the user name.
+   */
+  public void updateMessageCount() {
+    final String userInfo = user.getUserName();
+    final OdeAsyncCallback<Integer> messageCountCallback = new OdeAsyncCallback<Integer>(
+        // failure message
+        MESSAGES.galleryError()) {
+          @Override
+          public void onSuccess(Integer count) {
+            msgCount[0] = count;
+            String u = userInfo + " (" + Integer.toString(msgCount[0]) + ")";
+            topPanel.showUserEmail(u);
+          }
+      };
+    getGalleryService().getUnreadMessageCount(messageCountCallback);
   }
 
   /**
@@ -401,7 +387,20 @@ public class Ode implements EntryPoint {
   /**
    * Switch to the Gallery App
    */
-  public void switchToGalleryAppView(GalleryApp app, int editStatus) {
+  public void switchToGalleryAppView(GalleryApp app, final int editStatus) {
+    if (app.isSummary()) {
+      // Apps from the lists lack the details the app page shows
+      getGalleryService().getApp(app.getGalleryAppId(), new OdeAsyncCallback<GalleryApp>(
+          MESSAGES.galleryError()) {
+        @Override
+        public void onSuccess(GalleryApp fullApp) {
+          if (fullApp != null) {
+            switchToGalleryAppView(fullApp, editStatus);
+          }
+        }
+      });
+      return;
+    }
     currentView = GALLERYAPP;
     GalleryAppBox.setApp(app, editStatus);
     deckPanel.showWidget(galleryAppTabIndex);
@@ -637,13 +636,15 @@ public class Ode implements EntryPoint {
       galleryIdLoadingFlag = true;
     }
 
-    // Get user information.
-    OdeAsyncCallback<Config> callback = new OdeAsyncCallback<Config>(
+    // Get user information and the rest of the startup data.
+    OdeAsyncCallback<BootstrapData> callback = new OdeAsyncCallback<BootstrapData>(
         // failure message
         MESSAGES.serverUnavailable()) {
 
       @Override
-      public void onSuccess(Config result) {
+      public void onSuccess(final BootstrapData data) {
+        OdeLog.log("Startup data timings: " + data.getTimings());
+        Config result = data.getConfig();
         user = result.getUser();
         // If user hasn't accepted terms of service, ask them to.
         if (!user.getUserTosAccepted()) {
@@ -662,45 +663,62 @@ public class Ode implements EntryPoint {
 
         userSettings = new UserSettings(user);
 
-        // Gallery settings
-        gallerySettings = new GallerySettings();
-        //gallerySettings.loadGallerySettings();
-        loadGallerySettings();
+        // Gallery settings, applied once the UI exists
+        gallerySettings = data.getGallerySettings();
 
         // Initialize project and editor managers
-        // The project manager loads the user's projects asynchronously
         projectManager = new ProjectManager();
         projectManager.addProjectManagerEventListener(new ProjectManagerEventAdapter() {
           @Override
           public void onProjectsLoaded() {
             projectManager.removeProjectManagerEventListener(this);
 
+            // Hand the current project's nodes to it, so that opening it
+            // needs no more RPCs
+            Project currentProject = projectManager.getProject(data.getCurrentProjectId());
+            if (currentProject != null && data.getCurrentProjectRoot() != null) {
+              currentProject.setPreloadedNodes(data.getCurrentProjectRoot(),
+                  data.getCurrentProjectSettings());
+            }
+
             // This handles any built-in templates stored in /war
-            // Retrieve template data stored in war/templates folder and
-            // and save it for later use in TemplateUploadWizard
+            // Save the template data stored in war/templates folder for
+            // later use in TemplateUploadWizard
+            if (data.getTemplateData() != null) {
+              TemplateUploadWizard.initializeBuiltInTemplates(data.getTemplateData());
+              // Decoding the user settings calls openPreviousProject. We have to
+              // do this after the builtin templates have been loaded otherwise
+              // we will get a NPF.
+              userSettings.loadSettings(data.getUserSettings());
+              return;
+            }
+
+            // The server could not read the templates with the rest of the
+            // startup data; retrieve them on their own
             OdeAsyncCallback<String> templateCallback =
                 new OdeAsyncCallback<String>(
                   // failure message
                   MESSAGES.createProjectError()) {
                   @Override
                   public void onSuccess(String json) {
-                    // Save the templateData
                     TemplateUploadWizard.initializeBuiltInTemplates(json);
-                    // Here we call userSettings.loadSettings, but the settings are actually loaded
-                    // asynchronously, so this loadSettings call will return before they are loaded.
-                    // After the user settings have been loaded, openPreviousProject will be called.
-                    // We have to call this after the builtin templates have been loaded otherwise
-                    // we will get a NPF.
-                    userSettings.loadSettings();
+                    userSettings.loadSettings(data.getUserSettings());
                   }
                 };
-            Ode.getInstance().getProjectService().retrieveTemplateData(TemplateUploadWizard.TEMPLATES_ROOT_DIRECTORY, templateCallback);
+            getProjectService().retrieveTemplateData(
+                TemplateUploadWizard.TEMPLATES_ROOT_DIRECTORY, templateCallback);
           }
         });
         editorManager = new EditorManager();
 
         // Initialize UI
         initializeUi();
+        setupMotd(data.getMotdCheckInterval());
+
+        applyGallerySettings(gallerySettings);
+
+        // The project list listens to the project manager from initializeUi()
+        projectManager.loadProjects(data.getProjectInfos());
 
         topPanel.showUserEmail(user.getUserEmail());
       }
@@ -727,22 +745,20 @@ public class Ode implements EntryPoint {
       }
     };
 
-    // The call below begins an asynchronous read of the user's settings
-    // When the settings are finished reading, various settings parsers
-    // will be called on the returned JSON object. They will call various
-    // other functions in this module, including openPreviousProject (the
-    // previous project ID is stored in the settings) as well as the splash
-    // screen displaying functions below.
-    //
-    // TODO(user): ODE makes too many RPC requests at startup time. Currently
-    // we do 3 RPCs + 1 per project + 1 per open file. We should bundle some of
-    // those with each other or with the initial HTML transfer.
+    // The call below begins an asynchronous read of the startup data: the
+    // user, the user's settings and projects, the built-in templates, the
+    // gallery settings and the tree and settings of the previous project.
+    // When it returns, various settings parsers will be called on the user's
+    // settings. They will call various other functions in this module,
+    // including openPreviousProject (the previous project ID is stored in the
+    // settings) as well as the splash screen displaying functions below.
     //
     // This call also stores our sessionId in the backend. This will be checked
     // when we go to save a file and if different file saving will be disabled
     // Newer sessions invalidate older sessions.
 
-    userInfoService.getSystemConfig(sessionId, callback);
+    userInfoService.getBootstrapData(sessionId, TemplateUploadWizard.TEMPLATES_ROOT_DIRECTORY,
+        callback);
 
     History.addValueChangeHandler(new ValueChangeHandler<String>() {
       @Override
@@ -1013,28 +1029,15 @@ public class Ode implements EntryPoint {
       }
     });
 
-    setupMotd();
   }
 
-  private void setupMotd() {
-    AsyncCallback<Integer> callback = new AsyncCallback<Integer>() {
-      @Override
-      public void onFailure(Throwable caught) {
-        OdeLog.log(MESSAGES.getMotdFailed());
-      }
-
-      @Override
-      public void onSuccess(Integer intervalSecs) {
-        if (intervalSecs > 0) {
-          topPanel.showMotd();
-          motdFetcher = new MotdFetcher(intervalSecs);
-          motdFetcher.register((ExtendedServiceProxy<?>) projectService);
-          motdFetcher.register((ExtendedServiceProxy<?>) userInfoService);
-        }
-      }
-    };
-
-    getGetMotdService().getCheckInterval(callback);
+  private void setupMotd(int intervalSecs) {
+    if (intervalSecs > 0) {
+      topPanel.showMotd();
+      motdFetcher = new MotdFetcher(intervalSecs);
+      motdFetcher.register((ExtendedServiceProxy<?>) projectService);
+      motdFetcher.register((ExtendedServiceProxy<?>) userInfoService);
+    }
   }
 
   /**
@@ -1308,6 +1308,15 @@ public interface OdeMessages extends Messages {
   @Description("Warning that downloading projects will take a while")
   String downloadAllAlert();
 
+  @DefaultMessage("Preparing your projects for download: {0} of {1} done...")
+  @Description("Progress message shown while all projects are prepared for download")
+  String downloadAllProgress(int projectsExported, int projectCount);
+
+  @DefaultMessage("Server error: could not prepare your projects for download. " +
+      "Please try again later!")
+  @Description("Error message reported when all projects could not be prepared for download")
+  String downloadAllError();
+
   @DefaultMessage("More Actions")
   @Description("Label of the button leading to more cascade items")
   String moreActionsButton();
@@ -1773,6 +1782,10 @@ public interface OdeMessages extends Messages {
   @Description("More Apps Text")
   String galleryMoreApps();
 
+  @DefaultMessage("More Comments")
+  @Description("More Comments Text")
+  String galleryMoreComments();
+
   @DefaultMessage("search for \"")
   @Description("Search Results Prefix")
   String gallerySearchResultsPrefix();
@@ -16,6 +16,7 @@ import com.google.appinventor.client.widgets.TextButton;
 import com.google.appinventor.shared.rpc.project.GalleryApp;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
 import com.google.appinventor.shared.rpc.project.Message;
+import com.google.appinventor.shared.rpc.project.MessageListResult;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.common.collect.Lists;
 import com.google.gwt.event.dom.client.ClickEvent;
@@ -35,8 +36,6 @@ import com.google.gwt.user.client.ui.PopupPanel;
 import com.google.gwt.user.client.ui.ScrollPanel;
 import com.google.gwt.user.client.ui.VerticalPanel;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
@@ -59,6 +58,9 @@ public class TopPanel extends Composite {
   private final String WIDGET_NAME_USER = "User";
   private static final String WIDGET_NAME_LANGUAGE = "Language";
 
+  // Number of messages loaded into the inbox at a time
+  private static final int MESSAGES_PAGE_SIZE = 20;
+
   private static final String SIGNOUT_URL = "/ode/_logout";
   private static final String LOGO_IMAGE_URL = "/images/logo.png";
   private static final String LANGUAGES_IMAGE_URL = "/images/languages.svg";
@@ -411,35 +413,11 @@ public class TopPanel extends Composite {
               }
             }
         };
-      Ode.getInstance().getGalleryService().getDeveloperApps(
-          Ode.getInstance().getUser().getUserId(), 0, 10, appUnreadCallback);
+      Ode.getInstance().getGalleryService().getDeveloperAppsAfter(
+          Ode.getInstance().getUser().getUserId(), null, 10, appUnreadCallback);
 
-      // Retrieve list of messages of this user
-      final OdeAsyncCallback<List<Message>> mCallback = new OdeAsyncCallback<List<Message>>(
-          // failure message
-          MESSAGES.galleryError()) {
-            @Override
-            public void onSuccess(List<Message> msgs) {
-              msgCount[0] += msgs.size();
-              Collections.sort(msgs, new Comparator<Message>() {
-                @Override
-                public int compare(Message o1, Message o2) {
-                  return Long.valueOf(o2.getTimetamp()).compareTo(Long.valueOf(o1.getTimetamp()));
-                }
-              });
-              // get the new comment list so gui updates
-              for (final Message m : msgs) {
-                generateMessage(m, msgList);
-              }
-              if (msgCount[0] == 0 && !noMsgsDetected[0]) {
-                noMsgsDetected[0] = true;
-                Label noMsgPrompt = new Label("You have no messages at this moment.");
-                noMsgPrompt.addStyleName("MsgNoPrompt");
-                msgList.add(noMsgPrompt);
-              }
-            }
-        };
-      Ode.getInstance().getGalleryService().getMessages(mCallback);
+      // Retrieve the first page of messages of this user
+      loadMessages(null, msgList, msgCount, noMsgsDetected);
 
       popup.setWidget(content);
       // Center and show the popup
@@ -447,6 +425,50 @@ public class TopPanel extends Composite {
     }
   }
 
+  /**
+   * Helper method to load one page of messages into the inbox. A link at the
+   * end of the page loads the following one.
+   * @param cursor   where the page starts, or null for the first page
+   * @param container   the parent container that the messages reside in
+   * @param msgCount   the number of messages shown so far
+   * @param noMsgsDetected   whether the "no messages" prompt was shown
+   */
+  private static void loadMessages(String cursor, final FlowPanel container,
+      final int[] msgCount, final boolean[] noMsgsDetected) {
+    final OdeAsyncCallback<MessageListResult> mCallback =
+        new OdeAsyncCallback<MessageListResult>(
+        // failure message
+        MESSAGES.galleryError()) {
+          @Override
+          public void onSuccess(final MessageListResult result) {
+            List<Message> msgs = result.getMessages();
+            msgCount[0] += msgs.size();
+            // the server returns the newest messages first
+            for (final Message m : msgs) {
+              generateMessage(m, container);
+            }
+            if (msgCount[0] == 0 && !noMsgsDetected[0]) {
+              noMsgsDetected[0] = true;
+              Label noMsgPrompt = new Label("You have no messages at this moment.");
+              noMsgPrompt.addStyleName("MsgNoPrompt");
+              container.add(noMsgPrompt);
+            }
+            if (result.getCursor() != null) {
+              final Label seeMore = new Label(MESSAGES.seeMoreLink());
+              seeMore.addStyleName("primary-link");
+              seeMore.addClickHandler(new ClickHandler() {
+                public void onClick(ClickEvent event) {
+                  seeMore.removeFromParent();
+                  loadMessages(result.getCursor(), container, msgCount, noMsgsDetected);
+                }
+              });
+              container.add(seeMore);
+            }
+          }
+      };
+    Ode.getInstance().getGalleryService().getMessages(cursor, MESSAGES_PAGE_SIZE, mCallback);
+  }
+
   /**
    * Helper method to generate the UI for a single regular message.
    * @param app   the app for the unread statistics
@@ -492,7 +514,7 @@ public class TopPanel extends Composite {
           MESSAGES.galleryError()) {
             @Override
             public void onSuccess(Void result) {
-
+              Ode.getInstance().updateMessageCount();
             }
         };
       Ode.getInstance().getGalleryService().readMessage(m.getId(), mCallback);
@@ -506,6 +528,9 @@ public class TopPanel extends Composite {
               @Override
               public void onSuccess(Void result) {
                 msg.removeFromParent();
+                if (m.isUnread()) {
+                  Ode.getInstance().updateMessageCount();
+                }
               }
           };
         Ode.getInstance().getGalleryService().deleteMessage(m.getId(), mCallback);
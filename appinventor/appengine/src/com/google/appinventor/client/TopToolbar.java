@@ -34,11 +34,13 @@ import com.google.appinventor.common.version.AppInventorFeatures;
 import com.google.appinventor.common.version.GitBuildId;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.shared.rpc.ServerLayout;
+import com.google.appinventor.shared.rpc.project.ExportAllProjectsStatus;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
 import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.common.collect.Lists;
 import com.google.gwt.user.client.Command;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.Window.Location;
 import com.google.gwt.user.client.rpc.AsyncCallback;
@@ -429,16 +431,47 @@ public class TopToolbar extends Composite {
   }
 
   private static class ExportAllProjectsAction implements Command {
+    // How often to ask the server whether the projects are ready to download
+    private static final int POLL_INTERVAL_MILLIS = 3000;
+
     @Override
     public void execute() {
       Tracking.trackEvent(Tracking.PROJECT_EVENT,
           Tracking.PROJECT_ACTION_DOWNLOAD_ALL_PROJECTS_SOURCE_YA);
 
-      // Is there a way to disable the Download All button until this completes?
       if (Window.confirm(MESSAGES.downloadAllAlert())) {
+        // The server zips the projects in the background; they are downloaded
+        // once it is done.
+        Ode.getInstance().getProjectService().startExportAllProjects(
+            new ExportStatusCallback());
+      }
+    }
+
+    private static class ExportStatusCallback
+        extends OdeAsyncCallback<ExportAllProjectsStatus> {
+      ExportStatusCallback() {
+        super(MESSAGES.downloadAllError());
+      }
 
-        Downloader.getInstance().download(ServerLayout.DOWNLOAD_SERVLET_BASE +
-            ServerLayout.DOWNLOAD_ALL_PROJECTS_SOURCE);
+      @Override
+      public void onSuccess(ExportAllProjectsStatus status) {
+        if (status == null || status.getState() == ExportAllProjectsStatus.State.FAILED) {
+          ErrorReporter.reportError(MESSAGES.downloadAllError());
+        } else if (status.getState() == ExportAllProjectsStatus.State.FINISHED) {
+          ErrorReporter.hide();
+          Downloader.getInstance().download(ServerLayout.DOWNLOAD_SERVLET_BASE +
+              ServerLayout.DOWNLOAD_ALL_PROJECTS_SOURCE);
+        } else {
+          ErrorReporter.reportInfo(MESSAGES.downloadAllProgress(status.getProjectsExported(),
+              status.getProjectCount()));
+          new Timer() {
+            @Override
+            public void run() {
+              Ode.getInstance().getProjectService().getExportAllProjectsStatus(
+                  new ExportStatusCallback());
+            }
+          }.schedule(POLL_INTERVAL_MILLIS);
+        }
       }
     }
   }
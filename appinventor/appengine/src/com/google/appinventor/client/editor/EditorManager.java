@@ -12,6 +12,7 @@ import com.google.appinventor.client.ErrorReporter;
 import com.google.appinventor.client.Ode;
 import com.google.appinventor.client.OdeAsyncCallback;
 import com.google.appinventor.client.editor.youngandroid.YaBlocksEditor;
+import com.google.appinventor.client.editor.youngandroid.YaProjectEditor;
 import com.google.appinventor.client.editor.youngandroid.YailGenerationException;
 import com.google.appinventor.client.explorer.project.Project;
 import com.google.appinventor.client.output.OdeLog;
@@ -290,6 +291,22 @@ public final class EditorManager {
    */
   public void generateYailForBlocksEditors(final Command successCommand, 
       final Command failureCommand) {
+    // Screens that have not been shown yet are loaded first
+    ProjectEditor currentProjectEditor =
+        openProjectEditors.get(Ode.getInstance().getCurrentYoungAndroidProjectId());
+    if (currentProjectEditor instanceof YaProjectEditor) {
+      ((YaProjectEditor) currentProjectEditor).loadAllScreens(new Command() {
+        @Override
+        public void execute() {
+          generateYail(successCommand, failureCommand);
+        }
+      }, failureCommand);
+    } else {
+      generateYail(successCommand, failureCommand);
+    }
+  }
+
+  private void generateYail(final Command successCommand, final Command failureCommand) {
     List<FileDescriptorWithContent> yailFiles =  new ArrayList<FileDescriptorWithContent>();
     long currentProjectId = Ode.getInstance().getCurrentYoungAndroidProjectId();
     for (long projectId : openProjectEditors.keySet()) {
@@ -195,7 +195,9 @@ public abstract class ProjectEditor extends Composite {
     for (String fileId : closeFileIds) {
       FileEditor fileEditor = openFileEditors.remove(fileId);
       if (fileEditor == null) {
-        OdeLog.elog("File editor is unexpectedly null for " + fileId);
+        // This happens for the editors of screens that were never shown
+        // (see YaProjectEditor.loadScreens)
+        OdeLog.log("No open file editor for " + fileId);
         continue;
       }
       int index = deckPanel.getWidgetIndex(fileEditor);
@@ -157,9 +157,25 @@ public final class YaBlocksEditor extends FileEditor
 
   @Override
   public void loadFile(final Command afterFileLoaded) {
+    Ode.getInstance().getProjectService().load2(getProjectId(), getFileId(),
+        makeLoadCallback(afterFileLoaded));
+  }
+
+  /**
+   * Loads the blocks from a file that was already fetched, such as in a
+   * request for several files.
+   *
+   * @param file  the blocks file
+   * @param afterFileLoaded  optional command to be executed after the blocks are loaded
+   */
+  public void loadFile(ChecksumedLoadFile file, Command afterFileLoaded) {
+    makeLoadCallback(afterFileLoaded).onSuccess(file);
+  }
+
+  private OdeAsyncCallback<ChecksumedLoadFile> makeLoadCallback(final Command afterFileLoaded) {
     final long projectId = getProjectId();
     final String fileId = getFileId();
-    OdeAsyncCallback<ChecksumedLoadFile> callback = new OdeAsyncCallback<ChecksumedLoadFile>(MESSAGES.loadError()) {
+    return new OdeAsyncCallback<ChecksumedLoadFile>(MESSAGES.loadError()) {
       @Override
       public void onSuccess(ChecksumedLoadFile result) {
         String blkFileContent;
@@ -184,7 +200,6 @@ public final class YaBlocksEditor extends FileEditor
         super.onFailure(caught);
       }
     };
-    Ode.getInstance().getProjectService().load2(projectId, fileId, callback);
   }
 
   @Override
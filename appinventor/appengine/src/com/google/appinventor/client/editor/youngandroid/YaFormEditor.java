@@ -156,9 +156,25 @@ public final class YaFormEditor extends SimpleEditor implements FormChangeListen
 
   @Override
   public void loadFile(final Command afterFileLoaded) {
+    Ode.getInstance().getProjectService().load2(getProjectId(), getFileId(),
+        makeLoadCallback(afterFileLoaded));
+  }
+
+  /**
+   * Loads the form from a file that was already fetched, such as in a
+   * request for several files.
+   *
+   * @param file  the form file
+   * @param afterFileLoaded  optional command to be executed after the form is loaded
+   */
+  public void loadFile(ChecksumedLoadFile file, Command afterFileLoaded) {
+    makeLoadCallback(afterFileLoaded).onSuccess(file);
+  }
+
+  private OdeAsyncCallback<ChecksumedLoadFile> makeLoadCallback(final Command afterFileLoaded) {
     final long projectId = getProjectId();
     final String fileId = getFileId();
-    OdeAsyncCallback<ChecksumedLoadFile> callback = new OdeAsyncCallback<ChecksumedLoadFile>(MESSAGES.loadError()) {
+    return new OdeAsyncCallback<ChecksumedLoadFile>(MESSAGES.loadError()) {
       @Override
       public void onSuccess(ChecksumedLoadFile result) {
         String contents;
@@ -187,7 +203,6 @@ public final class YaFormEditor extends SimpleEditor implements FormChangeListen
         super.onFailure(caught);
       }
     };
-    Ode.getInstance().getProjectService().load2(projectId, fileId, callback);
   }
 
   @Override
@@ -9,6 +9,8 @@ package com.google.appinventor.client.editor.youngandroid;
 import com.google.appinventor.client.DesignToolbar;
 import com.google.appinventor.client.ErrorReporter;
 import com.google.appinventor.client.Ode;
+import static com.google.appinventor.client.Ode.MESSAGES;
+import com.google.appinventor.client.OdeAsyncCallback;
 import com.google.appinventor.client.boxes.AssetListBox;
 import com.google.appinventor.client.editor.FileEditor;
 import com.google.appinventor.client.editor.ProjectEditor;
@@ -16,6 +18,7 @@ import com.google.appinventor.client.editor.ProjectEditorFactory;
 import com.google.appinventor.client.explorer.project.Project;
 import com.google.appinventor.client.explorer.project.ProjectChangeListener;
 import com.google.appinventor.client.output.OdeLog;
+import com.google.appinventor.shared.rpc.project.ChecksumedLoadFile;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidBlocksNode;
@@ -26,9 +29,11 @@ import com.google.appinventor.shared.youngandroid.YoungAndroidSourceAnalyzer;
 import com.google.common.collect.Maps;
 import com.google.gwt.user.client.Command;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Project editor for Young Android projects. Each instance corresponds to
@@ -49,6 +54,12 @@ public final class YaProjectEditor extends ProjectEditor implements ProjectChang
   private class EditorSet {
     YaFormEditor formEditor = null;
     YaBlocksEditor blocksEditor = null;
+    // The form and blocks files are loaded when the screen is first needed
+    boolean loadRequested = false;
+    boolean loaded = false;
+    // Commands to execute once the files are loaded, or if loading them fails
+    final List<Command> afterLoaded = new ArrayList<Command>();
+    final List<Command> afterFailed = new ArrayList<Command>();
   }
 
   // Maps form name -> editors for this form
@@ -83,39 +94,13 @@ public final class YaProjectEditor extends ProjectEditor implements ProjectChang
     project.addProjectChangeListener(this);
   }
 
-  private void loadBlocksEditor(String formNamePassedIn) {
-
-    final String formName = formNamePassedIn;
-    final YaBlocksEditor newBlocksEditor = editorMap.get(formName).blocksEditor;
-    newBlocksEditor.loadFile(new Command() {
-        @Override
-        public void execute() {
-          YaBlocksEditor newBlocksEditor = editorMap.get(formName).blocksEditor;
-          int pos = Collections.binarySearch(fileIds, newBlocksEditor.getFileId(),
-              getFileIdComparator());
-          if (pos < 0) {
-            pos = -pos - 1;
-          }
-          insertFileEditor(newBlocksEditor, pos);
-          if (isScreen1(formName)) {
-            screen1BlocksLoaded = true;
-            if (readyToShowScreen1()) {
-              OdeLog.log("YaProjectEditor.addBlocksEditor.loadFile.execute: switching to screen "
-                  + formName + " for project " + newBlocksEditor.getProjectId());
-              Ode.getInstance().getDesignToolbar().switchToScreen(newBlocksEditor.getProjectId(),
-                  formName, DesignToolbar.View.FORM);
-            }
-          }
-        }
-      });
-
-  }
-
-  // Note: When we add the blocks editors in the loop below we do not actually
-  // have them load the blocks file. Instead we trigger the load of a blocks file
-  // in the callback for the loading of its associated forms file. This is important
-  // because we have to ensure that the component type data is available when the
-  // blocks are loaded!
+  // Note: When we add the editors in the loops below we do not actually have
+  // them load their files. Only Screen1 is loaded when the project is opened,
+  // with one request for its form and blocks files; the other screens are
+  // loaded when they are first shown (see loadScreens). The blocks file of a
+  // screen is loaded in the callback for the loading of its form file. This is
+  // important because we have to ensure that the component type data is
+  // available when the blocks are loaded!
 
   @Override
   public void loadProject() {
@@ -153,6 +138,142 @@ public final class YaProjectEditor extends ProjectEditor implements ProjectChang
         OdeLog.wlog("Missing blocks editor for " + formName);
       }
     }
+    loadScreens(Collections.singletonList(YoungAndroidSourceNode.SCREEN1_FORM_NAME), null);
+  }
+
+  /**
+   * Returns whether the form and blocks files of the given screen have been
+   * loaded into its editors.
+   *
+   * @param formName  name of the screen
+   */
+  public boolean isScreenLoaded(String formName) {
+    EditorSet editors = editorMap.get(formName);
+    return editors != null && editors.loaded;
+  }
+
+  /**
+   * Loads all the screens that are not loaded yet, with one request, and
+   * then executes afterLoaded, or afterFailed if the request fails.
+   *
+   * @param afterLoaded  optional command to be executed once the screens are loaded
+   * @param afterFailed  optional command to be executed if the screens cannot be loaded
+   */
+  public void loadAllScreens(Command afterLoaded, Command afterFailed) {
+    loadScreens(new ArrayList<String>(editorMap.keySet()), afterLoaded, afterFailed);
+  }
+
+  /**
+   * Same as {@link #loadScreens(List, Command, Command)}, for callers that
+   * have nothing to do if the screens cannot be loaded.
+   *
+   * @param formNames  names of the screens
+   * @param afterLoaded  optional command to be executed once the screens are loaded
+   */
+  public void loadScreens(List<String> formNames, Command afterLoaded) {
+    loadScreens(formNames, afterLoaded, null);
+  }
+
+  /**
+   * Loads the form and blocks files of the given screens that are not loaded
+   * yet, with one request, and then executes afterLoaded. Screens are loaded
+   * when they are first shown, or when all of them are needed, such as for
+   * generating the yail files. If a request for one of the screens fails,
+   * afterFailed is executed instead, once.
+   *
+   * @param formNames  names of the screens
+   * @param afterLoaded  optional command to be executed once the screens are loaded
+   * @param afterFailed  optional command to be executed if the screens cannot be loaded
+   */
+  public void loadScreens(List<String> formNames, final Command afterLoaded,
+      final Command afterFailed) {
+    final List<String> requestedNames = new ArrayList<String>();
+    final List<EditorSet> requested = new ArrayList<EditorSet>();
+    List<EditorSet> loading = new ArrayList<EditorSet>();
+    for (String formName : formNames) {
+      EditorSet editors = editorMap.get(formName);
+      if (editors == null || editors.formEditor == null || editors.blocksEditor == null
+          || editors.loaded) {
+        continue;
+      }
+      loading.add(editors);
+      if (!editors.loadRequested) {
+        editors.loadRequested = true;
+        requestedNames.add(formName);
+        requested.add(editors);
+      }
+    }
+    if (loading.isEmpty()) {
+      if (afterLoaded != null) {
+        afterLoaded.execute();
+      }
+      return;
+    }
+    if (afterLoaded != null || afterFailed != null) {
+      // Execute afterLoaded when the last of the screens is loaded, or
+      // afterFailed when the first of them fails
+      final int[] remaining = { loading.size() };
+      final boolean[] failed = { false };
+      Command countDown = new Command() {
+        @Override
+        public void execute() {
+          if (--remaining[0] == 0 && !failed[0] && afterLoaded != null) {
+            afterLoaded.execute();
+          }
+        }
+      };
+      Command failure = new Command() {
+        @Override
+        public void execute() {
+          if (!failed[0]) {
+            failed[0] = true;
+            if (afterFailed != null) {
+              afterFailed.execute();
+            }
+          }
+        }
+      };
+      for (EditorSet editors : loading) {
+        editors.afterLoaded.add(countDown);
+        editors.afterFailed.add(failure);
+      }
+    }
+    if (requested.isEmpty()) {
+      // The other screens were already requested
+      return;
+    }
+
+    List<String> loadFileIds = new ArrayList<String>();
+    for (EditorSet editors : requested) {
+      loadFileIds.add(editors.formEditor.getFileId());
+      loadFileIds.add(editors.blocksEditor.getFileId());
+    }
+    Ode.getInstance().getProjectService().load2(projectId, loadFileIds,
+        new OdeAsyncCallback<List<ChecksumedLoadFile>>(MESSAGES.loadError()) {
+          @Override
+          public void onSuccess(List<ChecksumedLoadFile> result) {
+            for (int i = 0; i < requested.size(); i++) {
+              loadScreen(requestedNames.get(i), requested.get(i), result.get(2 * i),
+                  result.get(2 * i + 1));
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            // Showing the screens again will retry
+            List<Command> commands = new ArrayList<Command>();
+            for (EditorSet editors : requested) {
+              editors.loadRequested = false;
+              editors.afterLoaded.clear();
+              commands.addAll(editors.afterFailed);
+              editors.afterFailed.clear();
+            }
+            super.onFailure(caught);
+            for (Command command : commands) {
+              command.execute();
+            }
+          }
+        });
   }
   
   @Override
@@ -197,7 +318,9 @@ public final class YaProjectEditor extends ProjectEditor implements ProjectChang
     OdeLog.log("YaProjectEditor: got onUnload");
     super.onUnload();
     for (EditorSet editors : editorMap.values()) {
-      editors.blocksEditor.prepareForUnload();
+      if (editors.loaded) {
+        editors.blocksEditor.prepareForUnload();
+      }
     }
   }
 
@@ -209,14 +332,16 @@ public final class YaProjectEditor extends ProjectEditor implements ProjectChang
 
   @Override
   public void onProjectNodeAdded(Project project, ProjectNode node) {
+    // Editors of screens that have not been shown yet are not open, so
+    // editorMap is checked rather than getFileEditor
     String formName = null;
     if (node instanceof YoungAndroidFormNode) {
-      if (getFileEditor(node.getFileId()) == null) {
+      if (getFormFileEditor(((YoungAndroidFormNode) node).getFormName()) == null) {
         addFormEditor((YoungAndroidFormNode) node);
         formName = ((YoungAndroidFormNode) node).getFormName();
       }
     } else if (node instanceof YoungAndroidBlocksNode) {
-      if (getFileEditor(node.getFileId()) == null) {
+      if (getBlocksFileEditor(((YoungAndroidBlocksNode) node).getFormName()) == null) {
         addBlocksEditor((YoungAndroidBlocksNode) node);
         formName = ((YoungAndroidBlocksNode) node).getFormName();
       }
@@ -227,6 +352,9 @@ public final class YaProjectEditor extends ProjectEditor implements ProjectChang
       if (editors.formEditor != null && editors.blocksEditor != null) {
         Ode.getInstance().getDesignToolbar().addScreen(node.getProjectId(), formName, 
             editors.formEditor, editors.blocksEditor);
+        // A new screen is shown as soon as its editors are open (see
+        // AddFormCommand), so load it right away
+        loadScreens(Collections.singletonList(formName), null);
       }
     }
   }
@@ -318,8 +446,8 @@ public final class YaProjectEditor extends ProjectEditor implements ProjectChang
   }
   
   private void addFormEditor(YoungAndroidFormNode formNode) {
-    final YaFormEditor newFormEditor = new YaFormEditor(this, formNode);
-    final String formName = formNode.getFormName();
+    YaFormEditor newFormEditor = new YaFormEditor(this, formNode);
+    String formName = formNode.getFormName();
     OdeLog.log("Adding form editor for " + formName);
     if (editorMap.containsKey(formName)) {
       // This happens if the blocks editor was already added.
@@ -329,28 +457,60 @@ public final class YaProjectEditor extends ProjectEditor implements ProjectChang
       editors.formEditor = newFormEditor;
       editorMap.put(formName, editors);
     }
-    newFormEditor.loadFile(new Command() {
+  }
+
+  /*
+   * Loads the given files into the editors of a screen: first the form, then
+   * the blocks. Then executes the commands that were waiting for the screen.
+   */
+  private void loadScreen(final String formName, final EditorSet editors,
+      ChecksumedLoadFile formFile, final ChecksumedLoadFile blocksFile) {
+    final YaFormEditor formEditor = editors.formEditor;
+    final YaBlocksEditor blocksEditor = editors.blocksEditor;
+    if (formEditor == null || blocksEditor == null) {
+      // The screen was removed while its files were loading
+      return;
+    }
+    formEditor.loadFile(formFile, new Command() {
       @Override
       public void execute() {
-        int pos = Collections.binarySearch(fileIds, newFormEditor.getFileId(),
-            getFileIdComparator());
-        if (pos < 0) {
-          pos = -pos - 1;
-        }
-        insertFileEditor(newFormEditor, pos);
+        insertFileEditorInOrder(formEditor);
         if (isScreen1(formName)) {
           screen1FormLoaded = true;
-          if (readyToShowScreen1()) {
-            OdeLog.log("YaProjectEditor.addFormEditor.loadFile.execute: switching to screen " 
-                + formName + " for project " + newFormEditor.getProjectId());
-            Ode.getInstance().getDesignToolbar().switchToScreen(newFormEditor.getProjectId(),
-                formName, DesignToolbar.View.FORM);
-          }
         }
-        loadBlocksEditor(formName);
+        blocksEditor.loadFile(blocksFile, new Command() {
+          @Override
+          public void execute() {
+            insertFileEditorInOrder(blocksEditor);
+            editors.loaded = true;
+            if (isScreen1(formName)) {
+              screen1BlocksLoaded = true;
+              if (readyToShowScreen1()) {
+                OdeLog.log("YaProjectEditor.loadScreen: switching to screen "
+                    + formName + " for project " + blocksEditor.getProjectId());
+                Ode.getInstance().getDesignToolbar().switchToScreen(blocksEditor.getProjectId(),
+                    formName, DesignToolbar.View.FORM);
+              }
+            }
+            List<Command> commands = new ArrayList<Command>(editors.afterLoaded);
+            editors.afterLoaded.clear();
+            editors.afterFailed.clear();
+            for (Command command : commands) {
+              command.execute();
+            }
+          }
+        });
       }
     });
   }
+
+  private void insertFileEditorInOrder(FileEditor fileEditor) {
+    int pos = Collections.binarySearch(fileIds, fileEditor.getFileId(), getFileIdComparator());
+    if (pos < 0) {
+      pos = -pos - 1;
+    }
+    insertFileEditor(fileEditor, pos);
+  }
     
   private boolean readyToShowScreen1() {
     return screen1FormLoaded && screen1BlocksLoaded && screen1Added;
@@ -36,6 +36,11 @@ public final class Project {
   // Project specific settings
   private ProjectSettings settings; // lazily and asynchronously initialized
 
+  // Root node and encoded settings sent with the startup data, used instead
+  // of the RPCs the first time the project is loaded
+  private ProjectRootNode preloadedRoot;
+  private String preloadedSettings;
+
   /**
    * Creates a new project.
    *
@@ -47,11 +52,32 @@ public final class Project {
     projectChangeListeners = new ArrayList<ProjectChangeListener>();
   }
 
+  /**
+   * Keeps the project's nodes and settings that were sent with the startup
+   * data, so that {@link #loadProjectNodes()} does not fetch them again.
+   *
+   * @param root  project root node
+   * @param encodedSettings  JSON encoded project settings
+   */
+  public void setPreloadedNodes(ProjectRootNode root, String encodedSettings) {
+    preloadedRoot = root;
+    preloadedSettings = encodedSettings;
+  }
+
   /*
    * Loads the project's nodes from the backend.
    */
   public void loadProjectNodes() {
-    if (projectRoot == null && !loadingInProgress) {
+    if (projectRoot == null && preloadedRoot != null) {
+      if (settings == null) {
+        settings = new ProjectSettings(Project.this);
+        settings.loadSettings(preloadedSettings);
+      }
+      projectRoot = preloadedRoot;
+      preloadedRoot = null;
+      preloadedSettings = null;
+      fireProjectLoaded();
+    } else if (projectRoot == null && !loadingInProgress) {
       loadingInProgress = true;
 
       if (settings == null) {
@@ -6,9 +6,6 @@
 
 package com.google.appinventor.client.explorer.project;
 
-import com.google.appinventor.client.Ode;
-import static com.google.appinventor.client.Ode.MESSAGES;
-import com.google.appinventor.client.OdeAsyncCallback;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.appinventor.shared.rpc.project.UserProject;
 
@@ -35,17 +32,20 @@ public final class ProjectManager {
   public ProjectManager() {
     projectsMap = new HashMap<Long, Project>();
     projectManagerEventListeners = new ArrayList<ProjectManagerEventListener>();
-    Ode.getInstance().getProjectService().getProjectInfos(
-        new OdeAsyncCallback<List<UserProject>>(
-        MESSAGES.projectInformationRetrievalError()) {
-      @Override
-      public void onSuccess(List<UserProject> projectInfos) {
-        for (UserProject projectInfo : projectInfos) {
-          addProject(projectInfo);
-        }
-        fireProjectsLoaded();
-      }
-    });
+  }
+
+  /**
+   * Adds the user's projects, as sent with the startup data, and fires the
+   * 'projects loaded' event. Listeners that were added before this call are
+   * told about each project.
+   *
+   * @param projectInfos  information about the user's projects
+   */
+  public void loadProjects(List<UserProject> projectInfos) {
+    for (UserProject projectInfo : projectInfos) {
+      addProject(projectInfo);
+    }
+    fireProjectsLoaded();
   }
 
   /**
@@ -18,7 +18,7 @@ import com.google.appinventor.client.Ode;
 import com.google.appinventor.client.output.OdeLog;
 import com.google.appinventor.shared.rpc.project.GalleryApp;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
-import com.google.appinventor.shared.rpc.project.GalleryComment;
+import com.google.appinventor.shared.rpc.project.GalleryCommentListResult;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
@@ -77,14 +77,15 @@ public class GalleryList extends Composite implements GalleryRequestListener {
   public static final int REQUEST_ALL = 9;
   public static final int REQUEST_REMIXED_TO = 10;
 
-  private int appRecentCounter = 0;
-  private int appFeaturedCounter = 0;
-  private int appPopularCounter = 0;
-  private int appSearchCounter = 0;
   private boolean appRecentExhausted = false;
   private boolean appFeaturedExhausted = false;
   private boolean appPopularExhausted = false;
   private boolean appSearchExhausted = false;
+  // Where the next page of each list starts, as handed back by the server
+  private String appRecentCursor = null;
+  private String appFeaturedCursor = null;
+  private String appPopularCursor = null;
+  private String appSearchCursor = null;
 
   public static final int NUMAPPSTOSHOW = 10;
 
@@ -235,7 +236,7 @@ public class GalleryList extends Composite implements GalleryRequestListener {
         sb.addClickHandler(new ClickHandler() {
           //  @Override
           public void onClick(ClickEvent event) {
-            gallery.FindApps(searchText.getText(), 0, NUMAPPSTOSHOW, 0, true);
+            gallery.FindApps(searchText.getText(), null, NUMAPPSTOSHOW, true);
             searchText.setFocus(true);
           }
         });
@@ -243,7 +244,7 @@ public class GalleryList extends Composite implements GalleryRequestListener {
           //  @Override
           public void onKeyDown(KeyDownEvent e) {
             if(e.getNativeKeyCode() == KeyCodes.KEY_ENTER){
-              gallery.FindApps(searchText.getText(), 0, NUMAPPSTOSHOW, 0, true);
+              gallery.FindApps(searchText.getText(), null, NUMAPPSTOSHOW, true);
               searchText.setFocus(true);
             }
           }
@@ -251,15 +252,15 @@ public class GalleryList extends Composite implements GalleryRequestListener {
       } else if (request == REQUEST_RECENT) {
         generalTotalResultsLabel = new Label();
         container.add(generalTotalResultsLabel);
-        gallery.GetMostRecent(appRecentCounter, NUMAPPSTOSHOW, false);
+        gallery.GetMostRecent((String) null, NUMAPPSTOSHOW, false);
       } else if (request == REQUEST_MOSTDOWNLOADED) {
         generalTotalResultsLabel = new Label();
         container.add(generalTotalResultsLabel);
-        gallery.GetMostDownloaded(appPopularCounter, NUMAPPSTOSHOW, false);
+        gallery.GetMostDownloaded((String) null, NUMAPPSTOSHOW, false);
       } else if (request == REQUEST_FEATURED){
         generalTotalResultsLabel = new Label();
         container.add(generalTotalResultsLabel);
-        gallery.GetFeatured(appFeaturedCounter, NUMAPPSTOSHOW, 0, false);
+        gallery.GetFeatured((String) null, NUMAPPSTOSHOW, false);
       }
       container.add(content);
 
@@ -282,29 +283,25 @@ public class GalleryList extends Composite implements GalleryRequestListener {
             case REQUEST_FEATURED:
               if (!appFeaturedExhausted) {
                 // If the next page still has apps to retrieve, do it
-                appFeaturedCounter += NUMAPPSTOSHOW;
-                gallery.GetFeatured(appFeaturedCounter, NUMAPPSTOSHOW, 0, false);
+                gallery.GetFeatured(appFeaturedCursor, NUMAPPSTOSHOW, false);
               }
               break;
             case REQUEST_RECENT:
               if (!appRecentExhausted) {
                 // If the next page still has apps to retrieve, do it
-                appRecentCounter += NUMAPPSTOSHOW;
-                gallery.GetMostRecent(appRecentCounter, NUMAPPSTOSHOW, false);
+                gallery.GetMostRecent(appRecentCursor, NUMAPPSTOSHOW, false);
               }
               break;
             case REQUEST_SEARCH:
               if (!appSearchExhausted) {
                 // If the next page still has apps to retrieve, do it
-                appSearchCounter += NUMAPPSTOSHOW;
-                gallery.FindApps(searchText.getText(), appSearchCounter, NUMAPPSTOSHOW, 0, false);
+                gallery.FindApps(searchText.getText(), appSearchCursor, NUMAPPSTOSHOW, false);
               }
               break;
             case REQUEST_MOSTDOWNLOADED:
               if (!appPopularExhausted) {
                 // If the next page still has apps to retrieve, do it
-                appPopularCounter += NUMAPPSTOSHOW;
-                gallery.GetMostDownloaded(appPopularCounter, NUMAPPSTOSHOW, false);
+                gallery.GetMostDownloaded(appPopularCursor, NUMAPPSTOSHOW, false);
               }
               break;
           }
@@ -342,7 +339,7 @@ public class GalleryList extends Composite implements GalleryRequestListener {
     sb.addClickHandler(new ClickHandler() {
       //  @Override
       public void onClick(ClickEvent event) {
-        gallery.FindApps(searchText.getText(), 0, NUMAPPSTOSHOW, 0, true);
+        gallery.FindApps(searchText.getText(), null, NUMAPPSTOSHOW, true);
       }
     });
   }
@@ -356,33 +353,18 @@ public class GalleryList extends Composite implements GalleryRequestListener {
     switch (requestId) {
       case REQUEST_FEATURED:
         appFeaturedTab.setGeneralTotalResultsLabel(appsResult.getTotalCount());
-        if (appsResult.getTotalCount() < NUMAPPSTOSHOW) {
-          // That means there's not enough apps to show (reaches the end)
-          appFeaturedExhausted = true;
-        } else {
-          appFeaturedExhausted = false;
-        }
+        appFeaturedCursor = appsResult.getCursor();
+        // Without a cursor there are no more apps to show (reaches the end)
+        appFeaturedExhausted = appFeaturedCursor == null;
+        appFeaturedTab.getButtonNext().setVisible(!appFeaturedExhausted);
         galleryGF.generateHorizontalAppList(appsResult.getApps(), appFeaturedContent, refreshable);
-        if(appsResult.getTotalCount() < NUMAPPSTOSHOW || appFeaturedCounter + NUMAPPSTOSHOW >= appsResult.getTotalCount()){
-          appFeaturedTab.getButtonNext().setVisible(false);
-        }else{
-          appFeaturedTab.getButtonNext().setVisible(true);
-        }
         break;
       case REQUEST_RECENT:
         appRecentTab.setGeneralTotalResultsLabel(appsResult.getTotalCount());
-        if(appsResult.getTotalCount() < NUMAPPSTOSHOW  || appRecentCounter + NUMAPPSTOSHOW >= appsResult.getTotalCount()){
-          appRecentTab.getButtonNext().setVisible(false);
-        }else{
-          appRecentTab.getButtonNext().setVisible(true);
-        }
-
-        if (appsResult.getApps().size() < NUMAPPSTOSHOW) {
-          // That means there's not enough apps to show (reaches the end)
-          appRecentExhausted = true;
-        } else {
-          appRecentExhausted = false;
-        }
+        appRecentCursor = appsResult.getCursor();
+        // Without a cursor there are no more apps to show (reaches the end)
+        appRecentExhausted = appRecentCursor == null;
+        appRecentTab.getButtonNext().setVisible(!appRecentExhausted);
         galleryGF.generateHorizontalAppList(appsResult.getApps(), appRecentContent, refreshable);
         break;
       case REQUEST_SEARCH:
@@ -392,32 +374,18 @@ public class GalleryList extends Composite implements GalleryRequestListener {
         }else{
           appSearchTab.getNoResultsFound().setVisible(false);
         }
-        if(appSearchCounter + NUMAPPSTOSHOW >= appsResult.getTotalCount()){
-          appSearchTab.getButtonNext().setVisible(false);
-        }else{
-          appSearchTab.getButtonNext().setVisible(true);
-        }
-        if (appsResult.getApps().size() < NUMAPPSTOSHOW) {
-          // That means there's not enough apps to show (reaches the end)
-          appSearchExhausted = true;
-        } else {
-          appSearchExhausted = false;
-        }
+        appSearchCursor = appsResult.getCursor();
+        // Without a cursor there are no more apps to show (reaches the end)
+        appSearchExhausted = appSearchCursor == null;
+        appSearchTab.getButtonNext().setVisible(!appSearchExhausted);
         galleryGF.generateHorizontalAppList(appsResult.getApps(), appSearchContent, refreshable);
         break;
       case REQUEST_MOSTDOWNLOADED:
         appPopularTab.setGeneralTotalResultsLabel(appsResult.getTotalCount());
-        if(appsResult.getTotalCount() < NUMAPPSTOSHOW || appPopularCounter + NUMAPPSTOSHOW >= appsResult.getTotalCount()){
-          appPopularTab.getButtonNext().setVisible(false);
-        }else{
-          appPopularTab.getButtonNext().setVisible(true);
-        }
-        if (appsResult.getApps().size() < NUMAPPSTOSHOW) {
-          // That means there's not enough apps to show (reaches the end)
-          appPopularExhausted = true;
-        } else {
-          appPopularExhausted = false;
-        }
+        appPopularCursor = appsResult.getCursor();
+        // Without a cursor there are no more apps to show (reaches the end)
+        appPopularExhausted = appPopularCursor == null;
+        appPopularTab.getButtonNext().setVisible(!appPopularExhausted);
         galleryGF.generateHorizontalAppList(appsResult.getApps(), appPopularContent, refreshable);
         break;
     }
@@ -475,7 +443,7 @@ public class GalleryList extends Composite implements GalleryRequestListener {
    * Process the results after retrieving list of GalleryComment
    * @see GalleryRequestListener
    */
-  public void onCommentsRequestCompleted(List<GalleryComment> comments){
+  public void onCommentsRequestCompleted(GalleryCommentListResult commentsResult, boolean firstPage){
 
   }
 
@@ -6,6 +6,7 @@
 
 package com.google.appinventor.client.explorer.youngandroid;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -23,8 +24,9 @@ import com.google.appinventor.client.wizards.youngandroid.RemixedYoungAndroidPro
 import com.google.appinventor.shared.rpc.ServerLayout;
 import com.google.appinventor.shared.rpc.UploadResponse;
 import com.google.appinventor.shared.rpc.project.GalleryApp;
+import com.google.appinventor.shared.rpc.project.GalleryAppLineage;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
-import com.google.appinventor.shared.rpc.project.GalleryComment;
+import com.google.appinventor.shared.rpc.project.GalleryCommentListResult;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.gwt.core.client.GWT;
@@ -102,9 +104,13 @@ public class GalleryPage extends Composite implements GalleryRequestListener {
   private FlowPanel appSharePanel;
   private FlowPanel appComments;
   private FlowPanel appCommentsList;
+  private Label moreComments;
+  private String commentsCursor;
   private FlowPanel returnToGallery;
 //private String tagSelected;
 
+  private static final int NUMCOMMENTSTOSHOW = 100;
+
   public static final int VIEWAPP = 0;
   public static final int NEWAPP = 1;
   public static final int UPDATEAPP = 2;
@@ -251,7 +257,7 @@ panel
 
       // Add sidebar stuff, only in public state
       // By default, load the first tag's apps
-      gallery.GetAppsByDeveloper(0, 5, app.getDeveloperId());
+      gallery.GetAppsByDeveloper(null, 5, app.getDeveloperId());
     }
 
     // Add to appSingle
@@ -372,7 +378,8 @@ panel
    * Helper method called by constructor to create the app image for display
    */
   private void initReadOnlyImage() {
-    updateAppImage(gallery.getCloudImageURL(app.getGalleryAppId()), appHeader);
+    updateAppImage(gallery.getCloudMediumImageURL(app.getGalleryAppId()),
+        gallery.getCloudImageURL(app.getGalleryAppId()), appHeader);
   }
 
 
@@ -443,14 +450,37 @@ panel
    * @param container  The container that image widget resides
    */
   private void updateAppImage(String url, final Panel container) {
+    updateAppImage(url, null, container);
+  }
+
+  /**
+   * Helper method to update the app image
+   * @param url  The URL of the image to show
+   * @param fullImageUrl  The URL of the full image, if url is a scaled copy of it
+   *   (which apps published before the copies were made do not have), or null
+   * @param container  The container that image widget resides
+   */
+  private void updateAppImage(String url, final String fullImageUrl, final Panel container) {
       image = new Image();
       image.addStyleName("app-image");
-      image.setUrl(url);
+      if (fullImageUrl == null) {
+        image.setUrl(url);
+      } else {
+        // Scaled copies are cached for a long time, so their URL changes
+        // when the app is updated
+        image.setUrl(url + "?v=" + app.getUpdateDate());
+      }
       // if the user has provided a gallery app image, we'll load it. But if not
       // the error will occur and we'll load default image
       image.addErrorHandler(new ErrorHandler() {
+        private boolean triedFullImage = (fullImageUrl == null);
         public void onError(ErrorEvent event) {
-          image.setUrl(GalleryApp.DEFAULTGALLERYIMAGE);
+          if (!triedFullImage) {
+            triedFullImage = true;
+            image.setUrl(fullImageUrl);
+          } else {
+            image.setUrl(GalleryApp.DEFAULTGALLERYIMAGE);
+          }
         }
       });
       container.add(image);
@@ -758,7 +788,7 @@ panel
                 // get the new comment list so gui updates
                 //   note: we might modify the call to publishComment so it returns
                 //   the list instead, this would save one server call
-                gallery.GetComments(app.getGalleryAppId(), 0, 100);
+                gallery.GetComments(app.getGalleryAppId(), null, NUMCOMMENTSTOSHOW);
               }
           };
         Ode.getInstance().getGalleryService().publishComment(app.getGalleryAppId(),
@@ -767,10 +797,25 @@ panel
     });
     appComments.add(commentSubmit);
 
-    // Add list of comments
-    gallery.GetComments(app.getGalleryAppId(), 0, 100);
+    // Add list of comments, one page at a time
+    gallery.GetComments(app.getGalleryAppId(), null, NUMCOMMENTSTOSHOW);
     appComments.add(appCommentsList);
     appCommentsList.addStyleName("app-comments");
+    moreComments = new Label(MESSAGES.galleryMoreComments());
+    moreComments.addStyleName("active");
+    moreComments.setVisible(false);
+    moreComments.addClickHandler(new ClickHandler() {
+      @Override
+      public void onClick(ClickEvent event) {
+        if (commentsCursor != null) {
+          gallery.GetComments(app.getGalleryAppId(), commentsCursor, NUMCOMMENTSTOSHOW);
+        }
+      }
+    });
+    FlowPanel next = new FlowPanel();
+    next.add(moreComments);
+    next.addStyleName("gallery-nav-next");
+    appComments.add(next);
 
   }
 
@@ -821,31 +866,38 @@ panel
     remixedFrom.setVisible(false);
     parentApp.setVisible(false);
 
+    // One call brings both the app this one was remixed from and its remixes
     final Result<GalleryApp> attributionGalleryApp = new Result<GalleryApp>();
-    final OdeAsyncCallback<Long> remixedFromCallback = new OdeAsyncCallback<Long>(
+    final OdeAsyncCallback<GalleryAppLineage> lineageCallback =
+        new OdeAsyncCallback<GalleryAppLineage>(
     // failure message
     MESSAGES.galleryError()) {
     @Override
-      public void onSuccess(final Long attributionId) {
-        if (attributionId != UserProject.FROMSCRATCH) {
+      public void onSuccess(final GalleryAppLineage lineage) {
+        if (lineage == null) {
+          return;
+        }
+        if (!lineage.getAncestors().isEmpty()) {
+          attributionGalleryApp.t = lineage.getAncestors().get(0);
+          parentApp.setText(attributionGalleryApp.t.getTitle());
           remixedFrom.setVisible(true);
           parentApp.setVisible(true);
-          final OdeAsyncCallback<GalleryApp> callback = new OdeAsyncCallback<GalleryApp>(
-          // failure message
-          MESSAGES.galleryError()) {
-            @Override
-            public void onSuccess(GalleryApp AppRemixedFrom) {
-              parentApp.setText(AppRemixedFrom.getTitle());
-              attributionGalleryApp.t = AppRemixedFrom;
-            }
-          };
-          Ode.getInstance().getGalleryService().getApp(attributionId, callback);
         } else {
           attributionGalleryApp.t = null;
         }
+        if (!lineage.getRemixes().isEmpty()) {
+          List<GalleryApp> apps = new ArrayList<GalleryApp>();
+          for (GalleryAppLineage remix : lineage.getRemixes()) {
+            apps.add(remix.getApp());
+          }
+          // Display remixes at the sidebar on the same page
+          galleryGF.generateSidebar(apps, sidebarTabs, appsRemixes, "Remixes",
+              MESSAGES.galleryAppsRemixesSidebar() + app.getTitle(), false, false);
+        }
       }
     };
-    Ode.getInstance().getGalleryService().remixedFrom(app.getGalleryAppId(), remixedFromCallback);
+    Ode.getInstance().getGalleryService().getRemixLineage(app.getGalleryAppId(), 1,
+        lineageCallback);
 
     parentApp.addClickHandler(new ClickHandler() {
         public void onClick(ClickEvent event) {
@@ -856,20 +908,6 @@ panel
         }
     });
 
-    final OdeAsyncCallback<List<GalleryApp>> callback = new OdeAsyncCallback<List<GalleryApp>>(
-      // failure message
-      MESSAGES.galleryError()) {
-        @Override
-        public void onSuccess(final List<GalleryApp> apps) {
-          if (apps.size() != 0) {
-            // Display remixes at the sidebar on the same page
-            galleryGF.generateSidebar(apps, sidebarTabs, appsRemixes, "Remixes",
-                MESSAGES.galleryAppsRemixesSidebar() + app.getTitle(), false, false);
-          }
-        }
-      };
-    Ode.getInstance().getGalleryService().remixedTo(app.getGalleryAppId(), callback);
-
     return container;
   }
 
@@ -1294,10 +1332,19 @@ panel
    * gallery page to listen to
    */
   @Override
-  public void onCommentsRequestCompleted(List<GalleryComment> comments) {
-      galleryGF.generateAppPageComments(comments, appCommentsList);
-      if (comments == null)
-        OdeLog.log("comment list was null");
+  public void onCommentsRequestCompleted(GalleryCommentListResult commentsResult,
+      boolean firstPage) {
+      if (firstPage) {
+        appCommentsList.clear();
+      }
+      // Each page goes in a panel of its own, as the factory clears the one it fills
+      FlowPanel page = new FlowPanel();
+      appCommentsList.add(page);
+      galleryGF.generateAppPageComments(commentsResult.getComments(), page);
+      commentsCursor = commentsResult.getCursor();
+      if (moreComments != null) {
+        moreComments.setVisible(commentsCursor != null);
+      }
   }
 
   @Override
@@ -60,6 +60,17 @@ public final class ProjectSettings extends CommonSettings implements SettingsAcc
         });
   }
 
+  /**
+   * Decodes settings that were already fetched, such as the ones sent with
+   * the startup data.
+   *
+   * @param encodedSettings  JSON encoded project settings
+   */
+  public void loadSettings(String encodedSettings) {
+    OdeLog.log("Loaded project settings: " + encodedSettings);
+    decodeSettings(encodedSettings);
+  }
+
   @Override
   public void saveSettings(final Command command) {
     String s = encodeSettings();
@@ -56,6 +56,17 @@ public final class UserSettings extends CommonSettings implements SettingsAccess
         });
   }
 
+  /**
+   * Decodes settings that were already fetched, such as the ones sent with
+   * the startup data.
+   *
+   * @param encodedSettings  JSON encoded user settings
+   */
+  public void loadSettings(String encodedSettings) {
+    OdeLog.log("Loaded global settings: " + encodedSettings);
+    decodeSettings(encodedSettings);
+  }
+
   @Override
   public void saveSettings(final Command command) {
     if (loading) {
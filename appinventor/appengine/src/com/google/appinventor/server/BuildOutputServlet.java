@@ -7,17 +7,16 @@
 package com.google.appinventor.server;
 
 import com.google.appinventor.common.utils.StringUtils;
+import com.google.appinventor.server.storage.RawFileSource;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.server.util.CacheHeaders;
 import com.google.appinventor.server.util.CacheHeadersImpl;
+import com.google.appinventor.server.util.RangeRequests;
 import com.google.appinventor.shared.rpc.Nonce;
 import com.google.appinventor.shared.rpc.ServerLayout;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
-import com.google.appinventor.shared.rpc.project.RawFile;
-import com.google.appinventor.shared.storage.StorageUtil;
 
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -55,7 +54,7 @@ public class BuildOutputServlet extends OdeServlet {
     CACHE_HEADERS.setNotCacheable(resp);
     resp.setContentType(CONTENT_TYPE);
 
-    RawFile downloadableFile;
+    RawFileSource downloadableFile;
 
     String userId = null;
     String nonceValue = null;
@@ -80,24 +79,14 @@ public class BuildOutputServlet extends OdeServlet {
         resp.sendError(resp.SC_NOT_FOUND, "Link has timed out");
         return;
       }
-      downloadableFile = fileExporter.exportProjectOutputFile(nonce.getUserId(), nonce.getProjectId(), null);
+      downloadableFile = fileExporter.openProjectOutputFile(nonce.getUserId(), nonce.getProjectId(), null);
 
     } catch (IllegalArgumentException e) {
       throw CrashReport.createAndLogError(LOG, req, "nonceValue=" + nonceValue, e);
     }
 
-    String fileName = downloadableFile.getFileName();
-    byte[] content = downloadableFile.getContent();
-
-    // Set http response information
-    resp.setStatus(HttpServletResponse.SC_OK);
-    resp.setHeader("content-disposition", "attachment; filename=\"" + fileName + "\"");
-    resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
-    resp.setContentLength(content.length);
-
-    // Attach download data
-    ServletOutputStream out = resp.getOutputStream();
-    out.write(content);
-    out.close();
+    // Streamed with support for resuming, as phones often lose their
+    // connection partway through downloading a package.
+    RangeRequests.sendFile(req, resp, downloadableFile);
   }
 }
@@ -7,19 +7,23 @@
 package com.google.appinventor.server;
 
 import com.google.appinventor.common.utils.StringUtils;
+import com.google.appinventor.server.storage.RawFileSource;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.server.util.CacheHeaders;
 import com.google.appinventor.server.util.CacheHeadersImpl;
+import com.google.appinventor.server.util.RangeRequests;
 import com.google.appinventor.shared.rpc.ServerLayout;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.storage.StorageUtil;
+import com.google.common.io.ByteStreams;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.NoSuchElementException;
 import java.util.logging.Logger;
 
@@ -94,7 +98,10 @@ public class DownloadServlet extends OdeServlet {
     CACHE_HEADERS.setNotCacheable(resp);
     resp.setContentType(CONTENT_TYPE);
 
-    RawFile downloadableFile;
+    // Package and project files are streamed from storage, so that large
+    // files need no full size buffers and interrupted downloads can resume.
+    RawFile downloadableFile = null;
+    RawFileSource downloadableSource = null;
 
     String userId = null;
 
@@ -111,7 +118,7 @@ public class DownloadServlet extends OdeServlet {
         uriComponents = uri.split("/", SPLIT_LIMIT_PROJECT_OUTPUT);
         long projectId = Long.parseLong(uriComponents[PROJECT_ID_INDEX]);
         String target = (uriComponents.length > TARGET_INDEX) ? uriComponents[TARGET_INDEX] : null;
-        downloadableFile = fileExporter.exportProjectOutputFile(userId, projectId, target);
+        downloadableSource = fileExporter.openProjectOutputFile(userId, projectId, target);
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_PROJECT_SOURCE)) {
         // Download project source files as a zip.
@@ -178,10 +185,22 @@ public class DownloadServlet extends OdeServlet {
         downloadableFile = zipFile.getRawFile();
         
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_ALL_PROJECTS_SOURCE)) {
-        // Download all project source files as a zip of zips.
-        ProjectSourceZip zipFile = fileExporter.exportAllProjectsSourceZip(
-            userId, "all-projects.zip");
-        downloadableFile = zipFile.getRawFile();
+        // Download the zip of zips written by the user's last export job.
+        // It is streamed, since it can be far larger than any single file.
+        InputStream zipStream = fileExporter.openAllProjectsSourceZip(userId);
+        try {
+          resp.setStatus(HttpServletResponse.SC_OK);
+          resp.setHeader("content-disposition",
+              "attachment; filename=\"" + FileExporter.ALL_PROJECTS_ZIP_NAME + "\"");
+          resp.setContentType(
+              StorageUtil.getContentTypeForFilePath(FileExporter.ALL_PROJECTS_ZIP_NAME));
+          ServletOutputStream out = resp.getOutputStream();
+          ByteStreams.copy(zipStream, out);
+          out.close();
+        } finally {
+          zipStream.close();
+        }
+        return;
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_FILE)) {
         // Download a specific file.
@@ -189,7 +208,7 @@ public class DownloadServlet extends OdeServlet {
         long projectId = Long.parseLong(uriComponents[PROJECT_ID_INDEX]);
         String filePath = (uriComponents.length > FILE_PATH_INDEX) ?
             uriComponents[FILE_PATH_INDEX] : null;
-        downloadableFile = fileExporter.exportFile(userId, projectId, filePath);
+        downloadableSource = fileExporter.openFile(userId, projectId, filePath);
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_USERFILE)) {
         // Download a specific user file, such as android.keystore
@@ -208,6 +227,11 @@ public class DownloadServlet extends OdeServlet {
       throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
     }
 
+    if (downloadableSource != null) {
+      RangeRequests.sendFile(req, resp, downloadableSource);
+      return;
+    }
+
     String fileName = downloadableFile.getFileName();
     byte[] content = downloadableFile.getContent();
 
@@ -0,0 +1,138 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appengine.api.taskqueue.DeferredTask;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.shared.rpc.project.ExportAllProjectsStatus;
+import com.google.appinventor.shared.rpc.project.ExportAllProjectsStatus.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Writes the archive of all of a user's projects in a task queue request.
+ *
+ * <p>Zipping every project of a user can take longer than a user facing
+ * request is allowed to run, and used to hold the whole archive in memory.
+ * The task streams the archive into storage one project at a time and
+ * records its progress, and the archive is downloaded once it is finished.
+ *
+ */
+public final class ExportAllProjectsTask implements DeferredTask {
+
+  private static final long serialVersionUID = 4781093046358827305L;
+
+  private static final Logger LOG = Logger.getLogger(ExportAllProjectsTask.class.getName());
+
+  // A task request is killed after ten minutes, without a chance to record
+  // that the job failed. A job that has been running for longer than this
+  // is treated as failed.
+  private static final long MAX_RUNNING_MILLIS = 15 * 60 * 1000;
+
+  private final String userId;
+  private final long dateStarted;
+
+  private ExportAllProjectsTask(String userId, long dateStarted) {
+    this.userId = userId;
+    this.dateStarted = dateStarted;
+  }
+
+  /**
+   * Starts exporting the projects of the given user, unless a job is
+   * already running for the user.
+   *
+   * @param storageIo storage to export from
+   * @param userId the user id
+   * @return the status of the job
+   */
+  static ExportAllProjectsStatus start(StorageIo storageIo, String userId) {
+    long dateStarted = System.currentTimeMillis();
+    ExportAllProjectsStatus status = new ExportAllProjectsStatus(State.RUNNING, 0,
+        storageIo.getProjects(userId).size(), dateStarted);
+    if (!storageIo.startExportJob(userId, status, MAX_RUNNING_MILLIS)) {
+      return getStatus(storageIo, userId);
+    }
+    try {
+      QueueFactory.getDefaultQueue().add(
+          TaskOptions.Builder.withPayload(new ExportAllProjectsTask(userId, dateStarted)));
+    } catch (RuntimeException e) {
+      // Otherwise the job would look like it is running until it times out
+      storageIo.storeExportStatus(userId, new ExportAllProjectsStatus(State.FAILED, 0,
+          status.getProjectCount(), dateStarted));
+      throw e;
+    }
+    return status;
+  }
+
+  /**
+   * Returns the status of the last job of the given user.
+   *
+   * @param storageIo storage to export from
+   * @param userId the user id
+   * @return the status of the job, or null if the user never started one
+   */
+  @Nullable
+  static ExportAllProjectsStatus getStatus(StorageIo storageIo, String userId) {
+    ExportAllProjectsStatus status = storageIo.getExportStatus(userId);
+    if (status != null && status.getState() == State.RUNNING
+        && System.currentTimeMillis() - status.getDateStarted() > MAX_RUNNING_MILLIS) {
+      return new ExportAllProjectsStatus(State.FAILED, status.getProjectsExported(),
+          status.getProjectCount(), status.getDateStarted());
+    }
+    return status;
+  }
+
+  @Override
+  public void run() {
+    final StorageIo storageIo = StorageIoInstanceHolder.INSTANCE;
+    ExportAllProjectsStatus current = storageIo.getExportStatus(userId);
+    if (current == null || current.getDateStarted() != dateStarted) {
+      // A newer job has been started since this task was queued
+      return;
+    }
+    // The number of projects exported so far and the number of projects
+    final int[] progress = new int[2];
+    State state = State.FAILED;
+    OutputStream out = null;
+    try {
+      out = storageIo.openExportArchiveOutput(userId);
+      new FileExporterImpl().exportAllProjectsSourceZip(userId, out,
+          new FileExporter.ExportProgressListener() {
+            @Override
+            public void onProjectExported(int projectsExported, int count) {
+              progress[0] = projectsExported;
+              progress[1] = count;
+              storageIo.storeExportStatus(userId, new ExportAllProjectsStatus(State.RUNNING,
+                  projectsExported, count, dateStarted));
+            }
+          });
+      // The archive only replaces the previous one once it is closed, so it
+      // is abandoned instead if the export fails and the previous one is kept.
+      out.close();
+      state = State.FINISHED;
+    } catch (IOException e) {
+      LOG.log(Level.SEVERE, "Failed to export the projects of user " + userId, e);
+    } catch (RuntimeException e) {
+      // Includes the IllegalArgumentException thrown when there is nothing
+      // to export. Failing the task would only make the queue retry it.
+      LOG.log(Level.SEVERE, "Failed to export the projects of user " + userId, e);
+    }
+    if (state != State.FINISHED && out != null) {
+      storageIo.abandonExportArchiveOutput(out);
+    }
+    storageIo.storeExportStatus(userId,
+        new ExportAllProjectsStatus(state, progress[0], progress[1], dateStarted));
+  }
+}
@@ -6,10 +6,13 @@
 
 package com.google.appinventor.server;
 
+import com.google.appinventor.server.storage.RawFileSource;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import javax.annotation.Nullable;
 
@@ -21,6 +24,24 @@ public interface FileExporter {
 
   public static final String REMIX_INFORMATION_FILE_PATH = "youngandroidproject/remix_history";
 
+  /**
+   * Name of the archive of all of a user's projects.
+   */
+  public static final String ALL_PROJECTS_ZIP_NAME = "all-projects.zip";
+
+  /**
+   * Told about the progress of {@link #exportAllProjectsSourceZip}.
+   */
+  interface ExportProgressListener {
+    /**
+     * Called after each project is written to the archive.
+     *
+     * @param projectsExported the number of projects written so far
+     * @param projectCount the number of projects being exported
+     */
+    void onProjectExported(int projectsExported, int projectCount);
+  }
+
   /**
    * Exports a project output file.
    *
@@ -34,6 +55,18 @@ public interface FileExporter {
   RawFile exportProjectOutputFile(String userId, long projectId, @Nullable String target)
       throws IOException;
 
+  /**
+   * Opens a project output file for streaming.
+   *
+   * @param userId the userId
+   * @param projectId the project id belonging to the userId
+   * @param target the output target platform, or null
+   * @return source to read the name and content of the file from
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (either no output file or too many output files)
+   */
+  RawFileSource openProjectOutputFile(String userId, long projectId, @Nullable String target);
+
   /**
    * Exports the project source files as a zip.
    *
@@ -55,16 +88,31 @@ public interface FileExporter {
       throws IOException;
 
   /**
-   * Exports all of the user's projects' source files as a zip of zips.
+   * Writes all of the user's projects' source files as a zip of zips to the
+   * given stream, one project at a time. Only a single project's zip is held
+   * in memory at any time.
    *
    * @param userId the userId
-   * @param zipName the desired name for the zip
-   * @return the name, contents, and number of files in the zip
+   * @param out the stream to write the zip to; it is not closed
+   * @param listener told about the progress of the export, or null
+   * @return the number of files in the zip
    * @throws IllegalArgumentException if download request cannot be fulfilled
    *         (no projects)
    * @throws IOException if files cannot be written
    */
-  ProjectSourceZip exportAllProjectsSourceZip(String userId, String zipName) throws IOException;
+  int exportAllProjectsSourceZip(String userId, OutputStream out,
+      @Nullable ExportProgressListener listener) throws IOException;
+
+  /**
+   * Opens the zip of zips written by the user's last finished
+   * "export all projects" job.
+   *
+   * @param userId the userId
+   * @return a stream to read the zip from
+   * @throws IllegalArgumentException if there is no finished export
+   * @throws IOException if the zip cannot be read
+   */
+  InputStream openAllProjectsSourceZip(String userId) throws IOException;
 
   /**
    * Exports a specific project file.
@@ -78,6 +126,18 @@ public interface FileExporter {
    */
   RawFile exportFile(String userId, long projectId, String filePath) throws IOException;
 
+  /**
+   * Opens a specific project file for streaming.
+   *
+   * @param userId the userId
+   * @param projectId the project id belonging to the userId
+   * @param filePath the full path of the file
+   * @return source to read the name and content of the file from
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (file is not known)
+   */
+  RawFileSource openFile(String userId, long projectId, String filePath);
+
   /**
    * Exports a specific user file.
    *
@@ -7,18 +7,21 @@
 package com.google.appinventor.server;
 
 import com.google.common.base.Strings;
-import com.google.appinventor.server.storage.ObjectifyStorageIo;
+import com.google.appinventor.server.storage.RawFileSource;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.shared.rpc.project.ExportAllProjectsStatus;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.storage.StorageUtil;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipOutputStream;
 
 import javax.annotation.Nullable;
@@ -35,6 +38,22 @@ public final class FileExporterImpl implements FileExporter {
   public RawFile exportProjectOutputFile(String userId, long projectId, @Nullable String target)
       throws IOException {
     // Download project output file.
+    String fileName = findProjectOutputFile(userId, projectId, target);
+    byte[] content = storageIo.downloadRawFile(userId, projectId, fileName);
+    return new RawFile(StorageUtil.basename(fileName), content);
+  }
+
+  @Override
+  public RawFileSource openProjectOutputFile(String userId, long projectId,
+      @Nullable String target) {
+    return storageIo.openRawFile(userId, projectId,
+        findProjectOutputFile(userId, projectId, target));
+  }
+
+  /*
+   * Returns the name of the package file built for the given target.
+   */
+  private String findProjectOutputFile(String userId, long projectId, @Nullable String target) {
     List<String> files = storageIo.getProjectOutputFiles(userId, projectId);
     if (target != null) {
       // Target given - filter file list
@@ -49,8 +68,7 @@ public final class FileExporterImpl implements FileExporter {
 
     for (String fileName : files) {
       if (fileName.endsWith(".apk")) {
-        byte[] content = storageIo.downloadRawFile(userId, projectId, fileName);
-        return new RawFile(StorageUtil.basename(fileName), content);
+        return fileName;
       }
     }
 
@@ -63,31 +81,36 @@ public final class FileExporterImpl implements FileExporter {
                                                  boolean includeAndroidKeystore,
                                                  @Nullable String zipName) throws IOException {
     // Download project source files as a zip.
-    if (storageIo instanceof ObjectifyStorageIo) {
-      return ((ObjectifyStorageIo)storageIo).exportProjectSourceZip(userId, projectId,
-          includeProjectHistory, includeAndroidKeystore, zipName);
-    } else {
-      throw new IllegalArgumentException("Objectify only");
-    }
+    return storageIo.exportProjectSourceZip(userId, projectId,
+        includeProjectHistory, includeAndroidKeystore, zipName);
   }
 
   @Override
-  public ProjectSourceZip exportAllProjectsSourceZip(String userId,
-      String zipName) throws IOException {
-    // Create a zip file for each project's sources.
+  public int exportAllProjectsSourceZip(String userId, OutputStream outputStream,
+      @Nullable ExportProgressListener listener) throws IOException {
+    // Write a zip file for each project's sources, one at a time.
     List<Long> projectIds = storageIo.getProjects(userId);
     if (projectIds.size() == 0) {
       throw new IllegalArgumentException("No projects to download");
     }
 
-    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    ZipOutputStream out = new ZipOutputStream(zipFile);
+    ZipOutputStream out = new ZipOutputStream(outputStream);
     int count = 0;
-    String metadata = "";
+    int projectsExported = 0;
     for (Long projectId : projectIds) {
+      // Failing to read a project skips it, but failing to write the zip
+      // ends the export.
+      ProjectSourceZip projectSourceZip = null;
       try {
-        ProjectSourceZip projectSourceZip =
-            exportProjectSourceZip(userId, projectId, false, false, null);
+        projectSourceZip = exportProjectSourceZip(userId, projectId, false, false, null);
+      } catch (IllegalArgumentException e) {
+        System.err.println("No files found for userid: " + userId +
+            " for projectid: " + projectId);
+      } catch (IOException e) {
+        System.err.println("IOException while reading files found for userid: " +
+            userId + " for projectid: " + projectId);
+      }
+      if (projectSourceZip != null) {
         byte[] data = projectSourceZip.getContent();
         String name = projectSourceZip.getFileName();
 
@@ -96,23 +119,18 @@ public final class FileExporterImpl implements FileExporter {
           try {
             out.putNextEntry(new ZipEntry(name));
             break;
-          } catch (IOException e) {
+          } catch (ZipException e) {
             name = "duplicate-" + name;
           }
         }
-        metadata += projectSourceZip.getMetadata() + "\n";
 
         out.write(data, 0, data.length);
         out.closeEntry();
         count++;
-      } catch (IllegalArgumentException e) {
-        System.err.println("No files found for userid: " + userId +
-            " for projectid: " + projectId);
-        continue;
-      } catch (IOException e) {
-        System.err.println("IOException while reading files found for userid: " +
-            userId + " for projectid: " + projectId);
-        continue;
+      }
+      projectsExported++;
+      if (listener != null) {
+        listener.onProjectExported(projectsExported, projectIds.size());
       }
     }
     if (count == 0) {
@@ -131,13 +149,22 @@ public final class FileExporterImpl implements FileExporter {
       }
     }
 
-    out.close();
+    // Completes the zip without closing the stream it was written to
+    out.finish();
+    return count;
+  }
 
-    // Package the big zip file up as a ProjectSourceZip and return it.
-    byte[] content = zipFile.toByteArray();
-    ProjectSourceZip projectSourceZip = new ProjectSourceZip(zipName, content, count);
-    projectSourceZip.setMetadata(metadata);
-    return projectSourceZip;
+  @Override
+  public InputStream openAllProjectsSourceZip(String userId) throws IOException {
+    ExportAllProjectsStatus status = storageIo.getExportStatus(userId);
+    if (status == null || status.getState() != ExportAllProjectsStatus.State.FINISHED) {
+      throw new IllegalArgumentException("No exported projects to download");
+    }
+    InputStream in = storageIo.openExportArchiveInput(userId);
+    if (in == null) {
+      throw new IllegalArgumentException("No exported projects to download");
+    }
+    return in;
   }
 
   @Override
@@ -153,6 +180,17 @@ public final class FileExporterImpl implements FileExporter {
     }
   }
 
+  @Override
+  public RawFileSource openFile(String userId, long projectId, String filePath) {
+    // Open a specific project file.
+    try {
+      return storageIo.openRawFile(userId, projectId, filePath);
+    } catch (RuntimeException e) {
+      throw new RuntimeException("Error downloading project file: " + filePath
+          + ", user=" + userId + ", project=" + projectId, e);
+    }
+  }
+
   @Override
   public RawFile exportUserFile(String userId, String filePath) throws IOException {
     // Download a specific user file.
@@ -7,6 +7,7 @@
 package com.google.appinventor.server;
 
 import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.common.io.InputSupplier;
 
 import java.io.File;
 import java.io.IOException;
@@ -53,6 +54,23 @@ public interface FileImporter {
                             InputStream uploadedFileStream, @Nullable String projectHistory)
       throws FileImporterException, IOException;
 
+  /**
+   * Creates the project on the server from a template archive. The parsed
+   * archive is kept in memory, so that projects made from the same template
+   * do not read and unzip it again.
+   *
+   * @param userId the userId
+   * @param projectName project name
+   * @param templateKey identifies the content of the archive, such as its
+   *        path on the server or a hash of it
+   * @param template opens the archive, if it is not in memory
+   * @return the UserProject
+   * @throws FileImporterException if the archive is not a valid project archive
+   * @throws IOException if any file operation fails
+   */
+  UserProject importProjectFromTemplate(String userId, String projectName, String templateKey,
+      InputSupplier<? extends InputStream> template) throws FileImporterException, IOException;
+
   /**
    * Adds the file to the project on the server and imports its content.
    *
@@ -67,6 +85,13 @@ public interface FileImporter {
   long importFile(String userId, long projectId, String fileName, InputStream uploadedFileStream)
       throws FileImporterException, IOException;
 
+  /**
+   * Returns the largest file that {@link #importFile} accepts.
+   *
+   * @return the maximum file size in bytes
+   */
+  int getMaxFileSizeBytes();
+
   /**
    * Adds the user file on the server and imports its content.
    *
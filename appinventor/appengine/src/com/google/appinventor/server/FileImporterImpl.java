@@ -20,17 +20,24 @@ import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjec
 import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.InputSupplier;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -51,6 +58,21 @@ public final class FileImporterImpl implements FileImporter {
 
   private static final Logger LOG = Logger.getLogger(FileImporterImpl.class.getName());
 
+  // Most bytes of template files kept in memory by this instance
+  private static final long MAX_TEMPLATE_CACHE_BYTES = 32 * 1024 * 1024;
+
+  // Parsed template archives, by the key given to importProjectFromTemplate.
+  // Templates are read-only, so entries never need to be invalidated.
+  private static final Cache<String, ProjectArchive> templateCache = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_TEMPLATE_CACHE_BYTES)
+      .weigher(new Weigher<String, ProjectArchive>() {
+        @Override
+        public int weigh(String templateKey, ProjectArchive archive) {
+          return archive.size;
+        }
+      })
+      .build();
+
   private final StorageIo storageIo = StorageIoInstanceHolder.INSTANCE;
 
   @Override
@@ -63,20 +85,42 @@ public final class FileImporterImpl implements FileImporter {
   public UserProject importProject(String userId, String projectName,
                                    InputStream uploadedFileStream, @Nullable String projectHistory)
       throws FileImporterException, IOException {
-    // The projectName parameter has already been validated, including checking for an
-    // existing project with the same name. (See TextValidators.checkNewProjectName).
-
-    // Begin creating the project.
-    Project project = new Project(projectName);
-    project.setProjectType(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE);
+    return createProject(userId, projectName, readProjectArchive(uploadedFileStream),
+        projectHistory);
+  }
 
-    // As we process the ZipEntry for each file, we'll adjust the directory structure so that it is
-    // appropriate for this user.
-    // Here we get the information (such as the qualified form name) that we'll need to do that.
-    String qualifiedFormName = StringUtils.getQualifiedFormName(
-        storageIo.getUser(userId).getUserEmail(), projectName);
-    String srcDirectory = YoungAndroidProjectService.getSourceDirectory(qualifiedFormName);
+  @Override
+  public UserProject importProjectFromTemplate(String userId, String projectName,
+      String templateKey, final InputSupplier<? extends InputStream> template)
+      throws FileImporterException, IOException {
+    ProjectArchive archive;
+    try {
+      archive = templateCache.get(templateKey, new Callable<ProjectArchive>() {
+        @Override
+        public ProjectArchive call() throws FileImporterException, IOException {
+          InputStream templateStream = template.getInput();
+          try {
+            return readProjectArchive(templateStream);
+          } finally {
+            templateStream.close();
+          }
+        }
+      });
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), FileImporterException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+    return createProject(userId, projectName, archive, null);
+  }
 
+  /*
+   * Reads the files of a project archive. The project properties file is
+   * kept without its content, which is regenerated for each project.
+   */
+  private static ProjectArchive readProjectArchive(InputStream uploadedFileStream)
+      throws FileImporterException, IOException {
+    ProjectArchive archive = new ProjectArchive();
     ZipInputStream zin = new ZipInputStream(uploadedFileStream);
     boolean isProjectArchive = false;  // have we found at least one project properties file?
     try {
@@ -98,12 +142,7 @@ public final class FileImporterImpl implements FileImporter {
           String fileName = entry.getName();
 
           if (fileName.equals(YoungAndroidProjectService.PROJECT_PROPERTIES_FILE_NAME)) {
-            // The content for the youngandroidproject/project.properties file must be regenerated
-            // so that it contains the correct entries for "main" and "name", which are dependent on
-            // the projectName and qualifiedFormName.
-            String content = YoungAndroidProjectService.getProjectPropertiesFileContents(
-              projectName, qualifiedFormName, null, null, null, null);
-            project.addTextFile(new TextFile(fileName, content));
+            archive.add(new RawFile(fileName, new byte[0]));
             isProjectArchive = true;
 
           } else if (fileName.equals(FileExporter.REMIX_INFORMATION_FILE_PATH) ||
@@ -120,18 +159,11 @@ public final class FileImporterImpl implements FileImporter {
             continue;
 
           } else {
-
-            if (fileName.startsWith(YoungAndroidProjectService.SRC_FOLDER)) {
-              // For files within the src folder, we need to update the directory that we put files
-              // in. Adjust the fileName so that it corresponds to this project's package.
-              fileName = srcDirectory + '/' + StorageUtil.basename(fileName);
-            }
-
             // Get the file content from the ZipEntry.
             ByteArrayOutputStream contentStream = new ByteArrayOutputStream();
             ByteStreams.copy(zin, contentStream);
 
-            project.addRawFile(new RawFile(fileName, contentStream.toByteArray()));
+            archive.add(new RawFile(fileName, contentStream.toByteArray()));
           }
         }
       }
@@ -144,6 +176,48 @@ public final class FileImporterImpl implements FileImporter {
       // properties file.
       throw new FileImporterException(UploadResponse.Status.NOT_PROJECT_ARCHIVE);
     }
+    return archive;
+  }
+
+  /*
+   * Creates a project of the user from the files of a project archive.
+   */
+  private UserProject createProject(String userId, String projectName, ProjectArchive archive,
+      @Nullable String projectHistory) {
+    // The projectName parameter has already been validated, including checking for an
+    // existing project with the same name. (See TextValidators.checkNewProjectName).
+
+    // Begin creating the project.
+    Project project = new Project(projectName);
+    project.setProjectType(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE);
+
+    // As we process each file, we'll adjust the directory structure so that it is
+    // appropriate for this user.
+    // Here we get the information (such as the qualified form name) that we'll need to do that.
+    String qualifiedFormName = StringUtils.getQualifiedFormName(
+        storageIo.getUser(userId).getUserEmail(), projectName);
+    String srcDirectory = YoungAndroidProjectService.getSourceDirectory(qualifiedFormName);
+
+    for (RawFile file : archive.files) {
+      String fileName = file.getFileName();
+      if (fileName.equals(YoungAndroidProjectService.PROJECT_PROPERTIES_FILE_NAME)) {
+        // The content for the youngandroidproject/project.properties file must be regenerated
+        // so that it contains the correct entries for "main" and "name", which are dependent on
+        // the projectName and qualifiedFormName.
+        String content = YoungAndroidProjectService.getProjectPropertiesFileContents(
+          projectName, qualifiedFormName, null, null, null, null);
+        project.addTextFile(new TextFile(fileName, content));
+      } else {
+        if (fileName.startsWith(YoungAndroidProjectService.SRC_FOLDER)) {
+          // For files within the src folder, we need to update the directory that we put files
+          // in. Adjust the fileName so that it corresponds to this project's package.
+          fileName = srcDirectory + '/' + StorageUtil.basename(fileName);
+        }
+        // The content is shared with the archive (which may be cached), and
+        // is not changed by storing it.
+        project.addRawFile(new RawFile(fileName, file.getContent()));
+      }
+    }
 
     // Set project history if provided
     if (projectHistory != null) {
@@ -157,37 +231,112 @@ public final class FileImporterImpl implements FileImporter {
   @VisibleForTesting
   public long importFile(String userId, long projectId, String fileName,
       InputStream uploadedFileStream) throws FileImporterException, IOException {
+    // The storage layer records the SHA-256 of the content in the project
+    // manifest, so no digest is computed here.
+    SizeLimitedInputStream content =
+        new SizeLimitedInputStream(uploadedFileStream, getMaxFileSizeBytes());
+
+    // If the file already exists, we will overwrite the content.
+    List<String> sourceFiles = storageIo.getProjectSourceFiles(userId, projectId);
+    boolean newFile = !sourceFiles.contains(fileName);
+    if (newFile) {
+      storageIo.addSourceFilesToProject(userId, projectId, false, fileName);
+    }
+    long modDate;
+    try {
+      // The content is checked against the size limit as it is read, so a
+      // file that is too large is rejected without reading it all in.
+      modDate = storageIo.uploadRawFileForce(projectId, fileName, userId, content);
+    } catch (IOException e) {
+      // Don't leave an empty file behind when the upload fails
+      if (newFile) {
+        storageIo.deleteFile(userId, projectId, fileName);
+      }
+      if (e instanceof FileTooLargeException) {
+        throw new FileImporterException(UploadResponse.Status.FILE_TOO_LARGE);
+      }
+      throw e;
+    }
+    LOG.info("Imported " + fileName + " into project " + projectId + ": " +
+        content.getCount() + " bytes");
+    return modDate;
+  }
+
+  @Override
+  public int getMaxFileSizeBytes() {
     int maxAssetSizeBytes = (int) (maxAssetSizeMegs.get() * 1024 * 1024);
-    int maxSizeBytes = Math.min(maxAssetSizeBytes, storageIo.getMaxJobSizeBytes());
-
-    BufferedInputStream bis = new BufferedInputStream(uploadedFileStream);
-    ByteArrayOutputStream os = new ByteArrayOutputStream();
-    BufferedOutputStream bos = new BufferedOutputStream(os);
-
-    // Alledgedly since it is buffered, reading in units of one byte
-    // should be as fast as many bytes, but we can always adjust this.
-    int bytes = 0;
-    long fileLength = 0;
-    byte[] buffer = new byte[1];
-    while ((bytes = bis.read(buffer, 0, buffer.length)) != -1) {
-      bos.write(buffer, 0, bytes);
-      fileLength += bytes;
+    return Math.min(maxAssetSizeBytes, storageIo.getMaxJobSizeBytes());
+  }
+
+  /**
+   * The files of a project archive, in the order they appear in it, with the
+   * names they have in the archive.
+   */
+  private static class ProjectArchive {
+    final List<RawFile> files = new ArrayList<RawFile>();
+    int size;
+
+    void add(RawFile file) {
+      files.add(file);
+      size += file.getContent().length;
     }
-    bos.flush();
+  }
+
+  /**
+   * Thrown by {@link SizeLimitedInputStream} when more than the allowed
+   * number of bytes are read.
+   */
+  private static class FileTooLargeException extends IOException {
+  }
+
+  /**
+   * Counts the bytes read from the underlying stream and fails as soon as
+   * there are more than the given limit.
+   */
+  private static class SizeLimitedInputStream extends FilterInputStream {
+    private final long limit;
+    private long count;
 
-    // First check the file length, to avoid loading the file into memory if it is too large anyhow.
-    if (fileLength > maxSizeBytes) {
-      throw new FileImporterException(UploadResponse.Status.FILE_TOO_LARGE);
+    SizeLimitedInputStream(InputStream in, long limit) {
+      super(in);
+      this.limit = limit;
     }
 
-    byte[] content = os.toByteArray();
+    long getCount() {
+      return count;
+    }
 
-    // If the file already exists, we will overwrite the content.
-    List<String> sourceFiles = storageIo.getProjectSourceFiles(userId, projectId);
-    if (!sourceFiles.contains(fileName)) {
-      storageIo.addSourceFilesToProject(userId, projectId, false, fileName);
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        countBytes(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int bytes = super.read(buffer, offset, length);
+      if (bytes > 0) {
+        countBytes(bytes);
+      }
+      return bytes;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      countBytes(skipped);
+      return skipped;
+    }
+
+    private void countBytes(long bytes) throws FileTooLargeException {
+      count += bytes;
+      if (count > limit) {
+        throw new FileTooLargeException();
+      }
     }
-    return storageIo.uploadRawFileForce(projectId, fileName, userId, content);
   }
 
   @Override
@@ -0,0 +1,140 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import com.google.appengine.api.images.OutputSettings;
+import com.google.appengine.tools.cloudstorage.GcsFileOptions;
+import com.google.appengine.tools.cloudstorage.GcsFilename;
+import com.google.appengine.tools.cloudstorage.GcsOutputChannel;
+import com.google.appengine.tools.cloudstorage.GcsService;
+import com.google.appinventor.server.util.CacheHeaders;
+import com.google.appinventor.server.util.CacheHeadersImpl;
+import com.google.appinventor.shared.rpc.project.GallerySettings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the scaled down copies of gallery app images that are stored next
+ * to them in GCS: a thumbnail for the app lists and a medium size image for
+ * the app page. Project images uploaded before publishing and user images
+ * are only ever shown as they are, so they get no copies.
+ *
+ * <p>The copies are JPEGs that fit in a fixed square and are re-encoded at
+ * lower quality until they are under a size limit. They may be cached for a
+ * long time, so pages that show them add the app's update date to their URL.
+ *
+ */
+final class GalleryImages {
+
+  private static final Logger LOG = Logger.getLogger(GalleryImages.class.getName());
+
+  private static final CacheHeaders CACHE_HEADERS = new CacheHeadersImpl();
+
+  // How long browsers and proxies may keep the copies
+  private static final int MAX_AGE_SECONDS = 365 * 24 * 60 * 60;
+
+  // Largest width and height, in pixels
+  private static final int THUMBNAIL_SIZE = 128;
+  private static final int MEDIUM_SIZE = 480;
+
+  // Largest size of the encoded copies, in bytes
+  private static final int MAX_THUMBNAIL_BYTES = 16 * 1024;
+  private static final int MAX_MEDIUM_BYTES = 96 * 1024;
+
+  // JPEG qualities tried in turn, until the copy is small enough
+  private static final int[] QUALITIES = { 85, 70, 55, 40 };
+
+  private GalleryImages() {
+  }
+
+  /**
+   * Writes the thumbnail and the medium size copy of the image stored
+   * under imageKey. Images that cannot be decoded get no copies; the pages
+   * fall back to the image itself.
+   *
+   * @param gcsService the GCS service
+   * @param settings the gallery settings, which name the bucket and the keys
+   * @param imageKey the key of the image
+   * @param imageData the content of the image
+   * @throws IOException if the copies cannot be written
+   */
+  static void storeScaledCopies(GcsService gcsService, GallerySettings settings,
+      String imageKey, byte[] imageData) throws IOException {
+    byte[] thumbnail;
+    byte[] medium;
+    try {
+      thumbnail = scale(imageData, THUMBNAIL_SIZE, MAX_THUMBNAIL_BYTES);
+      medium = scale(imageData, MEDIUM_SIZE, MAX_MEDIUM_BYTES);
+    } catch (IllegalArgumentException e) {
+      // The Images service throws this for data that is not an image
+      LOG.log(Level.WARNING, "Unable to scale gallery image " + imageKey, e);
+      return;
+    }
+    write(gcsService, settings.getBucket(), settings.getThumbnailKey(imageKey), thumbnail);
+    write(gcsService, settings.getBucket(), settings.getMediumImageKey(imageKey), medium);
+  }
+
+  /**
+   * Deletes the copies of the image stored under imageKey. Each copy is
+   * deleted even if deleting the other fails; failures are only logged.
+   */
+  static void deleteScaledCopies(GcsService gcsService, GallerySettings settings,
+      String imageKey) {
+    delete(gcsService, settings.getBucket(), settings.getThumbnailKey(imageKey));
+    delete(gcsService, settings.getBucket(), settings.getMediumImageKey(imageKey));
+  }
+
+  private static void delete(GcsService gcsService, String bucket, String key) {
+    try {
+      gcsService.delete(new GcsFilename(bucket, key));
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to delete gallery image " + key, e);
+    }
+  }
+
+  /*
+   * Returns the image scaled down to fit in a square of the given size (small
+   * images keep their size), as a JPEG of at most maxBytes if any of the
+   * qualities gets there, or else of the lowest quality.
+   */
+  private static byte[] scale(byte[] imageData, int size, int maxBytes) {
+    ImagesService imagesService = ImagesServiceFactory.getImagesService();
+    byte[] scaled = null;
+    for (int quality : QUALITIES) {
+      // applyTransform changes the image it is given, so each try starts
+      // from the original
+      Image image = ImagesServiceFactory.makeImage(imageData);
+      OutputSettings outputSettings = new OutputSettings(ImagesService.OutputEncoding.JPEG);
+      outputSettings.setQuality(quality);
+      scaled = imagesService.applyTransform(
+          ImagesServiceFactory.makeResize(Math.min(size, image.getWidth()),
+              Math.min(size, image.getHeight())),
+          image, outputSettings).getImageData();
+      if (scaled.length <= maxBytes) {
+        break;
+      }
+    }
+    return scaled;
+  }
+
+  private static void write(GcsService gcsService, String bucket, String key, byte[] content)
+      throws IOException {
+    GcsFileOptions options = new GcsFileOptions.Builder().mimeType("image/jpeg")
+        .acl("public-read").cacheControl(CACHE_HEADERS.getPublicCacheControl(MAX_AGE_SECONDS))
+        .build();
+    GcsOutputChannel writeChannel = gcsService.createOrReplace(new GcsFilename(bucket, key),
+        options);
+    writeChannel.write(ByteBuffer.wrap(content));
+    writeChannel.close();
+  }
+}
@@ -0,0 +1,51 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appengine.api.taskqueue.DeferredTask;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appinventor.server.storage.GalleryStorageIoInstanceHolder;
+import com.google.appinventor.shared.rpc.project.GalleryApp;
+
+/**
+ * Reindexes a gallery app in a task queue request.
+ *
+ * <p>Search results are ranked by downloads and likes, so an app is
+ * reindexed whenever its totals change. Putting the document can be retried
+ * with backoff, which a download or like should not have to wait for.
+ *
+ */
+public final class GalleryReindexTask implements DeferredTask {
+
+  private static final long serialVersionUID = 6528403196224154807L;
+
+  private final long galleryId;
+
+  private GalleryReindexTask(long galleryId) {
+    this.galleryId = galleryId;
+  }
+
+  /**
+   * Queues the reindexing of the given gallery app.
+   *
+   * @param galleryId the id of the gallery app
+   */
+  public static void enqueue(long galleryId) {
+    QueueFactory.getDefaultQueue().add(
+        TaskOptions.Builder.withPayload(new GalleryReindexTask(galleryId)));
+  }
+
+  @Override
+  public void run() {
+    // The app is read again, so the document gets its latest totals
+    GalleryApp app = GalleryStorageIoInstanceHolder.INSTANCE.getGalleryApp(galleryId);
+    if (app != null && app.getActive()) {
+      GallerySearchIndex.getInstance().indexApp(app);
+    }
+  }
+}
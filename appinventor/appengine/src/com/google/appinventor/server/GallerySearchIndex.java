@@ -6,15 +6,21 @@
 
 package com.google.appinventor.server;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.appengine.api.search.Cursor;
 import com.google.appengine.api.search.DeleteException;
 import com.google.appengine.api.search.Document;
 import com.google.appengine.api.search.Field;
 import com.google.appengine.api.search.Index;
 import com.google.appengine.api.search.IndexSpec;
+import com.google.appengine.api.search.MatchScorer;
+import com.google.appengine.api.search.OperationResult;
 import com.google.appengine.api.search.PutException;
 import com.google.appengine.api.search.Query;
 import com.google.appengine.api.search.QueryOptions;
@@ -22,12 +28,13 @@ import com.google.appengine.api.search.Results;
 import com.google.appengine.api.search.ScoredDocument;
 import com.google.appengine.api.search.SearchException;
 import com.google.appengine.api.search.SearchServiceFactory;
+import com.google.appengine.api.search.SortExpression;
+import com.google.appengine.api.search.SortOptions;
 import com.google.appengine.api.search.StatusCode;
 import com.google.appinventor.server.storage.GalleryStorageIo;
 import com.google.appinventor.server.storage.GalleryStorageIoInstanceHolder;
 import com.google.appinventor.shared.rpc.project.GalleryApp;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
-import com.googlecode.objectify.NotFoundException;
 
 
 // see sample at https://developers.google.com/appengine/docs/java/search/
@@ -36,6 +43,16 @@ public class GallerySearchIndex {
 
   private static final Logger LOG = Logger.getLogger(GallerySearchIndex.class.getName());
   private static String GALLERYINDEX="GalleryIndex";
+  // the most documents the search service accepts in one put
+  private static final int MAX_DOCUMENTS_PER_PUT = 200;
+  private static final int MAX_PUT_RETRIES = 5;
+  private static final long INITIAL_RETRY_DELAY_MILLIS = 100;
+  // Matches are ranked by how well they match the search words, boosted by
+  // how popular the app is. A like counts as much as four downloads.
+  private static final String RANKING_EXPRESSION =
+      "_score * (1 + log(1 + downloads + 4 * likes))";
+  // how many matches are ranked with RANKING_EXPRESSION
+  private static final int MAX_RANKED_RESULTS = 1000;
   private final transient GalleryStorageIo galleryStorageIo =
       GalleryStorageIoInstanceHolder.INSTANCE;
   private static volatile GallerySearchIndex  instance= null;
@@ -64,23 +81,88 @@ public class GallerySearchIndex {
    * @param app galleryapp
    */
   public void indexApp (GalleryApp app) {
+    indexApps(Collections.singletonList(app));
+  }
+
+  /**
+   * index gallery apps into search index, putting up to
+   * MAX_DOCUMENTS_PER_PUT documents at a time
+   * @param apps list of galleryapps
+   */
+  public void indexApps (List<GalleryApp> apps) {
+    List<Document> docs = new ArrayList<Document>();
+    for (GalleryApp app : apps) {
+      docs.add(makeDocument(app));
+      if (docs.size() == MAX_DOCUMENTS_PER_PUT) {
+        putWithRetries(docs);
+        docs = new ArrayList<Document>();
+      }
+    }
+    if (!docs.isEmpty()) {
+      putWithRetries(docs);
+    }
+  }
+
+  private Document makeDocument(GalleryApp app) {
     // take the title, description, and the user name and index it
     // need to build up a string with all meta data
     String indexWords = app.getTitle()+" "+app.getDescription() + " " + app.getDeveloperName();
     // now create the doc
-    Document doc = Document.newBuilder()
+    return Document.newBuilder()
       .setId(String.valueOf(app.getGalleryAppId()))
       .addField(Field.newBuilder().setName("content").setText(indexWords))
+      .addField(Field.newBuilder().setName("downloads").setNumber(app.getDownloads()))
+      .addField(Field.newBuilder().setName("likes").setNumber(app.getLikes()))
       .build();
+  }
 
+  /*
+   * Puts the documents into the index. Documents that fail with a transient
+   * error are put again, waiting twice as long before each new attempt.
+   */
+  private void putWithRetries(List<Document> docs) {
     Index index = getIndex();
-
-    try {
-      index.put(doc);
-    } catch (PutException e) {
-      if (StatusCode.TRANSIENT_ERROR.equals(e.getOperationResult().getCode())) {
-          // retry putting the document
+    long delay = INITIAL_RETRY_DELAY_MILLIS;
+    for (int tries = 0; ; tries++) {
+      try {
+        index.put(docs);
+        return;
+      } catch (PutException e) {
+        List<Document> retry = new ArrayList<Document>();
+        List<OperationResult> results = e.getResults();
+        if (results.isEmpty()) {
+          // Without per-document results, every document counts as failed
+          if (!StatusCode.TRANSIENT_ERROR.equals(e.getOperationResult().getCode())) {
+            LOG.log(Level.WARNING, "error indexing " + docs.size() + " gallery apps", e);
+            return;
+          }
+          retry.addAll(docs);
+        }
+        for (int i = 0; i < results.size() && i < docs.size(); i++) {
+          StatusCode code = results.get(i).getCode();
+          if (StatusCode.TRANSIENT_ERROR.equals(code)) {
+            retry.add(docs.get(i));
+          } else if (!StatusCode.OK.equals(code)) {
+            LOG.log(Level.WARNING, "error indexing gallery app " + docs.get(i).getId() + ": "
+                + results.get(i).getMessage());
+          }
+        }
+        if (retry.isEmpty()) {
+          return;
+        }
+        if (tries == MAX_PUT_RETRIES) {
+          LOG.log(Level.WARNING, "giving up indexing " + retry.size() + " gallery apps", e);
+          return;
+        }
+        docs = retry;
+      }
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
       }
+      delay *= 2;
     }
   }
 
@@ -100,54 +182,88 @@ public class GallerySearchIndex {
 
   /**
    * Return a wrapped class which contains a list of matched results based on
-   * keywords and total number of results in database
+   * keywords and total number of results in database. The search service
+   * only returns a cursor for the next page when the query starts from a
+   * cursor, so the first page is fetched that way.
    * @param searchWords search words
    * @param start start index
    * @param count count number
    * @return GalleryAppListResult gallery applist result
    */
   public GalleryAppListResult find (String searchWords, int start, int count) {
-    //TODO page sliced has not implemented yet
+    if (start == 0) {
+      return find(searchWords, (String) null, count);
+    }
+    return find(searchWords, QueryOptions.newBuilder().setOffset(start), count);
+  }
+
+  /**
+   * Return a wrapped class which contains a list of matched results based on
+   * keywords that follow the given cursor and total number of results in
+   * database
+   * @param searchWords search words
+   * @param cursor cursor returned with the previous page, or null
+   * @param count count number
+   * @return GalleryAppListResult gallery applist result
+   */
+  public GalleryAppListResult find (String searchWords, String cursor, int count) {
+    Cursor.Builder cursorBuilder = Cursor.newBuilder();
+    return find(searchWords, QueryOptions.newBuilder()
+        .setCursor(cursor == null ? cursorBuilder.build() : cursorBuilder.build(cursor)), count);
+  }
+
+  private GalleryAppListResult find (String searchWords, QueryOptions.Builder options,
+      int count) {
     final List<GalleryApp> apps = new ArrayList<GalleryApp>();
     final Result<Integer> size = new Result<Integer>();
+    size.t = 0;
+    String nextCursor = null;
     try {
       Query query = Query.newBuilder()
-          .setOptions(QueryOptions.newBuilder().
-              //setLimit(10).
+          .setOptions(options
+              .setLimit(count)
+              .setSortOptions(SortOptions.newBuilder()
+                  .setMatchScorer(MatchScorer.newBuilder())
+                  .addSortExpression(SortExpression.newBuilder()
+                      .setExpression(RANKING_EXPRESSION)
+                      .setDirection(SortExpression.SortDirection.DESCENDING)
+                      .setDefaultValueNumeric(0))
+                  .setLimit(MAX_RANKED_RESULTS))
               // for deployed apps, uncomment the line below to demo snippeting.
               // This will not work on the dev_appserver.
               // setFieldsToSnippet("content").
-              build())
+              .build())
           .build(searchWords);
       LOG.info("Sending query " + query);
       Results<ScoredDocument> results = getIndex().search(query);
 
       // Iterate over the documents in the results
+      List<Long> galleryIds = new ArrayList<Long>();
       for (ScoredDocument document : results) {
-        LOG.info("Find:" + document.getId());
+        galleryIds.add(Long.parseLong(document.getId()));
       }
-
-      // Iterate over the documents in the results
-      int index = 0;
-      for (ScoredDocument document : results) {
-        if((index++) < start) continue;
-        if(count == 0) break;
-        count--;
-        try{
-          GalleryApp app = galleryStorageIo.getGalleryApp(Long.parseLong(document.getId()));
-          apps.add(app);
-        }catch(NotFoundException e){
-          LOG.log(Level.SEVERE, "Didn't Find GalleryAppData.id: " + document.getId());
-          unIndexApp(Long.parseLong(document.getId()));
+      // The apps are fetched together, as summaries like the other app lists
+      Set<Long> foundIds = new HashSet<Long>();
+      for (GalleryApp app : galleryStorageIo.getGalleryAppSummaries(galleryIds)) {
+        apps.add(app);
+        foundIds.add(app.getGalleryAppId());
+      }
+      for (long galleryId : galleryIds) {
+        if (!foundIds.contains(galleryId)) {
+          LOG.log(Level.SEVERE, "Didn't Find GalleryAppData.id: " + galleryId);
+          unIndexApp(galleryId);
         }
       }
       size.t = (int) results.getNumberFound();
-    } catch (SearchException e) {
-      if (StatusCode.TRANSIENT_ERROR.equals(e.getOperationResult().getCode())) {
-        // retry
+      if (results.getCursor() != null) {
+        nextCursor = results.getCursor().toWebSafeString();
       }
+    } catch (SearchException e) {
+      LOG.log(Level.WARNING, "error searching gallery for " + searchWords, e);
     }
-    return new GalleryAppListResult(apps, size.t, searchWords);
+    GalleryAppListResult result = new GalleryAppListResult(apps, size.t, searchWords);
+    result.setCursor(nextCursor);
+    return result;
   }
 
   /**
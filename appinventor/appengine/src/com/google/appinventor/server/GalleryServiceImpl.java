@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,13 +34,15 @@ import com.google.appinventor.server.flags.Flag;
 import com.google.appinventor.server.storage.GalleryStorageIo;
 import com.google.appinventor.server.storage.GalleryStorageIoInstanceHolder;
 import com.google.appinventor.shared.rpc.project.GalleryApp;
+import com.google.appinventor.shared.rpc.project.GalleryAppLineage;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
 import com.google.appinventor.shared.rpc.project.GalleryAppReport;
-import com.google.appinventor.shared.rpc.project.GalleryComment;
+import com.google.appinventor.shared.rpc.project.GalleryCommentListResult;
 import com.google.appinventor.shared.rpc.project.GalleryModerationAction;
 import com.google.appinventor.shared.rpc.project.GalleryService;
 import com.google.appinventor.shared.rpc.project.GallerySettings;
 import com.google.appinventor.shared.rpc.project.Message;
+import com.google.appinventor.shared.rpc.project.MessageListResult;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 
@@ -54,6 +57,8 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
 
   private static final Logger LOG = Logger.getLogger(GalleryServiceImpl.class.getName());
   private static final long serialVersionUID = -8316312003804169166L;
+  // number of apps read and indexed at a time by indexAll
+  private static final int INDEX_PAGE_SIZE = 200;
   private final transient GalleryStorageIo galleryStorageIo =
       GalleryStorageIoInstanceHolder.INSTANCE;
   // fileExporter used to get the source code from project being published
@@ -61,6 +66,14 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
 
   @Override
   public GallerySettings loadGallerySettings() {
+    return readGallerySettings();
+  }
+
+  /*
+   * Implements loadGallerySettings(); also used by the startup RPC in
+   * UserInfoServiceImpl.
+   */
+  static GallerySettings readGallerySettings() {
     String bucket = Flag.createFlag("gallery.bucket", "").get();
     boolean galleryEnabled = Flag.createFlag("use.gallery",false).get();
     String envirnment = SystemProperty.environment.value().toString();
@@ -131,9 +144,24 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
    */
   @Override
   public void indexAll(int count) {
-    List<GalleryApp> apps= getRecentApps(1,count).getApps();
-    for (GalleryApp app:apps) {
-      GallerySearchIndex.getInstance().indexApp(app);
+    String cursor = null;
+    while (count > 0) {
+      GalleryAppListResult page = galleryStorageIo.getRecentGalleryApps(cursor,
+          Math.min(count, INDEX_PAGE_SIZE));
+      // The pages hold summaries, while the index needs the descriptions
+      List<GalleryApp> apps = new ArrayList<GalleryApp>();
+      for (GalleryApp summary : page.getApps()) {
+        GalleryApp app = galleryStorageIo.getGalleryApp(summary.getGalleryAppId());
+        if (app != null) {
+          apps.add(app);
+        }
+      }
+      GallerySearchIndex.getInstance().indexApps(apps);
+      count -= page.getApps().size();
+      cursor = page.getCursor();
+      if (cursor == null) {
+        break;
+      }
     }
   }
 
@@ -158,6 +186,19 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
     return galleryStorageIo.getRecentGalleryApps(start,count);
   }
 
+  /**
+   * Returns a wrapped class which contains list of most recently
+   * updated galleryApps following the given cursor and total number
+   * of results in database
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps to return
+   * @return list of GalleryApps
+   */
+  @Override
+  public GalleryAppListResult getRecentAppsAfter(String cursor, int count) {
+    return galleryStorageIo.getRecentGalleryApps(cursor, count);
+  }
+
   /**
    * Returns a wrapped class which contains list of featured gallery app
    * @param start start index
@@ -168,6 +209,18 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
     return galleryStorageIo.getFeaturedApp(start, count);
   }
 
+  /**
+   * Returns a wrapped class which contains list of featured gallery app
+   * following the given cursor
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count count number
+   * @return list of gallery app
+   */
+  @Override
+  public GalleryAppListResult getFeaturedAppAfter(String cursor, int count) {
+    return galleryStorageIo.getFeaturedApp(cursor, count);
+  }
+
   /**
    * check if app is featured already
    * @param galleryId gallery id
@@ -199,6 +252,20 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
     return galleryStorageIo.getDeveloperApps(userId, start,count);
   }
 
+  /**
+   * Returns a wrapped class which contains a list of galleryApps
+   * by a particular developer following the given cursor and total
+   * number of results in database
+   * @param userId id of the developer
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps to return
+   * @return list of GalleryApps
+   */
+  @Override
+  public GalleryAppListResult getDeveloperAppsAfter(String userId, String cursor, int count) {
+    return galleryStorageIo.getDeveloperApps(userId, cursor, count);
+  }
+
   /**
    * Returns a GalleryApp object for the given id
    * @param galleryId  gallery ID as received by
@@ -223,6 +290,19 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
     return GallerySearchIndex.getInstance().find(keywords, start, count);
   }
 
+  /**
+   * Returns a wrapped class which contains a list of galleryApps
+   * following the given cursor and total number of results in database
+   * @param keywords keywords to search for
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps to return
+   * @return list of GalleryApps
+   */
+  @Override
+  public GalleryAppListResult findAppsAfter(String keywords, String cursor, int count) {
+    return GallerySearchIndex.getInstance().find(keywords, cursor, count);
+  }
+
   /**
    * Returns a wrapped class which contains a list of most downloaded
    * gallery apps and total number of results in database
@@ -235,6 +315,19 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
     return galleryStorageIo.getMostDownloadedApps(start,count);
   }
 
+  /**
+   * Returns a wrapped class which contains a list of most downloaded
+   * gallery apps following the given cursor and total number of
+   * results in database
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps to return
+   * @return list of GalleryApps
+   */
+  @Override
+  public GalleryAppListResult getMostDownloadedAppsAfter(String cursor, int count) {
+    return galleryStorageIo.getMostDownloadedApps(cursor, count);
+  }
+
   /**
    * Deletes a new gallery app
    * @param galleryId id of app to delete
@@ -263,12 +356,14 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
    * Returns the comments for an app
    * @param galleryId  gallery ID as received by
    *                   {@link #getRecentGalleryApps()}
-   * @return  a list of comments
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count the maximum number of comments
+   * @return  the comments and the cursor of the next page
    */
 
   @Override
-  public List<GalleryComment> getComments(long galleryId) {
-    return galleryStorageIo.getComments(galleryId);
+  public GalleryCommentListResult getComments(long galleryId, String cursor, int count) {
+    return galleryStorageIo.getComments(galleryId, cursor, count);
   }
 
   /**
@@ -398,6 +493,16 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
   public List<GalleryApp> remixedTo(long galleryId) {
     return galleryStorageIo.remixedTo(galleryId);
   }
+  /**
+   * get the remix tree of an app
+   * @param galleryId the id of the app
+   * @param depth the number of levels of ancestors and of remixes
+   * @return the remix tree
+   */
+  @Override
+  public GalleryAppLineage getRemixLineage(long galleryId, int depth) {
+    return galleryStorageIo.getRemixLineage(galleryId, depth);
+  }
   /**
    * mark an report as resolved
    * @param reportId the id of the app
@@ -497,20 +602,18 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
     }
   }
   private void deleteImage(long galleryId) {
+    GallerySettings settings = loadGallerySettings();
+    String galleryKey = settings.getImageKey(galleryId);
+    // setup cloud
+    GcsService gcsService = GcsServiceFactory.createGcsService();
+    GcsFilename filename = new GcsFilename(settings.getBucket(), galleryKey);
     try {
-      //String galleryKey = GalleryApp.getImageKey(galleryId);
-      GallerySettings settings = loadGallerySettings();
-      String galleryKey = settings.getSourceKey(galleryId);
-      // setup cloud
-      GcsService gcsService = GcsServiceFactory.createGcsService();
-      //GcsFilename filename = new GcsFilename(GalleryApp.GALLERYBUCKET, galleryKey);
-      GcsFilename filename = new GcsFilename(settings.getBucket(), galleryKey);
       gcsService.delete(filename);
     } catch (IOException e) {
-      // TODO Auto-generated catch block
-      LOG.log(Level.INFO, "FAILED GCS delete");
-      e.printStackTrace();
+      LOG.log(Level.INFO, "FAILED GCS delete", e);
     }
+    // The copies are deleted even if the image could not be
+    GalleryImages.deleteScaledCopies(gcsService, settings, galleryKey);
   }
 
   /**
@@ -574,6 +677,10 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
       // Now finalize
       writeChannel.close();
 
+      // The copies are scaled from the original, rather than from the
+      // 200 X 200 image
+      GalleryImages.storeScaledCopies(gcsService, settings, galleryKey, oldImageData);
+
     } catch (IOException e) {
       // TODO Auto-generated catch block
       LOG.log(Level.INFO, "FAILED WRITING IMAGE TO GCS");
@@ -596,13 +703,25 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
   }
 
   /**
-   * Get messages of current user
-   * @return List<Message>   list of message
+   * Get one page of the messages of current user, newest first
+   * @param cursor   cursor from the previous page, or null for the first page
+   * @param count   the maximum number of messages
+   * @return MessageListResult   messages and the cursor of the next page
    */
   @Override
-  public List<Message> getMessages() {
+  public MessageListResult getMessages(String cursor, int count) {
     final String userId = userInfoProvider.getUserId();
-    return galleryStorageIo.getMessages(userId);
+    return galleryStorageIo.getMessages(userId, cursor, count);
+  }
+
+  /**
+   * Get the number of unread messages of current user
+   * @return int   number of unread messages
+   */
+  @Override
+  public int getUnreadMessageCount() {
+    final String userId = userInfoProvider.getUserId();
+    return galleryStorageIo.getUnreadMessageCount(userId);
   }
 
   /**
@@ -612,7 +731,8 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
    */
   @Override
   public Message getMessage(long msgId) {
-    return galleryStorageIo.getMessage(msgId);
+    final String userId = userInfoProvider.getUserId();
+    return galleryStorageIo.getMessage(userId, msgId);
   }
 
   /**
@@ -621,7 +741,8 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
    */
   @Override
   public void deleteMessage(long msgId) {
-    galleryStorageIo.deleteMessage(msgId);
+    final String userId = userInfoProvider.getUserId();
+    galleryStorageIo.deleteMessage(userId, msgId);
   }
 
   /**
@@ -630,7 +751,8 @@ public class GalleryServiceImpl extends OdeRemoteServiceServlet implements Galle
    */
   @Override
   public void readMessage(long msgId) {
-    galleryStorageIo.readMessage(msgId);
+    final String userId = userInfoProvider.getUserId();
+    galleryStorageIo.readMessage(userId, msgId);
   }
 
   /**
@@ -31,8 +31,9 @@ public class GetMotdServiceImpl extends OdeRemoteServiceServlet implements GetMo
   // Logging support
   private static final Logger LOG = Logger.getLogger(GetMotdServiceImpl.class.getName());
 
-  // The value of this flag can be changed in appengine-web.xml
-  private static final Flag<Integer> motdCheckIntervalSecs =
+  // The value of this flag can be changed in appengine-web.xml. It is also
+  // sent by the startup RPC in UserInfoServiceImpl.
+  static final Flag<Integer> motdCheckIntervalSecs =
     Flag.createFlag("motd.check.interval.secs", 300);
 
   private final StorageIo storageIo = StorageIoInstanceHolder.INSTANCE;
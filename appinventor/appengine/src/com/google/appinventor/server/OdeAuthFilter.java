@@ -9,6 +9,7 @@ package com.google.appinventor.server;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.appinventor.server.flags.Flag;
+import com.google.appinventor.server.storage.RequestCache;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.shared.rpc.ServerLayout;
@@ -86,6 +87,8 @@ public class OdeAuthFilter implements Filter {
       response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
       return;
     }
+    // Entities read from storage are reused for the rest of the request.
+    RequestCache.begin();
     try {
       if (useWhitelist.get() && !isUserWhitelisted()) {
         writeWhitelistErrorMessage(response);
@@ -105,6 +108,7 @@ public class OdeAuthFilter implements Filter {
       }
       chain.doFilter(request, response);
     } finally {
+      RequestCache.end();
       removeUser();
     }
   }
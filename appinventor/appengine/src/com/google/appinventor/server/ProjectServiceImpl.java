@@ -20,8 +20,10 @@ import com.google.appinventor.shared.rpc.InvalidSessionException;
 import com.google.appinventor.shared.rpc.RpcResult;
 import com.google.appinventor.shared.rpc.project.ChecksumedFileException;
 import com.google.appinventor.shared.rpc.project.ChecksumedLoadFile;
+import com.google.appinventor.shared.rpc.project.ExportAllProjectsStatus;
 import com.google.appinventor.shared.rpc.project.FileDescriptor;
 import com.google.appinventor.shared.rpc.project.FileDescriptorWithContent;
+import com.google.appinventor.shared.rpc.project.FileVersion;
 import com.google.appinventor.shared.rpc.project.NewProjectParameters;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.ProjectService;
@@ -29,21 +31,31 @@ import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
 import com.google.appinventor.shared.util.Base64Util;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+import com.google.common.io.InputSupplier;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.http.HttpServletRequest;
+
 /**
  * The implementation of the RPC service which runs on the server.
  *
@@ -95,9 +107,11 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
     //   System.out.println("newProjectFromTemplate = " +  host + pathToZip);
     UserProject userProject = null;
     try {
-      FileInputStream fis = new FileInputStream(pathToZip);
+      // The parsed template is kept in memory, so only the first project
+      // made from it reads the zip.
       FileImporter fileImporter = new FileImporterImpl();
-      userProject = fileImporter.importProject(userInfoProvider.getUserId(), projectName, fis);
+      userProject = fileImporter.importProjectFromTemplate(userInfoProvider.getUserId(),
+          projectName, "file:" + pathToZip, Files.newInputStreamSupplier(new File(pathToZip)));
     } catch (IOException e) {
       LOG.log(Level.SEVERE, "I/O Error importing from template project", e);
     } catch (FileImporterException e) {
@@ -115,24 +129,36 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
    *   generating-an-inline-image-with-java-gwt/6495356#6495356
    */
   @Override
-  public UserProject newProjectFromExternalTemplate(String projectName, String zipData) {
+  public UserProject newProjectFromExternalTemplate(String projectName, final String zipData) {
 
     System.out.println(">>>>> ProjectService newProjectFromExternalTemplate name = " + projectName);
     UserProject userProject = null;
 
-    // Convert base64 string to byte[]
-    // NOTE: GWT's Base64Utils uses a non-standard algorithm.
-    // @see:  https://code.google.com/p/google-web-toolkit/issues/detail?id=3880
-    byte[] binData = null;
-    binData = Base64Util.decode(zipData);
+    // The template is identified by a hash of the encoded zip, so that it is
+    // only decoded and parsed when it is not in memory.
+    String templateKey;
+    try {
+      templateKey = "sha256:" + BaseEncoding.base16().lowerCase().encode(
+          MessageDigest.getInstance("SHA-256").digest(zipData.getBytes("UTF-8")));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
 
     // Import the project
-    ByteArrayInputStream bais = null;
     FileImporter fileImporter = new FileImporterImpl();
     try {
-      bais = new ByteArrayInputStream(binData);
-      userProject = fileImporter.importProject(userInfoProvider.getUserId(),
-        projectName, bais);
+      userProject = fileImporter.importProjectFromTemplate(userInfoProvider.getUserId(),
+          projectName, templateKey, new InputSupplier<InputStream>() {
+            @Override
+            public InputStream getInput() {
+              // Convert base64 string to byte[]
+              // NOTE: GWT's Base64Utils uses a non-standard algorithm.
+              // @see:  https://code.google.com/p/google-web-toolkit/issues/detail?id=3880
+              return new ByteArrayInputStream(Base64Util.decode(zipData));
+            }
+          });
     } catch (FileNotFoundException e) {  // Create a new empty project if no Zip
       LOG.log(Level.SEVERE, "File Not Found importing from template project (external)", e);
     } catch (IOException e) {
@@ -154,6 +180,14 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
    */
   @Override
   public String retrieveTemplateData(String pathToTemplatesDir) {
+    return readTemplateData(pathToTemplatesDir, getThreadLocalRequest());
+  }
+
+  /*
+   * Implements retrieveTemplateData(); also used by the startup RPC in
+   * UserInfoServiceImpl.
+   */
+  static String readTemplateData(String pathToTemplatesDir, HttpServletRequest req) {
     String json = "[";
     File templatesRepository = new File(pathToTemplatesDir);
     File templateFolder[] = templatesRepository.listFiles();
@@ -169,7 +203,7 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
               json += in.readLine() +  ", ";
             } catch (IOException e) {
               LOG.log(Level.SEVERE, "I/O Exception reading template json file", e);
-              throw CrashReport.createAndLogError(LOG, getThreadLocalRequest(), null,
+              throw CrashReport.createAndLogError(LOG, req, null,
                 new IllegalArgumentException("Cannot Read Internal Project Template"));
             }
           }
@@ -238,12 +272,7 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
   @Override
   public List<UserProject> getProjectInfos() {
     String userId = userInfoProvider.getUserId();
-    List<Long> projectIds = storageIo.getProjects(userId);
-    List<UserProject> projectInfos = Lists.newArrayListWithExpectedSize(projectIds.size());
-    for (Long projectId : projectIds) {
-      projectInfos.add(makeUserProject(userId, projectId));
-    }
-    return projectInfos;
+    return storageIo.getUserProjects(userId, storageIo.getProjects(userId));
   }
 
   /**
@@ -350,6 +379,22 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
     return getProjectRpcImpl(userId, projectId).load2(userId, projectId, fileId);
   }
 
+  /**
+   * Loads several source files of a project with one request. The files are
+   * read from storage together.
+   *
+   * @param projectId  project ID
+   * @param fileIds  project nodes whose source should be loaded
+   *
+   * @return  checksummed file objects, in the order of fileIds
+   */
+  @Override
+  public List<ChecksumedLoadFile> load2(long projectId, List<String> fileIds)
+      throws ChecksumedFileException {
+    final String userId = userInfoProvider.getUserId();
+    return getProjectRpcImpl(userId, projectId).load2(userId, projectId, fileIds);
+  }
+
   /**
    * Attempt to record the project Id and error message when we detect a corruption
    * while loading a project.
@@ -402,14 +447,27 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
    */
   @Override
   public List<FileDescriptorWithContent> load(List<FileDescriptor> files) {
-    List<FileDescriptorWithContent> result = Lists.newArrayList();
     final String userId = userInfoProvider.getUserId();
+    // The files of each project are read together
+    Map<Long, List<String>> fileIdsByProject = Maps.newLinkedHashMap();
     for (FileDescriptor file : files) {
-      long projectId = file.getProjectId();
-      String fileId = file.getFileId();
-      result.add(new FileDescriptorWithContent(
-          projectId, fileId,
-          getProjectRpcImpl(userId, projectId).load(userId, projectId, fileId)));
+      List<String> fileIds = fileIdsByProject.get(file.getProjectId());
+      if (fileIds == null) {
+        fileIds = Lists.newArrayList();
+        fileIdsByProject.put(file.getProjectId(), fileIds);
+      }
+      fileIds.add(file.getFileId());
+    }
+    Map<Long, Iterator<String>> contentsByProject = Maps.newHashMap();
+    for (Map.Entry<Long, List<String>> entry : fileIdsByProject.entrySet()) {
+      long projectId = entry.getKey();
+      contentsByProject.put(projectId, getProjectRpcImpl(userId, projectId)
+          .load(userId, projectId, entry.getValue()).iterator());
+    }
+    List<FileDescriptorWithContent> result = Lists.newArrayList();
+    for (FileDescriptor file : files) {
+      result.add(new FileDescriptorWithContent(file.getProjectId(), file.getFileId(),
+          contentsByProject.get(file.getProjectId()).next()));
     }
     return result;
   }
@@ -627,6 +685,56 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
     LOG.warning(message);
   }
 
+  /**
+   * Starts writing an archive of all of the user's projects in the
+   * background, unless such a job is already running.
+   *
+   * @return the status of the job
+   */
+  @Override
+  public ExportAllProjectsStatus startExportAllProjects() {
+    return ExportAllProjectsTask.start(storageIo, userInfoProvider.getUserId());
+  }
+
+  /**
+   * Returns the status of the user's last "export all projects" job.
+   *
+   * @return the status of the job, or null if the user never started one
+   */
+  @Override
+  public ExportAllProjectsStatus getExportAllProjectsStatus() {
+    return ExportAllProjectsTask.getStatus(storageIo, userInfoProvider.getUserId());
+  }
+
+  /**
+   * Returns the saved versions of a project file, newest first.
+   *
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @return the saved versions of the file
+   */
+  @Override
+  public List<FileVersion> getFileVersions(long projectId, String fileId) {
+    return storageIo.getFileVersions(userInfoProvider.getUserId(), projectId, fileId);
+  }
+
+  /**
+   * Replaces the content of a project file with a saved version of it.
+   *
+   * @param sessionId current session id
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @param versionId  ID of the version
+   * @return modification date for project
+   */
+  @Override
+  public long restoreFileVersion(String sessionId, long projectId, String fileId,
+      long versionId) throws InvalidSessionException {
+    validateSessionId(sessionId);
+    return storageIo.restoreFileVersion(userInfoProvider.getUserId(), projectId, fileId,
+        versionId);
+  }
+
   private void validateSessionId(String sessionId) throws InvalidSessionException {
     String storedSessionId = userInfoProvider.getSessionId();
     if (storedSessionId == null) {
@@ -14,6 +14,8 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.common.io.ByteStreams;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -62,6 +64,9 @@ public class ReceiveBuildServlet extends OdeServlet {
     odeFilter.setUserFromUserId(userId);
     try {
       String buildFileDirPath = uriComponents[4];
+      // The output files are registered and saved together once the whole
+      // zip has been read.
+      Map<String, byte[]> outputFiles = new LinkedHashMap<String, byte[]>();
       ZipInputStream zipInputStream = new ZipInputStream(req.getInputStream());
       while (true) {
         ZipEntry zipEntry = zipInputStream.getNextEntry();
@@ -77,10 +82,14 @@ public class ReceiveBuildServlet extends OdeServlet {
         } else {
           String filePath = buildFileDirPath + "/" + fileName;
           LOG.info("Saving build output files: " + filePath);
-          storageIo.addOutputFilesToProject(userId, projectId, filePath);
-          storageIo.uploadRawFileForce(projectId, filePath, userId, fileBytes);
+          outputFiles.put(filePath, fileBytes);
         }
       }
+      if (!outputFiles.isEmpty()) {
+        storageIo.addOutputFilesToProject(userId, projectId,
+            outputFiles.keySet().toArray(new String[outputFiles.size()]));
+        storageIo.uploadRawFilesForce(projectId, userId, outputFiles);
+      }
     } finally {
       odeFilter.removeUser();
     }
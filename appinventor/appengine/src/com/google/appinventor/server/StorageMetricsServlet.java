@@ -0,0 +1,29 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appinventor.server.storage.StorageMetrics;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Shows the storage counters of the instance that handles the request (see
+ * {@link StorageMetrics}). Access is restricted to admins in web.xml.
+ *
+ */
+public class StorageMetricsServlet extends OdeServlet {
+
+  @Override
+  public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    resp.setContentType("text/plain; charset=utf-8");
+    resp.setHeader("Cache-Control", "no-cache");
+    resp.getWriter().write(StorageMetrics.get().report());
+  }
+}
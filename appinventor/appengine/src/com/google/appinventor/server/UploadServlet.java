@@ -59,6 +59,11 @@ public class UploadServlet extends OdeServlet {
   private static final int USERFILE_PATH_INDEX = 4;
   private static final int SPLIT_LIMIT_USERFILE = 5;
 
+  // Room for the multipart boundaries and part headers around an uploaded
+  // file, so that the request's Content-Length can be compared with the
+  // maximum file size.
+  private static final int MAX_MULTIPART_OVERHEAD_BYTES = 16 * 1024;
+
 
   // Logging support
   private static final Logger LOG = Logger.getLogger(UploadServlet.class.getName());
@@ -105,19 +110,27 @@ public class UploadServlet extends OdeServlet {
         uriComponents = uri.split("/", SPLIT_LIMIT_FILE);
         long projectId = Long.parseLong(uriComponents[PROJECT_ID_INDEX]);
         String fileName = uriComponents[FILE_PATH_INDEX];
-        InputStream uploadedStream;
-        try {
-          uploadedStream = getRequestStream(req, ServerLayout.UPLOAD_FILE_FORM_ELEMENT);
-        } catch (Exception e) {
-          throw CrashReport.createAndLogError(LOG, req, null, e);
-        }
-
-        try {
-          long modificationDate = fileImporter.importFile(userInfoProvider.getUserId(),
-              projectId, fileName, uploadedStream);
-          uploadResponse = new UploadResponse(UploadResponse.Status.SUCCESS, modificationDate);
-        } catch (FileImporterException e) {
-          uploadResponse = e.uploadResponse;
+        if (req.getContentLength() > fileImporter.getMaxFileSizeBytes()
+            + MAX_MULTIPART_OVERHEAD_BYTES) {
+          // Reject before reading any of the upload. Smaller requests, and
+          // ones that don't declare their length, are still checked while
+          // the file is read.
+          uploadResponse = new UploadResponse(UploadResponse.Status.FILE_TOO_LARGE);
+        } else {
+          InputStream uploadedStream;
+          try {
+            uploadedStream = getRequestStream(req, ServerLayout.UPLOAD_FILE_FORM_ELEMENT);
+          } catch (Exception e) {
+            throw CrashReport.createAndLogError(LOG, req, null, e);
+          }
+
+          try {
+            long modificationDate = fileImporter.importFile(userInfoProvider.getUserId(),
+                projectId, fileName, uploadedStream);
+            uploadResponse = new UploadResponse(UploadResponse.Status.SUCCESS, modificationDate);
+          } catch (FileImporterException e) {
+            uploadResponse = e.uploadResponse;
+          }
         }
       } else if (uploadKind.equals(ServerLayout.UPLOAD_USERFILE)) {
         uriComponents = uri.split("/", SPLIT_LIMIT_USERFILE);
@@ -7,11 +7,23 @@
 package com.google.appinventor.server;
 
 import com.google.appinventor.server.flags.Flag;
+import com.google.appinventor.server.project.youngandroid.YoungAndroidProjectService;
+import com.google.appinventor.server.properties.json.ServerJsonParser;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.appinventor.shared.rpc.user.BootstrapData;
 import com.google.appinventor.shared.rpc.user.Config;
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.rpc.user.UserInfoService;
+import com.google.appinventor.shared.settings.Settings;
+import com.google.appinventor.shared.settings.SettingsConstants;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * Implementation of the user information service.
@@ -25,6 +37,12 @@ public class UserInfoServiceImpl extends OdeRemoteServiceServlet implements User
   // Storage of user settings
   private final transient StorageIo storageIo = StorageIoInstanceHolder.INSTANCE;
 
+  // Loads the tree of the current project for getBootstrapData()
+  private final transient YoungAndroidProjectService youngAndroidProject =
+      new YoungAndroidProjectService(storageIo);
+
+  private static final Logger LOG = Logger.getLogger(UserInfoServiceImpl.class.getName());
+
   private static final long serialVersionUID = -7316312435338169166L;
 
   /**
@@ -46,6 +64,98 @@ public class UserInfoServiceImpl extends OdeRemoteServiceServlet implements User
     return config;
   }
 
+  /**
+   * Returns everything the IDE needs when it starts. The parts are read one
+   * after the other on the request thread, so that they share the request
+   * cache (the user, and the projects that are read in one batch for the
+   * project list). The time spent on each part is sent in the Server-Timing
+   * header and in the result.
+   */
+  @Override
+  public BootstrapData getBootstrapData(String sessionId, String pathToTemplatesDir) {
+    String userId = userInfoProvider.getUserId();
+    BootstrapData data = new BootstrapData();
+    StringBuilder timings = new StringBuilder();
+
+    long start = System.currentTimeMillis();
+    data.setConfig(getSystemConfig(sessionId));
+    start = addTiming(timings, "config", start);
+
+    String userSettings = storageIo.loadSettings(userId);
+    data.setUserSettings(userSettings);
+    start = addTiming(timings, "settings", start);
+
+    List<UserProject> projectInfos =
+        storageIo.getUserProjects(userId, storageIo.getProjects(userId));
+    data.setProjectInfos(projectInfos);
+    start = addTiming(timings, "projects", start);
+
+    try {
+      data.setTemplateData(
+          ProjectServiceImpl.readTemplateData(pathToTemplatesDir, getThreadLocalRequest()));
+    } catch (RuntimeException e) {
+      // The client retrieves the templates itself when they are missing
+      LOG.log(Level.WARNING, "Unable to read the template data", e);
+    }
+    data.setGallerySettings(GalleryServiceImpl.readGallerySettings());
+    data.setMotdCheckInterval(GetMotdServiceImpl.motdCheckIntervalSecs.get());
+    start = addTiming(timings, "static", start);
+
+    long projectId = getCurrentProjectId(userSettings);
+    for (UserProject projectInfo : projectInfos) {
+      if (projectInfo.getProjectId() == projectId) {
+        try {
+          data.setCurrentProject(projectId, youngAndroidProject.getRootNode(userId, projectId),
+              storageIo.loadProjectSettings(userId, projectId));
+        } catch (RuntimeException e) {
+          // The client loads the project the usual way when it is not preloaded
+          LOG.log(Level.WARNING, "Unable to preload project " + projectId, e);
+        }
+        addTiming(timings, "project", start);
+        break;
+      }
+    }
+
+    data.setTimings(timings.toString());
+    HttpServletResponse response = getThreadLocalResponse();
+    if (response != null) {  // null when not called through RPC, as in tests
+      response.setHeader("Server-Timing", data.getTimings());
+    }
+    return data;
+  }
+
+  /*
+   * Appends the time since start to timings, as a Server-Timing metric, and
+   * returns the current time.
+   */
+  private static long addTiming(StringBuilder timings, String name, long start) {
+    long now = System.currentTimeMillis();
+    if (timings.length() > 0) {
+      timings.append(", ");
+    }
+    timings.append(name).append(";dur=").append(now - start);
+    return now;
+  }
+
+  /*
+   * Returns the id of the project the user had open last, or 0.
+   */
+  private static long getCurrentProjectId(String userSettings) {
+    if (userSettings == null || userSettings.isEmpty()) {
+      return 0;
+    }
+    try {
+      String value = new Settings(new ServerJsonParser(), userSettings).getSetting(
+          SettingsConstants.USER_GENERAL_SETTINGS,
+          SettingsConstants.GENERAL_SETTINGS_CURRENT_PROJECT_ID);
+      return (value == null || value.isEmpty()) ? 0 : Long.parseLong(value);
+    } catch (RuntimeException e) {
+      // The client reads the settings again and copes with them itself
+      LOG.log(Level.WARNING, "Unable to read the current project id", e);
+      return 0;
+    }
+  }
+
   /**
    * Returns user information.
    *
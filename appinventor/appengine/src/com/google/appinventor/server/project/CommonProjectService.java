@@ -17,6 +17,8 @@ import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.appinventor.shared.util.Base64Util;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -134,14 +136,17 @@ public abstract class CommonProjectService {
    * @param directory path of the directory
    */
   public long deleteFiles(String userId, long projectId, String directory) {
-    // TODO(user): This is not efficient.
+    List<String> fileIds = new ArrayList<String>();
     for (String fileId : storageIo.getProjectSourceFiles(userId, projectId)) {
       if (fileId.startsWith(directory + '/') && fileId.indexOf('/', directory.length() + 1) == -1) {
-        storageIo.deleteFile(userId, projectId, fileId);
-        storageIo.removeSourceFilesFromProject(userId, projectId, false, fileId);
+        fileIds.add(fileId);
       }
     }
-    return storageIo.getProjectDateModified(userId, projectId);
+    if (fileIds.isEmpty()) {
+      return storageIo.getProjectDateModified(userId, projectId);
+    }
+    // Deleting the files also removes them from the project.
+    return storageIo.deleteFiles(userId, projectId, fileIds);
   }
 
   /**
@@ -176,9 +181,55 @@ public abstract class CommonProjectService {
    * @return  ChecksumedLoadFile object
    */
   public ChecksumedLoadFile load2(String userId, long projectId, String fileId) throws ChecksumedFileException {
-    ChecksumedLoadFile retval = new ChecksumedLoadFile();
-    retval.setContent(storageIo.downloadFile(userId, projectId, fileId, StorageUtil.DEFAULT_CHARSET));
-    return retval;
+    return makeLoadFile(load(userId, projectId, fileId));
+  }
+
+  /**
+   * Loads the contents of several text files of the project, which are read
+   * from storage together.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param fileIds  project nodes whose source should be loaded
+   *
+   * @return  file contents, in the order of fileIds
+   */
+  public List<String> load(String userId, long projectId, List<String> fileIds) {
+    Charset charset = Charset.forName(StorageUtil.DEFAULT_CHARSET);
+    List<String> contents = new ArrayList<String>(fileIds.size());
+    for (byte[] content : storageIo.downloadRawFiles(userId, projectId, fileIds)) {
+      contents.add(new String(content, charset));
+    }
+    return contents;
+  }
+
+  /**
+   * Loads the contents of several text files of the project, which are read
+   * from storage together, as ChecksumedLoadFile objects.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param fileIds  project nodes whose source should be loaded
+   *
+   * @return  ChecksumedLoadFile objects, in the order of fileIds
+   */
+  public List<ChecksumedLoadFile> load2(String userId, long projectId, List<String> fileIds)
+      throws ChecksumedFileException {
+    List<ChecksumedLoadFile> files = new ArrayList<ChecksumedLoadFile>(fileIds.size());
+    for (String content : load(userId, projectId, fileIds)) {
+      files.add(makeLoadFile(content));
+    }
+    return files;
+  }
+
+  /*
+   * Wraps the content of a file for load2(), which computes its checksum.
+   */
+  private static ChecksumedLoadFile makeLoadFile(String content)
+      throws ChecksumedFileException {
+    ChecksumedLoadFile file = new ChecksumedLoadFile();
+    file.setContent(content);
+    return file;
   }
 
   /**
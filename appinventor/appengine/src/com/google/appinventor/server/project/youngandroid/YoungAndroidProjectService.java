@@ -48,6 +48,7 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.appinventor.shared.youngandroid.YoungAndroidSourceAnalyzer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.CharStreams;
 
@@ -66,9 +67,12 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -312,6 +316,11 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     newProject.setProjectType(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE);
     newProject.setProjectHistory(oldProjectHistory);
 
+    // Files whose content can be shared are added to the new project once it
+    // exists, without copying their content.
+    Map<String, String> oldContentIds = storageIo.getSharedContentIds(userId, oldProjectId);
+    Map<String, String> newContentIds = new HashMap<String, String>();
+
     // Get the old project's source files and add them to new project, modifying where necessary.
     for (String oldSourceFileName : storageIo.getProjectSourceFiles(userId, oldProjectId)) {
       String newSourceFileName;
@@ -338,6 +347,8 @@ public final class YoungAndroidProjectService extends CommonProjectService {
         // We've determined (above) that the contents of the file must change for the new project.
         // Use newContents when adding the file to the new project.
         newProject.addTextFile(new TextFile(newSourceFileName, newContents));
+      } else if (oldContentIds.containsKey(oldSourceFileName)) {
+        newContentIds.put(newSourceFileName, oldContentIds.get(oldSourceFileName));
       } else {
         // If we get here, we know that the contents of the file can just be copied from the old
         // project. Since it might be a binary file, we copy it as a raw file (that works for both
@@ -348,7 +359,18 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     }
 
     // Create the new project and return the new project's id.
-    return storageIo.createProject(userId, newProject, getProjectSettings(icon, vcode, vname, useslocation));
+    long newProjectId = storageIo.createProject(userId, newProject,
+        getProjectSettings(icon, vcode, vname, useslocation));
+    if (!newContentIds.isEmpty()) {
+      try {
+        storageIo.addSharedSourceFilesToProject(userId, newProjectId, newContentIds);
+      } catch (RuntimeException e) {
+        // Don't leave a copy that is missing its assets
+        storageIo.deleteProject(userId, newProjectId);
+        throw e;
+      }
+    }
+    return newProjectId;
   }
 
   @Override
@@ -369,6 +391,7 @@ public final class YoungAndroidProjectService extends CommonProjectService {
 
     // Retrieve project information
     List<String> sourceFiles = storageIo.getProjectSourceFiles(userId, projectId);
+    Set<String> sourceFileSet = new HashSet<String>(sourceFiles);
     for (String fileId : sourceFiles) {
       if (fileId.startsWith(ASSETS_FOLDER + '/')) {
         // Assets is a flat folder
@@ -385,7 +408,7 @@ public final class YoungAndroidProjectService extends CommonProjectService {
           String blocklyFileName = 
               fileId.substring(0, fileId.lastIndexOf(CODEBLOCKS_SOURCE_EXTENSION)) 
               + BLOCKLY_SOURCE_EXTENSION;
-          if (!sourceFiles.contains(blocklyFileName)) {
+          if (!sourceFileSet.contains(blocklyFileName)) {
             // This is an old project that hasn't been converted yet. Convert
             // the blocks file to Blockly format and name. Leave the old
             // codeblocks file around for now (for debugging) but don't send it to the client.
@@ -476,13 +499,9 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       String blocklyFileName = YoungAndroidBlocksNode.getBlocklyFileId(qualifiedFormName);
       String codeblocksFileName = YoungAndroidBlocksNode.getCodeblocksFileId(qualifiedFormName);
       String yailFileName = YoungAndroidYailNode.getYailFileId(qualifiedFormName);
-      storageIo.deleteFile(userId, projectId, formFileName);
-      storageIo.deleteFile(userId, projectId, blocklyFileName);
-      storageIo.deleteFile(userId, projectId, codeblocksFileName);
-      storageIo.deleteFile(userId, projectId, yailFileName);
-      storageIo.removeSourceFilesFromProject(userId, projectId, true,
-          formFileName, blocklyFileName, codeblocksFileName, yailFileName);
-      return storageIo.getProjectDateModified(userId, projectId);
+      // Deleting the files also removes them from the project.
+      return storageIo.deleteFiles(userId, projectId,
+          Lists.newArrayList(formFileName, blocklyFileName, codeblocksFileName, yailFileName));
 
     } else {
       return super.deleteFile(userId, projectId, fileId);
@@ -514,8 +533,8 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     // Delete the existing build output files, if any, so that future attempts to get it won't get
     // old versions.
     List<String> buildOutputFiles = storageIo.getProjectOutputFiles(userId, projectId);
-    for (String buildOutputFile : buildOutputFiles) {
-      storageIo.deleteFile(userId, projectId, buildOutputFile);
+    if (!buildOutputFiles.isEmpty()) {
+      storageIo.deleteFiles(userId, projectId, buildOutputFiles);
     }
     URL buildServerUrl = null;
     ProjectSourceZip zipFile = null;
@@ -0,0 +1,129 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+
+/**
+ * Compression of project file content at rest.
+ *
+ * <p>Blocks, form and yail files are verbose XML and JSON that compress
+ * several times over. Their content is stored gzipped, so that most of them
+ * fit in their datastore entity instead of going to GCS or the Blobstore,
+ * and the ones that do not take fewer bytes there. {@link
+ * StoredData.FileData#codec} records how the stored bytes of a file are
+ * encoded. Files stored before compression existed have no codec and are
+ * read as they are.
+ */
+final class ContentCodec {
+
+  /**
+   * Codec of content compressed with gzip.
+   */
+  static final String GZIP = "gzip";
+
+  // Extensions of the text source files that are compressed
+  private static final String[] COMPRESSED_EXTENSIONS = { ".bky", ".scm", ".yail", ".blk" };
+
+  // Content shorter than this is not worth compressing
+  private static final int MIN_COMPRESSED_LENGTH = 256;
+
+  /**
+   * Content as it is stored, along with its codec.
+   */
+  static final class Encoded {
+    final byte[] bytes;
+    @Nullable final String codec;
+
+    private Encoded(byte[] bytes, @Nullable String codec) {
+      this.bytes = bytes;
+      this.codec = codec;
+    }
+  }
+
+  private ContentCodec() {
+  }
+
+  /**
+   * Encodes the content of the given file for storage. Content that is not
+   * worth compressing is stored as is, without a codec.
+   */
+  static Encoded encode(String fileName, byte[] content) {
+    return isCompressed(fileName) ? compress(content) : new Encoded(content, null);
+  }
+
+  /**
+   * Compresses content for storage, whatever file it is from, unless that
+   * would not make it smaller.
+   */
+  static Encoded compress(byte[] content) {
+    if (content.length >= MIN_COMPRESSED_LENGTH) {
+      try {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4);
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write(content);
+        out.close();
+        if (compressed.size() < content.length) {
+          return new Encoded(compressed.toByteArray(), GZIP);
+        }
+      } catch (IOException e) {
+        // Cannot happen when writing to memory; store the content as is
+      }
+    }
+    return new Encoded(content, null);
+  }
+
+  /**
+   * Decodes stored content.
+   *
+   * @param codec the codec the content was stored with, or null
+   * @param stored the stored bytes
+   * @return the content
+   * @throws IOException if the stored bytes cannot be decoded
+   */
+  static byte[] decode(@Nullable String codec, byte[] stored) throws IOException {
+    if (codec == null) {
+      return stored;
+    }
+    return ByteStreams.toByteArray(decode(codec, new ByteArrayInputStream(stored)));
+  }
+
+  /**
+   * Decodes a stream of stored content.
+   *
+   * @param codec the codec the content was stored with, or null
+   * @param stored a stream of the stored bytes
+   * @return a stream of the content
+   * @throws IOException if the stored bytes cannot be decoded
+   */
+  static InputStream decode(@Nullable String codec, InputStream stored) throws IOException {
+    if (codec == null) {
+      return stored;
+    } else if (codec.equals(GZIP)) {
+      return new GZIPInputStream(stored);
+    }
+    throw new IOException("Unknown content codec " + codec);
+  }
+
+  private static boolean isCompressed(String fileName) {
+    for (String extension : COMPRESSED_EXTENSIONS) {
+      if (fileName.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,177 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary deltas between two versions of a file, used by the version history
+ * of blocks files (see {@link StoredData.FileVersionData}).
+ *
+ * <p>A delta is a list of instructions that rebuild the new content: either
+ * copy a run of bytes from the base content, or insert bytes that the delta
+ * carries. Runs shared with the base are found by hashing the base in blocks
+ * of {@link #BLOCK_SIZE} bytes and looking each position of the new content
+ * up with a rolling hash, so that an edit anywhere in a workspace costs
+ * about the size of the edit.
+ */
+final class ContentDelta {
+
+  // Length of the runs of the base content that are indexed
+  private static final int BLOCK_SIZE = 16;
+
+  // Base of the rolling hash
+  private static final int HASH_BASE = 257;
+
+  private static final byte COPY = 'C';
+  private static final byte INSERT = 'I';
+
+  private ContentDelta() {
+  }
+
+  /**
+   * Computes the delta that turns base into target.
+   */
+  static byte[] diff(byte[] base, byte[] target) {
+    // Index the base by the hash of every aligned block. The first block
+    // with a given hash wins, which is good enough for matching.
+    Map<Integer, Integer> blocks = new HashMap<Integer, Integer>();
+    for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+      Integer hash = hash(base, offset);
+      if (!blocks.containsKey(hash)) {
+        blocks.put(hash, offset);
+      }
+    }
+
+    // HASH_BASE ^ (BLOCK_SIZE - 1), to drop the leading byte from the hash
+    int leadingFactor = 1;
+    for (int i = 1; i < BLOCK_SIZE; i++) {
+      leadingFactor *= HASH_BASE;
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      int pending = 0;   // start of the bytes not yet copied or inserted
+      int position = 0;
+      int hash = (target.length >= BLOCK_SIZE) ? hash(target, 0) : 0;
+      while (position + BLOCK_SIZE <= target.length) {
+        Integer match = blocks.get(hash);
+        if (match != null && regionsEqual(base, match, target, position, BLOCK_SIZE)) {
+          // Grow the match backwards into the pending bytes, then forwards
+          int start = match;
+          int targetStart = position;
+          while (start > 0 && targetStart > pending
+              && base[start - 1] == target[targetStart - 1]) {
+            start--;
+            targetStart--;
+          }
+          int end = match + BLOCK_SIZE;
+          int targetEnd = position + BLOCK_SIZE;
+          while (end < base.length && targetEnd < target.length
+              && base[end] == target[targetEnd]) {
+            end++;
+            targetEnd++;
+          }
+          writeInsert(out, target, pending, targetStart);
+          out.writeByte(COPY);
+          out.writeInt(start);
+          out.writeInt(end - start);
+          pending = targetEnd;
+          position = targetEnd;
+          if (position + BLOCK_SIZE <= target.length) {
+            hash = hash(target, position);
+          }
+        } else {
+          if (position + BLOCK_SIZE < target.length) {
+            hash = (hash - (target[position] & 0xff) * leadingFactor) * HASH_BASE
+                + (target[position + BLOCK_SIZE] & 0xff);
+          }
+          position++;
+        }
+      }
+      writeInsert(out, target, pending, target.length);
+      out.close();
+    } catch (IOException e) {
+      // Cannot happen when writing to memory
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Applies a delta made by {@link #diff} to the base it was made against.
+   *
+   * @throws IOException if the delta is malformed or does not fit the base
+   */
+  static byte[] apply(byte[] base, byte[] delta) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream(base.length);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+    while (true) {
+      int op = in.read();
+      if (op < 0) {
+        break;
+      }
+      if (op == COPY) {
+        int start = in.readInt();
+        int length = in.readInt();
+        if (start < 0 || length < 0 || start > base.length || length > base.length - start) {
+          throw new IOException("Delta copies past the end of its base");
+        }
+        result.write(base, start, length);
+      } else if (op == INSERT) {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+          throw new IOException("Delta inserts more bytes than it carries");
+        }
+        byte[] inserted = new byte[length];
+        try {
+          in.readFully(inserted);
+        } catch (EOFException e) {
+          throw new IOException("Truncated delta", e);
+        }
+        result.write(inserted);
+      } else {
+        throw new IOException("Unknown delta instruction " + op);
+      }
+    }
+    return result.toByteArray();
+  }
+
+  private static void writeInsert(DataOutputStream out, byte[] target, int start, int end)
+      throws IOException {
+    if (end > start) {
+      out.writeByte(INSERT);
+      out.writeInt(end - start);
+      out.write(target, start, end - start);
+    }
+  }
+
+  private static int hash(byte[] data, int offset) {
+    int hash = 0;
+    for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+      hash = hash * HASH_BASE + (data[i] & 0xff);
+    }
+    return hash;
+  }
+
+  private static boolean regionsEqual(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[aOffset + i] != b[bOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,30 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import javax.persistence.Id;
+
+import com.googlecode.objectify.annotation.Unindexed;
+
+/**
+ * One shard of the download and like counters of a gallery app. Each shard
+ * is its own entity group, so concurrent downloads and likes of a popular
+ * app are spread over several entities instead of all writing the app.
+ *
+ * The counts only ever grow; ObjectifyGalleryStorageIo periodically folds
+ * the part it has not seen yet into the GalleryAppData. The shards are kept
+ * when an app is removed from the gallery: resetting them would race with
+ * the folds and lose or double count updates.
+ */
+@Unindexed
+public class GalleryAppCounterShardData {
+  // galleryId + "-" + shard number
+  @Id String id;
+  int downloads;
+  int likesAdded;
+  int likesRemoved;
+}
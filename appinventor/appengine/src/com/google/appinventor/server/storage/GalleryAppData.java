@@ -9,6 +9,7 @@ package com.google.appinventor.server.storage;
 import javax.persistence.Id;
 
 import com.googlecode.objectify.annotation.Indexed;
+import com.googlecode.objectify.annotation.Unindexed;
 
 /**
  * this class modelled after those in StoredData.java
@@ -31,6 +32,14 @@ public class GalleryAppData {
   @Indexed public int numDownloads;
   @Indexed public int unreadLikes;
   @Indexed public int unreadDownloads;
+  @Unindexed int numLikes;
+  // false for apps whose likes were counted from GalleryAppLikeData
+  // before numLikes existed, until they are first counted
+  @Unindexed boolean likesCounted;
+  // Counter shard totals already added into the fields above
+  @Unindexed int foldedDownloads;
+  @Unindexed int foldedLikesAdded;
+  @Unindexed int foldedLikesRemoved;
   long projectId;
   int status;
 
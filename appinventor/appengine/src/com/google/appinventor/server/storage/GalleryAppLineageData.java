@@ -0,0 +1,34 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import java.util.List;
+
+import javax.persistence.Id;
+
+import com.googlecode.objectify.annotation.Unindexed;
+
+/**
+ * The remix lineage of a gallery app: the app it was remixed from and the
+ * apps that were remixed from it. This is an index over the
+ * GalleryAppAttributionData entities, kept so that the remix tree of an app
+ * can be read with gets instead of one query per app.
+ *
+ * Apps that were published before the index existed have no entry;
+ * ObjectifyGalleryStorageIo builds it from their attributions the first
+ * time it is needed. A remix of such an app that is published before then
+ * gets a partial entry that only has the remixes added since, and the rest
+ * is merged into it when the entry is built.
+ */
+@Unindexed
+public class GalleryAppLineageData {
+  // same as the id of the GalleryAppData
+  @Id Long galleryId;
+  long parentId;          // UserProject.FROMSCRATCH if the app is not a remix
+  List<Long> remixIds;    // may be null when there are none
+  boolean partial;        // true until the entry is built from the attributions
+}
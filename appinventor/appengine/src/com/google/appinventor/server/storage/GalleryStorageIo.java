@@ -10,12 +10,14 @@ package com.google.appinventor.server.storage;
 import java.util.List;
 
 import com.google.appinventor.shared.rpc.project.GalleryApp;
+import com.google.appinventor.shared.rpc.project.GalleryAppLineage;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
 import com.google.appinventor.shared.rpc.project.GalleryAppReport;
-import com.google.appinventor.shared.rpc.project.GalleryComment;
+import com.google.appinventor.shared.rpc.project.GalleryCommentListResult;
 import com.google.appinventor.shared.rpc.project.GalleryCommentReport;
 import com.google.appinventor.shared.rpc.project.GalleryModerationAction;
 import com.google.appinventor.shared.rpc.project.Message;
+import com.google.appinventor.shared.rpc.project.MessageListResult;
 
 
 
@@ -36,6 +38,15 @@ public interface GalleryStorageIo {
    */
   GalleryApp getGalleryApp(long galleryId);
 
+  /**
+   * Returns summaries of gallery apps, as shown in the app lists. They do not
+   * have the description, more info and credit of the apps.
+   * @param galleryIds ids of the gallery apps
+   * @return list of {@link GalleryApp} summaries, in the order of galleryIds,
+   *   without the apps that do not exist
+   */
+  List<GalleryApp> getGalleryAppSummaries(List<Long> galleryIds);
+
   /**
    * creates a new gallery app
    * @param title title of new app
@@ -71,6 +82,16 @@ public interface GalleryStorageIo {
    */
   GalleryAppListResult getRecentGalleryApps(int start, int count);
 
+  /**
+   * Returns a wrapped class which contains list of most recently
+   * updated galleryApps following the given cursor and total number
+   * of results in database
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps you want
+   * @return list of {@link GalleryApp}
+   */
+  GalleryAppListResult getRecentGalleryApps(String cursor, int count);
+
   /**
    * Returns a wrapped class which contains a list of most downloaded
    * gallery apps and total number of results in database
@@ -80,6 +101,16 @@ public interface GalleryStorageIo {
    */
   GalleryAppListResult getMostDownloadedApps(int start, int count);
 
+  /**
+   * Returns a wrapped class which contains a list of most downloaded
+   * gallery apps following the given cursor and total number of
+   * results in database
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps you want
+   * @return list of {@link GalleryApp}
+   */
+  GalleryAppListResult getMostDownloadedApps(String cursor, int count);
+
   /**
    *Returns a wrapped class which contains a list of featured gallery app
    * @param start start index
@@ -88,6 +119,15 @@ public interface GalleryStorageIo {
    */
   GalleryAppListResult getFeaturedApp(int start, int count);
 
+  /**
+   * Returns a wrapped class which contains a list of featured gallery app
+   * following the given cursor
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count count number
+   * @return list of gallery app
+   */
+  GalleryAppListResult getFeaturedApp(String cursor, int count);
+
   /**
    * check if app is featured already
    * @param galleryId gallery id
@@ -112,6 +152,17 @@ public interface GalleryStorageIo {
    */
   GalleryAppListResult getDeveloperApps(String userId, int start, int count);
 
+  /**
+   * Returns a wrapped class which contains a list of galleryApps
+   * by a particular developer following the given cursor and total
+   * number of results in database
+   * @param userId id of developer
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps you want
+   * @return list of {@link GalleryApp}
+   */
+  GalleryAppListResult getDeveloperApps(String userId, String cursor, int count);
+
   /**
    * records that an app has been downloaded
    * @param galleryId the id of gallery app that was downloaded
@@ -180,6 +231,14 @@ public interface GalleryStorageIo {
    * @return list of Children Gallery App
    */
   List<GalleryApp> remixedTo(long galleryId);
+
+  /**
+   * get the remix tree of a gallery app
+   * @param galleryId id of gallery app
+   * @param depth the number of levels of ancestors and of remixes
+   * @return GalleryAppLineage the remix tree, or null if there is no such app
+   */
+  GalleryAppLineage getRemixLineage(long galleryId, int depth);
   /**
    * mark an report as resolved
    * @param reportId the id of the app
@@ -196,11 +255,13 @@ public interface GalleryStorageIo {
    */
   boolean isGalleryAppActivated(long galleryId);
   /**
-   * Returns a list of comments for an app
+   * Returns one page of the comments for an app, newest first
    * @param galleryId id of gallery app
-   * @return list of {@link GalleryComment}
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count the maximum number of comments
+   * @return {@link GalleryCommentListResult} comments and the cursor of the next page
    */
-  List<GalleryComment> getComments(long galleryId);
+  GalleryCommentListResult getComments(long galleryId, String cursor, int count);
 
   /**
    * adds a report (flag) to a gallery app
@@ -244,12 +305,13 @@ public interface GalleryStorageIo {
   List<GalleryAppReport> getAllAppReports(int start, int count);
   /**
    * adds a report (flag) to a gallery app comment
+   * @param galleryId id of gallery app that the comment is about
    * @param commentId id of comment that was reported
    * @param userId id of user who commented
    * @param report report
    * @return the id of the new report
    */
-  long addCommentReport(long commentId,String userId, String report);
+  long addCommentReport(long galleryId, long commentId, String userId, String report);
   /**
    * Returns a list of reports (flags) for a comment
    * @param commentId id of comment
@@ -273,29 +335,41 @@ public interface GalleryStorageIo {
 
   /**
    * delete message based on given id
+   * @param receiverId id of the user who received the message
    * @param id
    */
-  void deleteMessage(long id);
+  void deleteMessage(String receiverId, long id);
 
   /**
-   * get list of message based on receiver id
+   * get one page of the messages of a receiver, newest first
    * @param receiverId receiver id
-   * @return list of Message
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count the maximum number of messages
+   * @return MessageListResult messages and the cursor of the next page
    */
-  List<Message> getMessages(String userId);
+  MessageListResult getMessages(String receiverId, String cursor, int count);
+
+  /**
+   * get the number of unread messages of a receiver
+   * @param receiverId receiver id
+   * @return number of unread messages
+   */
+  int getUnreadMessageCount(String receiverId);
 
   /**
    * get message based on msgId
+   * @param receiverId id of the user who received the message
    * @param msgId message id
-   * @return Message message object
+   * @return Message message object, or null if the user has no such message
    */
-  Message getMessage(long msgId);
+  Message getMessage(String receiverId, long msgId);
 
   /**
    * mark message as read based on given msgId
-   * @param timestamp
+   * @param receiverId id of the user who received the message
+   * @param msgId message id
    */
-  void readMessage(long msgId);
+  void readMessage(String receiverId, long msgId);
 
   /**
    * mark app stats as read based on given appId
@@ -0,0 +1,63 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Wraps a {@link StorageIo} so that every call to it is timed and counted in
+ * {@link StorageMetrics}, along with the datastore jobs it runs.
+ *
+ * <p>The wrapper is a dynamic proxy, so that methods added to StorageIo are
+ * instrumented without changes here.
+ *
+ */
+final class InstrumentedStorageIo implements InvocationHandler {
+  private final StorageIo storageIo;
+
+  private InstrumentedStorageIo(StorageIo storageIo) {
+    this.storageIo = storageIo;
+  }
+
+  /**
+   * Returns a StorageIo that calls through to the given one and records
+   * each call.
+   */
+  static StorageIo wrap(StorageIo storageIo) {
+    return (StorageIo) Proxy.newProxyInstance(StorageIo.class.getClassLoader(),
+        new Class<?>[] { StorageIo.class }, new InstrumentedStorageIo(storageIo));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      return method.invoke(storageIo, args);
+    }
+    // A StorageIo method may call another; its jobs count under the outer one
+    String outerOperation = StorageMetrics.getCurrentOperation();
+    if (outerOperation == null) {
+      StorageMetrics.setCurrentOperation(method.getName());
+    }
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      Object result = method.invoke(storageIo, args);
+      failed = false;
+      return result;
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    } finally {
+      StorageMetrics.get().recordCall(method.getName(), System.nanoTime() - start, failed);
+      if (outerOperation == null) {
+        StorageMetrics.setCurrentOperation(null);
+      }
+    }
+  }
+}
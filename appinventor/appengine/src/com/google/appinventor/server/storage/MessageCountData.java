@@ -0,0 +1,40 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Id;
+
+import com.googlecode.objectify.annotation.Unindexed;
+
+/**
+ * The number of unread messages of a user, kept up to date as messages are
+ * sent, read and deleted so that the client can show it without loading
+ * the inbox. The user's messages are in its entity group, so that the
+ * counter changes in the same transaction as the message.
+ *
+ * Messages sent before the counter was introduced are root entities. They
+ * are counted by id, the first time the counter is asked for, so that
+ * reading or deleting one of them can never be counted twice.
+ */
+@Unindexed
+public class MessageCountData {
+  // the receiver's user id
+  @Id String userId;
+  // the unread messages in the user's entity group
+  int unread;
+  // whether the unread messages sent before there were counters are counted
+  boolean oldMessagesCounted;
+  // the ids of the unread messages sent before there were counters, once
+  // they are counted
+  List<Long> oldUnreadIds = new ArrayList<Long>();
+  // the ids of the messages sent before there were counters that were read
+  // or deleted before they were counted
+  List<Long> oldReadIds = new ArrayList<Long>();
+}
@@ -8,11 +8,16 @@ package com.google.appinventor.server.storage;
 
 import javax.persistence.Id;
 
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.Indexed;
+import com.googlecode.objectify.annotation.Parent;
 
 public class MessageData {
 
   @Id Long id;
+  // the receiver's MessageCountData, so that a message and the counter
+  // change together. Null for messages sent before there were counters.
+  @Parent Key<MessageCountData> countKey;
   String senderId;
   String receiverId;
   String message;   // the message body
@@ -7,23 +7,42 @@
 package com.google.appinventor.server.storage;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.files.FileService;
 import com.google.appengine.api.files.FileServiceFactory;
+import com.google.appengine.api.memcache.ErrorHandlers;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
 import com.google.appinventor.server.CrashReport;
+import com.google.appinventor.server.GalleryReindexTask;
 import com.google.appinventor.server.GallerySearchIndex;
 import com.google.appinventor.server.flags.Flag;
 import com.google.appinventor.shared.rpc.project.GalleryApp;
+import com.google.appinventor.shared.rpc.project.GalleryAppLineage;
 import com.google.appinventor.shared.rpc.project.GalleryAppListResult;
 import com.google.appinventor.shared.rpc.project.GalleryAppReport;
 import com.google.appinventor.shared.rpc.project.GalleryComment;
+import com.google.appinventor.shared.rpc.project.GalleryCommentListResult;
 import com.google.appinventor.shared.rpc.project.GalleryCommentReport;
 import com.google.appinventor.shared.rpc.project.GalleryModerationAction;
 import com.google.appinventor.shared.rpc.project.Message;
+import com.google.appinventor.shared.rpc.project.MessageListResult;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.common.annotations.VisibleForTesting;
@@ -31,6 +50,7 @@ import com.googlecode.objectify.Key;
 import com.googlecode.objectify.NotFoundException;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.Query;
 
 /**
  * Implements the GalleryStorageIo interface using Objectify as the underlying data
@@ -51,6 +71,46 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
   // TODO(user): need a way to modify this. Also, what is really a good value?
   private static final int MAX_JOB_RETRIES = 10;
 
+  // The totals shown with the gallery lists are kept in memcache so that
+  // paging through a list does not recount it for each page. A total that is
+  // not in memcache is still counted with a keys only query, at most once
+  // per LIST_COUNT_CACHE_SECS unless it is dropped earlier.
+  private static final int LIST_COUNT_CACHE_SECS = 600;
+  private static final String ACTIVE_COUNT_KEY = "gallery|count|active";
+  private static final String FEATURED_COUNT_KEY = "gallery|count|featured";
+  private static final String DEVELOPER_COUNT_KEY_PREFIX = "gallery|count|developer|";
+
+  // Downloads and likes are counted in sharded entities (see
+  // GalleryAppCounterShardData) and folded into the GalleryAppData at most
+  // once per COUNTER_FOLD_SECS. Never lower the number of shards: counts in
+  // the dropped shards would be lost.
+  private static final int NUM_COUNTER_SHARDS = 20;
+  private static final int COUNTER_FOLD_SECS = 60;
+  private static final int COUNTER_CACHE_SECS = 300;
+  private static final String DOWNLOADS_KEY_PREFIX = "gallery|downloads|";
+  private static final String LIKES_KEY_PREFIX = "gallery|likes|";
+  private static final String FOLD_KEY_PREFIX = "gallery|fold|";
+
+  private static final Random shardChooser = new Random();
+
+  // The most values the datastore takes in one IN filter
+  private static final int MAX_IN_FILTER_VALUES = 30;
+
+  // The most levels of remixes and ancestors that getRemixLineage() returns
+  private static final int MAX_LINEAGE_DEPTH = 10;
+
+  // First pages of comments are cached under keys that include a
+  // generation number, which addComment() changes
+  private static final int COMMENTS_CACHE_SECS = 600;
+  private static final String COMMENTS_KEY_PREFIX = "gallery|comments|";
+  private static final String COMMENTS_GENERATION_KEY_PREFIX = "gallery|comments|generation|";
+
+  // Values of MessageData.status
+  private static final String MESSAGE_UNREAD = "1";
+  private static final String MESSAGE_READ = "2";
+
+  private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+
   // Use this class to define the work of a job that can be retried. The
   // "datastore" argument to run() is the Objectify object for this job
   // (created with ObjectifyService.beginTransaction()). Note that all operations
@@ -80,15 +140,19 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
     ObjectifyService.register(GalleryAppData.class);
     ObjectifyService.register(GalleryCommentData.class);
     ObjectifyService.register(GalleryAppLikeData.class);
+    ObjectifyService.register(GalleryAppCounterShardData.class);
     ObjectifyService.register(GalleryAppFeatureData.class);
     ObjectifyService.register(GalleryAppAttributionData.class);
+    ObjectifyService.register(GalleryAppLineageData.class);
     ObjectifyService.register(GalleryAppReportData.class);
     ObjectifyService.register(MessageData.class);
+    ObjectifyService.register(MessageCountData.class);
     ObjectifyService.register(GalleryModerationActionData.class);
   }
 
   ObjectifyGalleryStorageIo() {
     fileService = FileServiceFactory.getFileService();
+    memcache.setErrorHandler(ErrorHandlers.getConsistentLogAndContinue(Level.INFO));
   }
 
   // for testing
@@ -136,6 +200,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
           appData.projectId = projectId;
           appData.userId = userId;
           appData.active = true;
+          appData.likesCounted = true;
           datastore.put(appData); // put the appData in the db so that it gets assigned an id
 
           assert appData.id != null;
@@ -156,6 +221,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           "gallery error", e);
     }
+    invalidateListCounts(userId);
     GalleryApp gApp = new GalleryApp();
     makeGalleryApp(galleryAppData.t, gApp);
     return gApp;
@@ -180,20 +246,29 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    */
   @Override
   public GalleryAppListResult getRecentGalleryApps(int start, final int count) {
-    final List<GalleryApp> apps = new ArrayList<GalleryApp>();
     // if i try to run this in runjobwithretries it tells me can't run
     // non-ancestor query as a transaction. ObjectifyStorageio has some samples
     // of not using transactions (run with) so i grabbed
+    Objectify datastore = ObjectifyService.begin();
+    Query<GalleryAppData> query = recentAppsQuery(datastore).offset(start);
+    return makeAppListResult(query, null, count, getActiveAppCount(datastore));
+  }
 
+  /**
+   * Returns a wrapped class which contains list of most recently
+   * updated galleryApps that follow the given cursor and total number
+   * of results in database
+   * @param cursor cursor returned with the previous page, or null
+   * @param count number of apps you want
+   * @return list of {@link GalleryApp}
+   */
+  @Override
+  public GalleryAppListResult getRecentGalleryApps(String cursor, int count) {
     Objectify datastore = ObjectifyService.begin();
-    for (GalleryAppData appData:datastore.query(GalleryAppData.class).order("-dateModified").filter("active", true).offset(start).limit(count)) {
-      GalleryApp gApp = new GalleryApp();
-      makeGalleryApp(appData, gApp);
-      apps.add(gApp);
-    }
-    int totalCount = datastore.query(GalleryAppData.class).order("-dateModified").filter("active", true).count();
-    return new GalleryAppListResult(apps, totalCount);
+    return makeAppListResult(recentAppsQuery(datastore), cursor, count,
+        getActiveAppCount(datastore));
   }
+
   /**
    * Returns a wrapped class which contains a list of most downloaded
    * gallery apps and total number of results in database
@@ -203,19 +278,27 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    */
   @Override
   public GalleryAppListResult getMostDownloadedApps(int start, final int count) {
-    final List<GalleryApp> apps = new ArrayList<GalleryApp>();
     // if i try to run this in runjobwithretries it tells me can't run
     // non-ancestor query as a transaction. ObjectifyStorageio has some samples
     // of not using transactions (run with) so i grabbed
+    Objectify datastore = ObjectifyService.begin();
+    Query<GalleryAppData> query = mostDownloadedAppsQuery(datastore).offset(start);
+    return makeAppListResult(query, null, count, getActiveAppCount(datastore));
+  }
 
+  /**
+   * Returns a wrapped class which contains a list of most downloaded
+   * gallery apps that follow the given cursor and total number of
+   * results in database
+   * @param cursor cursor returned with the previous page, or null
+   * @param count number of apps you want
+   * @return list of {@link GalleryApp}
+   */
+  @Override
+  public GalleryAppListResult getMostDownloadedApps(String cursor, int count) {
     Objectify datastore = ObjectifyService.begin();
-    for (GalleryAppData appData:datastore.query(GalleryAppData.class).order("-numDownloads").filter("active", true).offset(start).limit(count)) {
-      GalleryApp gApp = new GalleryApp();
-      makeGalleryApp(appData, gApp);
-      apps.add(gApp);
-    }
-    int totalCount = datastore.query(GalleryAppData.class).order("-numDownloads").filter("active", true).count();
-    return new GalleryAppListResult(apps, totalCount);
+    return makeAppListResult(mostDownloadedAppsQuery(datastore), cursor, count,
+        getActiveAppCount(datastore));
   }
 
   /**
@@ -225,18 +308,24 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    * @return list of gallery app
    */
   public GalleryAppListResult getFeaturedApp(int start, int count){
-    final List<GalleryApp> apps = new ArrayList<GalleryApp>();
     Objectify datastore = ObjectifyService.begin();
-    for (GalleryAppFeatureData appFeatureData:datastore.query(GalleryAppFeatureData.class).offset(start).limit(count)) {
-      Long galleryId = appFeatureData.galleryKey.getId();
-      GalleryApp gApp = new GalleryApp();
-      GalleryAppData galleryAppData = datastore.find(galleryKey(galleryId));
-      makeGalleryApp(galleryAppData, gApp);
-      apps.add(gApp);
-    }
+    Query<GalleryAppFeatureData> query = datastore.query(GalleryAppFeatureData.class)
+        .offset(start);
+    return makeFeaturedAppListResult(datastore, query, null, count);
+  }
 
-    int totalCount = datastore.query(GalleryAppFeatureData.class).count();
-    return new GalleryAppListResult(apps, totalCount);
+  /**
+   * Returns a wrapped class which contains a list of featured gallery app
+   * that follow the given cursor
+   * @param cursor cursor returned with the previous page, or null
+   * @param count count number
+   * @return list of gallery app
+   */
+  @Override
+  public GalleryAppListResult getFeaturedApp(String cursor, int count) {
+    Objectify datastore = ObjectifyService.begin();
+    return makeFeaturedAppListResult(datastore, datastore.query(GalleryAppFeatureData.class),
+        cursor, count);
   }
 
   /**
@@ -278,6 +367,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
       datastore.put(appFeatureData);
       result.t = true;
     }
+    memcache.delete(FEATURED_COUNT_KEY);
     return result.t;
   }
   /**
@@ -287,21 +377,145 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    * @param start starting index of apps you want
    * @param count number of apps you want
    * @return list of {@link GalleryApp}
-   */  @Override
+   */
+  @Override
   public GalleryAppListResult getDeveloperApps(String userId, int start, final int count) {
-    final List<GalleryApp> apps = new ArrayList<GalleryApp>();
     // if i try to run this in runjobwithretries it tells me can't run
     // non-ancestor query as a transaction. ObjectifyStorageio has some samples
     // of not using transactions (run with) so i grabbed
+    Objectify datastore = ObjectifyService.begin();
+    Query<GalleryAppData> query = developerAppsQuery(datastore, userId).offset(start);
+    return makeAppListResult(query, null, count, getDeveloperAppCount(datastore, userId));
+  }
 
+  /**
+   * Returns a wrapped class which contains a list of galleryApps
+   * by a particular developer that follow the given cursor and total
+   * number of results in database
+   * @param userId id of developer
+   * @param cursor cursor returned with the previous page, or null
+   * @param count number of apps you want
+   * @return list of {@link GalleryApp}
+   */
+  @Override
+  public GalleryAppListResult getDeveloperApps(String userId, String cursor, int count) {
     Objectify datastore = ObjectifyService.begin();
-    for (GalleryAppData appData:datastore.query(GalleryAppData.class).filter("userId",userId).filter("active", true).offset(start).limit(count)) {
-      GalleryApp gApp = new GalleryApp();
-      makeGalleryApp(appData, gApp);
-      apps.add(gApp);
+    return makeAppListResult(developerAppsQuery(datastore, userId), cursor, count,
+        getDeveloperAppCount(datastore, userId));
+  }
+
+  private Query<GalleryAppData> recentAppsQuery(Objectify datastore) {
+    return datastore.query(GalleryAppData.class).order("-dateModified").filter("active", true);
+  }
+
+  private Query<GalleryAppData> mostDownloadedAppsQuery(Objectify datastore) {
+    return datastore.query(GalleryAppData.class).order("-numDownloads").filter("active", true);
+  }
+
+  private Query<GalleryAppData> developerAppsQuery(Objectify datastore, String userId) {
+    return datastore.query(GalleryAppData.class).filter("userId", userId).filter("active", true);
+  }
+
+  /*
+   * Starts the query at the given cursor if there is one. Cursors come from
+   * the client, so a malformed one is logged and false is returned; the
+   * caller then answers with an empty page rather than failing the request
+   * or starting over at the first page, which would show apps twice.
+   */
+  private static boolean startAtCursor(Query<?> query, String cursor) {
+    if (cursor == null) {
+      return true;
+    }
+    try {
+      query.startCursor(Cursor.fromWebSafeString(cursor));
+      return true;
+    } catch (IllegalArgumentException e) {
+      LOG.log(Level.WARNING, "Ignoring malformed cursor " + cursor, e);
+      return false;
+    }
+  }
+
+  /*
+   * Runs the query for one page of apps, starting at the given cursor if
+   * there is one. The result carries the cursor for the following page, or
+   * null if this page was the last one.
+   */
+  private GalleryAppListResult makeAppListResult(Query<GalleryAppData> query, String cursor,
+      int count, int totalCount) {
+    if (!startAtCursor(query, cursor)) {
+      return new GalleryAppListResult(new ArrayList<GalleryApp>(), totalCount);
+    }
+    List<GalleryAppData> appData = new ArrayList<GalleryAppData>();
+    QueryResultIterator<GalleryAppData> iterator = query.limit(count).iterator();
+    while (iterator.hasNext()) {
+      appData.add(iterator.next());
+    }
+    List<GalleryApp> apps = makeGalleryAppSummaries(appData);
+    GalleryAppListResult result = new GalleryAppListResult(apps, totalCount);
+    if (apps.size() == count) {
+      result.setCursor(iterator.getCursor().toWebSafeString());
+    }
+    return result;
+  }
+
+  /*
+   * Same as makeAppListResult() but for the featured list, where the query
+   * returns GalleryAppFeatureData. The apps themselves are fetched with one
+   * batch get instead of one get per app.
+   */
+  private GalleryAppListResult makeFeaturedAppListResult(Objectify datastore,
+      Query<GalleryAppFeatureData> query, String cursor, int count) {
+    int totalCount = getCachedCount(FEATURED_COUNT_KEY,
+        datastore.query(GalleryAppFeatureData.class));
+    if (!startAtCursor(query, cursor)) {
+      return new GalleryAppListResult(new ArrayList<GalleryApp>(), totalCount);
+    }
+    List<Key<GalleryAppData>> appKeys = new ArrayList<Key<GalleryAppData>>();
+    QueryResultIterator<GalleryAppFeatureData> iterator = query.limit(count).iterator();
+    while (iterator.hasNext()) {
+      appKeys.add(iterator.next().galleryKey);
+    }
+    List<GalleryApp> apps = makeGalleryAppSummaries(getExistingApps(datastore, appKeys));
+    GalleryAppListResult result = new GalleryAppListResult(apps, totalCount);
+    if (appKeys.size() == count) {
+      result.setCursor(iterator.getCursor().toWebSafeString());
+    }
+    return result;
+  }
+
+  private int getActiveAppCount(Objectify datastore) {
+    return getCachedCount(ACTIVE_COUNT_KEY,
+        datastore.query(GalleryAppData.class).filter("active", true));
+  }
+
+  private int getDeveloperAppCount(Objectify datastore, String userId) {
+    return getCachedCount(DEVELOPER_COUNT_KEY_PREFIX + userId,
+        developerAppsQuery(datastore, userId));
+  }
+
+  /*
+   * Returns the number of results of the query, using the copy in memcache
+   * under cacheKey if there is one.
+   */
+  private int getCachedCount(String cacheKey, Query<?> query) {
+    Integer count = (Integer) memcache.get(cacheKey);
+    if (count == null) {
+      count = query.count();
+      memcache.put(cacheKey, count, Expiration.byDeltaSeconds(LIST_COUNT_CACHE_SECS));
+    }
+    return count;
+  }
+
+  /*
+   * Drops the cached list totals that change when an app owned by the given
+   * developer is published, activated or deactivated.
+   */
+  private void invalidateListCounts(String userId) {
+    memcache.delete(ACTIVE_COUNT_KEY);
+    memcache.delete(FEATURED_COUNT_KEY);
+    if (userId != null) {
+      memcache.delete(DEVELOPER_COUNT_KEY_PREFIX + userId);
     }
-    int totalCount = datastore.query(GalleryAppData.class).filter("userId",userId).filter("active", true).count();
-    return new GalleryAppListResult(apps, totalCount);
   }
 
  /**
@@ -310,22 +524,18 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    */
   @Override
   public void incrementDownloads(final long galleryId) {
-
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          GalleryAppData galleryAppData = datastore.find(galleryKey(galleryId));
-          if (galleryAppData != null) {
-            galleryAppData.numDownloads = galleryAppData.numDownloads + 1;
-            galleryAppData.unreadDownloads = galleryAppData.unreadDownloads + 1;
-            datastore.put(galleryAppData);
-          }
-        }
-      });
-    } catch (ObjectifyException e) {
-       throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo", e);
+    // Don't start shards for an app that doesn't exist
+    if (ObjectifyService.begin().find(galleryKey(galleryId)) == null) {
+      return;
     }
+    incrementCounterShard(galleryId, new CounterShardUpdater() {
+      @Override
+      public void update(GalleryAppCounterShardData shard) {
+        shard.downloads++;
+      }
+    });
+    memcache.increment(DOWNLOADS_KEY_PREFIX + galleryId, 1);
+    maybeFoldCounters(galleryId);
   }
 
   /**
@@ -377,6 +587,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
           makeGalleryApp(app,gApp);
         }
       });
+      maybeFoldCounters(galleryId);
     }catch (NotFoundException e){
       //galleryId is not in our database
       return null;
@@ -387,6 +598,39 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
     return (gApp);
   }
 
+  /**
+   * Returns summaries of the given gallery apps, fetched with one batch get.
+   * Apps that do not exist are left out.
+   * @param galleryIds ids of the gallery apps
+   * @return list of {@link GalleryApp} summaries, in the order of galleryIds
+   */
+  @Override
+  public List<GalleryApp> getGalleryAppSummaries(List<Long> galleryIds) {
+    Objectify datastore = ObjectifyService.begin();
+    List<Key<GalleryAppData>> appKeys = new ArrayList<Key<GalleryAppData>>();
+    for (long galleryId : galleryIds) {
+      appKeys.add(galleryKey(galleryId));
+    }
+    return makeGalleryAppSummaries(getExistingApps(datastore, appKeys));
+  }
+
+  /*
+   * Returns the apps among the given ones that exist, in the same order,
+   * with one batch get.
+   */
+  private List<GalleryAppData> getExistingApps(Objectify datastore,
+      List<Key<GalleryAppData>> appKeys) {
+    Map<Key<GalleryAppData>, GalleryAppData> appData = datastore.get(appKeys);
+    List<GalleryAppData> apps = new ArrayList<GalleryAppData>();
+    for (Key<GalleryAppData> appKey : appKeys) {
+      GalleryAppData galleryAppData = appData.get(appKey);
+      if (galleryAppData != null) {
+        apps.add(galleryAppData);
+      }
+    }
+    return apps;
+  }
+
   /**
    * deletes an app
    * @param galleryId the id of gallery app to be deleted
@@ -420,6 +664,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
     }
     */
     //for now, we only set app to inactive status.
+    final Result<String> developerId = new Result<String>();
     try {
         runJobWithRetries(new JobRetryHelper() {
           @Override
@@ -429,12 +674,35 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
             if(appData != null){
               appData.active = false;
               datastore.put(appData);
+              developerId.t = appData.userId;
             }
           }
         });
        } catch (ObjectifyException e) {
         throw CrashReport.createAndLogError(LOG, null,"gallery remove error", e);
       }
+    invalidateListCounts(developerId.t);
+    // The app no longer shows up among the remixes of its parent, and its
+    // own entry goes away. Should the app be reactivated, the entry is built
+    // again from its attributions. The parent is read from the attributions,
+    // which are in the app's entity group, so the entry is not built here.
+    Objectify datastore = ObjectifyService.begin();
+    try {
+      for (GalleryAppAttributionData attributionData : datastore.query(
+          GalleryAppAttributionData.class).ancestor(galleryKey(galleryId))) {
+        if (attributionData.attributionId != UserProject.FROMSCRATCH) {
+          removeRemix(attributionData.attributionId, galleryId);
+        }
+      }
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          datastore.delete(lineageKey(galleryId));
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, "gallery remove error", e);
+    }
   }
 
 
@@ -466,39 +734,89 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
     } catch (ObjectifyException e) {
        throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.addComment", e);
     }
+    invalidateComments(galleryId);
     return theDate.t;
   }
  /**
-   * Returns a list of comments for an app
+   * Returns one page of the comments for an app, newest first. First pages
+   * are kept in memcache until the next comment is added, or the app's
+   * reports and moderation change.
    * @param galleryId id of gallery app
-   * @return list of {@link GalleryComment}
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count the maximum number of comments
+   * @return the comments and the cursor of the next page
    */
   @Override
-  public List<GalleryComment> getComments(final long galleryId) {
-   final List<GalleryComment> comments = new ArrayList<GalleryComment>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          Key<GalleryAppData> galleryKey = galleryKey(galleryId);
-          for (GalleryCommentData commentData : datastore.query(GalleryCommentData.class).ancestor(galleryKey).order("-dateCreated")) {
-            User commenter = storageIo.getUser(commentData.userId);
-            String name="unknown";
-            if (commenter!= null) {
-               name = commenter.getUserName();
-            }
-            GalleryComment galleryComment = new GalleryComment(galleryId,
-                commentData.userId,commentData.comment,commentData.dateCreated);
-            galleryComment.setUserName(name);
-            comments.add(galleryComment);
-          }
+  public GalleryCommentListResult getComments(final long galleryId, String cursor, int count) {
+    String cacheKey = null;
+    if (cursor == null) {
+      Long generation = getCommentsGeneration(galleryId);
+      if (generation != null) {
+        cacheKey = COMMENTS_KEY_PREFIX + galleryId + "|" + generation + "|" + count;
+        GalleryCommentListResult cached = (GalleryCommentListResult) memcache.get(cacheKey);
+        if (cached != null) {
+          return cached;
         }
-      });
-    } catch (ObjectifyException e) {
-        throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.getComments", e);
+      }
+    }
+    ArrayList<GalleryComment> comments = new ArrayList<GalleryComment>();
+    Query<GalleryCommentData> query = ObjectifyService.begin().query(GalleryCommentData.class)
+        .ancestor(galleryKey(galleryId)).order("-dateCreated");
+    if (!startAtCursor(query, cursor)) {
+      return new GalleryCommentListResult(comments, null);
     }
+    // Commenters often comment more than once; look each of them up once
+    Map<String, String> userNames = new HashMap<String, String>();
+    QueryResultIterator<GalleryCommentData> iterator = query.limit(count).iterator();
+    while (iterator.hasNext()) {
+      GalleryCommentData commentData = iterator.next();
+      String name = userNames.get(commentData.userId);
+      if (name == null) {
+        User commenter = storageIo.getUser(commentData.userId);
+        name = "unknown";
+        if (commenter != null) {
+          name = commenter.getUserName();
+        }
+        userNames.put(commentData.userId, name);
+      }
+      GalleryComment galleryComment = new GalleryComment(galleryId,
+          commentData.userId, commentData.comment, commentData.dateCreated);
+      galleryComment.setUserName(name);
+      comments.add(galleryComment);
+    }
+    String nextCursor = null;
+    if (comments.size() == count) {
+      nextCursor = iterator.getCursor().toWebSafeString();
+    }
+    GalleryCommentListResult result = new GalleryCommentListResult(comments, nextCursor);
+    if (cacheKey != null) {
+      memcache.put(cacheKey, result, Expiration.byDeltaSeconds(COMMENTS_CACHE_SECS));
+    }
+    return result;
+  }
 
-    return comments;
+  /*
+   * Returns the number that the memcache keys of the app's cached comment
+   * pages include, or null if memcache is not available. Changing it drops
+   * all of those pages at once, whatever their size. A generation that was
+   * evicted is started again from the clock, so old pages are never reused.
+   */
+  private Long getCommentsGeneration(long galleryId) {
+    String generationKey = COMMENTS_GENERATION_KEY_PREFIX + galleryId;
+    Long generation = (Long) memcache.get(generationKey);
+    if (generation == null) {
+      memcache.put(generationKey, System.currentTimeMillis(), null,
+          SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+      generation = (Long) memcache.get(generationKey);
+    }
+    return generation;
+  }
+
+  /*
+   * Drops the app's cached comment pages.
+   */
+  private void invalidateComments(long galleryId) {
+    memcache.increment(COMMENTS_GENERATION_KEY_PREFIX + galleryId, 1);
   }
 
   /**
@@ -512,33 +830,37 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    */
   @Override
   public int increaseLikes(final long galleryId,final String userId) {
-    final Result<Integer> numLikes = new Result<Integer>();
+    final Result<Boolean> added = new Result<Boolean>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
+          added.t = false;
           GalleryAppData galleryAppData = datastore.find(galleryKey(galleryId));
-          if (galleryAppData != null) {
+          if (galleryAppData != null && findLike(datastore, galleryId, userId) == null) {
             // Forge the like data entry
-            Key<GalleryAppData> galleryKey = galleryKey(galleryId);
             GalleryAppLikeData likeData = new GalleryAppLikeData();
             likeData.galleryKey = galleryKey(galleryId);
             likeData.userId = userId;
             datastore.put(likeData);
-
-            // Retrieve the current number of likes
-            numLikes.t = datastore.query(GalleryAppLikeData.class).ancestor(galleryKey).count();
-
-            // Increase app's unread like count
-            galleryAppData.unreadLikes = galleryAppData.unreadLikes + 1;
-            datastore.put(galleryAppData);
+            added.t = true;
           }
         }
       });
     } catch (ObjectifyException e) {
        throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.increaseLike", e);
     }
-    return numLikes.t;
+    if (added.t) {
+      incrementCounterShard(galleryId, new CounterShardUpdater() {
+        @Override
+        public void update(GalleryAppCounterShardData shard) {
+          shard.likesAdded++;
+        }
+      });
+      memcache.increment(LIKES_KEY_PREFIX + galleryId, 1);
+      maybeFoldCounters(galleryId);
+    }
+    return getNumLikes(galleryId);
   }
 
   /**
@@ -550,27 +872,19 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    */
   @Override
   public int decreaseLikes(final long galleryId, final String userId) {
-    final Result<Integer> numLikes = new Result<Integer>();
+    final Result<Boolean> removed = new Result<Boolean>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          GalleryAppData galleryAppData = datastore.find(galleryKey(galleryId));
-          if (galleryAppData != null) {
-            Key<GalleryAppData> galleryKey = galleryKey(galleryId);
-            for (GalleryAppLikeData likeData : datastore.query(GalleryAppLikeData.class).ancestor(galleryKey)) {
-              if(likeData.userId.equals(userId)){
-                datastore.delete(likeData);
-                break;
-              }
-            }
-            numLikes.t = datastore.query(GalleryAppLikeData.class).ancestor(galleryKey).count();
-
-            // Increase app's unread like count
-            if (galleryAppData.unreadLikes > 0) {
-              galleryAppData.unreadLikes = galleryAppData.unreadLikes - 1;
-              datastore.put(galleryAppData);
-            }
+          removed.t = false;
+          if (datastore.find(galleryKey(galleryId)) == null) {
+            return;
+          }
+          GalleryAppLikeData likeData = findLike(datastore, galleryId, userId);
+          if (likeData != null) {
+            datastore.delete(likeData);
+            removed.t = true;
           }
         }
       });
@@ -578,7 +892,17 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           "error in galleryStorageIo.decreaseLike", e);
     }
-    return numLikes.t;
+    if (removed.t) {
+      incrementCounterShard(galleryId, new CounterShardUpdater() {
+        @Override
+        public void update(GalleryAppCounterShardData shard) {
+          shard.likesRemoved++;
+        }
+      });
+      memcache.increment(LIKES_KEY_PREFIX + galleryId, -1);
+      maybeFoldCounters(galleryId);
+    }
+    return getNumLikes(galleryId);
   }
 
   /**
@@ -589,20 +913,15 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    * @return the num of like
    */
   public int getNumLikes(final long galleryId) {
-    final Result<Integer> num = new Result<Integer>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          Key<GalleryAppData> galleryKey = galleryKey(galleryId);
-          num.t = datastore.query(GalleryAppLikeData.class).ancestor(galleryKey).count();
-        }
-      });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          "error in galleryStorageIo.getNumLike", e);
+    Long numLikes = (Long) memcache.get(LIKES_KEY_PREFIX + galleryId);
+    if (numLikes != null) {
+      return numLikes.intValue();
+    }
+    GalleryAppData appData = ObjectifyService.begin().find(galleryKey(galleryId));
+    if (appData == null) {
+      return 0;
     }
-    return num.t;
+    return loadCounterTotals(appData).likes;
   }
 
   /**
@@ -619,25 +938,181 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          boolean find = false;
+          bool.t = findLike(datastore, galleryId, userId) != null;
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          "error in galleryStorageIo.isLikedByUser", e);
+    }
+    return bool.t;
+  }
+
+  private GalleryAppLikeData findLike(Objectify datastore, long galleryId, String userId) {
+    return datastore.query(GalleryAppLikeData.class).ancestor(galleryKey(galleryId))
+        .filter("userId", userId).get();
+  }
+
+  private abstract static class CounterShardUpdater {
+    public abstract void update(GalleryAppCounterShardData shard);
+  }
+
+  /*
+   * Changes one of the counters of a gallery app. Updates go to a randomly
+   * chosen shard so that they rarely contend with each other.
+   */
+  private void incrementCounterShard(final long galleryId, final CounterShardUpdater updater) {
+    final String shardId = galleryId + "-" + shardChooser.nextInt(NUM_COUNTER_SHARDS);
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          GalleryAppCounterShardData shard = datastore.find(
+              new Key<GalleryAppCounterShardData>(GalleryAppCounterShardData.class, shardId));
+          if (shard == null) {
+            shard = new GalleryAppCounterShardData();
+            shard.id = shardId;
+          }
+          updater.update(shard);
+          datastore.put(shard);
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          "error in galleryStorageIo.incrementCounterShard", e);
+    }
+  }
+
+  /*
+   * Returns the totals of all the counter shards of a gallery app.
+   */
+  private GalleryAppCounterShardData sumCounterShards(Objectify datastore, long galleryId) {
+    GalleryAppCounterShardData sum = new GalleryAppCounterShardData();
+    for (GalleryAppCounterShardData shard :
+        datastore.get(counterShardKeys(galleryId)).values()) {
+      sum.downloads += shard.downloads;
+      sum.likesAdded += shard.likesAdded;
+      sum.likesRemoved += shard.likesRemoved;
+    }
+    return sum;
+  }
+
+  private static List<Key<GalleryAppCounterShardData>> counterShardKeys(long galleryId) {
+    List<Key<GalleryAppCounterShardData>> shardKeys =
+        new ArrayList<Key<GalleryAppCounterShardData>>();
+    for (int i = 0; i < NUM_COUNTER_SHARDS; i++) {
+      shardKeys.add(new Key<GalleryAppCounterShardData>(GalleryAppCounterShardData.class,
+          galleryId + "-" + i));
+    }
+    return shardKeys;
+  }
+
+  private static class CounterTotals {
+    int downloads;
+    int likes;
+  }
+
+  /*
+   * Computes the current download and like totals of a gallery app, which
+   * are the folded values in the GalleryAppData plus whatever the shards
+   * have counted since, and keeps them in memcache.
+   */
+  private CounterTotals loadCounterTotals(GalleryAppData appData) {
+    Objectify datastore = ObjectifyService.begin();
+    GalleryAppCounterShardData sum = sumCounterShards(datastore, appData.id);
+    CounterTotals totals = new CounterTotals();
+    totals.downloads = appData.numDownloads + sum.downloads - appData.foldedDownloads;
+    if (appData.likesCounted) {
+      totals.likes = appData.numLikes + sum.likesAdded - appData.foldedLikesAdded
+          - (sum.likesRemoved - appData.foldedLikesRemoved);
+    } else {
+      totals.likes = datastore.query(GalleryAppLikeData.class)
+          .ancestor(galleryKey(appData.id)).count();
+    }
+    Expiration expiration = Expiration.byDeltaSeconds(COUNTER_CACHE_SECS);
+    memcache.put(DOWNLOADS_KEY_PREFIX + appData.id, Long.valueOf(totals.downloads),
+        expiration, SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    memcache.put(LIKES_KEY_PREFIX + appData.id, Long.valueOf(totals.likes),
+        expiration, SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    return totals;
+  }
+
+  /*
+   * Folds the counter shards into the GalleryAppData, unless that was
+   * already done for this app in the last COUNTER_FOLD_SECS.
+   */
+  private void maybeFoldCounters(long galleryId) {
+    if (memcache.put(FOLD_KEY_PREFIX + galleryId, Boolean.TRUE,
+        Expiration.byDeltaSeconds(COUNTER_FOLD_SECS), SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+      foldCounters(galleryId);
+    }
+  }
+
+  /*
+   * Adds the shard counts that have not been seen yet to the totals and
+   * unread counts in the GalleryAppData. Shard counts only grow, so this
+   * can be repeated, or run from two requests at once, without counting
+   * anything twice. Apps whose totals changed are queued for reindexing, as
+   * search results are ranked by them.
+   */
+  @VisibleForTesting
+  void foldCounters(final long galleryId) {
+    final GalleryAppCounterShardData sum = sumCounterShards(ObjectifyService.begin(), galleryId);
+    final Result<GalleryAppData> changedApp = new Result<GalleryAppData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
           Key<GalleryAppData> galleryKey = galleryKey(galleryId);
-          for (GalleryAppLikeData likeData : datastore.query(GalleryAppLikeData.class).ancestor(galleryKey)) {
-            if(likeData.userId.equals(userId)){
-              find = true;
-              bool.t = true;
-              break;
-            }
+          GalleryAppData appData = datastore.find(galleryKey);
+          if (appData == null) {
+            return;
           }
-          if(!find){
-            bool.t = false;
+          boolean changed = false;
+          if (!appData.likesCounted) {
+            // The like records already include everything the shards have seen
+            appData.numLikes = datastore.query(GalleryAppLikeData.class).ancestor(galleryKey)
+                .count();
+            appData.likesCounted = true;
+            appData.foldedLikesAdded = sum.likesAdded;
+            appData.foldedLikesRemoved = sum.likesRemoved;
+            changed = true;
+          }
+          if (sum.downloads > appData.foldedDownloads) {
+            int delta = sum.downloads - appData.foldedDownloads;
+            appData.numDownloads += delta;
+            appData.unreadDownloads += delta;
+            appData.foldedDownloads = sum.downloads;
+            changed = true;
+          }
+          if (sum.likesAdded > appData.foldedLikesAdded) {
+            int delta = sum.likesAdded - appData.foldedLikesAdded;
+            appData.numLikes += delta;
+            appData.unreadLikes += delta;
+            appData.foldedLikesAdded = sum.likesAdded;
+            changed = true;
+          }
+          if (sum.likesRemoved > appData.foldedLikesRemoved) {
+            int delta = sum.likesRemoved - appData.foldedLikesRemoved;
+            appData.numLikes = Math.max(0, appData.numLikes - delta);
+            appData.unreadLikes = Math.max(0, appData.unreadLikes - delta);
+            appData.foldedLikesRemoved = sum.likesRemoved;
+            changed = true;
+          }
+          changedApp.t = null;
+          if (changed) {
+            datastore.put(appData);
+            changedApp.t = appData;
           }
         }
       });
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
-          "error in galleryStorageIo.isLikedByUser", e);
+          "error in galleryStorageIo.foldCounters", e);
+    }
+    if (changedApp.t != null && changedApp.t.active) {
+      GalleryReindexTask.enqueue(galleryId);
     }
-    return bool.t;
   }
 
   /**
@@ -654,8 +1129,6 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-            GalleryAppData galleryAppData = datastore.find(galleryKey(galleryId));
-            Key<GalleryAppData> galleryKey = galleryKey(galleryId);
             GalleryAppAttributionData attributionData = new GalleryAppAttributionData();
             attributionData.galleryKey = galleryKey(galleryId);
             attributionData.attributionId = attributionId;
@@ -664,6 +1137,21 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
 
         }
       });
+      // Keep the lineage index up to date. Entries that do not exist yet are
+      // built from the attribution above when they are first read.
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          GalleryAppLineageData lineageData = datastore.find(lineageKey(galleryId));
+          if (lineageData != null) {
+            lineageData.parentId = attributionId;
+            datastore.put(lineageData);
+          }
+        }
+      });
+      if (attributionId != UserProject.FROMSCRATCH) {
+        addRemix(attributionId, galleryId);
+      }
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           "error in galleryStorageIo.saveAttribution", e);
@@ -679,32 +1167,16 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    * @return the attributionId
    */
   public long remixedFrom(final long galleryId) {
-    final Result<Long> id = new Result<Long>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-              datastore = ObjectifyService.begin();
-              Key<GalleryAppData> galleryKey = galleryKey(galleryId);
-              boolean find = false;
-              //this is a forloop but only one result, or none if app created before this.
-              for (GalleryAppAttributionData attributionData : datastore.query(GalleryAppAttributionData.class).ancestor(galleryKey)) {
-                if(attributionData.attributionId == UserProject.FROMSCRATCH) continue;
-                GalleryAppData appData = datastore.find(galleryKey(attributionData.attributionId));
-                if(appData == null || appData.active == false) break;
-                id.t = attributionData.attributionId;
-                find = true;
-              }
-              if(!find){
-                id.t = UserProject.FROMSCRATCH;
-              }
-        }
-      });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          "error in galleryStorageIo.saveAttribution", e);
+    Objectify datastore = ObjectifyService.begin();
+    long parentId = getLineageData(datastore, galleryId).parentId;
+    if (parentId == UserProject.FROMSCRATCH) {
+      return UserProject.FROMSCRATCH;
     }
-    return id.t;
+    GalleryAppData appData = datastore.find(galleryKey(parentId));
+    if (appData == null || !appData.active) {
+      return UserProject.FROMSCRATCH;
+    }
+    return parentId;
   }
 
   /**
@@ -715,27 +1187,245 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    * @return the list of children Gallery Apps
    */
   public List<GalleryApp> remixedTo(final long galleryId) {
-    final List<GalleryApp> apps = new ArrayList<GalleryApp>();
+    Objectify datastore = ObjectifyService.begin();
+    GalleryAppLineageData lineageData = getLineageData(datastore, galleryId);
+    if (lineageData.remixIds == null) {
+      return new ArrayList<GalleryApp>();
+    }
+    return makeGalleryAppSummaries(getActiveApps(datastore, lineageData.remixIds));
+  }
+
+  /**
+   * Returns the remix tree of a gallery app, up to depth levels of
+   * ancestors and of remixes. Each level takes a fixed number of batch gets,
+   * however many apps it has.
+   *
+   * @param galleryId
+   *          id of gallery app
+   * @param depth
+   *          the number of levels, at most MAX_LINEAGE_DEPTH
+   * @return the remix tree, or null if there is no such app
+   */
+  @Override
+  public GalleryAppLineage getRemixLineage(long galleryId, int depth) {
+    depth = Math.min(depth, MAX_LINEAGE_DEPTH);
+    Objectify datastore = ObjectifyService.begin();
+    GalleryAppData rootData = datastore.find(galleryKey(galleryId));
+    if (rootData == null) {
+      return null;
+    }
+    GalleryApp root = new GalleryApp();
+    makeGalleryAppSummary(rootData, root);
+    GalleryAppLineage lineage = new GalleryAppLineage(root);
+
+    // Ancestors, stopping at the first one that was removed
+    List<GalleryAppData> ancestors = new ArrayList<GalleryAppData>();
+    GalleryAppLineageData lineageData = getLineageData(datastore, galleryId);
+    for (int level = 0; level < depth && lineageData.parentId != UserProject.FROMSCRATCH;
+        level++) {
+      GalleryAppData parentData = datastore.find(galleryKey(lineageData.parentId));
+      if (parentData == null || !parentData.active) {
+        break;
+      }
+      ancestors.add(parentData);
+      lineageData = getLineageData(datastore, parentData.id);
+    }
+    lineage.getAncestors().addAll(makeGalleryAppSummaries(ancestors));
+
+    // Remixes, one level at a time
+    Map<Long, GalleryAppLineage> level = new LinkedHashMap<Long, GalleryAppLineage>();
+    level.put(galleryId, lineage);
+    for (int i = 0; i < depth && !level.isEmpty(); i++) {
+      Map<Long, GalleryAppLineageData> levelData = getLineageData(datastore, level.keySet());
+      List<Long> remixIds = new ArrayList<Long>();
+      for (GalleryAppLineageData data : levelData.values()) {
+        if (data.remixIds != null) {
+          remixIds.addAll(data.remixIds);
+        }
+      }
+      Map<Long, GalleryAppLineage> nextLevel = new LinkedHashMap<Long, GalleryAppLineage>();
+      for (GalleryApp gApp : makeGalleryAppSummaries(getActiveApps(datastore, remixIds))) {
+        nextLevel.put(gApp.getGalleryAppId(), new GalleryAppLineage(gApp));
+      }
+      for (Map.Entry<Long, GalleryAppLineageData> entry : levelData.entrySet()) {
+        if (entry.getValue().remixIds == null) {
+          continue;
+        }
+        for (Long remixId : entry.getValue().remixIds) {
+          GalleryAppLineage remix = nextLevel.get(remixId);
+          if (remix != null) {
+            level.get(entry.getKey()).getRemixes().add(remix);
+          }
+        }
+      }
+      level = nextLevel;
+    }
+    return lineage;
+  }
+
+  private Key<GalleryAppLineageData> lineageKey(long galleryId) {
+    return new Key<GalleryAppLineageData>(GalleryAppLineageData.class, galleryId);
+  }
+
+  private GalleryAppLineageData getLineageData(Objectify datastore, long galleryId) {
+    return getLineageData(datastore, Collections.singleton(galleryId)).get(galleryId);
+  }
+
+  /*
+   * Returns the lineage index entries of the given apps, with one batch get.
+   * Entries that are missing or partial are built from the attributions and
+   * stored.
+   */
+  private Map<Long, GalleryAppLineageData> getLineageData(Objectify datastore,
+      Collection<Long> galleryIds) {
+    Map<Long, GalleryAppLineageData> result = new LinkedHashMap<Long, GalleryAppLineageData>(
+        datastore.get(GalleryAppLineageData.class, galleryIds));
+    List<Long> missing = new ArrayList<Long>();
+    for (long galleryId : galleryIds) {
+      GalleryAppLineageData lineageData = result.get(galleryId);
+      if (lineageData == null || lineageData.partial) {
+        missing.add(galleryId);
+      }
+    }
+    if (!missing.isEmpty()) {
+      result.putAll(buildLineageData(datastore, missing));
+    }
+    return result;
+  }
+
+  /*
+   * Builds the lineage index entries of the given apps from their
+   * attributions. This takes two IN queries per MAX_IN_FILTER_VALUES apps,
+   * however many apps there are, and a job per app to store its entry.
+   *
+   * The queries may be behind, so the remixes they find are not taken as
+   * the whole list: a remix published meanwhile is added by addRemix, which
+   * leaves a partial entry if there is none yet. The job merges what the
+   * queries found into such an entry, and keeps an entry another request
+   * has built.
+   */
+  private Map<Long, GalleryAppLineageData> buildLineageData(Objectify datastore,
+      List<Long> galleryIds) {
+    Map<Long, GalleryAppLineageData> built = new LinkedHashMap<Long, GalleryAppLineageData>();
+    for (Long galleryId : galleryIds) {
+      GalleryAppLineageData lineageData = new GalleryAppLineageData();
+      lineageData.galleryId = galleryId;
+      lineageData.parentId = UserProject.FROMSCRATCH;
+      lineageData.remixIds = new ArrayList<Long>();
+      built.put(galleryId, lineageData);
+    }
+    for (int i = 0; i < galleryIds.size(); i += MAX_IN_FILTER_VALUES) {
+      List<Long> batch = galleryIds.subList(i,
+          Math.min(i + MAX_IN_FILTER_VALUES, galleryIds.size()));
+      for (GalleryAppAttributionData attributionData : datastore.query(
+          GalleryAppAttributionData.class).filter("galleryId in", batch)) {
+        if (attributionData.attributionId != UserProject.FROMSCRATCH) {
+          built.get(attributionData.galleryId).parentId = attributionData.attributionId;
+        }
+      }
+      for (GalleryAppAttributionData attributionData : datastore.query(
+          GalleryAppAttributionData.class).filter("attributionId in", batch)) {
+        List<Long> remixIds = built.get(attributionData.attributionId).remixIds;
+        if (!remixIds.contains(attributionData.galleryId)) {
+          remixIds.add(attributionData.galleryId);
+        }
+      }
+    }
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-              datastore = ObjectifyService.begin();
-              for (GalleryAppAttributionData attributionData:datastore.query(GalleryAppAttributionData.class).filter("attributionId",galleryId)) {
-                GalleryAppData galleryAppData = datastore.find(galleryKey(attributionData.galleryId));
-                if(!galleryAppData.active) continue;
-                GalleryApp gApp = new GalleryApp();
-                makeGalleryApp(galleryAppData, gApp);
-                apps.add(gApp);
+      for (final GalleryAppLineageData lineageData : built.values()) {
+        final Result<GalleryAppLineageData> stored = new Result<GalleryAppLineageData>();
+        runJobWithRetries(new JobRetryHelper() {
+          @Override
+          public void run(Objectify datastore) {
+            stored.t = datastore.find(lineageKey(lineageData.galleryId));
+            if (stored.t == null) {
+              stored.t = lineageData;
+              datastore.put(stored.t);
+            } else if (stored.t.partial) {
+              if (stored.t.parentId == UserProject.FROMSCRATCH) {
+                stored.t.parentId = lineageData.parentId;
               }
-        }
-      });
+              if (stored.t.remixIds == null) {
+                stored.t.remixIds = new ArrayList<Long>();
+              }
+              for (Long remixId : lineageData.remixIds) {
+                if (!stored.t.remixIds.contains(remixId)) {
+                  stored.t.remixIds.add(remixId);
+                }
+              }
+              stored.t.partial = false;
+              datastore.put(stored.t);
+            }
+          }
+        });
+        built.put(lineageData.galleryId, stored.t);
+      }
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
-          "error in galleryStorageIo.saveAttribution", e);
+          "error in galleryStorageIo.buildLineageData", e);
+    }
+    return built;
+  }
+
+  /*
+   * Adds remixId to the remixes of parentId in the lineage index. If the
+   * parent has no entry yet, a partial one is stored, so that the remix is
+   * kept should the queries that build the entry not see it yet.
+   */
+  private void addRemix(final long parentId, final long remixId) throws ObjectifyException {
+    runJobWithRetries(new JobRetryHelper() {
+      @Override
+      public void run(Objectify datastore) {
+        GalleryAppLineageData lineageData = datastore.find(lineageKey(parentId));
+        if (lineageData == null) {
+          lineageData = new GalleryAppLineageData();
+          lineageData.galleryId = parentId;
+          lineageData.parentId = UserProject.FROMSCRATCH;
+          lineageData.partial = true;
+        }
+        if (lineageData.remixIds == null) {
+          lineageData.remixIds = new ArrayList<Long>();
+        }
+        if (!lineageData.remixIds.contains(remixId)) {
+          lineageData.remixIds.add(remixId);
+          datastore.put(lineageData);
+        }
+      }
+    });
+  }
+
+  /*
+   * Removes remixId from the remixes of parentId in the lineage index.
+   */
+  private void removeRemix(final long parentId, final long remixId) throws ObjectifyException {
+    runJobWithRetries(new JobRetryHelper() {
+      @Override
+      public void run(Objectify datastore) {
+        GalleryAppLineageData lineageData = datastore.find(lineageKey(parentId));
+        if (lineageData != null && lineageData.remixIds != null
+            && lineageData.remixIds.remove(Long.valueOf(remixId))) {
+          datastore.put(lineageData);
+        }
+      }
+    });
+  }
+
+  /*
+   * Returns the active apps among the given ones, in the same order, with one
+   * batch get.
+   */
+  private List<GalleryAppData> getActiveApps(Objectify datastore, List<Long> galleryIds) {
+    Map<Long, GalleryAppData> appData = datastore.get(GalleryAppData.class, galleryIds);
+    List<GalleryAppData> apps = new ArrayList<GalleryAppData>();
+    for (Long galleryId : galleryIds) {
+      GalleryAppData galleryAppData = appData.get(galleryId);
+      if (galleryAppData != null && galleryAppData.active) {
+        apps.add(galleryAppData);
+      }
     }
     return apps;
   }
+
   /**
    * adds a report (flag) to a gallery app
    * @param galleryId id of gallery app that was commented on
@@ -924,6 +1614,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
      } catch (ObjectifyException e) {
          throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.markReportAsResolved", e);
      }
+     invalidateComments(galleryId);
      return success.t;
   }
   /**
@@ -933,6 +1624,8 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
   @Override
   public boolean deactivateGalleryApp(final long galleryId) {
     final Result<Boolean> success = new Result<Boolean>();
+    final Result<String> developerId = new Result<String>();
+    final Result<Boolean> activated = new Result<Boolean>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
@@ -945,6 +1638,8 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
               appData.active = !appData.active;
               datastore.put(appData);
               success.t = true;
+              developerId.t = appData.userId;
+              activated.t = appData.active;
               if(appData.active){
                 GalleryApp gApp = new GalleryApp();
                 makeGalleryApp(appData, gApp);
@@ -958,6 +1653,23 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
     } catch (ObjectifyException e) {
        throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.markReportAsResolved", e);
     }
+    if (success.t) {
+      invalidateListCounts(developerId.t);
+      invalidateComments(galleryId);
+    }
+    if (success.t && activated.t) {
+      // Apps removed with deleteApp() were taken out of their parent's
+      // remixes; put them back if they are activated again
+      GalleryAppLineageData lineageData = getLineageData(ObjectifyService.begin(), galleryId);
+      if (lineageData.parentId != UserProject.FROMSCRATCH) {
+        try {
+          addRemix(lineageData.parentId, galleryId);
+        } catch (ObjectifyException e) {
+          throw CrashReport.createAndLogError(LOG, null,
+              "error in galleryStorageIo.deactivateGalleryApp", e);
+        }
+      }
+    }
     return success.t;
   }
   /**
@@ -990,13 +1702,15 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
 
   /**
    * adds a report (flag) to a gallery app comment
+   * @param galleryId id of gallery app that the comment is about
    * @param commentId id of comment that was reported
    * @param userId id of user who commented
    * @param report report
    * @return the id of the new report
    */
   @Override
-  public long addCommentReport(final long commentId, final String userId, final String report) {
+  public long addCommentReport(final long galleryId, final long commentId, final String userId,
+      final String report) {
     final Result<Long> theDate = new Result<Long>();
     try {
       runJobWithRetries(new JobRetryHelper() {
@@ -1007,6 +1721,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
           reportData.report = report;
           reportData.userId = userId;
           reportData.galleryCommentKey = galleryCommentKey(commentId);
+          reportData.galleryId = galleryId;
           reportData.dateCreated=date;
           theDate.t=date;
           datastore.put(reportData);
@@ -1015,6 +1730,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
     } catch (ObjectifyException e) {
        throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.addCommentReport", e);
     }
+    invalidateComments(galleryId);
     return theDate.t;
   }
  /**
@@ -1104,6 +1820,7 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
     } catch (ObjectifyException e) {
         throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.storeModerationAction", e);
     }
+    invalidateComments(galleryId);
   }
 
   /**
@@ -1139,25 +1856,71 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
    *
    */
   private void makeGalleryApp(GalleryAppData appData, GalleryApp galleryApp) {
+    makeGalleryAppSummary(appData, galleryApp);
+    galleryApp.setDescription(appData.description);
+    galleryApp.setMoreInfo(appData.moreInfo);
+    galleryApp.setCredit(appData.credit);
+    galleryApp.setSummary(false);
+  }
+
+  /**
+   * Same as makeGalleryApp(), but leaves out the user entered text that only
+   * the app page shows (description, more info and credit). This is what the
+   * app lists send, as those texts are most of the size of an app.
+   *
+   */
+  private void makeGalleryAppSummary(GalleryAppData appData, GalleryApp galleryApp) {
+    makeGalleryAppSummary(appData, galleryApp,
+        storageIo.getUser(appData.userId).getUserName());
+  }
+
+  /**
+   * Same as makeGalleryAppSummary(), for a list of apps. The developers are
+   * looked up together, with one call to storageIo.getUsers().
+   *
+   */
+  private List<GalleryApp> makeGalleryAppSummaries(List<GalleryAppData> appData) {
+    Set<String> userIds = new HashSet<String>();
+    for (GalleryAppData data : appData) {
+      userIds.add(data.userId);
+    }
+    Map<String, User> users = storageIo.getUsers(userIds);
+    List<GalleryApp> apps = new ArrayList<GalleryApp>();
+    for (GalleryAppData data : appData) {
+      GalleryApp gApp = new GalleryApp();
+      makeGalleryAppSummary(data, gApp, users.get(data.userId).getUserName());
+      apps.add(gApp);
+    }
+    return apps;
+  }
+
+  private void makeGalleryAppSummary(GalleryAppData appData, GalleryApp galleryApp,
+      String developerName) {
     galleryApp.setTitle(appData.title);
     galleryApp.setProjectName(appData.projectName);
     galleryApp.setGalleryAppId(appData.id);
     galleryApp.setProjectId(appData.projectId);
-    galleryApp.setDescription(appData.description);
+    galleryApp.setDescription(null);
+    galleryApp.setMoreInfo(null);
+    galleryApp.setCredit(null);
+    galleryApp.setSummary(true);
 
-    User developer = storageIo.getUser(appData.userId);
-    galleryApp.setDeveloperName(developer.getUserName());
+    galleryApp.setDeveloperName(developerName);
     galleryApp.setDeveloperId(appData.userId);
-    galleryApp.setDownloads(appData.numDownloads);
+    Long numDownloads = (Long) memcache.get(DOWNLOADS_KEY_PREFIX + appData.id);
+    Long numLikes = (Long) memcache.get(LIKES_KEY_PREFIX + appData.id);
+    if (numDownloads == null || numLikes == null) {
+      CounterTotals totals = loadCounterTotals(appData);
+      numDownloads = Long.valueOf(totals.downloads);
+      numLikes = Long.valueOf(totals.likes);
+    }
+    galleryApp.setDownloads(numDownloads.intValue());
     galleryApp.setUnreadDownloads(appData.unreadDownloads);
     galleryApp.setUnreadLikes(appData.unreadLikes);
     galleryApp.setCreationDate(appData.dateCreated);
     galleryApp.setUpdateDate(appData.dateModified);
     galleryApp.setActive(appData.active);
-    galleryApp.setMoreInfo(appData.moreInfo);
-    galleryApp.setCredit(appData.credit);
-
-    galleryApp.setLikes(getNumLikes(appData.id));
+    galleryApp.setLikes(numLikes.intValue());
   }
 
   private static String collectGalleryAppErrorInfo(final String galleryAppId) {
@@ -1189,6 +1952,39 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
   }
 
 
+  private Key<MessageCountData> messageCountKey(String userId) {
+    return new Key<MessageCountData>(MessageCountData.class, userId);
+  }
+
+  private Key<MessageData> msgKey(String receiverId, long id) {
+    return new Key<MessageData>(messageCountKey(receiverId), MessageData.class, id);
+  }
+
+  /*
+   * Returns the key of one of the receiver's messages, or null if the
+   * receiver has no such message. Messages are stored in the entity group of
+   * the receiver's MessageCountData, except the ones sent before there were
+   * counters, which are root entities. The two are in different entity
+   * groups, so this runs outside of any job.
+   *
+   * Ids are only unique per parent, so a root message may have the id of one
+   * of the receiver's newer messages. The newer message is the one returned
+   * then, and the root message cannot be read or deleted by id. Root messages
+   * of other users are never returned.
+   */
+  private Key<MessageData> findMessageKey(String receiverId, long id) {
+    Objectify datastore = ObjectifyService.begin();
+    Key<MessageData> key = msgKey(receiverId, id);
+    if (datastore.find(key) != null) {
+      return key;
+    }
+    MessageData oldMessage = datastore.find(msgKey(id));
+    if (oldMessage != null && receiverId.equals(oldMessage.receiverId)) {
+      return msgKey(id);
+    }
+    return null;
+  }
+
   /**
    * Sends a message to a particular user
    * @param senderId id of user sending this message
@@ -1204,12 +2000,14 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
         public void run(Objectify datastore) {
           MessageData messageData = new MessageData();
           long date = System.currentTimeMillis();
+          messageData.countKey = messageCountKey(receiverId);
           messageData.senderId = senderId;
           messageData.receiverId = receiverId;
           messageData.message = message;
-          messageData.status = "1"; // notify, which means unread
+          messageData.status = MESSAGE_UNREAD;
           messageData.datestamp = date;
           datastore.put(messageData);
+          addUnreadMessages(datastore, receiverId, 1);
           msgId.t = messageData.id;
         }
       });
@@ -1222,75 +2020,236 @@ public class ObjectifyGalleryStorageIo implements  GalleryStorageIo {
 
   /**
    * Delete a message from database
+   * @param receiverId id of user who received the message
    * @param id id of the message
-   */  @Override
-  public void deleteMessage(final long id) {
-    // if i try to run this in runjobwithretries it tells me can't run
-    // non-ancestor query as a transaction. ObjectifyStorageio has some samples
-    // of not using transactions (run with) so i grabbed
-    Objectify datastore = ObjectifyService.begin();
-    MessageData msgData = datastore.get(msgKey(id));
-    if (msgData != null) {
-      datastore.delete(msgData);
+   */
+  @Override
+  public void deleteMessage(final String receiverId, final long id) {
+    final Key<MessageData> key = findMessageKey(receiverId, id);
+    if (key == null) {
+      return;
+    }
+    final Result<Boolean> deletedUnread = new Result<Boolean>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          deletedUnread.t = false;
+          MessageData msgData = datastore.find(key);
+          if (msgData != null) {
+            datastore.delete(msgData);
+            deletedUnread.t = MESSAGE_UNREAD.equals(msgData.status);
+            if (deletedUnread.t && msgData.countKey != null) {
+              addUnreadMessages(datastore, receiverId, -1);
+            }
+          }
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.deleteMessage", e);
+    }
+    if (deletedUnread.t && key.getParent() == null) {
+      uncountOldMessage(receiverId, id);
     }
   }
 
   /**
-   * Returns a list of messages to a particular user
+   * Returns one page of the messages to a particular user, newest first.
+   * The query needs a composite index on receiverId and -datestamp.
    * @param receiverId id of user receiving messages
-   * TODO: getMessagesCout(final String receiverId) awaiting to be implemented
-   */  @Override
-  public List<Message> getMessages(final String receiverId) {
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count the maximum number of messages
+   */
+  @Override
+  public MessageListResult getMessages(final String receiverId, String cursor, int count) {
     final List<Message> msgs = new ArrayList<Message>();
-    // if i try to run this in runjobwithretries it tells me can't run
-    // non-ancestor query as a transaction. ObjectifyStorageio has some samples
-    // of not using transactions (run with) so i grabbed
+    // Messages sent before the counters are not in the receiver's entity
+    // group, so this cannot be an ancestor query
     Objectify datastore = ObjectifyService.begin();
-    for (MessageData msgData : datastore.query(MessageData.class)
-        .filter("receiverId", receiverId)/*.order("-datestamp")*/) {
-      Message msg = new Message(msgData.id, msgData.senderId, msgData.receiverId,
-          msgData.message, msgData.status, msgData.datestamp);
-      msgs.add(msg);
+    Query<MessageData> query = datastore.query(MessageData.class)
+        .filter("receiverId", receiverId).order("-datestamp");
+    if (!startAtCursor(query, cursor)) {
+      return new MessageListResult(msgs, null);
     }
-    return msgs;
+    QueryResultIterator<MessageData> iterator = query.limit(count).iterator();
+    while (iterator.hasNext()) {
+      msgs.add(makeMessage(iterator.next()));
+    }
+    String nextCursor = null;
+    if (msgs.size() == count) {
+      nextCursor = iterator.getCursor().toWebSafeString();
+    }
+    return new MessageListResult(msgs, nextCursor);
   }
 
   /**
-   * Returns the message with a particular msgId
-   * @param msgId id of the message
-   */  @Override
-  public Message getMessage(final long msgId) {
-    final Result<Message> result = new Result<Message>();
-    // if i try to run this in runjobwithretries it tells me can't run
-    // non-ancestor query as a transaction. ObjectifyStorageio has some samples
-    // of not using transactions (run with) so i grabbed
+   * Returns the number of unread messages of a particular user. This is one
+   * get of the user's counter, except the first time it is asked for, when
+   * the unread messages sent before there were counters are added to it.
+   * @param receiverId id of user receiving messages
+   */
+  @Override
+  public int getUnreadMessageCount(final String receiverId) {
     Objectify datastore = ObjectifyService.begin();
-    for (MessageData msgData : datastore.query(MessageData.class)
-        .filter("id", msgId)/*.order("-datestamp")*/) {
-      Message msg = new Message(msgData.id, msgData.senderId, msgData.receiverId,
-          msgData.message, msgData.status, msgData.datestamp);
-      result.t = msg;
-      break;
+    MessageCountData countData = datastore.find(messageCountKey(receiverId));
+    if (countData != null && countData.oldMessagesCounted) {
+      return unreadMessages(countData);
+    }
+    // Messages sent since there are counters are counted as they are sent.
+    // The query may be behind, so the messages it finds are read again by
+    // key; a message read or deleted after that is in oldReadIds.
+    List<Key<MessageData>> oldKeys = new ArrayList<Key<MessageData>>();
+    for (Key<MessageData> key : datastore.query(MessageData.class)
+             .filter("receiverId", receiverId).filter("status", MESSAGE_UNREAD).fetchKeys()) {
+      if (key.getParent() == null) {
+        oldKeys.add(key);
+      }
+    }
+    final List<Long> oldUnreadIds = new ArrayList<Long>();
+    for (MessageData msgData : datastore.get(oldKeys).values()) {
+      if (MESSAGE_UNREAD.equals(msgData.status) && receiverId.equals(msgData.receiverId)) {
+        oldUnreadIds.add(msgData.id);
+      }
+    }
+    final Result<Integer> result = new Result<Integer>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          MessageCountData countData = findOrCreateMessageCount(datastore, receiverId);
+          // Another request may have counted them while the query ran
+          if (!countData.oldMessagesCounted) {
+            countData.oldUnreadIds = new ArrayList<Long>(oldUnreadIds);
+            countData.oldUnreadIds.removeAll(countData.oldReadIds);
+            countData.oldReadIds = new ArrayList<Long>();
+            countData.oldMessagesCounted = true;
+            datastore.put(countData);
+          }
+          result.t = unreadMessages(countData);
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          "error in galleryStorageIo.getUnreadMessageCount", e);
     }
     return result.t;
   }
 
-   /**
-    * Returns a list of messages to a particular user
-    * @param receiverId id of user receiving messages
-    * TODO: getMessagesCout(final String receiverId) awaiting to be implemented
-    */  @Override
-   public void readMessage(final long id) {
-     // if i try to run this in runjobwithretries it tells me can't run
-     // non-ancestor query as a transaction. ObjectifyStorageIo has some samples
-     // of not using transactions (run with) so i grabbed
-     Objectify datastore = ObjectifyService.begin();
-     MessageData msgData = datastore.get(msgKey(id));
-     if (msgData != null) {
-       msgData.status = "2"; // 2 means read already
-       datastore.put(msgData);
-     }
-   }
+  private static int unreadMessages(MessageCountData countData) {
+    return countData.unread + countData.oldUnreadIds.size();
+  }
+
+  /*
+   * Returns the receiver's counter, or a new one if there is none yet.
+   */
+  private MessageCountData findOrCreateMessageCount(Objectify datastore, String receiverId) {
+    MessageCountData countData = datastore.find(messageCountKey(receiverId));
+    if (countData == null) {
+      countData = new MessageCountData();
+      countData.userId = receiverId;
+    }
+    // Empty lists are not stored
+    if (countData.oldUnreadIds == null) {
+      countData.oldUnreadIds = new ArrayList<Long>();
+    }
+    if (countData.oldReadIds == null) {
+      countData.oldReadIds = new ArrayList<Long>();
+    }
+    return countData;
+  }
+
+  /*
+   * Adds delta to the receiver's unread counter, creating it if needed.
+   *
+   * Must be called in a job on the receiver's entity group.
+   */
+  private void addUnreadMessages(Objectify datastore, String receiverId, int delta) {
+    MessageCountData countData = findOrCreateMessageCount(datastore, receiverId);
+    countData.unread = Math.max(0, countData.unread + delta);
+    datastore.put(countData);
+  }
+
+  /*
+   * Takes an unread message sent before there were counters out of the
+   * receiver's counter, once it has been read or deleted. Such a message is
+   * in an entity group of its own, so this is a job of its own. It goes by
+   * id, so a message is taken out once whether or not it was counted yet.
+   */
+  private void uncountOldMessage(final String receiverId, final long id) {
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          MessageCountData countData = findOrCreateMessageCount(datastore, receiverId);
+          if (countData.oldMessagesCounted) {
+            if (countData.oldUnreadIds.remove(Long.valueOf(id))) {
+              datastore.put(countData);
+            }
+          } else if (!countData.oldReadIds.contains(id)) {
+            countData.oldReadIds.add(id);
+            datastore.put(countData);
+          }
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          "error in galleryStorageIo.uncountOldMessage", e);
+    }
+  }
+
+  private Message makeMessage(MessageData msgData) {
+    return new Message(msgData.id, msgData.senderId, msgData.receiverId,
+        msgData.message, msgData.status, msgData.datestamp);
+  }
+
+  /**
+   * Returns the message with a particular msgId
+   * @param receiverId id of user who received the message
+   * @param msgId id of the message
+   */
+  @Override
+  public Message getMessage(final String receiverId, final long msgId) {
+    Key<MessageData> key = findMessageKey(receiverId, msgId);
+    MessageData msgData = (key == null) ? null : ObjectifyService.begin().find(key);
+    return msgData == null ? null : makeMessage(msgData);
+  }
+
+  /**
+   * Marks a message as read
+   * @param receiverId id of user who received the message
+   * @param id id of the message
+   */
+  @Override
+  public void readMessage(final String receiverId, final long id) {
+    final Key<MessageData> key = findMessageKey(receiverId, id);
+    if (key == null) {
+      return;
+    }
+    final Result<Boolean> read = new Result<Boolean>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          read.t = false;
+          MessageData msgData = datastore.find(key);
+          // Only the request that changes the status lowers the counter
+          if (msgData != null && MESSAGE_UNREAD.equals(msgData.status)) {
+            msgData.status = MESSAGE_READ;
+            datastore.put(msgData);
+            read.t = true;
+            if (msgData.countKey != null) {
+              addUnreadMessages(datastore, receiverId, -1);
+            }
+          }
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, "error in galleryStorageIo.readMessage", e);
+    }
+    if (read.t && key.getParent() == null) {
+      uncountOldMessage(receiverId, id);
+    }
+  }
 
   /**
    * Call job.run() in a transaction and commit the transaction if no exceptions
@@ -6,6 +6,8 @@
 
 package com.google.appinventor.server.storage;
 
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.blobstore.BlobInfoFactory;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreInputStream;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
@@ -20,9 +22,14 @@ import com.google.appengine.api.memcache.Expiration;
 import com.google.appinventor.server.CrashReport;
 import com.google.appinventor.server.FileExporter;
 import com.google.appinventor.server.flags.Flag;
+import com.google.appinventor.server.storage.StoredData.ContentData;
+import com.google.appinventor.server.storage.StoredData.ContentRefData;
 import com.google.appinventor.server.storage.StoredData.CorruptionRecord;
+import com.google.appinventor.server.storage.StoredData.ExportJobData;
 import com.google.appinventor.server.storage.StoredData.FeedbackData;
 import com.google.appinventor.server.storage.StoredData.FileData;
+import com.google.appinventor.server.storage.StoredData.FileVersionContentData;
+import com.google.appinventor.server.storage.StoredData.FileVersionData;
 import com.google.appinventor.server.storage.StoredData.MotdData;
 import com.google.appinventor.server.storage.StoredData.NonceData;
 import com.google.appinventor.server.storage.StoredData.ProjectData;
@@ -34,6 +41,8 @@ import com.google.appinventor.server.storage.StoredData.WhiteListData;
 import com.google.appinventor.shared.rpc.BlocksTruncatedException;
 import com.google.appinventor.shared.rpc.Motd;
 import com.google.appinventor.shared.rpc.Nonce;
+import com.google.appinventor.shared.rpc.project.ExportAllProjectsStatus;
+import com.google.appinventor.shared.rpc.project.FileVersion;
 import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
@@ -45,16 +54,21 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Query;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 
 // GCS imports
+import com.google.appengine.tools.cloudstorage.GcsFileMetadata;
 import com.google.appengine.tools.cloudstorage.GcsFileOptions;
 import com.google.appengine.tools.cloudstorage.GcsFilename;
 import com.google.appengine.tools.cloudstorage.GcsInputChannel;
@@ -63,6 +77,7 @@ import com.google.appengine.tools.cloudstorage.GcsService;
 import com.google.appengine.tools.cloudstorage.GcsServiceFactory;
 import com.google.appengine.tools.cloudstorage.RetryParams;
 
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -70,10 +85,29 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.channels.Channels;
 import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -101,6 +135,14 @@ public class ObjectifyStorageIo implements  StorageIo {
   // TODO(user): need a way to modify this. Also, what is really a good value?
   private static final int MAX_JOB_RETRIES = 10;
 
+  // Bounds of the random wait before retrying a job: the first retry waits
+  // up to the base delay, and each one after that up to twice as long as the
+  // one before, up to the max delay.
+  private static final long JOB_RETRY_BASE_DELAY_MILLIS = 20;
+  private static final long JOB_RETRY_MAX_DELAY_MILLIS = 2000;
+
+  private final Random retryJitter = new Random();
+
   private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
 
   private final GcsService gcsService =
@@ -108,10 +150,58 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   private final String GCS_BUCKET_NAME = Flag.createFlag("gcs.bucket", "").get();
 
-  private static final long TWENTYFOURHOURS = 24*3600*1000; // 24 hours in milliseconds
+  // How often (in minutes) at most a version of a blocks or form file is
+  // added to its history. The value of this flag can be changed in
+  // appengine-web.xml.
+  @VisibleForTesting
+  static final Flag<Integer> versionIntervalMins = Flag.createFlag("version.interval.mins", 60);
+
+  // Number of versions kept in the history of a file. Older versions are
+  // deleted, except for snapshots that kept versions are deltas against.
+  private static final int MAX_FILE_VERSIONS = 50;
+
+  // Number of versions stored as deltas against a snapshot before the next
+  // version is stored as a new snapshot
+  private static final int MAX_DELTAS_PER_SNAPSHOT = 10;
+
+  // Versions whose encoded content is larger than this are stored in GCS
+  // rather than in their entity
+  private static final int MAX_VERSION_ENTITY_CONTENT = 512 * 1024;
+
+  // Maximum number of GCS calls made at the same time by bulk operations
+  private static final int MAX_PARALLEL_GCS_CALLS = 8;
+
+  // Most bytes of file content that uploadRawFilesForce puts into the
+  // datastore in one transaction, well under the datastore's limit
+  private static final int MAX_BATCH_INLINE_BYTES = 4 * 1024 * 1024;
+
+  // Size of the buffer in front of the archive written by an export job
+  private static final int EXPORT_ARCHIVE_BUFFER_SIZE = 1024 * 1024;
 
   private final boolean useGcs = Flag.createFlag("use.gcs", false).get();
 
+  // How long (in seconds) a bulk loaded copy of the whitelist is trusted
+  // before it is re-read from the datastore. The value of this flag can be
+  // changed in appengine-web.xml.
+  @VisibleForTesting
+  static final Flag<Integer> whiteListCacheSecs = Flag.createFlag("whitelist.cache.secs", 60);
+
+  // Whitelist answers are cached in memcache under one key per email,
+  // WHITELIST_CACHE_KEY_PREFIX + lower cased email.
+  private static final String WHITELIST_CACHE_KEY_PREFIX = "whitelist|emailLower|";
+
+  // Most answers kept in the per instance copy of the whitelist
+  private static final int WHITELIST_CACHE_SIZE = 10000;
+
+  // Per instance copy of the whitelist answers, keyed by lower cased email.
+  // checkWhiteList() is called on every authenticated RPC when the whitelist
+  // is in use, so we answer from this cache rather than memcache or the
+  // datastore. Two requests may fill the same entry; that is harmless.
+  private final Cache<String, Boolean> whiteList = CacheBuilder.newBuilder()
+      .maximumSize(WHITELIST_CACHE_SIZE)
+      .expireAfterWrite(whiteListCacheSecs.get(), TimeUnit.SECONDS)
+      .build();
+
 
   // Use this class to define the work of a job that can be retried. The
   // "datastore" argument to run() is the Objectify object for this job
@@ -144,6 +234,8 @@ public class ObjectifyStorageIo implements  StorageIo {
     ObjectifyService.register(ProjectData.class);
     ObjectifyService.register(UserProjectData.class);
     ObjectifyService.register(FileData.class);
+    ObjectifyService.register(FileVersionData.class);
+    ObjectifyService.register(FileVersionContentData.class);
     ObjectifyService.register(UserFileData.class);
     ObjectifyService.register(MotdData.class);
     ObjectifyService.register(RendezvousData.class);
@@ -151,6 +243,9 @@ public class ObjectifyStorageIo implements  StorageIo {
     ObjectifyService.register(FeedbackData.class);
     ObjectifyService.register(NonceData.class);
     ObjectifyService.register(CorruptionRecord.class);
+    ObjectifyService.register(ContentData.class);
+    ObjectifyService.register(ContentRefData.class);
+    ObjectifyService.register(ExportJobData.class);
   }
 
   ObjectifyStorageIo() {
@@ -200,6 +295,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           } else if (email != null && !email.equals(userData.email)) {
             userData.email = email;
             datastore.put(userData);
+            forgetUser(userData.id);
           }
           user.setUserEmail(userData.email);
           user.setUserName(userData.name);
@@ -222,6 +318,50 @@ public class ObjectifyStorageIo implements  StorageIo {
     return user;
   }
 
+  /*
+   * Users in memcache are taken from there, and the rest are read with one
+   * batch get and remembered for one minute, like getUser() does.
+   */
+  @Override
+  public Map<String, User> getUsers(Collection<String> userIds) {
+    Map<String, String> cachekeys = new HashMap<String, String>();
+    for (String userId : userIds) {
+      cachekeys.put(User.usercachekey + "|" + userId, userId);
+    }
+    Map<String, User> users = new HashMap<String, User>();
+    for (Map.Entry<String, Object> entry : memcache.getAll(cachekeys.keySet()).entrySet()) {
+      User tuser = (User) entry.getValue();
+      if (tuser.getUserTosAccepted() && tuser.getUserName() != null) {
+        users.put(cachekeys.get(entry.getKey()), tuser);
+      }
+    }
+    List<String> missing = new ArrayList<String>();
+    for (String userId : userIds) {
+      if (!users.containsKey(userId)) {
+        missing.add(userId);
+      }
+    }
+    if (missing.isEmpty()) {
+      return users;
+    }
+    Map<String, User> fetched = new HashMap<String, User>();
+    Map<String, UserData> userData = ObjectifyService.begin().get(UserData.class, missing);
+    for (String userId : missing) {
+      UserData data = userData.get(userId);
+      if (data == null) {
+        // getUser() creates the user
+        users.put(userId, getUser(userId));
+        continue;
+      }
+      User user = new User(data.id, data.email, data.name, data.link,
+          data.tosAccepted || !requireTos.get(), false, data.type, data.sessionid);
+      users.put(userId, user);
+      fetched.put(User.usercachekey + "|" + userId, user);
+    }
+    memcache.putAll(fetched, Expiration.byDeltaSeconds(60));
+    return users;
+  }
+
   private UserData createUser(Objectify datastore, String userId, String email) {
     UserData userData = new UserData();
     userData.id = userId;
@@ -232,6 +372,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     userData.type = User.USER;
     userData.link = "";
     datastore.put(userData);
+    forgetUser(userData.id);
     return userData;
   }
 
@@ -245,6 +386,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (userData != null) {
             userData.tosAccepted = true;
             datastore.put(userData);
+            forgetUser(userData.id);
           }
         }
       });
@@ -263,6 +405,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (userData != null) {
             userData.email = email;
             datastore.put(userData);
+            forgetUser(userData.id);
           }
         }
       });
@@ -281,6 +424,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (userData != null) {
             userData.name = name;
             datastore.put(userData);
+            forgetUser(userData.id);
           }
           // we need to change the memcache version of user
           User user = new User(userData.id,userData.email,name, userData.link, userData.tosAccepted,
@@ -305,6 +449,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (userData != null) {
             userData.link = link;
             datastore.put(userData);
+            forgetUser(userData.id);
           }
           // we need to change the memcache version of user
           User user = new User(userData.id,userData.email,userData.name,link,userData.tosAccepted,
@@ -329,6 +474,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (userData != null) {
             userData.sessionid = sessionId;
             datastore.put(userData);
+            forgetUser(userData.id);
           }
         }
       });
@@ -340,65 +486,32 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   @Override
   public String loadSettings(final String userId) {
-    final Result<String> settings = new Result<String>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          UserData userData = datastore.find(UserData.class, userId);
-          if (userData != null) {
-            settings.t = userData.settings;
-          } else {
-            settings.t = "";
-          }
-        }
-      });
+      UserData userData = findUser(userId);
+      return (userData != null) ? userData.settings : "";
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
-    return settings.t;
   }
 
   @Override
   public String getUserName(final String userId) {
-    final Result<String> name = new Result<String>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          UserData userData = datastore.find(UserData.class, userId);
-          if (userData != null) {
-            name.t = userData.name;
-          } else {
-            name.t = "unknown";
-          }
-        }
-      });
+      UserData userData = findUser(userId);
+      return (userData != null) ? userData.name : "unknown";
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
-    return name.t;
   }
 
   @Override
   public String getUserLink(final String userId) {
-    final Result<String> link = new Result<String>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          UserData userData = datastore.find(UserData.class, userId);
-          if (userData != null) {
-            link.t = userData.link;
-          } else {
-            link.t = "unknown";
-          }
-        }
-      });
+      UserData userData = findUser(userId);
+      return (userData != null) ? userData.link : "unknown";
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
-    return link.t;
   }
 
 
@@ -414,6 +527,7 @@ public class ObjectifyStorageIo implements  StorageIo {
             userData.settings = settings;
             userData.visited = new Date(); // Indicate that this person was active now
             datastore.put(userData);
+            forgetUser(userData.id);
           }
         }
       });
@@ -424,19 +538,54 @@ public class ObjectifyStorageIo implements  StorageIo {
   @Override
   public long createProject(final String userId, final Project project,
       final String projectSettings) {
-    final Result<Long> projectId = new Result<Long>();
-    final List<String> blobsToDelete = new ArrayList<String>();
+    // The project id is allocated before anything is stored, so that the
+    // files can be staged under their final names. Retrying the job below
+    // then never uploads them again.
+    final long projectId =
+        ObjectifyService.factory().allocateIds(ProjectData.class, 1).iterator().next().getId();
+    final Key<ProjectData> projectKey = projectKey(projectId);
     final List<FileData> addedFiles = new ArrayList<FileData>();
+    final ProjectManifest manifest = new ProjectManifest();
+    // content of the added files that go to the content store
+    final Map<String, byte[]> sharedContent = new HashMap<String, byte[]>();
 
     try {
-      // first job is on the project entity, creating the ProjectData object
-      // and the associated files.
+      stageProjectFiles(userId, projectKey, project, addedFiles, manifest, sharedContent);
+
+      // Reference (and if needed, upload) the content of the files that go
+      // to the content store, which also tells the name of the GCS object
+      // each of them reads. Each content is its own entity group, so they
+      // are done in parallel.
+      List<Callable<Void>> retains = new ArrayList<Callable<Void>>();
+      for (final FileData fd : addedFiles) {
+        if (fd.contentHash == null) {
+          continue;
+        }
+        final byte[] content = sharedContent.get(fd.fileName);
+        retains.add(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            fd.gcsName = retainContent(fd.contentHash, projectId, fd.fileName, content);
+            return null;
+          }
+        });
+      }
+      List<Exception> failures = runGcsCalls(retains);
+      if (!failures.isEmpty()) {
+        deleteStagedFiles(addedFiles);
+        releaseStagedContent(projectId, addedFiles);
+        throw CrashReport.createAndLogError(LOG, null,
+            collectUserProjectErrorInfo(userId, projectId), failures.get(0));
+      }
+
+      // first job is on the project entity. The files are already stored, so
+      // it only commits the ProjectData object and the associated FileData.
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) throws ObjectifyException {
           long date = System.currentTimeMillis();
           ProjectData pd = new ProjectData();
-          pd.id = null;  // let Objectify auto-generate the project id
+          pd.id = projectId;
           pd.dateCreated = date;
           pd.dateModified = date;
           pd.history = project.getProjectHistory();
@@ -445,64 +594,10 @@ public class ObjectifyStorageIo implements  StorageIo {
           pd.type = project.getProjectType();
           pd.galleryId = UserProject.NOTPUBLISHED;
           pd.attributionId = UserProject.FROMSCRATCH;
-          datastore.put(pd); // put the project in the db so that it gets assigned an id
-
-          assert pd.id != null;
-          projectId.t = pd.id;
-          // After the job commits projectId.t should end up with the last value
-          // we've gotten for pd.id (i.e. the one that committed if there
-          // was no error).
-          // Note that while we cannot expect to read back a value that we've
-          // written in this job, reading the assigned id from pd should work.
-
-          Key<ProjectData> projectKey = projectKey(projectId.t);
-          for (TextFile file : project.getSourceFiles()) {
-            try {
-              addedFiles.add(createRawFile(projectKey, FileData.RoleEnum.SOURCE,
-                  file.getFileName(), file.getContent().getBytes(DEFAULT_ENCODING)));
-            } catch (BlobWriteException e) {
-              rememberBlobsToDelete();
-              // Note that this makes the BlobWriteException fatal. The job will
-              // not be retried if we get this exception.
-              throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
-            } catch (IOException e) { // GCS throws this
-              throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
-            }
-          }
-          for (RawFile file : project.getRawSourceFiles()) {
-            try {
-              addedFiles.add(createRawFile(projectKey, FileData.RoleEnum.SOURCE, file.getFileName(),
-                  file.getContent()));
-            } catch (BlobWriteException e) {
-              rememberBlobsToDelete();
-              // Note that this makes the BlobWriteException fatal. The job will
-              // not be retried if we get this exception.
-              throw CrashReport.createAndLogError(LOG, null,
-                  collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
-            } catch (IOException e) {
-              throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
-            }
-          }
+          manifest.storeIn(pd);
+          datastore.put(pd);
           datastore.put(addedFiles);  // batch put
         }
-
-        @Override
-        public void onNonFatalError() {
-          rememberBlobsToDelete();
-        }
-
-        private void rememberBlobsToDelete() {
-          for (FileData addedFile : addedFiles) {
-            if (addedFile.isBlob && addedFile.blobstorePath != null) {
-              blobsToDelete.add(addedFile.blobstorePath);
-            }
-          }
-          // clear addedFiles in case we end up here more than once
-          addedFiles.clear();
-        }
       });
 
       // second job is on the user entity
@@ -510,32 +605,136 @@ public class ObjectifyStorageIo implements  StorageIo {
         @Override
         public void run(Objectify datastore) {
           UserProjectData upd = new UserProjectData();
-          upd.projectId = projectId.t;
+          upd.projectId = projectId;
           upd.settings = projectSettings;
           upd.state = UserProjectData.StateEnum.OPEN;
           upd.userKey = userKey(userId);
           datastore.put(upd);
+          forgetUserProjects(userId);
         }
       });
     } catch (ObjectifyException e) {
-      for (FileData addedFile : addedFiles) {
-        if (addedFile.isBlob && addedFile.blobstorePath != null) {
-          blobsToDelete.add(addedFile.blobstorePath);
+      deleteStagedFiles(addedFiles);
+      releaseStagedContent(projectId, addedFiles);
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    return projectId;
+  }
+
+  /*
+   * Stores the content of the files of a new project, before its ProjectData
+   * is committed, and adds their FileData and manifest entries (in the order
+   * of the project's files) to addedFiles and manifest. The content of files
+   * that go to the content store is added to sharedContent instead, to be
+   * referenced by the caller.
+   *
+   * With GCS the files are uploaded in parallel. The names of the uploaded
+   * files only depend on the project id and the file name, so an upload that
+   * is repeated replaces the earlier one. If any file cannot be stored, the
+   * ones that were are deleted and an error is thrown.
+   */
+  private void stageProjectFiles(final String userId, final Key<ProjectData> projectKey,
+      Project project, List<FileData> addedFiles, ProjectManifest manifest,
+      Map<String, byte[]> sharedContent) {
+    final List<String> fileNames = new ArrayList<String>();
+    final List<byte[]> contents = new ArrayList<byte[]>();
+    try {
+      for (TextFile file : project.getSourceFiles()) {
+        fileNames.add(file.getFileName());
+        contents.add(file.getContent().getBytes(DEFAULT_ENCODING));
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectKey.getId()), e);
+    }
+    for (RawFile file : project.getRawSourceFiles()) {
+      fileNames.add(file.getFileName());
+      contents.add(file.getContent());
+    }
+
+    final FileData[] staged = new FileData[fileNames.size()];
+    List<Callable<Void>> uploads = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < staged.length; i++) {
+      final int index = i;
+      uploads.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          staged[index] = createRawFile(projectKey, FileData.RoleEnum.SOURCE,
+              fileNames.get(index), contents.get(index));
+          return null;
         }
+      });
+    }
+    List<Exception> failures;
+    if (useGcs) {
+      failures = runGcsCalls(uploads);
+    } else {
+      // The legacy Blobstore uploads are kept on the request thread, and stop
+      // at the first failure.
+      failures = new ArrayList<Exception>();
+      for (Callable<Void> upload : uploads) {
+        try {
+          upload.call();
+        } catch (Exception e) {
+          failures.add(e);
+          break;
+        }
+      }
+    }
+
+    for (int i = 0; i < staged.length; i++) {
+      if (staged[i] != null) {
+        addedFiles.add(staged[i]);
       }
-      // clear addedFiles in case we end up here more than once
+    }
+    if (!failures.isEmpty()) {
+      deleteStagedFiles(addedFiles);
       addedFiles.clear();
       throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId.t), e);
-    } finally {
-      // Need to delete any orphaned blobs outside of the transaction to avoid multiple entity
-      // group errors. The lookup of the blob key seems to be the thing that
-      // triggers the error.
-      for (String blobToDelete: blobsToDelete) {
-        deleteBlobstoreFile(blobToDelete);
+          collectUserProjectErrorInfo(userId, projectKey.getId()), failures.get(0));
+    }
+    for (int i = 0; i < staged.length; i++) {
+      FileData fd = staged[i];
+      byte[] content = contents.get(i);
+      if (fd.contentHash != null) {
+        sharedContent.put(fd.fileName, content);
+      }
+      manifest.put(manifestEntry(fd, content.length, sha256(content)));
+    }
+  }
+
+  /*
+   * Deletes the Blobstore and GCS files stored for the given files of a
+   * project that was not created. Content store files are left alone, as
+   * they are shared.
+   */
+  private void deleteStagedFiles(List<FileData> stagedFiles) {
+    // Blobs are deleted outside of any job to avoid multiple entity group
+    // errors. The lookup of the blob key seems to be the thing that triggers
+    // the error.
+    List<String> gcsNames = new ArrayList<String>();
+    for (FileData fd : stagedFiles) {
+      if (fd.isBlob && fd.blobstorePath != null) {
+        deleteBlobstoreFile(fd.blobstorePath);
+      } else if (fd.isGCS && fd.contentHash == null) {
+        gcsNames.add(fd.gcsName);
+      }
+    }
+    deleteGcsFiles(gcsNames);
+  }
+
+  /*
+   * Drops the references to shared content taken for the given files of a
+   * project that was not created. Files whose content was not referenced
+   * have no gcsName yet.
+   */
+  private void releaseStagedContent(long projectId, List<FileData> stagedFiles) {
+    for (FileData fd : stagedFiles) {
+      if (fd.contentHash != null && fd.gcsName != null) {
+        releaseContent(fd.contentHash, projectId, fd.fileName);
       }
     }
-    return projectId.t;
   }
 
   /*
@@ -549,20 +748,31 @@ public class ObjectifyStorageIo implements  StorageIo {
     file.fileName = fileName;
     file.projectKey = projectKey;
     file.role = role;
-    if (useGCSforFile(fileName, content.length)) {
+    if (useContentStoreForFile(fileName, content.length)) {
+      // The content is referenced, and uploaded if needed, by the caller,
+      // which also sets the gcsName.
+      file.isGCS = true;
+      file.contentHash = sha256(content);
+      return file;
+    }
+    ContentCodec.Encoded encoded = ContentCodec.encode(fileName, content);
+    byte[] stored = encoded.bytes;
+    file.codec = encoded.codec;
+    if (useGCSforFile(fileName, stored.length)) {
       file.isGCS = true;
       file.gcsName = makeGCSfileName(fileName, projectKey.getId());
-      if (content.length > 0) { // If there is actual content
+      if (stored.length > 0) { // If there is actual content
         GcsOutputChannel outputChannel =
           gcsService.createOrReplace(new GcsFilename(GCS_BUCKET_NAME, file.gcsName), GcsFileOptions.getDefaultInstance());
-        outputChannel.write(ByteBuffer.wrap(content));
+        outputChannel.write(ByteBuffer.wrap(stored));
+        StorageMetrics.get().addGcsBytesWritten(stored.length);
         outputChannel.close();
       }
-    } else if (useBlobstoreForFile(fileName, content.length)) {
+    } else if (useBlobstoreForFile(fileName, stored.length)) {
       file.isBlob = true;
-      file.blobstorePath = uploadToBlobstore(content, makeBlobName(projectKey.getId(), fileName));
+      file.blobstorePath = uploadToBlobstore(stored, makeBlobName(projectKey.getId(), fileName));
     } else {
-      file.content = content;
+      file.content = stored;
     }
     return file;
   }
@@ -572,6 +782,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     // blobs associated with the project
     final List<String> blobPaths = new ArrayList<String>();
     final List<String> gcsPaths = new ArrayList<String>();
+    final List<FileData> sharedFiles = new ArrayList<FileData>();
     try {
       // first job deletes the UserProjectData in the user's entity group
       runJobWithRetries(new JobRetryHelper() {
@@ -580,6 +791,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           // delete the UserProjectData object
           Key<UserData> userKey = userKey(userId);
           datastore.delete(userProjectKey(userKey, projectId));
+          forgetUserProjects(userId);
           // delete any FileData objects associated with this project
         }
       });
@@ -590,16 +802,31 @@ public class ObjectifyStorageIo implements  StorageIo {
         public void run(Objectify datastore) {
           Key<ProjectData> projectKey = projectKey(projectId);
           Query<FileData> fdq = datastore.query(FileData.class).ancestor(projectKey);
+          gcsPaths.clear();
+          blobPaths.clear();
+          sharedFiles.clear();
           for (FileData fd: fdq) {
-            if (fd.isGCS) {
+            if (fd.contentHash != null) {
+              sharedFiles.add(fd);
+            } else if (fd.isGCS) {
               gcsPaths.add(fd.gcsName);
             } else if (fd.isBlob) {
               blobPaths.add(fd.blobstorePath);
             }
           }
           datastore.delete(fdq);
+          Query<FileVersionData> fvq = datastore.query(FileVersionData.class).ancestor(projectKey);
+          for (FileVersionData version : fvq) {
+            if (version.gcsName != null) {
+              gcsPaths.add(version.gcsName);
+            }
+          }
+          datastore.delete(fvq);
+          datastore.delete(datastore.query(FileVersionContentData.class).ancestor(projectKey)
+              .fetchKeys());
           // finally, delete the ProjectData object
           datastore.delete(projectKey);
+          forgetProject(projectId);
         }
       });
       // have to delete the blobs outside of the user and project jobs
@@ -607,12 +834,9 @@ public class ObjectifyStorageIo implements  StorageIo {
         deleteBlobstoreFile(blobPath);
       }
       // Now delete the gcs files
-      for (String gcsName: gcsPaths) {
-        try {
-          gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, gcsName));
-        } catch (IOException e) {
-          LOG.log(Level.WARNING, "Unable to delete " + gcsName + " from GCS while deleting project", e);
-        }
+      deleteGcsFiles(gcsPaths);
+      for (FileData fd : sharedFiles) {
+        releaseContent(fd.contentHash, projectId, fd.fileName);
       }
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
@@ -631,6 +855,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (projectData != null) {
             projectData.galleryId = galleryId;
             datastore.put(projectData);
+            forgetProject(projectId);
           }
         }
       });
@@ -648,6 +873,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (projectData != null) {
             projectData.attributionId = attributionId;
             datastore.put(projectData);
+            forgetProject(projectId);
           }
         }
       });
@@ -658,11 +884,16 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   @Override
   public List<Long> getProjects(final String userId) {
+    RequestCache cache = RequestCache.get();
+    if (cache != null && cache.userProjects.containsKey(userId)) {
+      return new ArrayList<Long>(cache.userProjects.get(userId));
+    }
     final List<Long> projects = new ArrayList<Long>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
+          projects.clear();
           Key<UserData> userKey = userKey(userId);
           for (UserProjectData upd : datastore.query(UserProjectData.class).ancestor(userKey)) {
             projects.add(upd.projectId);
@@ -672,7 +903,9 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
-
+    if (cache != null) {
+      cache.userProjects.put(userId, new ArrayList<Long>(projects));
+    }
     return projects;
   }
 
@@ -683,24 +916,13 @@ public class ObjectifyStorageIo implements  StorageIo {
           collectUserProjectErrorInfo(userId, projectId),
           new UnauthorizedAccessException(userId, projectId, null));
     }
-    final Result<String> settings = new Result<String>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            settings.t = pd.settings;
-          } else {
-            settings.t = "";
-          }
-        }
-      });
+      ProjectData pd = findProject(projectId);
+      return (pd != null) ? pd.settings : "";
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
-    return settings.t;
   }
 
   @Override
@@ -714,6 +936,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (pd != null) {
             pd.settings = settings;
             datastore.put(pd);
+            forgetProject(projectId);
           }
         }
       });
@@ -748,19 +971,9 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   @Override
   public UserProject getUserProject(final String userId, final long projectId) {
-    final Result<ProjectData> projectData = new Result<ProjectData>();
+    final ProjectData projectData;
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectData.t = pd;
-          } else {
-            projectData.t = null;
-          }
-        }
-      });
+      projectData = findProject(projectId);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
@@ -768,55 +981,68 @@ public class ObjectifyStorageIo implements  StorageIo {
     if (projectData == null) {
       return null;
     } else {
-      return new UserProject(projectId, projectData.t.name,
-          projectData.t.type, projectData.t.dateCreated,
-          projectData.t.dateModified, projectData.t.galleryId,
-          projectData.t.attributionId);
+      return new UserProject(projectId, projectData.name,
+          projectData.type, projectData.dateCreated,
+          projectData.dateModified, projectData.galleryId,
+          projectData.attributionId);
+    }
+  }
+
+  @Override
+  public List<UserProject> getUserProjects(final String userId, final List<Long> projectIds) {
+    // Read the projects that are not in the request cache with one batch get
+    RequestCache cache = RequestCache.get();
+    Map<Long, ProjectData> projects = new HashMap<Long, ProjectData>();
+    List<Long> toRead = new ArrayList<Long>();
+    for (long projectId : projectIds) {
+      if (cache != null && cache.projects.containsKey(projectId)) {
+        projects.put(projectId, cache.projects.get(projectId));
+      } else {
+        toRead.add(projectId);
+      }
     }
+    if (!toRead.isEmpty()) {
+      Map<Long, ProjectData> read = ObjectifyService.begin().get(ProjectData.class, toRead);
+      for (long projectId : toRead) {
+        projects.put(projectId, read.get(projectId));
+        if (cache != null) {
+          cache.projects.put(projectId, read.get(projectId));
+        }
+      }
+    }
+    List<UserProject> userProjects = new ArrayList<UserProject>(projectIds.size());
+    for (long projectId : projectIds) {
+      ProjectData projectData = projects.get(projectId);
+      if (projectData != null) {
+        userProjects.add(new UserProject(projectId, projectData.name,
+            projectData.type, projectData.dateCreated,
+            projectData.dateModified, projectData.galleryId,
+            projectData.attributionId));
+      }
+    }
+    return userProjects;
   }
 
   @Override
   public String getProjectName(final String userId, final long projectId) {
-    final Result<String> projectName = new Result<String>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectName.t = pd.name;
-          } else {
-            projectName.t = "";
-          }
-        }
-      });
+      ProjectData pd = findProject(projectId);
+      return (pd != null) ? pd.name : "";
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
-    return projectName.t;
   }
 
   @Override
   public long getProjectDateModified(final String userId, final long projectId) {
-    final Result<Long> modDate = new Result<Long>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            modDate.t = pd.dateModified;
-          } else {
-            modDate.t = Long.valueOf(0);
-          }
-        }
-      });
+      ProjectData pd = findProject(projectId);
+      return (pd != null) ? pd.dateModified : 0;
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
-    return modDate.t;
   }
 
   @Override
@@ -826,91 +1052,47 @@ public class ObjectifyStorageIo implements  StorageIo {
           collectUserProjectErrorInfo(userId, projectId),
           new UnauthorizedAccessException(userId, projectId, null));
     }
-    final Result<String> projectHistory = new Result<String>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectHistory.t = pd.history;
-          } else {
-            projectHistory.t = "";
-          }
-        }
-      });
+      ProjectData pd = findProject(projectId);
+      return (pd != null) ? pd.history : "";
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
-    return projectHistory.t;
   }
 
   // JIS XXX
 
   @Override
   public long getProjectDateCreated(final String userId, final long projectId) {
-    final Result<Long> dateCreated = new Result<Long>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            dateCreated.t = pd.dateCreated;
-          } else {
-            dateCreated.t = Long.valueOf(0);
-          }
-        }
-      });
+      ProjectData pd = findProject(projectId);
+      return (pd != null) ? pd.dateCreated : 0;
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
-    return dateCreated.t;
   }
 
   @Override
   public long getProjectGalleryId(String userId, final long projectId) {
-    final Result<Long> galleryId = new Result<Long>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            galleryId.t = pd.galleryId;
-          } else {
-            galleryId.t = Long.valueOf(0);
-          }
-        }
-      });
+      ProjectData pd = findProject(projectId);
+      return (pd != null) ? pd.galleryId : 0;
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG,
           null,"error in getProjectGalleryId", e);
     }
-    return galleryId.t;
   }
   @Override
   public long getProjectAttributionId(final long projectId) {
-    final Result<Long> attributionId = new Result<Long>();
     try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            attributionId.t = pd.attributionId;
-          } else {
-            attributionId.t = Long.valueOf(UserProject.FROMSCRATCH);
-          }
-        }
-      });
+      ProjectData pd = findProject(projectId);
+      return (pd != null) ? pd.attributionId : UserProject.FROMSCRATCH;
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           "error in getProjectAttributionId", e);
     }
-    return attributionId.t;
   }
 
   @Override
@@ -1142,8 +1324,13 @@ public class ObjectifyStorageIo implements  StorageIo {
       }
     }
     datastore.put(addedFiles); // batch put
-    if (changeModDate) {
-      updateProjectModDate(datastore, projectId);
+    List<ProjectManifest.Entry> addedEntries = new ArrayList<ProjectManifest.Entry>();
+    for (FileData fd : addedFiles) {
+      addedEntries.add(manifestEntry(fd, 0, null));
+    }
+    if (changeModDate || !addedEntries.isEmpty()) {
+      updateProjectFiles(datastore, projectId, changeModDate, addedEntries,
+          Collections.<String>emptyList());
     }
   }
 
@@ -1199,22 +1386,27 @@ public class ObjectifyStorageIo implements  StorageIo {
   private void removeFilesFromProject(Objectify datastore, long projectId,
       FileData.RoleEnum role, boolean changeModDate, String... fileNames) {
     Key<ProjectData> projectKey = projectKey(projectId);
-    List<Key<FileData>> filesToRemove = new ArrayList<Key<FileData>>();
+    List<Key<FileData>> fileKeys = new ArrayList<Key<FileData>>();
     for (String fileName : fileNames) {
-      FileData fd = datastore.find(projectFileKey(projectKey, fileName));
-      if (fd != null) {
-        if (fd.role.equals(role)) {
-          filesToRemove.add(projectFileKey(projectKey, fileName));
-        } else {
-          throw CrashReport.createAndLogError(LOG, null,
-              collectProjectErrorInfo(null, projectId, fileName),
-              new IllegalStateException("File role change is not supported"));
-        }
+      fileKeys.add(projectFileKey(projectKey, fileName));
+    }
+    List<Key<FileData>> filesToRemove = new ArrayList<Key<FileData>>();
+    List<String> removedFileNames = new ArrayList<String>();
+    for (Map.Entry<Key<FileData>, FileData> entry : datastore.get(fileKeys).entrySet()) {
+      FileData fd = entry.getValue();
+      if (fd.role.equals(role)) {
+        filesToRemove.add(entry.getKey());
+        removedFileNames.add(fd.fileName);
+      } else {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(null, projectId, fd.fileName),
+            new IllegalStateException("File role change is not supported"));
       }
     }
     datastore.delete(filesToRemove);  // batch delete
-    if (changeModDate) {
-      updateProjectModDate(datastore, projectId);
+    if (changeModDate || !removedFileNames.isEmpty()) {
+      updateProjectFiles(datastore, projectId, changeModDate,
+          Collections.<ProjectManifest.Entry>emptyList(), removedFileNames);
     }
   }
 
@@ -1225,19 +1417,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           collectUserProjectErrorInfo(userId, projectId),
           new UnauthorizedAccessException(userId, projectId, null));
     }
-    final Result<List<String>> result = new Result<List<String>>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          result.t = getProjectFiles(datastore, projectId, FileData.RoleEnum.SOURCE);
-        }
-      });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return result.t;
+    return listProjectFiles(userId, projectId, FileData.RoleEnum.SOURCE);
   }
 
   @Override
@@ -1247,32 +1427,45 @@ public class ObjectifyStorageIo implements  StorageIo {
          collectUserProjectErrorInfo(userId, projectId),
          new UnauthorizedAccessException(userId, projectId, null));
    }
-   final Result<List<String>> result = new Result<List<String>>();
-   try {
+   return listProjectFiles(userId, projectId, FileData.RoleEnum.TARGET);
+  }
+
+  /*
+   * Lists the files of the project with the given role from its manifest. A
+   * project without a manifest gets one here.
+   */
+  private List<String> listProjectFiles(String userId, final long projectId,
+      final FileData.RoleEnum role) {
+    try {
+      ProjectData pd = findProject(projectId);
+      if (pd == null) {
+        return new ArrayList<String>();
+      }
+      ProjectManifest manifest = ProjectManifest.of(pd);
+      if (manifest != null) {
+        return manifest.getFileNames(role);
+      }
+      final Result<List<String>> result = new Result<List<String>>();
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          result.t = getProjectFiles(datastore, projectId, FileData.RoleEnum.TARGET);
+          ProjectData pd = datastore.find(projectKey(projectId));
+          ProjectManifest manifest = loadManifest(datastore, pd);
+          if (!pd.hasManifest) {
+            manifest.storeIn(pd);
+            datastore.put(pd);
+            forgetProject(projectId);
+          }
+          result.t = manifest.getFileNames(role);
         }
       });
+      return result.t;
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
-    return result.t;
   }
 
-  private List<String> getProjectFiles(Objectify datastore, long projectId,
-                                       FileData.RoleEnum role) {
-    Key<ProjectData> projectKey = projectKey(projectId);
-    List<String> fileList = new ArrayList<String>();
-    for (FileData fd : datastore.query(FileData.class).ancestor(projectKey)) {
-      if (fd.role.equals(role)) {
-        fileList.add(fd.fileName);
-      }
-    }
-    return fileList;
-  }
 
   @Override
   public long uploadFile(final long projectId, final String fileName, final String userId,
@@ -1296,19 +1489,135 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
-  private long updateProjectModDate(Objectify datastore, long projectId) {
-    long modDate = System.currentTimeMillis();
-    ProjectData pd = datastore.find(projectKey(projectId));
-    if (pd != null) {
-      pd.dateModified = modDate;
-      datastore.put(pd);
-      return modDate;
+  /*
+   * Returns the user entity, or null if there is no such user. Within a
+   * request, an entity already read is reused.
+   */
+  @Nullable
+  private UserData findUser(final String userId) throws ObjectifyException {
+    RequestCache cache = RequestCache.get();
+    if (cache == null) {
+      final Result<UserData> userData = new Result<UserData>();
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          userData.t = datastore.find(userKey(userId));
+        }
+      });
+      return userData.t;
+    }
+    if (!cache.users.containsKey(userId)) {
+      cache.users.put(userId, ObjectifyService.begin().find(userKey(userId)));
+    }
+    return cache.users.get(userId);
+  }
+
+  // Must be called whenever a user entity is changed
+  private void forgetUser(String userId) {
+    RequestCache cache = RequestCache.get();
+    if (cache != null) {
+      cache.users.remove(userId);
+    }
+  }
+
+  /*
+   * Returns the project entity, or null if there is no such project. Within
+   * a request, an entity already read is reused, and a project is read
+   * outside of a transaction, as a get by key is consistent anyway.
+   */
+  @Nullable
+  private ProjectData findProject(final long projectId) throws ObjectifyException {
+    RequestCache cache = RequestCache.get();
+    if (cache == null) {
+      final Result<ProjectData> projectData = new Result<ProjectData>();
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          projectData.t = datastore.find(projectKey(projectId));
+        }
+      });
+      return projectData.t;
+    }
+    if (!cache.projects.containsKey(projectId)) {
+      cache.projects.put(projectId, ObjectifyService.begin().find(projectKey(projectId)));
+    }
+    return cache.projects.get(projectId);
+  }
+
+  // Must be called whenever a project entity is changed
+  private void forgetProject(long projectId) {
+    RequestCache cache = RequestCache.get();
+    if (cache != null) {
+      cache.projects.remove(projectId);
+    }
+  }
+
+  // Must be called whenever a project is added to or removed from a user
+  private void forgetUserProjects(String userId) {
+    RequestCache cache = RequestCache.get();
+    if (cache != null) {
+      cache.userProjects.remove(userId);
+    }
+  }
+
+  private long updateProjectModDate(Objectify datastore, long projectId,
+      ProjectManifest.Entry changedFile) {
+    return updateProjectFiles(datastore, projectId, true,
+        Collections.singletonList(changedFile), Collections.<String>emptyList());
+  }
+
+  /*
+   * Records the changed and removed files in the manifest of the project, and
+   * updates its modification date if changeModDate is true. This must be
+   * called from the job that changes the files. Returns the modification date
+   * of the project.
+   */
+  private long updateProjectFiles(Objectify datastore, long projectId, boolean changeModDate,
+      Collection<ProjectManifest.Entry> changedFiles, Collection<String> removedFiles) {
+    long modDate = System.currentTimeMillis();
+    ProjectData pd = datastore.find(projectKey(projectId));
+    if (pd != null) {
+      if (!changedFiles.isEmpty() || !removedFiles.isEmpty()) {
+        ProjectManifest manifest = loadManifest(datastore, pd);
+        for (ProjectManifest.Entry entry : changedFiles) {
+          manifest.put(entry);
+        }
+        for (String fileName : removedFiles) {
+          manifest.remove(fileName);
+        }
+        manifest.storeIn(pd);
+      }
+      if (changeModDate) {
+        pd.dateModified = modDate;
+      }
+      datastore.put(pd);
+      forgetProject(projectId);
+      return pd.dateModified;
     } else {
       throw CrashReport.createAndLogError(LOG, null, null,
           new IllegalArgumentException("project " + projectId + " doesn't exist"));
     }
   }
 
+  /*
+   * Returns the file manifest of the project. If the project has none yet, it
+   * is built from the project's files as they were when the job started.
+   */
+  private ProjectManifest loadManifest(Objectify datastore, ProjectData pd) {
+    ProjectManifest manifest = ProjectManifest.of(pd);
+    if (manifest == null) {
+      manifest = ProjectManifest.of(datastore.query(FileData.class).ancestor(projectKey(pd.id)));
+    }
+    return manifest;
+  }
+
+  // Makes the manifest entry of a file whose content was just written
+  private static ProjectManifest.Entry manifestEntry(FileData fd, long size,
+      @Nullable String hash) {
+    return new ProjectManifest.Entry(fd.fileName, fd.role, size, hash,
+        System.currentTimeMillis());
+  }
+
   @Override
   public long uploadRawFileForce(final long projectId, final String fileName, final String userId,
       final byte[] content) {
@@ -1320,17 +1629,131 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
+  @Override
+  public long uploadRawFileForce(final long projectId, final String fileName,
+      final String userId, InputStream content) throws IOException {
+    // Only files that go to GCS or the Blobstore whatever their size are
+    // streamed. Anything else may end up in the datastore and has to be read
+    // in first; the caller limits how large it can be.
+    boolean toGcs = useGCSforFile(fileName, 0);
+    if (!toGcs && !useBlobstoreForFile(fileName, 0)) {
+      return uploadRawFileForce(projectId, fileName, userId, ByteStreams.toByteArray(content));
+    }
+    DigestInputStream digestContent = new DigestInputStream(content, newSha256Digest());
+    CountingInputStream countedContent = new CountingInputStream(digestContent);
+    final String gcsName;
+    final String blobstorePath;
+    if (toGcs) {
+      gcsName = makeGCSfileName(fileName, projectId);
+      blobstorePath = null;
+      // The new content only replaces the old one when the channel is
+      // closed, so if reading the content fails part way the channel is
+      // abandoned without closing it and the old file is left alone. GCS
+      // discards the unfinished upload; there is no partial object to delete.
+      GcsOutputChannel outputChannel =
+          gcsService.createOrReplace(new GcsFilename(GCS_BUCKET_NAME, gcsName),
+              GcsFileOptions.getDefaultInstance());
+      ByteStreams.copy(countedContent, Channels.newOutputStream(outputChannel));
+      outputChannel.close();
+      StorageMetrics.get().addGcsBytesWritten(countedContent.getCount());
+    } else {
+      gcsName = null;
+      blobstorePath = streamToBlobstore(countedContent, makeBlobName(projectId, fileName));
+    }
+    final long size = countedContent.getCount();
+    final String hash = toHex(digestContent.getMessageDigest().digest());
+
+    final Result<Long> modTime = new Result<Long>();
+    final Result<String> oldBlobstorePath = new Result<String>();
+    final Result<String> oldContentHash = new Result<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          FileData fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
+          Preconditions.checkState(fd != null);
+          if (fd.isBlob) {
+            // mark the old blobstore blob for deletion
+            oldBlobstorePath.t = fd.blobstorePath;
+          }
+          oldContentHash.t = fd.contentHash;
+          fd.isGCS = gcsName != null;
+          fd.gcsName = gcsName;
+          fd.isBlob = blobstorePath != null;
+          fd.blobstorePath = blobstorePath;
+          fd.contentHash = null;
+          fd.codec = null;
+          // If the content was previously stored in the datastore, clear it out.
+          fd.content = null;
+          datastore.put(fd);
+          modTime.t = updateProjectModDate(datastore, projectId, manifestEntry(fd, size, hash));
+        }
+      });
+      if (oldBlobstorePath.t != null) {
+        deleteBlobstoreFile(oldBlobstorePath.t);
+      }
+    } catch (ObjectifyException e) {
+      if (blobstorePath != null) {
+        // Nothing refers to the new blob
+        deleteBlobstoreFile(blobstorePath);
+      }
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    if (oldContentHash.t != null) {
+      releaseContent(oldContentHash.t, projectId, fileName);
+    }
+    return modTime.t;
+  }
+
   @Override
   public long uploadRawFile(final long projectId, final String fileName, final String userId,
       final boolean force, final byte[] content) throws BlocksTruncatedException {
+    return uploadRawFile(projectId, fileName, userId, force, content, null,
+        versionIntervalMins.get() * 60 * 1000L);
+  }
+
+  /*
+   * Uploads a file as described by uploadRawFile(). If replacedContent is
+   * given, it is added to the history of the file's versions in the same
+   * job, ahead of the new content.
+   */
+  private long uploadRawFile(final long projectId, final String fileName, final String userId,
+      final boolean force, final byte[] content, @Nullable byte[] replacedContent,
+      final long versionInterval) throws BlocksTruncatedException {
+    if (useContentStoreForFile(fileName, content.length)) {
+      return uploadSharedRawFile(projectId, fileName, userId, content);
+    }
     final Result<Long> modTime = new Result<Long>();
-    final boolean useBlobstore = useBlobstoreForFile(fileName, content.length);
-    final boolean useGCS = useGCSforFile(fileName, content.length);
+    // Where the file goes depends on its size once encoded
+    final ContentCodec.Encoded encoded = ContentCodec.encode(fileName, content);
+    final byte[] stored = encoded.bytes;
+    final boolean useBlobstore = useBlobstoreForFile(fileName, stored.length);
+    final boolean useGCS = useGCSforFile(fileName, stored.length);
     final Result<String> oldBlobstorePath = new Result<String>();
-    final boolean considerBackup = (useGcs?((fileName.contains("src/") && fileName.endsWith(".blk")) // AI1 Blocks Files
-        || (fileName.contains("src/") && fileName.endsWith(".bky")) // Blockly files
-        || (fileName.contains("src/") && fileName.endsWith(".scm"))) // Form Definitions
-      :false);
+    // Prepared before the job, so that the job does not wait on GCS
+    final List<PendingVersion> pendingVersions = new ArrayList<PendingVersion>();
+    if (isVersionedFile(fileName)) {
+      try {
+        if (replacedContent != null) {
+          PendingVersion replacedVersion =
+              prepareFileVersion(projectId, fileName, replacedContent, 0);
+          if (replacedVersion != null) {
+            pendingVersions.add(replacedVersion);
+          }
+        }
+        PendingVersion newVersion =
+            prepareFileVersion(projectId, fileName, content, versionInterval);
+        if (newVersion != null) {
+          pendingVersions.add(newVersion);
+        }
+      } catch (IOException e) {
+        // Losing a version is no reason to lose the save
+        CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fileName + "(version)"), e);
+      }
+    }
+    final List<String> prunedVersionGcsNames = new ArrayList<String>();
 
     try {
       runJobWithRetries(new JobRetryHelper() {
@@ -1358,14 +1781,16 @@ public class ObjectifyStorageIo implements  StorageIo {
             // mark the old blobstore blob for deletion
            oldBlobstorePath.t = fd.blobstorePath;
           }
+          fd.codec = encoded.codec;
           if (useGCS) {
             fd.isGCS = true;
             fd.gcsName = makeGCSfileName(fileName, projectId);
             try {
-              if (content.length > 0) { // If there is actual content
+              if (stored.length > 0) { // If there is actual content
                 GcsOutputChannel outputChannel =
                   gcsService.createOrReplace(new GcsFilename(GCS_BUCKET_NAME, fd.gcsName), GcsFileOptions.getDefaultInstance());
-                outputChannel.write(ByteBuffer.wrap(content));
+                outputChannel.write(ByteBuffer.wrap(stored));
+                StorageMetrics.get().addGcsBytesWritten(stored.length);
                 outputChannel.close();
               }
             } catch (IOException e) {
@@ -1378,7 +1803,7 @@ public class ObjectifyStorageIo implements  StorageIo {
             fd.blobstorePath = null;
           } else if (useBlobstore) {
             try {
-              fd.blobstorePath = uploadToBlobstore(content, makeBlobName(projectId, fileName));
+              fd.blobstorePath = uploadToBlobstore(stored, makeBlobName(projectId, fileName));
             } catch (BlobWriteException e) {
               // Note that this makes the BlobWriteException fatal. The job will
               // not be retried if we get this exception.
@@ -1407,25 +1832,24 @@ public class ObjectifyStorageIo implements  StorageIo {
             // contents from the Blobstore.
             fd.isBlob = false;
             fd.blobstorePath = null;
-            fd.content = content;
+            fd.content = stored;
           }
-          if (considerBackup) {
-            if ((fd.lastBackup + TWENTYFOURHOURS) < System.currentTimeMillis()) {
-              try {
-                String gcsName = makeGCSfileName(fileName + "." + formattedTime() + ".backup", projectId);
-                GcsOutputChannel outputChannel =
-                    gcsService.createOrReplace((new GcsFilename(GCS_BUCKET_NAME, gcsName)), GcsFileOptions.getDefaultInstance());
-                outputChannel.write(ByteBuffer.wrap(content));
-                outputChannel.close();
-                fd.lastBackup = System.currentTimeMillis();
-              } catch (IOException e) {
-                throw CrashReport.createAndLogError(LOG, null,
-                    collectProjectErrorInfo(userId, projectId, fileName + "(backup)"), e);
-              }
+          prunedVersionGcsNames.clear();
+          for (PendingVersion pending : pendingVersions) {
+            pending.used = null;
+          }
+          if (!pendingVersions.isEmpty()
+              && (fd.lastBackup + versionInterval) <= System.currentTimeMillis()) {
+            List<FileVersionData> versions = findFileVersions(datastore, projectId, fileName);
+            for (PendingVersion pending : pendingVersions) {
+              addFileVersion(datastore, projectId, fileName, versions, pending,
+                  prunedVersionGcsNames);
             }
+            fd.lastBackup = System.currentTimeMillis();
           }
           datastore.put(fd);
-          modTime.t = updateProjectModDate(datastore, projectId);
+          modTime.t = updateProjectModDate(datastore, projectId,
+              manifestEntry(fd, content.length, sha256(content)));
         }
 
         @Override
@@ -1442,7 +1866,15 @@ public class ObjectifyStorageIo implements  StorageIo {
       if (oldBlobstorePath.t != null) {
         deleteBlobstoreFile(oldBlobstorePath.t);
       }
+      for (PendingVersion pending : pendingVersions) {
+        prunedVersionGcsNames.addAll(pending.unusedGcsNames());
+      }
+      deleteGcsFiles(prunedVersionGcsNames);
     } catch (ObjectifyException e) {
+      for (PendingVersion pending : pendingVersions) {
+        pending.used = null;
+        deleteGcsFiles(pending.unusedGcsNames());
+      }
       if (e.getMessage().startsWith("Blocks")) { // Convert Exception
         throw new BlocksTruncatedException();
       }
@@ -1482,6 +1914,7 @@ public class ObjectifyStorageIo implements  StorageIo {
       blobstoreOutputStream.flush();
       blobstoreOutputStream.close();
       blobstoreWriteChannel.closeFinally();
+      StorageMetrics.get().addBlobstoreBytesWritten(content.length);
     } catch (IOException e) {
       throw new BlobWriteException(e, "Error writing blob with name " + name);
     } catch (Exception e) {
@@ -1491,6 +1924,41 @@ public class ObjectifyStorageIo implements  StorageIo {
     return blobstoreFile.getFullPath();
   }
 
+  /*
+   * Writes the content to a new Blob file as it is read, and returns the
+   * path of the file. If reading the content fails, the file written so far
+   * is finalized, so that it can be deleted, and deleted.
+   */
+  private String streamToBlobstore(InputStream content, String name) throws IOException {
+    // Create a new Blob file with generic mime-type "application/octet-stream"
+    AppEngineFile blobstoreFile = fileService.createNewBlobFile("application/octet-stream", name);
+    FileWriteChannel blobstoreWriteChannel = fileService.openWriteChannel(blobstoreFile, true);
+    long size;
+    try {
+      size = ByteStreams.copy(content, Channels.newOutputStream(blobstoreWriteChannel));
+    } catch (IOException e) {
+      discardBlobstoreFile(blobstoreFile, blobstoreWriteChannel);
+      throw e;
+    } catch (RuntimeException e) {
+      discardBlobstoreFile(blobstoreFile, blobstoreWriteChannel);
+      throw e;
+    }
+    blobstoreWriteChannel.closeFinally();
+    StorageMetrics.get().addBlobstoreBytesWritten(size);
+    return blobstoreFile.getFullPath();
+  }
+
+  private void discardBlobstoreFile(AppEngineFile blobstoreFile,
+      FileWriteChannel blobstoreWriteChannel) {
+    try {
+      blobstoreWriteChannel.closeFinally();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to finalize blob " + blobstoreFile.getFullPath(), e);
+      return;
+    }
+    deleteBlobstoreFile(blobstoreFile.getFullPath());
+  }
+
   @VisibleForTesting
   boolean useBlobstoreForFile(String fileName, int length) {
     if (useGcs)
@@ -1522,156 +1990,1336 @@ public class ObjectifyStorageIo implements  StorageIo {
     return false;
   }
 
+  // Whether a history of versions of the file is kept (see addFileVersion)
+  private boolean isVersionedFile(String fileName) {
+    return fileName.contains("src/")
+        && (fileName.endsWith(".blk")      // AI1 Blocks Files
+            || fileName.endsWith(".bky")   // Blockly files
+            || fileName.endsWith(".scm")); // Form Definitions
+  }
+
   // Make a GCS file name
   String makeGCSfileName(String fileName, long projectId) {
     return (projectId + "/" + fileName);
   }
 
+  // Assets are kept in the content store, so that copies of a project (and
+  // projects made from the same template or gallery app) share them.
+  @VisibleForTesting
+  boolean useContentStoreForFile(String fileName, int length) {
+    return useGCSforFile(fileName, length) && fileName.contains("assets/");
+  }
+
+  // Make the GCS file name of content in the content store. Each upload of
+  // the content gets a new name.
+  String makeContentGCSfileName(String contentHash) {
+    return "content/" + contentHash + "/" + UUID.randomUUID();
+  }
+
+  // The GCS file name of stored content. Content stored before names were
+  // made per upload has no gcsName.
+  private static String contentGCSfileName(ContentData cd) {
+    return cd.gcsName != null ? cd.gcsName : "content/" + cd.id;
+  }
+
+  // Make the GCS file name of the archive written by a user's export job
+  String makeExportGCSfileName(String userId) {
+    return "export/" + userId + "/all-projects.zip";
+  }
+
+  @Override
+  public long deleteFile(final String userId, final long projectId, final String fileName) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final Result<Long> modTime = new Result<Long>();
+    final Result<String> oldBlobstorePath = new Result<String>();
+    final Result<String> oldgcsName = new Result<String>();
+    final Result<String> oldContentHash = new Result<String>();
+    final List<String> versionGcsNames = new ArrayList<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          versionGcsNames.clear();
+          deleteFileVersions(datastore, projectId, fileName, versionGcsNames);
+          Key<FileData> fileKey = projectFileKey(projectKey(projectId), fileName);
+          FileData fileData = datastore.find(fileKey);
+          if (fileData != null) {
+            oldBlobstorePath.t = fileData.blobstorePath;
+            oldContentHash.t = fileData.contentHash;
+            if (fileData.isGCS && fileData.contentHash == null) {
+              oldgcsName.t = fileData.gcsName;
+            }
+          }
+          datastore.delete(fileKey);
+          modTime.t = updateProjectFiles(datastore, projectId, true,
+              Collections.<ProjectManifest.Entry>emptyList(), Collections.singletonList(fileName));
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    if (oldBlobstorePath.t != null) {
+      deleteBlobstoreFile(oldBlobstorePath.t);
+    }
+    if (oldgcsName.t != null) {
+      try {
+        gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, oldgcsName.t));
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to delete " + oldgcsName + " from GCS.", e);
+      }
+    }
+    deleteGcsFiles(versionGcsNames);
+    if (oldContentHash.t != null) {
+      releaseContent(oldContentHash.t, projectId, fileName);
+    }
+    return (modTime.t == null) ? 0 : modTime.t;
+  }
+
+  @Override
+  public long deleteFiles(final String userId, final long projectId,
+      final List<String> fileNames) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final Result<Long> modTime = new Result<Long>();
+    final List<String> oldBlobstorePaths = new ArrayList<String>();
+    final List<String> oldGcsNames = new ArrayList<String>();
+    final List<FileData> oldSharedFiles = new ArrayList<FileData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          oldBlobstorePaths.clear();
+          oldGcsNames.clear();
+          oldSharedFiles.clear();
+          Key<ProjectData> projectKey = projectKey(projectId);
+          List<Key<FileData>> fileKeys = new ArrayList<Key<FileData>>();
+          for (String fileName : fileNames) {
+            fileKeys.add(projectFileKey(projectKey, fileName));
+            deleteFileVersions(datastore, projectId, fileName, oldGcsNames);
+          }
+          for (FileData fd : datastore.get(fileKeys).values()) {  // batch get
+            if (fd.contentHash != null) {
+              oldSharedFiles.add(fd);
+            } else if (fd.isGCS) {
+              oldGcsNames.add(fd.gcsName);
+            } else if (fd.isBlob) {
+              oldBlobstorePaths.add(fd.blobstorePath);
+            }
+          }
+          datastore.delete(fileKeys);  // batch delete
+          modTime.t = updateProjectFiles(datastore, projectId, true,
+              Collections.<ProjectManifest.Entry>emptyList(), fileNames);
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    for (String blobPath : oldBlobstorePaths) {
+      deleteBlobstoreFile(blobPath);
+    }
+    deleteGcsFiles(oldGcsNames);
+    for (FileData fd : oldSharedFiles) {
+      releaseContent(fd.contentHash, projectId, fd.fileName);
+    }
+    return modTime.t;
+  }
+
+  @Override
+  public long uploadRawFilesForce(final long projectId, final String userId,
+      Map<String, byte[]> contents) {
+    long modDate = 0;
+    // Files stored in the GCS or the datastore are written together. Any
+    // other file needs more than a content write and is uploaded by itself.
+    final Map<String, byte[]> batched = new HashMap<String, byte[]>();
+    final Map<String, ContentCodec.Encoded> encodedFiles =
+        new HashMap<String, ContentCodec.Encoded>();
+    for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+      String fileName = entry.getKey();
+      byte[] content = entry.getValue();
+      ContentCodec.Encoded encoded = ContentCodec.encode(fileName, content);
+      if (useContentStoreForFile(fileName, content.length)
+          || useBlobstoreForFile(fileName, encoded.bytes.length)
+          || isVersionedFile(fileName)) {
+        modDate = uploadRawFileForce(projectId, fileName, userId, content);
+      } else {
+        batched.put(fileName, content);
+        encodedFiles.put(fileName, encoded);
+      }
+    }
+    if (batched.isEmpty()) {
+      return modDate;
+    }
+
+    // Write the GCS content before the transaction. An object only replaces
+    // the previous one when it is closed, and FileData already points at it.
+    List<Callable<Void>> writes = new ArrayList<Callable<Void>>();
+    for (Map.Entry<String, ContentCodec.Encoded> entry : encodedFiles.entrySet()) {
+      final byte[] stored = entry.getValue().bytes;
+      if (useGCSforFile(entry.getKey(), stored.length) && stored.length > 0) {
+        final String gcsName = makeGCSfileName(entry.getKey(), projectId);
+        writes.add(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            GcsOutputChannel outputChannel =
+                gcsService.createOrReplace(new GcsFilename(GCS_BUCKET_NAME, gcsName),
+                    GcsFileOptions.getDefaultInstance());
+            outputChannel.write(ByteBuffer.wrap(stored));
+            StorageMetrics.get().addGcsBytesWritten(stored.length);
+            outputChannel.close();
+            return null;
+          }
+        });
+      }
+    }
+    List<Exception> failures = runGcsCalls(writes);
+    if (!failures.isEmpty()) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), failures.get(0));
+    }
+
+    // The content kept in the datastore is written in chunks, so that no
+    // transaction goes over the datastore's size limit
+    List<Map<String, byte[]>> chunks = new ArrayList<Map<String, byte[]>>();
+    Map<String, byte[]> chunk = new HashMap<String, byte[]>();
+    int chunkBytes = 0;
+    for (Map.Entry<String, byte[]> entry : batched.entrySet()) {
+      byte[] stored = encodedFiles.get(entry.getKey()).bytes;
+      int inlineBytes = useGCSforFile(entry.getKey(), stored.length) ? 0 : stored.length;
+      if (!chunk.isEmpty() && chunkBytes + inlineBytes > MAX_BATCH_INLINE_BYTES) {
+        chunks.add(chunk);
+        chunk = new HashMap<String, byte[]>();
+        chunkBytes = 0;
+      }
+      chunk.put(entry.getKey(), entry.getValue());
+      chunkBytes += inlineBytes;
+    }
+    chunks.add(chunk);
+    for (Map<String, byte[]> chunkContents : chunks) {
+      modDate = putBatchedFiles(projectId, userId, chunkContents, encodedFiles);
+    }
+    return modDate;
+  }
+
+  /*
+   * Points the FileData of each of the given files at its new content, in
+   * one job. Content that goes to GCS must already have been written.
+   */
+  private long putBatchedFiles(final long projectId, final String userId,
+      final Map<String, byte[]> batched, final Map<String, ContentCodec.Encoded> encodedFiles) {
+    final Result<Long> modTime = new Result<Long>();
+    final List<String> oldBlobstorePaths = new ArrayList<String>();
+    final List<String> oldGcsNames = new ArrayList<String>();
+    final List<FileData> oldSharedFiles = new ArrayList<FileData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          oldBlobstorePaths.clear();
+          oldGcsNames.clear();
+          oldSharedFiles.clear();
+          Key<ProjectData> projectKey = projectKey(projectId);
+          List<Key<FileData>> fileKeys = new ArrayList<Key<FileData>>();
+          for (String fileName : batched.keySet()) {
+            fileKeys.add(projectFileKey(projectKey, fileName));
+          }
+          Map<Key<FileData>, FileData> files = datastore.get(fileKeys);  // batch get
+          List<ProjectManifest.Entry> changedEntries = new ArrayList<ProjectManifest.Entry>();
+          for (Key<FileData> fileKey : fileKeys) {
+            FileData fd = files.get(fileKey);
+            Preconditions.checkState(fd != null);
+            byte[] content = batched.get(fd.fileName);
+            ContentCodec.Encoded encoded = encodedFiles.get(fd.fileName);
+            if (fd.isBlob) {
+              oldBlobstorePaths.add(fd.blobstorePath);
+            }
+            if (fd.contentHash != null) {
+              oldSharedFiles.add(fd);
+            }
+            fd.codec = encoded.codec;
+            if (useGCSforFile(fd.fileName, encoded.bytes.length)) {
+              fd.isGCS = true;
+              fd.gcsName = makeGCSfileName(fd.fileName, projectId);
+              fd.content = null;
+            } else {
+              if (fd.isGCS && fd.contentHash == null) {
+                oldGcsNames.add(fd.gcsName);
+              }
+              fd.isGCS = false;
+              fd.gcsName = null;
+              fd.content = encoded.bytes;
+            }
+            fd.contentHash = null;
+            fd.isBlob = false;
+            fd.blobstorePath = null;
+            changedEntries.add(manifestEntry(fd, content.length, sha256(content)));
+          }
+          datastore.put(files.values());  // batch put
+          modTime.t = updateProjectFiles(datastore, projectId, true, changedEntries,
+              Collections.<String>emptyList());
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    for (String blobPath : oldBlobstorePaths) {
+      deleteBlobstoreFile(blobPath);
+    }
+    deleteGcsFiles(oldGcsNames);
+    for (FileData fd : oldSharedFiles) {
+      releaseContent(fd.contentHash, projectId, fd.fileName);
+    }
+    return modTime.t;
+  }
+
+  /*
+   * Deletes the given GCS files in parallel. Failures are only logged.
+   */
+  private void deleteGcsFiles(List<String> gcsNames) {
+    List<Callable<Void>> deletes = new ArrayList<Callable<Void>>();
+    for (final String gcsName : gcsNames) {
+      deletes.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          try {
+            gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, gcsName));
+          } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to delete " + gcsName + " from GCS.", e);
+          }
+          return null;
+        }
+      });
+    }
+    runGcsCalls(deletes);
+  }
+
+  /*
+   * Runs the given GCS calls in parallel, on threads tied to the current
+   * request, and waits for all of them to finish. Returns the exceptions
+   * thrown by the calls that failed.
+   */
+  private List<Exception> runGcsCalls(List<Callable<Void>> calls) {
+    List<Exception> failures = new ArrayList<Exception>();
+    if (calls.size() <= 1) {
+      for (Callable<Void> call : calls) {
+        try {
+          call.call();
+        } catch (Exception e) {
+          failures.add(e);
+        }
+      }
+      return failures;
+    }
+    // The calls are counted under the StorageIo method that makes them
+    List<Callable<Void>> countedCalls = new ArrayList<Callable<Void>>();
+    for (Callable<Void> call : calls) {
+      countedCalls.add(StorageMetrics.inCurrentOperation(call));
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(calls.size(), MAX_PARALLEL_GCS_CALLS),
+            ThreadManager.currentRequestThreadFactory());
+    try {
+      for (Future<Void> future : executor.invokeAll(countedCalls)) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          failures.add(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failures.add(e);
+    } finally {
+      executor.shutdown();
+    }
+    return failures;
+  }
+
+  @Override
+  public Map<String, String> getSharedContentIds(final String userId, final long projectId) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final Map<String, String> contentIds = new HashMap<String, String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          contentIds.clear();
+          for (FileData fd : datastore.query(FileData.class).ancestor(projectKey(projectId))) {
+            if (fd.role == FileData.RoleEnum.SOURCE && fd.contentHash != null) {
+              contentIds.put(fd.fileName, fd.contentHash);
+            }
+          }
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    return contentIds;
+  }
+
+  @Override
+  public long addSharedSourceFilesToProject(final String userId, final long projectId,
+      final Map<String, String> contentIds) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    // Reference the content first, so that it is never missing while a file uses it.
+    final Map<String, String> gcsNames = new HashMap<String, String>();
+    for (Map.Entry<String, String> entry : contentIds.entrySet()) {
+      try {
+        gcsNames.put(entry.getKey(),
+            retainContent(entry.getValue(), projectId, entry.getKey(), null));
+      } catch (IOException e) {
+        releaseSharedContent(projectId, contentIds, gcsNames.keySet());
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, entry.getKey()), e);
+      }
+    }
+    final Result<Long> modTime = new Result<Long>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          Key<ProjectData> projectKey = projectKey(projectId);
+          List<FileData> addedFiles = new ArrayList<FileData>();
+          List<ProjectManifest.Entry> addedEntries = new ArrayList<ProjectManifest.Entry>();
+          for (Map.Entry<String, String> entry : contentIds.entrySet()) {
+            FileData fd = createProjectFile(datastore, projectKey, FileData.RoleEnum.SOURCE,
+                entry.getKey());
+            if (fd != null) {
+              fd.isGCS = true;
+              fd.contentHash = entry.getValue();
+              fd.gcsName = gcsNames.get(entry.getKey());
+              addedFiles.add(fd);
+              addedEntries.add(manifestEntry(fd, ProjectManifest.UNKNOWN_SIZE, fd.contentHash));
+            }
+          }
+          datastore.put(addedFiles); // batch put
+          modTime.t = updateProjectFiles(datastore, projectId, true, addedEntries,
+              Collections.<String>emptyList());
+        }
+      });
+    } catch (ObjectifyException e) {
+      releaseSharedContent(projectId, contentIds, gcsNames.keySet());
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    return modTime.t;
+  }
+
+  /*
+   * Drops the references taken for the given files of a project whose files
+   * were not added after all.
+   */
+  private void releaseSharedContent(long projectId, Map<String, String> contentIds,
+      Collection<String> fileNames) {
+    for (String fileName : fileNames) {
+      releaseContent(contentIds.get(fileName), projectId, fileName);
+    }
+  }
+
+  /*
+   * Uploads the content of a file that goes to the content store. The new
+   * content is referenced before the file is changed to use it, and the old
+   * content released afterwards.
+   */
+  private long uploadSharedRawFile(final long projectId, final String fileName,
+      final String userId, byte[] content) {
+    final String contentHash = sha256(content);
+    final String gcsName;
+    try {
+      gcsName = retainContent(contentHash, projectId, fileName, content);
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    final Result<Long> modTime = new Result<Long>();
+    final Result<String> oldBlobstorePath = new Result<String>();
+    final Result<String> oldgcsName = new Result<String>();
+    final Result<String> oldContentHash = new Result<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          FileData fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
+          Preconditions.checkState(fd != null);
+          oldBlobstorePath.t = fd.isBlob ? fd.blobstorePath : null;
+          oldgcsName.t = (fd.isGCS && fd.contentHash == null) ? fd.gcsName : null;
+          oldContentHash.t = fd.contentHash;
+          fd.isGCS = true;
+          fd.contentHash = contentHash;
+          fd.gcsName = gcsName;
+          fd.codec = null;
+          // If the content was previously stored in the datastore or blobstore, clear it out.
+          fd.content = null;
+          fd.isBlob = false;
+          fd.blobstorePath = null;
+          datastore.put(fd);
+          modTime.t = updateProjectModDate(datastore, projectId,
+              manifestEntry(fd, content.length, contentHash));
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    if (oldBlobstorePath.t != null) {
+      deleteBlobstoreFile(oldBlobstorePath.t);
+    }
+    if (oldgcsName.t != null) {
+      try {
+        gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, oldgcsName.t));
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to delete " + oldgcsName.t + " from GCS.", e);
+      }
+    }
+    // The file keeps its reference if the content did not change
+    if (oldContentHash.t != null && !oldContentHash.t.equals(contentHash)) {
+      releaseContent(oldContentHash.t, projectId, fileName);
+    }
+    return modTime.t;
+  }
+
+  /*
+   * Records that the given project file uses the content with the given
+   * hash, and returns the name of the GCS file that holds the content. If
+   * the content is not stored, it is uploaded to a new GCS file first, which
+   * requires the content to be given. The reference is only committed once
+   * the upload is done.
+   */
+  private String retainContent(final String contentHash, long projectId, String fileName,
+      @Nullable byte[] content) throws IOException {
+    final Key<ContentData> contentKey = new Key<ContentData>(ContentData.class, contentHash);
+    final ContentRefData ref = new ContentRefData();
+    ref.id = contentRefId(projectId, fileName);
+    ref.contentKey = contentKey;
+    final Result<String> gcsName = new Result<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          gcsName.t = null;
+          ContentData cd = datastore.find(contentKey);
+          if (cd != null) {
+            retainStoredContent(datastore, cd, ref);
+            gcsName.t = contentGCSfileName(cd);
+          }
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, "content " + contentHash, e);
+    }
+    if (gcsName.t != null) {
+      return gcsName.t;
+    }
+
+    if (content == null) {
+      throw new IOException("Shared content " + contentHash + " no longer exists");
+    }
+    final String uploadedName = makeContentGCSfileName(contentHash);
+    GcsOutputChannel outputChannel = gcsService.createOrReplace(
+        new GcsFilename(GCS_BUCKET_NAME, uploadedName), GcsFileOptions.getDefaultInstance());
+    outputChannel.write(ByteBuffer.wrap(content));
+    StorageMetrics.get().addGcsBytesWritten(content.length);
+    outputChannel.close();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          ContentData cd = datastore.find(contentKey);
+          if (cd == null) {
+            cd = new ContentData();
+            cd.id = contentHash;
+            cd.gcsName = uploadedName;
+            datastore.put(cd);
+            datastore.put(ref);
+          } else {
+            // Someone else stored the same content in the meantime
+            retainStoredContent(datastore, cd, ref);
+          }
+          gcsName.t = contentGCSfileName(cd);
+        }
+      });
+    } catch (ObjectifyException e) {
+      deleteGcsFiles(Collections.singletonList(uploadedName));
+      throw CrashReport.createAndLogError(LOG, null, "content " + contentHash, e);
+    }
+    if (!gcsName.t.equals(uploadedName)) {
+      deleteGcsFiles(Collections.singletonList(uploadedName));
+    }
+    return gcsName.t;
+  }
+
+  /*
+   * Adds a reference to content that is stored. Content that is waiting to
+   * be deleted is still in GCS, as the GCS file is only deleted after the
+   * ContentData, so it is simply kept.
+   */
+  private static void retainStoredContent(Objectify datastore, ContentData cd,
+      ContentRefData ref) {
+    if (cd.pendingDelete) {
+      cd.pendingDelete = false;
+      datastore.put(cd);
+    }
+    datastore.put(ref);
+  }
+
+  /*
+   * Records that the given project file no longer uses the content with the
+   * given hash, and deletes the content if nothing else uses it. Failures
+   * are only logged: at worst the content is kept when it is not needed.
+   *
+   * The content is first marked as pending deletion along with removing the
+   * last reference. A second transaction deletes the ContentData only if the
+   * mark is still there and nothing has referenced the content since, and
+   * the GCS file is deleted after that. A file that uses the same content
+   * afterwards uploads it to a new GCS file, so it cannot lose it to this
+   * delete.
+   */
+  private void releaseContent(final String contentHash, long projectId, String fileName) {
+    final Key<ContentData> contentKey = new Key<ContentData>(ContentData.class, contentHash);
+    final Key<ContentRefData> refKey =
+        new Key<ContentRefData>(contentKey, ContentRefData.class, contentRefId(projectId, fileName));
+    final Result<Boolean> unused = new Result<Boolean>();
+    final Result<String> deletedName = new Result<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          datastore.delete(refKey);
+          // The query still sees the reference deleted above, as it runs in
+          // the same transaction.
+          unused.t = true;
+          for (Key<ContentRefData> key :
+                   datastore.query(ContentRefData.class).ancestor(contentKey).limit(2).fetchKeys()) {
+            if (!key.equals(refKey)) {
+              unused.t = false;
+            }
+          }
+          ContentData cd = datastore.find(contentKey);
+          if (unused.t && cd != null) {
+            cd.pendingDelete = true;
+            datastore.put(cd);
+          }
+        }
+      });
+      if (!unused.t) {
+        return;
+      }
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          deletedName.t = null;
+          ContentData cd = datastore.find(contentKey);
+          if (cd != null && cd.pendingDelete
+              && datastore.query(ContentRefData.class).ancestor(contentKey).limit(1)
+                  .count() == 0) {
+            datastore.delete(cd);
+            deletedName.t = contentGCSfileName(cd);
+          }
+        }
+      });
+    } catch (ObjectifyException e) {
+      LOG.log(Level.WARNING, "Unable to release content " + contentHash, e);
+      return;
+    }
+    if (deletedName.t != null) {
+      try {
+        gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, deletedName.t));
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to delete content " + contentHash + " from GCS.", e);
+      }
+    }
+  }
+
+  private static String contentRefId(long projectId, String fileName) {
+    return projectId + "/" + fileName;
+  }
+
+  @VisibleForTesting
+  static String sha256(byte[] content) {
+    return toHex(newSha256Digest().digest(content));
+  }
+
+  private static MessageDigest newSha256Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] digest) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  // TODO(user) - just use "UTF-8" (instead of having an encoding argument),
+  // which will never cause UnsupportedEncodingException. (Here and in other
+  // methods with the encoding arg.
+  @Override
+  public String downloadFile(final String userId, final long projectId, final String fileName,
+      final String encoding) {
+    try {
+      return new String(downloadRawFile(userId, projectId, fileName), encoding);
+    } catch (UnsupportedEncodingException e) {
+      throw CrashReport.createAndLogError(LOG, null, "Unsupported file content encoding, "
+          + collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+  }
+
+  @Override
+  public void recordCorruption(String userId, long projectId, String fileId, String message) {
+    Objectify datastore = ObjectifyService.begin();
+    final CorruptionRecord data = new CorruptionRecord();
+    data.timestamp = new Date();
+    data.id = null;
+    data.userId = userId;
+    data.fileId = fileId;
+    data.projectId = projectId;
+    data.message = message;
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+          @Override
+          public void run(Objectify datastore) {
+            datastore.put(data);
+          }
+        });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, null, e);
+    }
+  }
+
+  @Override
+  public byte[] downloadRawFile(final String userId, final long projectId, final String fileName) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final Result<FileData> fd = new Result<FileData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          Key<FileData> fileKey = projectFileKey(projectKey(projectId), fileName);
+          fd.t = datastore.find(fileKey);
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    // read the blob/GCS File outside of the job
+    return readFileContent(userId, projectId, fileName, fd.t);
+  }
+
+  @Override
+  public List<byte[]> downloadRawFiles(final String userId, final long projectId,
+      final List<String> fileNames) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final List<Key<FileData>> fileKeys = new ArrayList<Key<FileData>>();
+    for (String fileName : fileNames) {
+      fileKeys.add(projectFileKey(projectKey(projectId), fileName));
+    }
+    final Result<Map<Key<FileData>, FileData>> fds = new Result<Map<Key<FileData>, FileData>>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          fds.t = datastore.get(fileKeys);  // batch get
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    // read the blob/GCS files outside of the job, in parallel
+    final byte[][] contents = new byte[fileNames.size()][];
+    List<Callable<Void>> reads = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < fileNames.size(); i++) {
+      final int index = i;
+      final String fileName = fileNames.get(i);
+      final FileData fileData = fds.t.get(fileKeys.get(i));
+      if (fileData != null && (fileData.isGCS || fileData.isBlob)) {
+        reads.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            contents[index] = readFileContent(userId, projectId, fileName, fileData);
+            return null;
+          }
+        });
+      } else {
+        contents[index] = readFileContent(userId, projectId, fileName, fileData);
+      }
+    }
+    List<Exception> failures = runGcsCalls(reads);
+    if (!failures.isEmpty()) {
+      // readFileContent has already logged its failures
+      Exception e = failures.get(0);
+      throw (e instanceof RuntimeException) ? (RuntimeException) e
+          : CrashReport.createAndLogError(LOG, null,
+              collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    return Arrays.asList(contents);
+  }
+
+  /*
+   * Returns the decoded content of a project file, reading it from GCS or
+   * the blobstore if it is stored there.
+   */
+  private byte[] readFileContent(String userId, long projectId, String fileName,
+      FileData fileData) {
+    if (fileData == null) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName),
+          new FileNotFoundException("No data for " + fileName));
+    }
+    byte[] content;
+    if (fileData.isGCS) {     // It's in the Cloud Store
+      try {
+        GcsFilename gcsFileName = new GcsFilename(GCS_BUCKET_NAME, fileData.gcsName);
+        int bytesRead = 0;
+        int fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
+        ByteBuffer resultBuffer = ByteBuffer.allocate(fileSize);
+        GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
+        try {
+          while (bytesRead < fileSize) {
+            bytesRead += readChannel.read(resultBuffer);
+            if (bytesRead < fileSize) {
+              LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
+            }
+          }
+        } finally {
+          readChannel.close();
+        }
+        StorageMetrics.get().addGcsBytesRead(fileSize);
+        content = resultBuffer.array();
+      } catch (IOException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+    } else if (fileData.isBlob) {
+      try {
+        content = getBlobstoreBytes(fileData.blobstorePath);
+      } catch (BlobReadException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+    } else {
+      if (fileData.content == null) {
+        content = new byte[0];
+      } else {
+        content = fileData.content;
+      }
+    }
+    try {
+      return ContentCodec.decode(fileData.codec, content);
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+  }
+
+  @Override
+  public RawFileSource openRawFile(final String userId, final long projectId,
+      final String fileName) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final Result<FileData> fd = new Result<FileData>();
+    ProjectData pd;
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          fd.t = datastore.find(projectFileKey(projectKey(projectId), fileName));
+        }
+      });
+      pd = findProject(projectId);
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    final FileData fileData = fd.t;
+    if (fileData == null) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName),
+          new FileNotFoundException("No data for " + fileName));
+    }
+
+    // The content hash makes the best ETag. Files outside the content store
+    // usually have one in the project manifest.
+    String eTag = fileData.contentHash;
+    if (eTag == null && pd != null) {
+      ProjectManifest manifest = ProjectManifest.of(pd);
+      ProjectManifest.Entry entry = (manifest == null) ? null : manifest.get(fileName);
+      if (entry != null) {
+        eTag = entry.hash;
+      }
+    }
+
+    // Only the length is read here; the content is read outside of the job
+    // when the source is opened. The length of encoded content is not known
+    // without decoding it, so such files are read in full.
+    try {
+      if (fileData.codec != null) {
+        final byte[] content = downloadRawFile(userId, projectId, fileName);
+        if (eTag == null) {
+          eTag = sha256(content);
+        }
+        return new RawFileSource(fileName, content.length, eTag) {
+          @Override
+          public InputStream open(long offset) {
+            int start = (int) Math.min(offset, content.length);
+            return new ByteArrayInputStream(content, start, content.length - start);
+          }
+        };
+      } else if (fileData.isGCS) {
+        final GcsFilename gcsFileName = new GcsFilename(GCS_BUCKET_NAME, fileData.gcsName);
+        GcsFileMetadata metadata = gcsService.getMetadata(gcsFileName);
+        if (metadata == null) {
+          throw new FileNotFoundException("No GCS file " + fileData.gcsName);
+        }
+        return new RawFileSource(fileName, metadata.getLength(), eTag) {
+          @Override
+          public InputStream open(long offset) throws IOException {
+            return Channels.newInputStream(gcsService.openReadChannel(gcsFileName, offset));
+          }
+        };
+      } else if (fileData.isBlob) {
+        final BlobKey blobKey = fileService.getBlobKey(new AppEngineFile(fileData.blobstorePath));
+        if (blobKey == null) {
+          throw new BlobReadException("getBlobKey() returned null for " + fileData.blobstorePath);
+        }
+        // Every upload makes a new blob, so its key identifies the content
+        if (eTag == null) {
+          eTag = blobKey.getKeyString();
+        }
+        long length = new BlobInfoFactory().loadBlobInfo(blobKey).getSize();
+        return new RawFileSource(fileName, length, eTag) {
+          @Override
+          public InputStream open(long offset) throws IOException {
+            return new BlobstoreInputStream(blobKey, offset);
+          }
+        };
+      } else {
+        final byte[] content = (fileData.content == null) ? new byte[0] : fileData.content;
+        if (eTag == null) {
+          eTag = sha256(content);
+        }
+        return new RawFileSource(fileName, content.length, eTag) {
+          @Override
+          public InputStream open(long offset) {
+            int start = (int) Math.min(offset, content.length);
+            return new ByteArrayInputStream(content, start, content.length - start);
+          }
+        };
+      }
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+  }
+
+  @Override
+  public List<FileVersion> getFileVersions(final String userId, final long projectId,
+      final String fileName) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final List<FileVersion> versions = new ArrayList<FileVersion>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          versions.clear();
+          for (FileVersionData version : findFileVersions(datastore, projectId, fileName)) {
+            versions.add(new FileVersion(version.id, version.date, version.size));
+          }
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    return versions;
+  }
+
   @Override
-  public long deleteFile(final String userId, final long projectId, final String fileName) {
+  public byte[] downloadFileVersion(final String userId, final long projectId,
+      final String fileName, final long versionId) {
     if (!getProjects(userId).contains(projectId)) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId),
           new UnauthorizedAccessException(userId, projectId, null));
     }
-    final Result<Long> modTime = new Result<Long>();
-    final Result<String> oldBlobstorePath = new Result<String>();
-    final Result<String> oldgcsName = new Result<String>();
+    final Result<FileVersionData> version = new Result<FileVersionData>();
+    final Result<FileVersionData> snapshot = new Result<FileVersionData>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          Key<FileData> fileKey = projectFileKey(projectKey(projectId), fileName);
-          FileData fileData = datastore.find(fileKey);
-          if (fileData != null) {
-            oldBlobstorePath.t = fileData.blobstorePath;
-            if (fileData.isGCS) {
-              oldgcsName.t = fileData.gcsName;
-            }
-          }
-          datastore.delete(fileKey);
-          modTime.t = updateProjectModDate(datastore, projectId);
+          Key<ProjectData> projectKey = projectKey(projectId);
+          version.t = datastore.find(fileVersionKey(projectKey, versionId));
+          snapshot.t = (version.t == null || version.t.snapshotId == null) ? null
+              : datastore.find(fileVersionKey(projectKey, version.t.snapshotId));
         }
       });
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
-    if (oldBlobstorePath.t != null) {
-      deleteBlobstoreFile(oldBlobstorePath.t);
-    }
-    if (oldgcsName.t != null) {
-      try {
-        gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, oldgcsName.t));
-      } catch (IOException e) {
-        LOG.log(Level.WARNING, "Unable to delete " + oldgcsName + " from GCS.", e);
+    try {
+      if (version.t == null || !version.t.fileName.equals(fileName)) {
+        throw new FileNotFoundException("No version " + versionId + " of " + fileName);
+      }
+      if (version.t.snapshotId != null && snapshot.t == null) {
+        throw new FileNotFoundException("No snapshot " + version.t.snapshotId + " of " + fileName);
       }
+      return readFileVersion(version.t, snapshot.t);
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
     }
-    return (modTime.t == null) ? 0 : modTime.t;
   }
 
-  // TODO(user) - just use "UTF-8" (instead of having an encoding argument),
-  // which will never cause UnsupportedEncodingException. (Here and in other
-  // methods with the encoding arg.
   @Override
-  public String downloadFile(final String userId, final long projectId, final String fileName,
-      final String encoding) {
+  public long restoreFileVersion(final String userId, final long projectId,
+      final String fileName, final long versionId) {
+    byte[] restored = downloadFileVersion(userId, projectId, fileName, versionId);
+    // Keep the content being replaced, so that the restore can be undone
+    byte[] current = downloadRawFile(userId, projectId, fileName);
     try {
-      return new String(downloadRawFile(userId, projectId, fileName), encoding);
-    } catch (UnsupportedEncodingException e) {
-      throw CrashReport.createAndLogError(LOG, null, "Unsupported file content encoding, "
-          + collectProjectErrorInfo(userId, projectId, fileName), e);
+      return uploadRawFile(projectId, fileName, userId, true, restored, current, 0);
+    } catch (BlocksTruncatedException e) {
+      // Won't get here, exception isn't thrown when force is true
+      return 0;
     }
   }
 
-  @Override
-  public void recordCorruption(String userId, long projectId, String fileId, String message) {
-    Objectify datastore = ObjectifyService.begin();
-    final CorruptionRecord data = new CorruptionRecord();
-    data.timestamp = new Date();
-    data.id = null;
-    data.userId = userId;
-    data.fileId = fileId;
-    data.projectId = projectId;
-    data.message = message;
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-          @Override
-          public void run(Objectify datastore) {
-            datastore.put(data);
-          }
-        });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null, null, e);
+  // The encoded content of a version that is about to be added
+  private static class StoredVersion {
+    final String codec;
+    // The content, or null if it was written to GCS under gcsName
+    @Nullable final byte[] content;
+    @Nullable final String gcsName;
+
+    StoredVersion(String codec, @Nullable byte[] content, @Nullable String gcsName) {
+      this.codec = codec;
+      this.content = content;
+      this.gcsName = gcsName;
     }
   }
 
-  @Override
-  public byte[] downloadRawFile(final String userId, final long projectId, final String fileName) {
-    if (!getProjects(userId).contains(projectId)) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId),
-          new UnauthorizedAccessException(userId, projectId, null));
-    }
-    final Result<byte[]> result = new Result<byte[]>();
-    final Result<FileData> fd = new Result<FileData>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          Key<FileData> fileKey = projectFileKey(projectKey(projectId), fileName);
-          fd.t = datastore.find(fileKey);
+  /*
+   * A version of a file made ready by prepareFileVersion() to be added by
+   * addFileVersion(). Content too large for an entity is written to GCS
+   * when the version is prepared, under a name that does not change when the
+   * job adding the version is retried.
+   */
+  private static class PendingVersion {
+    final String contentHash;
+    final int size;
+    // The content as a snapshot, and as a delta against the snapshot baseId
+    // if that is much smaller. Either is null if it cannot be kept.
+    @Nullable StoredVersion snapshot;
+    @Nullable Long baseId;
+    @Nullable StoredVersion delta;
+    // Which of the two the last run of the job used, if any
+    @Nullable StoredVersion used;
+
+    PendingVersion(String contentHash, int size) {
+      this.contentHash = contentHash;
+      this.size = size;
+    }
+
+    // The GCS files written for the version that it does not use
+    List<String> unusedGcsNames() {
+      List<String> gcsNames = new ArrayList<String>();
+      for (StoredVersion stored : Arrays.asList(snapshot, delta)) {
+        if (stored != null && stored != used && stored.gcsName != null) {
+          gcsNames.add(stored.gcsName);
         }
-      });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+      return gcsNames;
     }
-    // read the blob/GCS File outside of the job
-    FileData fileData = fd.t;
-    if (fileData != null) {
-      if (fileData.isGCS) {     // It's in the Cloud Store
-        try {
-          GcsFilename gcsFileName = new GcsFilename(GCS_BUCKET_NAME, fileData.gcsName);
-          int bytesRead = 0;
-          int fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
-          ByteBuffer resultBuffer = ByteBuffer.allocate(fileSize);
-          GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
-          try {
-            while (bytesRead < fileSize) {
-              bytesRead += readChannel.read(resultBuffer);
-              if (bytesRead < fileSize) {
-                LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
-              }
-            }
-          } finally {
-            readChannel.close();
-          }
-          result.t = resultBuffer.array();
-        } catch (IOException e) {
-          throw CrashReport.createAndLogError(LOG, null,
-              collectProjectErrorInfo(userId, projectId, fileName), e);
+  }
+
+  /*
+   * Prepares the given content of a file to be added to the history of its
+   * versions, if a version is due, meaning the last one was taken at least
+   * versionInterval ago, and the content differs from the newest version.
+   * The snapshot a delta would be against is read, and content too large for
+   * an entity is written to GCS. This is done outside of any job, so that the
+   * job that adds the version does not wait on GCS. Returns null if no
+   * version is to be added.
+   */
+  @Nullable
+  private PendingVersion prepareFileVersion(long projectId, String fileName, byte[] content,
+      long versionInterval) throws IOException {
+    Objectify datastore = ObjectifyService.begin();
+    FileData fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
+    if (fd == null || fd.lastBackup + versionInterval > System.currentTimeMillis()) {
+      return null;
+    }
+    List<FileVersionData> versions = findFileVersions(datastore, projectId, fileName);
+    PendingVersion pending = new PendingVersion(sha256(content), content.length);
+    if (!versions.isEmpty() && pending.contentHash.equals(versions.get(0).contentHash)) {
+      return null;              // Nothing changed since the last version
+    }
+    ContentCodec.Encoded encoded = ContentCodec.compress(content);
+    FileVersionData snapshot = deltaBase(versions);
+    ContentCodec.Encoded encodedDelta = null;
+    if (snapshot != null) {
+      try {
+        byte[] delta = ContentDelta.diff(readFileVersion(snapshot, null), content);
+        encodedDelta = ContentCodec.compress(delta);
+      } catch (IOException e) {
+        // The version is stored as a snapshot instead
+        LOG.log(Level.WARNING, "Unable to read snapshot " + snapshot.id + " of " + fileName, e);
+      }
+    }
+    pending.snapshot = storeVersionContent(projectId, fileName, encoded);
+    if (encodedDelta != null && encodedDelta.bytes.length < encoded.bytes.length / 2) {
+      pending.baseId = snapshot.id;
+      try {
+        pending.delta = storeVersionContent(projectId, fileName, encodedDelta);
+      } catch (IOException e) {
+        deleteGcsFiles(pending.unusedGcsNames());
+        throw e;
+      }
+    }
+    return pending;
+  }
+
+  /*
+   * Returns the encoded content of a version as it is to be stored, writing
+   * it to GCS first if it is too large for an entity. Returns null if it is
+   * too large and GCS is not in use.
+   */
+  @Nullable
+  private StoredVersion storeVersionContent(long projectId, String fileName,
+      ContentCodec.Encoded encoded) throws IOException {
+    if (encoded.bytes.length <= MAX_VERSION_ENTITY_CONTENT) {
+      return new StoredVersion(encoded.codec, encoded.bytes, null);
+    }
+    if (!useGcs) {
+      LOG.log(Level.WARNING, "Version of " + fileName + " in project " + projectId
+          + " is too large to keep without GCS.");
+      return null;
+    }
+    String gcsName = makeGCSfileName(fileName + ".version." + UUID.randomUUID(), projectId);
+    GcsOutputChannel outputChannel =
+        gcsService.createOrReplace(new GcsFilename(GCS_BUCKET_NAME, gcsName),
+            GcsFileOptions.getDefaultInstance());
+    outputChannel.write(ByteBuffer.wrap(encoded.bytes));
+    StorageMetrics.get().addGcsBytesWritten(encoded.bytes.length);
+    outputChannel.close();
+    return new StoredVersion(encoded.codec, null, gcsName);
+  }
+
+  /*
+   * Adds a version prepared by prepareFileVersion() to the history of the
+   * file, unless its content is that of the newest version already. The
+   * version is stored as a delta if the snapshot the delta was made against
+   * is still the one to use, and as a snapshot otherwise. versions are the
+   * versions of the file read in the job, newest first; the new version is
+   * added to them. Versions past the ones kept are deleted; the GCS files of
+   * deleted versions are added to prunedGcsNames for the caller to delete
+   * outside of the job.
+   *
+   * Must be called in a job on the project's entity group.
+   */
+  private void addFileVersion(Objectify datastore, long projectId, String fileName,
+      List<FileVersionData> versions, PendingVersion pending, List<String> prunedGcsNames) {
+    if (!versions.isEmpty() && pending.contentHash.equals(versions.get(0).contentHash)) {
+      return;                   // Nothing changed since the last version
+    }
+    StoredVersion stored = pending.snapshot;
+    Long snapshotId = null;
+    FileVersionData snapshot = deltaBase(versions);
+    if (pending.delta != null && snapshot != null && snapshot.id.equals(pending.baseId)) {
+      stored = pending.delta;
+      snapshotId = snapshot.id;
+    }
+    if (stored == null) {
+      return;                   // Too large to keep
+    }
+
+    FileVersionData version = new FileVersionData();
+    version.projectKey = projectKey(projectId);
+    version.fileName = fileName;
+    // Dates order the versions, so no two may be the same
+    version.date = versions.isEmpty() ? System.currentTimeMillis()
+        : Math.max(System.currentTimeMillis(), versions.get(0).date + 1);
+    version.contentHash = pending.contentHash;
+    version.size = pending.size;
+    version.snapshotId = snapshotId;
+    version.codec = stored.codec;
+    version.gcsName = stored.gcsName;
+    datastore.put(version);
+    if (stored.content != null) {
+      FileVersionContentData versionContent = new FileVersionContentData();
+      versionContent.id = version.id;
+      versionContent.projectKey = version.projectKey;
+      versionContent.content = stored.content;
+      datastore.put(versionContent);
+    }
+    pending.used = stored;
+    versions.add(0, version);
+
+    // Keep the newest versions and the snapshots that they need
+    if (versions.size() > MAX_FILE_VERSIONS) {
+      Set<Long> neededSnapshots = new HashSet<Long>();
+      for (FileVersionData kept : versions.subList(0, MAX_FILE_VERSIONS)) {
+        if (kept.snapshotId != null) {
+          neededSnapshots.add(kept.snapshotId);
         }
-      } else if (fileData.isBlob) {
-        try {
-          result.t = getBlobstoreBytes(fileData.blobstorePath);
-        } catch (BlobReadException e) {
-          throw CrashReport.createAndLogError(LOG, null,
-              collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+      List<FileVersionData> pruned = new ArrayList<FileVersionData>();
+      for (FileVersionData old : versions.subList(MAX_FILE_VERSIONS, versions.size())) {
+        if (old.snapshotId != null || !neededSnapshots.contains(old.id)) {
+          pruned.add(old);
         }
+      }
+      deleteVersions(datastore, pruned, prunedGcsNames);
+      versions.removeAll(pruned);
+    }
+  }
+
+  /*
+   * Returns the snapshot a new version would be a delta against, which is
+   * the newest one unless it already has as many deltas as allowed. Returns
+   * null if there is none.
+   */
+  @Nullable
+  private static FileVersionData deltaBase(List<FileVersionData> versions) {
+    int deltaCount = 0;
+    for (FileVersionData older : versions) {
+      if (older.snapshotId == null) {
+        return (deltaCount < MAX_DELTAS_PER_SNAPSHOT) ? older : null;
+      }
+      deltaCount++;
+    }
+    return null;
+  }
+
+  /*
+   * Returns the versions of a file, newest first. Their content is not read.
+   */
+  private List<FileVersionData> findFileVersions(Objectify datastore, long projectId,
+      String fileName) {
+    List<FileVersionData> versions = new ArrayList<FileVersionData>();
+    for (FileVersionData version : datastore.query(FileVersionData.class)
+             .ancestor(projectKey(projectId)).filter("fileName", fileName)) {
+      versions.add(version);
+    }
+    // Sorted here rather than in the query, so that no composite index is needed
+    Collections.sort(versions, new Comparator<FileVersionData>() {
+      @Override
+      public int compare(FileVersionData a, FileVersionData b) {
+        return Long.valueOf(b.date).compareTo(a.date);
+      }
+    });
+    return versions;
+  }
+
+  /*
+   * Deletes the versions of a file. Their GCS files are added to gcsNames
+   * for the caller to delete outside of the job.
+   *
+   * Must be called in a job on the project's entity group.
+   */
+  private void deleteFileVersions(Objectify datastore, long projectId, String fileName,
+      List<String> gcsNames) {
+    if (!isVersionedFile(fileName)) {
+      return;
+    }
+    deleteVersions(datastore, findFileVersions(datastore, projectId, fileName), gcsNames);
+  }
+
+  // Deletes the given versions along with their content
+  private void deleteVersions(Objectify datastore, List<FileVersionData> versions,
+      List<String> gcsNames) {
+    List<Key<FileVersionContentData>> contentKeys = new ArrayList<Key<FileVersionContentData>>();
+    for (FileVersionData version : versions) {
+      if (version.gcsName != null) {
+        gcsNames.add(version.gcsName);
       } else {
-        if (fileData.content == null) {
-          result.t = new byte[0];
-        } else {
-          result.t = fileData.content;
-        }
+        contentKeys.add(fileVersionContentKey(version.projectKey, version.id));
       }
+    }
+    datastore.delete(versions);
+    datastore.delete(contentKeys);
+  }
+
+  /*
+   * Reads the content of a version. The snapshot a delta is against must be
+   * given along with it.
+   */
+  private byte[] readFileVersion(FileVersionData version, @Nullable FileVersionData snapshot)
+      throws IOException {
+    byte[] stored;
+    if (version.gcsName != null) {
+      GcsFilename gcsFileName = new GcsFilename(GCS_BUCKET_NAME, version.gcsName);
+      InputStream in = Channels.newInputStream(gcsService.openReadChannel(gcsFileName, 0));
+      try {
+        stored = ByteStreams.toByteArray(in);
+      } finally {
+        in.close();
+      }
+      StorageMetrics.get().addGcsBytesRead(stored.length);
     } else {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectProjectErrorInfo(userId, projectId, fileName),
-          new FileNotFoundException("No data for " + fileName));
+      FileVersionContentData versionContent = ObjectifyService.begin().find(
+          fileVersionContentKey(version.projectKey, version.id));
+      if (versionContent == null) {
+        throw new FileNotFoundException("No content for version " + version.id + " of "
+            + version.fileName);
+      }
+      stored = versionContent.content;
     }
-    return result.t;
+    byte[] decoded = ContentCodec.decode(version.codec, stored);
+    if (version.snapshotId == null) {
+      return decoded;
+    }
+    return ContentDelta.apply(readFileVersion(snapshot, null), decoded);
+  }
+
+  private Key<FileVersionData> fileVersionKey(Key<ProjectData> projectKey, long versionId) {
+    return new Key<FileVersionData>(projectKey, FileVersionData.class, versionId);
+  }
+
+  private Key<FileVersionContentData> fileVersionContentKey(Key<ProjectData> projectKey,
+      long versionId) {
+    return new Key<FileVersionContentData>(projectKey, FileVersionContentData.class, versionId);
   }
 
   // Note: this must be called outside of any transaction, since getBlobKey()
@@ -1685,7 +3333,9 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
     try {
       InputStream blobInputStream = new BlobstoreInputStream(blobKey);
-      return ByteStreams.toByteArray(blobInputStream);
+      byte[] content = ByteStreams.toByteArray(blobInputStream);
+      StorageMetrics.get().addBlobstoreBytesRead(content.length);
+      return content;
     } catch (IOException e) {
       throw new BlobReadException(e, "Error trying to read blob from " + blobstorePath
           + ", blobkey = " + blobKey);
@@ -1779,6 +3429,7 @@ public class ObjectifyStorageIo implements  StorageIo {
             } finally {
               readChannel.close();
             }
+            StorageMetrics.get().addGcsBytesRead(fileSize);
             data = resultBuffer.array();
           } catch (IOException e) {
             throw CrashReport.createAndLogError(LOG, null,
@@ -1789,6 +3440,8 @@ public class ObjectifyStorageIo implements  StorageIo {
         }
         if (data == null) {     // This happens if file creation is interrupted
           data = new byte[0];
+        } else {
+          data = ContentCodec.decode(fd.codec, data);
         }
         out.putNextEntry(new ZipEntry(fileName));
         out.write(data, 0, data.length);
@@ -1931,13 +3584,33 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
+  /*
+   * Answers from the per instance cache, then from memcache, and only then
+   * looks the email up in the datastore. Each email is cached on its own, so
+   * the size of the whitelist does not matter. The server itself never
+   * changes the whitelist; entries are edited in the datastore console and
+   * take effect once the cached answers expire, after at most
+   * whitelist.cache.secs (see appengine-web.xml).
+   */
   @Override
   public boolean checkWhiteList(String email) {
-    Objectify datastore = ObjectifyService.begin();
-    WhiteListData data = datastore.query(WhiteListData.class).filter("emailLower", email.toLowerCase()).get();
-    if (data == null)
-      return false;
-    return true;
+    String emailLower = email.toLowerCase();
+    Boolean listed = whiteList.getIfPresent(emailLower);
+    if (listed != null) {
+      return listed;
+    }
+    int cacheSecs = whiteListCacheSecs.get();
+    String cacheKey = WHITELIST_CACHE_KEY_PREFIX + emailLower;
+    listed = (Boolean) memcache.get(cacheKey);
+    if (listed == null) {
+      listed = ObjectifyService.begin().query(WhiteListData.class)
+          .filter("emailLower", emailLower).limit(1).count() > 0;
+      if (cacheSecs > 0) {
+        memcache.put(cacheKey, listed, Expiration.byDeltaSeconds(cacheSecs));
+      }
+    }
+    whiteList.put(emailLower, listed);
+    return listed;
   }
 
   @Override
@@ -2055,6 +3728,192 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   }
 
+  @Override
+  public void storeExportStatus(final String userId, final ExportAllProjectsStatus status) {
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          ExportJobData jobData = datastore.find(exportJobKey(userId));
+          if (jobData == null) {
+            jobData = new ExportJobData();
+            jobData.id = userId;
+          } else if (jobData.dateStarted > status.getDateStarted()) {
+            // A newer job has started since; this status is stale
+            return;
+          }
+          jobData.state = status.getState().name();
+          jobData.projectsExported = status.getProjectsExported();
+          jobData.projectCount = status.getProjectCount();
+          jobData.dateStarted = status.getDateStarted();
+          datastore.put(jobData);
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, "user=" + userId, e);
+    }
+  }
+
+  @Override
+  public boolean startExportJob(final String userId, final ExportAllProjectsStatus status,
+      final long maxRunningMillis) {
+    final Result<Boolean> started = new Result<Boolean>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          started.t = false;
+          ExportJobData jobData = datastore.find(exportJobKey(userId));
+          if (jobData == null) {
+            jobData = new ExportJobData();
+            jobData.id = userId;
+          } else if (ExportAllProjectsStatus.State.RUNNING.name().equals(jobData.state)
+              && status.getDateStarted() - jobData.dateStarted <= maxRunningMillis) {
+            return;
+          }
+          jobData.state = status.getState().name();
+          jobData.projectsExported = status.getProjectsExported();
+          jobData.projectCount = status.getProjectCount();
+          jobData.dateStarted = status.getDateStarted();
+          datastore.put(jobData);
+          started.t = true;
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, "user=" + userId, e);
+    }
+    return started.t;
+  }
+
+  @Override
+  public ExportAllProjectsStatus getExportStatus(String userId) {
+    ExportJobData jobData = ObjectifyService.begin().find(exportJobKey(userId));
+    if (jobData == null) {
+      return null;
+    }
+    return new ExportAllProjectsStatus(ExportAllProjectsStatus.State.valueOf(jobData.state),
+        jobData.projectsExported, jobData.projectCount, jobData.dateStarted);
+  }
+
+  @Override
+  public OutputStream openExportArchiveOutput(String userId) throws IOException {
+    if (useGcs) {
+      String gcsName = makeExportGCSfileName(userId);
+      GcsOutputChannel gcsOutputChannel = gcsService.createOrReplace(
+          new GcsFilename(GCS_BUCKET_NAME, gcsName), GcsFileOptions.getDefaultInstance());
+      return new ExportArchiveOutputStream(userId, gcsName, true,
+          Channels.newOutputStream(gcsOutputChannel), null);
+    } else {
+      // Without GCS the archive is staged in the Blobstore, which is only
+      // readable once the blob is finalized.
+      AppEngineFile blobstoreFile = fileService.createNewBlobFile("application/zip",
+          "export/" + userId);
+      FileWriteChannel blobstoreWriteChannel = fileService.openWriteChannel(blobstoreFile, true);
+      return new ExportArchiveOutputStream(userId, blobstoreFile.getFullPath(), false,
+          Channels.newOutputStream(blobstoreWriteChannel), blobstoreWriteChannel);
+    }
+  }
+
+  @Override
+  public void abandonExportArchiveOutput(OutputStream out) {
+    if (out instanceof ExportArchiveOutputStream) {
+      ((ExportArchiveOutputStream) out).abandon();
+    }
+  }
+
+  @Override
+  public InputStream openExportArchiveInput(String userId) throws IOException {
+    ExportJobData jobData = ObjectifyService.begin().find(exportJobKey(userId));
+    if (jobData == null || jobData.archivePath == null) {
+      return null;
+    }
+    if (jobData.isGCS) {
+      GcsInputChannel readChannel = gcsService.openReadChannel(
+          new GcsFilename(GCS_BUCKET_NAME, jobData.archivePath), 0);
+      return Channels.newInputStream(readChannel);
+    }
+    BlobKey blobKey = fileService.getBlobKey(new AppEngineFile(jobData.archivePath));
+    if (blobKey == null) {
+      throw new IOException("getBlobKey() returned null for " + jobData.archivePath);
+    }
+    return new BlobstoreInputStream(blobKey);
+  }
+
+  /*
+   * The archive of an export job. Closing it completes the archive and makes
+   * it the user's current one.
+   */
+  private class ExportArchiveOutputStream extends BufferedOutputStream {
+    private final String userId;
+    private final String archivePath;
+    private final boolean isGCS;
+    @Nullable private final FileWriteChannel blobstoreWriteChannel;
+
+    ExportArchiveOutputStream(String userId, String archivePath, boolean isGCS,
+        OutputStream out, @Nullable FileWriteChannel blobstoreWriteChannel) {
+      super(out, EXPORT_ARCHIVE_BUFFER_SIZE);
+      this.userId = userId;
+      this.archivePath = archivePath;
+      this.isGCS = isGCS;
+      this.blobstoreWriteChannel = blobstoreWriteChannel;
+    }
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      if (blobstoreWriteChannel != null) {
+        blobstoreWriteChannel.closeFinally();
+      }
+      setExportArchive(userId, archivePath, isGCS);
+    }
+
+    /*
+     * Drops the unfinished archive. A Blobstore file has to be finalized
+     * before it can be deleted; an unclosed GCS channel leaves nothing behind.
+     */
+    void abandon() {
+      if (blobstoreWriteChannel == null) {
+        return;
+      }
+      try {
+        blobstoreWriteChannel.closeFinally();
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to finalize abandoned archive " + archivePath, e);
+        return;
+      }
+      deleteBlobstoreFile(archivePath);
+    }
+  }
+
+  private void setExportArchive(final String userId, final String archivePath,
+      final boolean isGCS) {
+    final Result<String> oldBlobstorePath = new Result<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          ExportJobData jobData = datastore.find(exportJobKey(userId));
+          if (jobData == null) {
+            jobData = new ExportJobData();
+            jobData.id = userId;
+            jobData.state = ExportAllProjectsStatus.State.FAILED.name();
+          }
+          oldBlobstorePath.t = (jobData.archivePath != null && !jobData.isGCS
+              && !jobData.archivePath.equals(archivePath)) ? jobData.archivePath : null;
+          jobData.archivePath = archivePath;
+          jobData.isGCS = isGCS;
+          datastore.put(jobData);
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, "user=" + userId, e);
+    }
+    // A GCS archive is replaced in place, a Blobstore one has a new path
+    if (oldBlobstorePath.t != null) {
+      deleteBlobstoreFile(oldBlobstorePath.t);
+    }
+  }
+
   // Create a name for a blob from a project id and file name. This is mostly
   // to help with debugging and viewing the blobstore via the admin console.
   // We don't currently use these blob names anywhere else.
@@ -2066,6 +3925,10 @@ public class ObjectifyStorageIo implements  StorageIo {
     return new Key<UserData>(UserData.class, userId);
   }
 
+  private Key<ExportJobData> exportJobKey(String userId) {
+    return new Key<ExportJobData>(ExportJobData.class, userId);
+  }
+
   private Key<ProjectData> projectKey(long projectId) {
     return new Key<ProjectData>(ProjectData.class, projectId);
   }
@@ -2093,14 +3956,21 @@ public class ObjectifyStorageIo implements  StorageIo {
    */
   @VisibleForTesting
   void runJobWithRetries(JobRetryHelper job) throws ObjectifyException {
+    StorageMetrics metrics = StorageMetrics.get();
     int tries = 0;
     while (tries <= MAX_JOB_RETRIES) {
+      if (tries > 0) {
+        metrics.recordJobRetry();
+        backOff(tries);
+      }
+      metrics.recordJobAttempt();
       Objectify datastore = ObjectifyService.beginTransaction();
       try {
         job.run(datastore);
         datastore.getTxn().commit();
         break;
       } catch (ConcurrentModificationException ex) {
+        metrics.recordConflict(ex);
         job.onNonFatalError();
         LOG.log(Level.WARNING, "Optimistic concurrency failure", ex);
       } catch (ObjectifyException oe) {
@@ -2123,10 +3993,27 @@ public class ObjectifyStorageIo implements  StorageIo {
       tries++;
     }
     if (tries > MAX_JOB_RETRIES) {
+      metrics.recordAbandonedJob();
       throw new ObjectifyException("Couldn't commit job after max retries.");
     }
   }
 
+  /*
+   * Waits before the given retry of a job. The wait grows exponentially with
+   * the number of tries, and is picked at random below that bound, so that
+   * jobs that conflicted with each other do not retry in lockstep.
+   */
+  private void backOff(int tries) {
+    long bound = Math.min(JOB_RETRY_MAX_DELAY_MILLIS,
+        JOB_RETRY_BASE_DELAY_MILLIS << Math.min(tries - 1, 16));
+    long delay = (long) (retryJitter.nextDouble() * bound);
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   private static String collectUserErrorInfo(final String userId) {
     return collectUserErrorInfo(userId, CrashReport.NOT_AVAILABLE);
   }
@@ -2172,19 +4059,14 @@ public class ObjectifyStorageIo implements  StorageIo {
     return ObjectifyService.begin().find(projectKey(projectId));
   }
 
-  // Return time in ISO_8660 format
-  private static String formattedTime() {
-    java.text.SimpleDateFormat formatter = new java.text.SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
-    return formatter.format(new java.util.Date());
-  }
-
   // We are called when our caller detects we are about to write a trivial (empty)
   // workspace. We check to see if previously the workspace was non-trivial and
   // if so, throw the BlocksTruncatedException. This will be passed through the RPC
   // layer to the client code which will put up a dialog box for the user to review
   // See Ode.java for more information
   private void checkForBlocksTruncation(FileData fd) throws ObjectifyException {
-    if (fd.isBlob || fd.isGCS || fd.content.length > 120)
+    // Compressed content is never trivial, however few bytes it takes
+    if (fd.isBlob || fd.isGCS || fd.codec != null || fd.content.length > 120)
       throw new ObjectifyException("BlocksTruncated"); // Hack
     // I'm avoiding having to modify every use of runJobWithRetries to handle a new
     // exception, so we use this dodge.
@@ -0,0 +1,137 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appinventor.server.storage.StoredData.FileData;
+import com.google.appinventor.server.storage.StoredData.ProjectData;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * The list of files of a project, as stored in {@link ProjectData#manifest}.
+ *
+ * <p>Listing the files of a project from its manifest takes a single entity
+ * read, where querying the FileData children would read every one of them.
+ * Each file is stored as one string: its role, size, modification date and
+ * content hash ("-" if unknown) followed by its name, separated by spaces.
+ */
+final class ProjectManifest {
+
+  /**
+   * Size of a file whose size is not known, such as a file of a project
+   * whose manifest was built from its FileData entities.
+   */
+  static final long UNKNOWN_SIZE = -1;
+
+  /**
+   * The manifest entry of a single file.
+   */
+  static final class Entry {
+    final String fileName;
+    final FileData.RoleEnum role;
+    final long size;
+    @Nullable final String hash;
+    final long dateModified;
+
+    Entry(String fileName, FileData.RoleEnum role, long size, @Nullable String hash,
+        long dateModified) {
+      this.fileName = fileName;
+      this.role = role;
+      this.size = size;
+      this.hash = hash;
+      this.dateModified = dateModified;
+    }
+
+    private String encode() {
+      return role.name() + " " + size + " " + dateModified + " "
+          + (hash == null ? "-" : hash) + " " + fileName;
+    }
+
+    private static Entry decode(String encoded) {
+      String[] parts = encoded.split(" ", 5);
+      return new Entry(parts[4], FileData.RoleEnum.valueOf(parts[0]), Long.parseLong(parts[1]),
+          parts[3].equals("-") ? null : parts[3], Long.parseLong(parts[2]));
+    }
+  }
+
+  // Entries by file name, in the order the files were added
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+  /**
+   * Returns the manifest stored in the given project, or null if the
+   * project has none.
+   */
+  @Nullable
+  static ProjectManifest of(ProjectData pd) {
+    if (!pd.hasManifest) {
+      return null;
+    }
+    ProjectManifest manifest = new ProjectManifest();
+    if (pd.manifest != null) {
+      for (String encoded : pd.manifest) {
+        manifest.put(Entry.decode(encoded));
+      }
+    }
+    return manifest;
+  }
+
+  /**
+   * Builds the manifest of a project from its files, for projects created
+   * before manifests existed.
+   */
+  static ProjectManifest of(Iterable<FileData> files) {
+    ProjectManifest manifest = new ProjectManifest();
+    for (FileData fd : files) {
+      manifest.put(new Entry(fd.fileName, fd.role, UNKNOWN_SIZE, fd.contentHash, 0));
+    }
+    return manifest;
+  }
+
+  void put(Entry entry) {
+    entries.put(entry.fileName, entry);
+  }
+
+  void remove(String fileName) {
+    entries.remove(fileName);
+  }
+
+  @Nullable
+  Entry get(String fileName) {
+    return entries.get(fileName);
+  }
+
+  /**
+   * Returns the names of the files with the given role.
+   */
+  List<String> getFileNames(FileData.RoleEnum role) {
+    List<String> fileNames = new ArrayList<String>();
+    for (Entry entry : entries.values()) {
+      if (entry.role == role) {
+        fileNames.add(entry.fileName);
+      }
+    }
+    return fileNames;
+  }
+
+  /**
+   * Stores this manifest in the given project. The project still has to be
+   * put to the datastore.
+   */
+  void storeIn(ProjectData pd) {
+    List<String> encoded = new ArrayList<String>(entries.size());
+    for (Entry entry : entries.values()) {
+      encoded.add(entry.encode());
+    }
+    pd.manifest = encoded;
+    pd.hasManifest = true;
+  }
+}
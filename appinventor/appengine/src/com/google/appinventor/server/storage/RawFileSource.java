@@ -0,0 +1,62 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nullable;
+
+/**
+ * A stored file whose content is read as a stream, so that it can be sent
+ * without holding all of it in memory, and from an offset, so that an
+ * interrupted download can be resumed.
+ *
+ */
+public abstract class RawFileSource {
+  private final String fileName;
+  private final long length;
+  @Nullable private final String eTag;
+
+  protected RawFileSource(String fileName, long length, @Nullable String eTag) {
+    this.fileName = fileName;
+    this.length = length;
+    this.eTag = eTag;
+  }
+
+  /**
+   * Returns the name of the file.
+   */
+  public String getFileName() {
+    return fileName;
+  }
+
+  /**
+   * Returns the length of the file content in bytes.
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Returns a tag that changes whenever the content of the file changes, or
+   * null if there is none.
+   */
+  @Nullable
+  public String getETag() {
+    return eTag;
+  }
+
+  /**
+   * Opens the content of the file for reading.
+   *
+   * @param offset the number of bytes to skip at the start of the content
+   * @return a stream reading the content from the given offset
+   * @throws IOException if the content cannot be read
+   */
+  public abstract InputStream open(long offset) throws IOException;
+}
@@ -0,0 +1,67 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appinventor.server.storage.StoredData.ProjectData;
+import com.google.appinventor.server.storage.StoredData.UserData;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Entities read by {@link ObjectifyStorageIo} while handling the current
+ * request.
+ *
+ * <p>A single RPC usually asks about the same user and project several
+ * times. Between {@link #begin} and {@link #end}, these reads are answered
+ * from the entities already loaded on this thread, and the storage layer
+ * forgets an entity as soon as it changes it. Outside of a request every
+ * read goes to the datastore.
+ */
+public final class RequestCache {
+
+  private static final ThreadLocal<RequestCache> current = new ThreadLocal<RequestCache>();
+
+  // User entities by user id. A null value means there is no such user.
+  final Map<String, UserData> users = new HashMap<String, UserData>();
+
+  // Project entities by project id. A null value means there is no such project.
+  final Map<Long, ProjectData> projects = new HashMap<Long, ProjectData>();
+
+  // Project ids by user id
+  final Map<String, List<Long>> userProjects = new HashMap<String, List<Long>>();
+
+  private RequestCache() {
+  }
+
+  /**
+   * Starts caching the entities read on this thread.
+   */
+  public static void begin() {
+    current.set(new RequestCache());
+  }
+
+  /**
+   * Stops caching the entities read on this thread, and drops the ones
+   * already cached.
+   */
+  public static void end() {
+    current.remove();
+  }
+
+  /**
+   * Returns the cache of the request handled by this thread, or null if
+   * there is none.
+   */
+  @Nullable
+  static RequestCache get() {
+    return current.get();
+  }
+}
@@ -9,14 +9,20 @@ package com.google.appinventor.server.storage;
 import com.google.appinventor.shared.rpc.BlocksTruncatedException;
 import com.google.appinventor.shared.rpc.Motd;
 import com.google.appinventor.shared.rpc.Nonce;
+import com.google.appinventor.shared.rpc.project.ExportAllProjectsStatus;
+import com.google.appinventor.shared.rpc.project.FileVersion;
 import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.user.User;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import javax.annotation.Nullable;
@@ -58,6 +64,15 @@ public interface StorageIo {
    */
   User getUser(String userId, String email);
 
+  /**
+   * Returns the user data of the given users, as getUser(userId) does for
+   * each of them, but looked up together.
+   *
+   * @param userIds unique user ids
+   * @return user data by user id
+   */
+  Map<String, User> getUsers(Collection<String> userIds);
+
   /**
    * Sets the stored email address for user with id userId
    *
@@ -206,6 +221,15 @@ public interface StorageIo {
 
   UserProject getUserProject(String userId, long projectId);
 
+  /**
+   * Returns the UserProject objects of several projects, read together.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectIds  project ids
+   * @return UserProject objects, in the order of projectIds, leaving out
+   *         projects that do not exist
+   */
+  List<UserProject> getUserProjects(String userId, List<Long> projectIds);
+
   /**
    * Returns a project name.
    *
@@ -444,6 +468,55 @@ public interface StorageIo {
    */
   long uploadRawFileForce(long projectId, String fileId, String userId, byte[] content);
 
+  /**
+   * Uploads a file from a stream. -- forces the save even with trivial
+   * workspace. Files that are stored in GCS or the Blobstore are written
+   * there as they are read, without holding the whole content in memory. If
+   * reading the stream fails, the file keeps its previous content.
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @param userId the user who owns the file
+   * @param content  file content
+   * @return modification date for project
+   * @throws IOException if reading the content or writing it fails
+   */
+  long uploadRawFileForce(long projectId, String fileId, String userId, InputStream content)
+      throws IOException;
+
+  /**
+   * Uploads the content of several files of a project at once, regardless
+   * of their previous content. The files must already have been added to
+   * the project.
+   * @param projectId  project ID
+   * @param userId the user who owns the files
+   * @param contents  map from file ID to file content
+   * @return modification date for project
+   */
+  long uploadRawFilesForce(long projectId, String userId, Map<String, byte[]> contents);
+
+  /**
+   * Returns the source files of a project whose stored content can be
+   * shared with other files instead of being copied.
+   *
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @return map from file ID to an ID of its stored content
+   */
+  Map<String, String> getSharedContentIds(String userId, long projectId);
+
+  /**
+   * Adds source files to a project that share the stored content of
+   * existing files, without copying the content.
+   *
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param contentIds map from file ID to a content ID returned by
+   *                   {@link #getSharedContentIds}
+   * @return modification date for project
+   */
+  long addSharedSourceFilesToProject(String userId, long projectId,
+      Map<String, String> contentIds);
+
   /**
    * Deletes a file.
    * @param userId a user Id (the request is made on behalf of this user)
@@ -453,6 +526,15 @@ public interface StorageIo {
    */
   long deleteFile(String userId, long projectId, String fileId);
 
+  /**
+   * Deletes several files of a project at once.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileIds  file IDs
+   * @return modification date for project
+   */
+  long deleteFiles(String userId, long projectId, List<String> fileIds);
+
   /**
    * Downloads text file data.
    * @param userId a user Id (the request is made on behalf of this user)
@@ -485,6 +567,60 @@ public interface StorageIo {
    */
   byte[] downloadRawFile(String userId, long projectId, String fileId);
 
+  /**
+   * Downloads the raw data of several files of a project. The files are
+   * looked up together and the contents stored outside of the datastore are
+   * read in parallel.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileIds  file IDs
+   *
+   * @return  file contents, in the order of fileIds
+   */
+  List<byte[]> downloadRawFiles(String userId, long projectId, List<String> fileIds);
+
+  /**
+   * Opens raw file data for streaming, without reading it in.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileId  file ID
+   *
+   * @return  a source to read the file content from
+   */
+  RawFileSource openRawFile(String userId, long projectId, String fileId);
+
+  /**
+   * Returns the saved versions of a project file, newest first.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileId  file ID
+   *
+   * @return  the saved versions of the file
+   */
+  List<FileVersion> getFileVersions(String userId, long projectId, String fileId);
+
+  /**
+   * Downloads the content of a saved version of a project file.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @param versionId  version ID, as returned by {@link #getFileVersions}
+   *
+   * @return  content of the version
+   */
+  byte[] downloadFileVersion(String userId, long projectId, String fileId, long versionId);
+
+  /**
+   * Replaces the content of a project file with a saved version of it.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @param versionId  version ID, as returned by {@link #getFileVersions}
+   *
+   * @return  modification date for project
+   */
+  long restoreFileVersion(String userId, long projectId, String fileId, long versionId);
+
   // MOTD management
 
   /**
@@ -556,4 +692,66 @@ public interface StorageIo {
   // Cleanup expired nonces
   void cleanupNonces();
 
+  /**
+   * Records the status of the user's "export all projects" job. The status
+   * is dropped if a job that started later has been recorded since.
+   *
+   * @param userId user id
+   * @param status the status of the job
+   */
+  void storeExportStatus(String userId, ExportAllProjectsStatus status);
+
+  /**
+   * Records the status of a new "export all projects" job of the user,
+   * unless a job that started less than maxRunningMillis ago is still
+   * running. The check and the update are done together.
+   *
+   * @param userId user id
+   * @param status the status of the new job
+   * @param maxRunningMillis how long a job may run before it is taken to
+   *        have failed
+   * @return true if the new job was recorded, false if one is running
+   */
+  boolean startExportJob(String userId, ExportAllProjectsStatus status, long maxRunningMillis);
+
+  /**
+   * Returns the status of the user's last "export all projects" job.
+   *
+   * @param userId user id
+   * @return the status of the job, or null if the user never started one
+   */
+  @Nullable
+  ExportAllProjectsStatus getExportStatus(String userId);
+
+  /**
+   * Opens a stream to write the archive of the user's "export all projects"
+   * job. The archive replaces the previous one when the stream is closed.
+   * A stream that is abandoned without being closed leaves the previous
+   * archive in place.
+   *
+   * @param userId user id
+   * @return a stream to write the archive to
+   * @throws IOException if the archive cannot be created
+   */
+  OutputStream openExportArchiveOutput(String userId) throws IOException;
+
+  /**
+   * Discards a stream opened with {@link #openExportArchiveOutput(String)}
+   * that is not going to be closed, along with what was written to it. The
+   * previous archive is left in place.
+   *
+   * @param out the stream to discard
+   */
+  void abandonExportArchiveOutput(OutputStream out);
+
+  /**
+   * Opens the archive last written by the user's "export all projects" job.
+   *
+   * @param userId user id
+   * @return a stream to read the archive from, or null if there is none
+   * @throws IOException if the archive cannot be read
+   */
+  @Nullable
+  InputStream openExportArchiveInput(String userId) throws IOException;
+
 }
@@ -10,12 +10,14 @@ package com.google.appinventor.server.storage;
  * Holds the singleton StorageIo subclass object. We introduce this class
  * so that we can switch out the underlying StorageIo subclass without changing
  * the references in the code to the INSTANCE.
+ *
+ * <p>Calls to it are recorded in {@link StorageMetrics}.
  * 
  * @author sharon@google.com (Sharon Perl)
  *
  */
 public class StorageIoInstanceHolder {
-  public static final StorageIo INSTANCE = new ObjectifyStorageIo();
+  public static final StorageIo INSTANCE = InstrumentedStorageIo.wrap(new ObjectifyStorageIo());
   
   private StorageIoInstanceHolder() {} // not to be instantiated
     
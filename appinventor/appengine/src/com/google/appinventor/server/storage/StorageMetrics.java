@@ -0,0 +1,265 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Counters for the storage layer of this instance: latency of every
+ * {@link StorageIo} call (see {@link InstrumentedStorageIo}), datastore job
+ * retries and transaction conflicts, and bytes moved to and from GCS and
+ * the Blobstore.
+ *
+ * <p>The counters start at zero when the instance starts. They are shown to
+ * admins by {@link com.google.appinventor.server.StorageMetricsServlet}.
+ *
+ */
+public final class StorageMetrics {
+
+  private static final StorageMetrics INSTANCE = new StorageMetrics();
+
+  // Upper bounds (in milliseconds) of the latency histogram buckets. The last
+  // bucket counts everything slower.
+  private static final long[] LATENCY_BUCKETS_MILLIS =
+      { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+  // Operation that jobs run outside of any StorageIo call are counted under
+  private static final String NO_OPERATION = "(none)";
+
+  // How the datastore names the entity group of a contended transaction
+  private static final Pattern CONTENDED_KIND = Pattern.compile("type: \"(\\w+)\"");
+
+  private static final ThreadLocal<String> currentOperation = new ThreadLocal<String>();
+
+  private final ConcurrentMap<String, OperationStats> operations =
+      new ConcurrentHashMap<String, OperationStats>();
+  private final ConcurrentMap<String, AtomicLong> conflictsByKind =
+      new ConcurrentHashMap<String, AtomicLong>();
+
+  private final AtomicLong gcsBytesRead = new AtomicLong();
+  private final AtomicLong gcsBytesWritten = new AtomicLong();
+  private final AtomicLong blobstoreBytesRead = new AtomicLong();
+  private final AtomicLong blobstoreBytesWritten = new AtomicLong();
+
+  /*
+   * The counters of one StorageIo method.
+   */
+  private static class OperationStats {
+    final AtomicLong calls = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong totalNanos = new AtomicLong();
+    final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length + 1);
+    final AtomicLong jobAttempts = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong conflicts = new AtomicLong();
+    final AtomicLong abandonedJobs = new AtomicLong();
+  }
+
+  private StorageMetrics() {
+  }
+
+  /**
+   * Returns the counters of this instance.
+   */
+  public static StorageMetrics get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Sets the StorageIo method run by this thread, so that the jobs it runs
+   * are counted under it.
+   *
+   * @param operation the name of the method, or null when it returns
+   */
+  static void setCurrentOperation(String operation) {
+    if (operation == null) {
+      currentOperation.remove();
+    } else {
+      currentOperation.set(operation);
+    }
+  }
+
+  static String getCurrentOperation() {
+    return currentOperation.get();
+  }
+
+  /**
+   * Wraps a call that will run on another thread for the current StorageIo
+   * method, so that the jobs it runs are counted under that method rather
+   * than under no method at all.
+   *
+   * @param call the call
+   * @return a call that runs the given one as part of the current method
+   */
+  static <T> Callable<T> inCurrentOperation(final Callable<T> call) {
+    final String operation = currentOperation.get();
+    if (operation == null) {
+      return call;
+    }
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        String previousOperation = currentOperation.get();
+        setCurrentOperation(operation);
+        try {
+          return call.call();
+        } finally {
+          setCurrentOperation(previousOperation);
+        }
+      }
+    };
+  }
+
+  void recordCall(String operation, long nanos, boolean failed) {
+    OperationStats stats = stats(operation);
+    stats.calls.incrementAndGet();
+    if (failed) {
+      stats.failures.incrementAndGet();
+    }
+    stats.totalNanos.addAndGet(nanos);
+    long millis = nanos / 1000000;
+    int bucket = 0;
+    while (bucket < LATENCY_BUCKETS_MILLIS.length && millis > LATENCY_BUCKETS_MILLIS[bucket]) {
+      bucket++;
+    }
+    stats.latencies.incrementAndGet(bucket);
+  }
+
+  void recordJobAttempt() {
+    currentStats().jobAttempts.incrementAndGet();
+  }
+
+  void recordJobRetry() {
+    currentStats().retries.incrementAndGet();
+  }
+
+  void recordConflict(ConcurrentModificationException e) {
+    currentStats().conflicts.incrementAndGet();
+    String kind = "unknown";
+    if (e.getMessage() != null) {
+      Matcher matcher = CONTENDED_KIND.matcher(e.getMessage());
+      if (matcher.find()) {
+        kind = matcher.group(1);
+      }
+    }
+    AtomicLong count = conflictsByKind.get(kind);
+    if (count == null) {
+      AtomicLong newCount = new AtomicLong();
+      count = conflictsByKind.putIfAbsent(kind, newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  void recordAbandonedJob() {
+    currentStats().abandonedJobs.incrementAndGet();
+  }
+
+  @VisibleForTesting
+  long getCalls(String operation) {
+    return stats(operation).calls.get();
+  }
+
+  @VisibleForTesting
+  long getJobAttempts(String operation) {
+    return stats(operation).jobAttempts.get();
+  }
+
+  void addGcsBytesRead(long bytes) {
+    gcsBytesRead.addAndGet(bytes);
+  }
+
+  void addGcsBytesWritten(long bytes) {
+    gcsBytesWritten.addAndGet(bytes);
+  }
+
+  void addBlobstoreBytesRead(long bytes) {
+    blobstoreBytesRead.addAndGet(bytes);
+  }
+
+  void addBlobstoreBytesWritten(long bytes) {
+    blobstoreBytesWritten.addAndGet(bytes);
+  }
+
+  /**
+   * Returns a plain text report of the counters.
+   */
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("%-36s %8s %6s %9s %8s %8s %9s %9s%n",
+        "operation", "calls", "failed", "mean ms", "jobs", "retries", "conflicts", "abandoned"));
+    Map<String, OperationStats> sorted = new TreeMap<String, OperationStats>(operations);
+    for (Map.Entry<String, OperationStats> entry : sorted.entrySet()) {
+      OperationStats stats = entry.getValue();
+      long calls = stats.calls.get();
+      report.append(String.format("%-36s %8d %6d %9.1f %8d %8d %9d %9d%n", entry.getKey(),
+          calls, stats.failures.get(),
+          (calls == 0) ? 0.0 : stats.totalNanos.get() / 1e6 / calls,
+          stats.jobAttempts.get(), stats.retries.get(), stats.conflicts.get(),
+          stats.abandonedJobs.get()));
+    }
+
+    report.append("\nLatency histogram (calls taking at most the given milliseconds)\n");
+    report.append(String.format("%-36s", "operation"));
+    for (long bound : LATENCY_BUCKETS_MILLIS) {
+      report.append(String.format(" %6d", bound));
+    }
+    report.append(String.format(" %6s%n", "more"));
+    for (Map.Entry<String, OperationStats> entry : sorted.entrySet()) {
+      report.append(String.format("%-36s", entry.getKey()));
+      AtomicLongArray latencies = entry.getValue().latencies;
+      for (int i = 0; i < latencies.length(); i++) {
+        report.append(String.format(" %6d", latencies.get(i)));
+      }
+      report.append('\n');
+    }
+
+    report.append("\nTransaction conflicts by entity kind\n");
+    for (Map.Entry<String, AtomicLong> entry
+             : new TreeMap<String, AtomicLong>(conflictsByKind).entrySet()) {
+      report.append(String.format("%-36s %8d%n", entry.getKey(), entry.getValue().get()));
+    }
+
+    report.append("\nBytes transferred\n");
+    report.append(String.format("%-36s %12d%n", "GCS read", gcsBytesRead.get()));
+    report.append(String.format("%-36s %12d%n", "GCS written", gcsBytesWritten.get()));
+    report.append(String.format("%-36s %12d%n", "Blobstore read", blobstoreBytesRead.get()));
+    report.append(String.format("%-36s %12d%n", "Blobstore written",
+        blobstoreBytesWritten.get()));
+    return report.toString();
+  }
+
+  private OperationStats currentStats() {
+    String operation = currentOperation.get();
+    return stats((operation == null) ? NO_OPERATION : operation);
+  }
+
+  private OperationStats stats(String operation) {
+    OperationStats stats = operations.get(operation);
+    if (stats == null) {
+      OperationStats newStats = new OperationStats();
+      stats = operations.putIfAbsent(operation, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    return stats;
+  }
+}
@@ -11,6 +11,7 @@ import com.googlecode.objectify.annotation.Parent;
 import com.googlecode.objectify.annotation.Indexed;
 import com.googlecode.objectify.annotation.Unindexed;
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.Id;
 
@@ -90,6 +91,14 @@ public class StoredData {
     long galleryId;  // this is the galleryId of this project (if published)
     long attributionId;  // if this project was initiated from the gallery, this is
        // the id of the gallery app that was copied for remix
+
+    // One entry per FileData child of this project (see ProjectManifest),
+    // kept up to date in the same transactions that change the files.
+    List<String> manifest;
+
+    // Whether manifest is valid. Projects created before the manifest was
+    // introduced get one the first time their files are listed or changed.
+    boolean hasManifest;
   }
 
   // Project properties specific to the user
@@ -159,6 +168,10 @@ public class StoredData {
     // should be retrieved from Blobstore.
     byte[] content;
 
+    // How the stored bytes of the file, wherever they are, are encoded (see
+    // ContentCodec). Null if they are the content itself.
+    String codec;
+
     // Is this file stored in Blobstore.  If it is, the blobstorePath will contain the path to use
     // to retrieve the data from Blobstore.
     boolean isBlob;
@@ -173,13 +186,62 @@ public class StoredData {
     // The GCS filename, sans bucket name
     String gcsName;
 
+    // If the GCS file is shared with other files through the content store,
+    // the hex SHA-256 of the content. The GCS file must then not be written
+    // or deleted through this FileData (see ContentData).
+    String contentHash;
+
     // File settings
     String settings;
 
-    // DateTime of last backup only used if GCS is enabled
+    // DateTime of the last version recorded in the history of the file (see
+    // FileVersionData)
     long lastBackup;
   }
 
+  // A saved version of a blocks file. Versions are kept as a full snapshot
+  // followed by deltas against that snapshot (see ContentDelta).
+  @Unindexed
+  static final class FileVersionData {
+    @Id Long id;
+
+    // Key of the project (parent) to which the file belongs
+    @Parent Key<ProjectData> projectKey;
+
+    @Indexed String fileName;
+
+    // DateTime the version was recorded
+    long date;
+
+    // The hex SHA-256 and length of the content of the version
+    String contentHash;
+    int size;
+
+    // Id of the snapshot this version is a delta against, null if this
+    // version is itself a snapshot
+    Long snapshotId;
+
+    // The snapshot or delta is encoded as described by codec (see
+    // ContentCodec). It is kept in the FileVersionContentData with the same
+    // id, or in GCS under gcsName if it is too large for an entity.
+    String codec;
+    String gcsName;
+  }
+
+  // The content of a FileVersionData that is kept in the datastore. It is an
+  // entity of its own, so that listing the versions of a file does not read
+  // the content of every one of them.
+  @Unindexed
+  static final class FileVersionContentData {
+    // The id of the FileVersionData
+    @Id Long id;
+
+    // Key of the project (parent) to which the file belongs
+    @Parent Key<ProjectData> projectKey;
+
+    byte[] content;
+  }
+
   // MOTD data.
   @Unindexed
   static final class MotdData {
@@ -241,6 +303,51 @@ public class StoredData {
     public Date timestamp;
   }
 
+  // Content store -- Large assets are stored in GCS once per distinct
+  // content, keyed by the SHA-256 of the content, and shared by every file
+  // that has that content. Copying such a file only adds a reference. The
+  // GCS file is deleted once the last reference is gone.
+  @Unindexed
+  static final class ContentData {
+    // The hex SHA-256 of the content
+    @Id String id;
+
+    // The GCS file holding the content. Every upload gets a new name, so
+    // deleting an old upload never removes a newer one. Null for content
+    // stored as "content/" + id.
+    String gcsName;
+
+    // Set along with removing the last reference. The content is deleted
+    // by a later transaction that finds it still set.
+    boolean pendingDelete;
+  }
+
+  // A file that uses a ContentData
+  @Unindexed
+  static final class ContentRefData {
+    // projectId + "/" + fileName
+    @Id String id;
+
+    @Parent Key<ContentData> contentKey;
+  }
+
+  // The last "export all projects" job of a user and the archive it wrote
+  @Unindexed
+  static final class ExportJobData {
+    // The user id
+    @Id String id;
+
+    // An ExportAllProjectsStatus.State name
+    public String state;
+    public int projectsExported;
+    public int projectCount;
+    public long dateStarted;
+
+    // GCS object name or Blobstore path of the archive, null until one is written
+    public String archivePath;
+    public boolean isGCS;
+  }
+
   @Unindexed
   static final class CorruptionRecord {
     @Id Long id;
@@ -30,4 +30,14 @@ public interface CacheHeaders {
    * @param resp the response
    */
   void setCacheablePrivate(HttpServletResponse resp);
+
+  /**
+   * Returns the Cache-Control value of content that anyone may cache for the
+   * given time. This is also used for files that are served directly from
+   * GCS, where the value is set when the file is written.
+   *
+   * @param maxAgeSeconds how long the content may be cached
+   * @return the Cache-Control header value
+   */
+  String getPublicCacheControl(int maxAgeSeconds);
 }
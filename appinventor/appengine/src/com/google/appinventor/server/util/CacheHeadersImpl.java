@@ -34,4 +34,9 @@ public class CacheHeadersImpl implements CacheHeaders {
     resp.setDateHeader("Expires", nowMillis);  // Forces HTTP/1.0 not to cache
     resp.setHeader("Cache-Control", "private,max-age=0");
   }
+
+  @Override
+  public String getPublicCacheControl(int maxAgeSeconds) {
+    return "public,max-age=" + maxAgeSeconds;
+  }
 }
@@ -0,0 +1,143 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.util;
+
+import com.google.appinventor.server.storage.RawFileSource;
+import com.google.appinventor.shared.storage.StorageUtil;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nullable;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Utility class for streaming a stored file to a download response, with
+ * support for the "Range" and "If-Range" headers so that an interrupted
+ * download can be resumed where it stopped.
+ *
+ * <p>Only a single range of bytes is served. A request for several ranges
+ * gets the whole file, which is allowed by RFC 2616.
+ *
+ */
+public class RangeRequests {
+
+  private RangeRequests() {
+  }
+
+  /**
+   * Sends the given file as an attachment, or the part of it asked for by
+   * the request's "Range" header.
+   *
+   * @param req the request
+   * @param resp the response
+   * @param source the file to send
+   * @throws IOException if the file cannot be read or sent
+   */
+  public static void sendFile(HttpServletRequest req, HttpServletResponse resp,
+      RawFileSource source) throws IOException {
+    String fileName = StorageUtil.basename(source.getFileName());
+    long length = source.getLength();
+    String eTag = (source.getETag() == null) ? null : '"' + source.getETag() + '"';
+
+    resp.setHeader("content-disposition", "attachment; filename=\"" + fileName + "\"");
+    resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
+    resp.setHeader("Accept-Ranges", "bytes");
+    if (eTag != null) {
+      resp.setHeader("ETag", eTag);
+    }
+
+    long[] range = null;
+    if (ifRangeMatches(req.getHeader("If-Range"), eTag)) {
+      range = parseRange(req.getHeader("Range"), length);
+      if (range != null && range[0] >= length) {
+        resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        resp.setHeader("Content-Range", "bytes */" + length);
+        return;
+      }
+    }
+
+    long start = 0;
+    long count = length;
+    if (range != null) {
+      start = range[0];
+      count = range[1] - range[0] + 1;
+      resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      resp.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+    } else {
+      resp.setStatus(HttpServletResponse.SC_OK);
+    }
+    resp.setHeader("Content-Length", Long.toString(count));
+
+    // Copy the content through in chunks rather than reading it all in
+    InputStream in = source.open(start);
+    try {
+      ServletOutputStream out = resp.getOutputStream();
+      ByteStreams.copy(ByteStreams.limit(in, count), out);
+      out.close();
+    } finally {
+      in.close();
+    }
+  }
+
+  /*
+   * A range may only be served if the request has no "If-Range" header, or
+   * if the one it has names the current ETag. A date in "If-Range" never
+   * matches, as we do not track modification dates of individual files.
+   */
+  private static boolean ifRangeMatches(@Nullable String ifRange, @Nullable String eTag) {
+    return ifRange == null || (eTag != null && ifRange.trim().equals(eTag));
+  }
+
+  /**
+   * Parses a "Range" header naming a single range of bytes.
+   *
+   * @param header the value of the header, or null
+   * @param length the length of the file
+   * @return the first and last byte of the range, with the first byte at or
+   *         past the end of the file if the range cannot be satisfied, or
+   *         null if the whole file should be sent
+   */
+  @Nullable
+  static long[] parseRange(@Nullable String header, long length) {
+    if (header == null || !header.startsWith("bytes=")) {
+      return null;
+    }
+    String spec = header.substring("bytes=".length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0 || spec.indexOf(',') >= 0) {
+      return null;
+    }
+    try {
+      String first = spec.substring(0, dash).trim();
+      String last = spec.substring(dash + 1).trim();
+      if (first.isEmpty()) {
+        // The last bytes of the file: "bytes=-500"
+        long suffix = Long.parseLong(last);
+        if (suffix <= 0) {
+          return new long[] { length, length };
+        }
+        return new long[] { Math.max(0, length - suffix), length - 1 };
+      }
+      long start = Long.parseLong(first);
+      long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+      if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+        // Syntactically invalid, so the header is ignored
+        return null;
+      }
+      if (start >= length) {
+        return new long[] { start, start };
+      }
+      return new long[] { start, end };
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.shared.rpc.project;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * The progress of a user's "export all projects" job, sent over an RPC.
+ *
+ * <p>The job writes a zip of all the user's project source zips in the
+ * background. Once it is {@link State#FINISHED}, the archive can be
+ * downloaded from {@link com.google.appinventor.shared.rpc.ServerLayout#DOWNLOAD_ALL_PROJECTS_SOURCE}.
+ */
+public class ExportAllProjectsStatus implements IsSerializable {
+
+  /**
+   * The state of an export job.
+   */
+  public enum State {
+    // The job is writing the archive
+    RUNNING,
+    // The archive is complete and can be downloaded
+    FINISHED,
+    // The job failed or was abandoned; there is no archive to download
+    FAILED
+  }
+
+  private State state;
+
+  /**
+   * The number of projects written to the archive so far.
+   */
+  private int projectsExported;
+
+  /**
+   * The number of projects the job is exporting.
+   */
+  private int projectCount;
+
+  /**
+   * The date the job was started expressed in milliseconds since
+   * January 1, 1970 UTC
+   */
+  private long dateStarted;
+
+  /**
+   * Default constructor. This constructor is required by GWT.
+   */
+  @SuppressWarnings("unused")
+  private ExportAllProjectsStatus() {
+  }
+
+  public ExportAllProjectsStatus(State state, int projectsExported, int projectCount,
+      long dateStarted) {
+    this.state = state;
+    this.projectsExported = projectsExported;
+    this.projectCount = projectCount;
+    this.dateStarted = dateStarted;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public int getProjectsExported() {
+    return projectsExported;
+  }
+
+  public int getProjectCount() {
+    return projectCount;
+  }
+
+  public long getDateStarted() {
+    return dateStarted;
+  }
+}
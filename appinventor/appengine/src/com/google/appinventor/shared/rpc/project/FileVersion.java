@@ -0,0 +1,57 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.shared.rpc.project;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * A saved version of a project file, as listed by
+ * {@link ProjectService#getFileVersions(long, String)}.
+ */
+public class FileVersion implements IsSerializable {
+
+  /**
+   * The id of the version, used to restore it.
+   */
+  private long id;
+
+  /**
+   * The date the version was saved expressed in milliseconds since
+   * January 1, 1970 UTC
+   */
+  private long date;
+
+  /**
+   * The length of the content of the version in bytes.
+   */
+  private int size;
+
+  /**
+   * Default constructor. This constructor is required by GWT.
+   */
+  @SuppressWarnings("unused")
+  private FileVersion() {
+  }
+
+  public FileVersion(long id, long date, int size) {
+    this.id = id;
+    this.date = date;
+    this.size = size;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public long getDate() {
+    return date;
+  }
+
+  public int getSize() {
+    return size;
+  }
+}
@@ -128,6 +128,9 @@ public class GalleryApp implements IsSerializable {
   private boolean active;
   private String moreInfo;
   private String credit;
+  // true for the apps of list results, which do not carry the description,
+  // more info and credit (see GalleryService.getApp)
+  private boolean summary;
 
   /**
    * @return attributionId attribution id
@@ -469,6 +472,22 @@ public class GalleryApp implements IsSerializable {
     this.credit = credit;
   }
 
+  /**
+   * @return true if this app came in a list result, and so has no
+   *   description, more info or credit
+   */
+  public boolean isSummary() {
+    return summary;
+  }
+
+  /**
+   * set whether this app only holds what the app lists show
+   * @param summary
+   */
+  public void setSummary(boolean summary) {
+    this.summary = summary;
+  }
+
   /**
    * @return list of app tags
    */
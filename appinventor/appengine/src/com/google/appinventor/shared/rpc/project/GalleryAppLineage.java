@@ -0,0 +1,59 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.shared.rpc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * GalleryAppLineage is the remix tree of a gallery app: the apps it was
+ * remixed from, and the apps remixed from it and from those, each with
+ * their own remixes. The apps are summaries (see {@link GalleryApp#isSummary()}).
+ */
+public class GalleryAppLineage implements IsSerializable {
+  GalleryApp app;
+  List<GalleryApp> ancestors = new ArrayList<GalleryApp>();    //parent first
+  List<GalleryAppLineage> remixes = new ArrayList<GalleryAppLineage>();
+
+  /**
+   * default constructor
+   */
+  public GalleryAppLineage() {
+  }
+
+  /**
+   * constructor based on given parameters
+   * @param app the app at this node of the tree
+   */
+  public GalleryAppLineage(GalleryApp app) {
+    this.app = app;
+  }
+
+  /**
+   * @return app the app at this node of the tree
+   */
+  public GalleryApp getApp() {
+    return app;
+  }
+
+  /**
+   * @return ancestors the apps this app was remixed from, parent first.
+   *   Only the root of the tree has them.
+   */
+  public List<GalleryApp> getAncestors() {
+    return ancestors;
+  }
+
+  /**
+   * @return remixes the trees of the apps remixed from this app
+   */
+  public List<GalleryAppLineage> getRemixes() {
+    return remixes;
+  }
+}
@@ -7,11 +7,12 @@
 package com.google.appinventor.shared.rpc.project;
 
 import com.google.gwt.user.client.rpc.IsSerializable;
+import java.io.Serializable;
 /**
  * GalleryComment is a shared object. The db puts comments in it and slings it back
  * to the view
  */
-public class GalleryComment implements IsSerializable{
+public class GalleryComment implements IsSerializable, Serializable {
 
   /**
    * Default constructor. This constructor is required by GWT.
@@ -0,0 +1,55 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.shared.rpc.project;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * GalleryCommentListResult is a wrapper class to store one page of the
+ * comments of a gallery app, newest first, and where the following page
+ * starts. It is Serializable so that the server can keep first pages in
+ * memcache.
+ */
+public class GalleryCommentListResult implements IsSerializable, Serializable {
+
+  ArrayList<GalleryComment> comments;   //sliced results
+  String cursor;            //where the next page starts, null if no more results
+
+  /**
+   * default constructor
+   */
+  public GalleryCommentListResult() {
+  }
+
+  /**
+   * constructor based on given parameters
+   * @param comments list of GalleryComment
+   * @param cursor opaque position of the next page, or null
+   */
+  public GalleryCommentListResult(ArrayList<GalleryComment> comments, String cursor) {
+    this.comments = comments;
+    this.cursor = cursor;
+  }
+
+  /**
+   * @return comments list of GalleryComment
+   */
+  public ArrayList<GalleryComment> getComments() {
+    return comments;
+  }
+
+  /**
+   * @return cursor opaque position of the next page, or null if there
+   *   are no more comments
+   */
+  public String getCursor() {
+    return cursor;
+  }
+}
@@ -84,6 +84,16 @@ public interface GalleryService extends RemoteService {
    */
   GalleryAppListResult getRecentApps(int start, int count);
 
+  /**
+   * Returns a wrapped class which contains list of most recently
+   * updated galleryApps following the given cursor and total number
+   * of results in database
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps to return
+   * @return list of GalleryApps
+   */
+  GalleryAppListResult getRecentAppsAfter(String cursor, int count);
+
   /**
    * Returns a wrapped class which contains a list of most downloaded
    * gallery apps and total number of results in database
@@ -93,6 +103,16 @@ public interface GalleryService extends RemoteService {
    */
   GalleryAppListResult getMostDownloadedApps(int start, int count);
 
+  /**
+   * Returns a wrapped class which contains a list of most downloaded
+   * gallery apps following the given cursor and total number of
+   * results in database
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps to return
+   * @return list of GalleryApps
+   */
+  GalleryAppListResult getMostDownloadedAppsAfter(String cursor, int count);
+
   /**
    * Returns a wrapped class which contains a list of featured gallery app
    * @param start start index
@@ -101,6 +121,15 @@ public interface GalleryService extends RemoteService {
    */
   GalleryAppListResult getFeaturedApp(int start, int count);
 
+  /**
+   * Returns a wrapped class which contains a list of featured gallery app
+   * following the given cursor
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count count number
+   * @return list of gallery app
+   */
+  GalleryAppListResult getFeaturedAppAfter(String cursor, int count);
+
   /**
    * check if app is featured already
    * @param galleryId gallery id
@@ -125,6 +154,17 @@ public interface GalleryService extends RemoteService {
    */
   GalleryAppListResult getDeveloperApps(String userId, int start, int count);
 
+  /**
+   * Returns a wrapped class which contains a list of galleryApps
+   * by a particular developer following the given cursor and total
+   * number of results in database
+   * @param userId id of the developer
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps to return
+   * @return list of GalleryApps
+   */
+  GalleryAppListResult getDeveloperAppsAfter(String userId, String cursor, int count);
+
   /**
    * Returns a wrapped class which contains a list of galleryApps and
    * total number of results in database
@@ -136,6 +176,16 @@ public interface GalleryService extends RemoteService {
 
   GalleryAppListResult findApps(String keywords, int start, int count);
 
+  /**
+   * Returns a wrapped class which contains a list of galleryApps
+   * following the given cursor and total number of results in database
+   * @param keywords keywords to search for
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count number of apps to return
+   * @return list of GalleryApps
+   */
+  GalleryAppListResult findAppsAfter(String keywords, String cursor, int count);
+
   /**
    * Returns a GalleryApp object for the given id
    * @param galleryId  gallery ID as received by
@@ -152,12 +202,14 @@ public interface GalleryService extends RemoteService {
   void appWasDownloaded(long galleryId);
 
   /**
-   * Returns the comments for an app
+   * Returns one page of the comments for an app, newest first
    * @param galleryId  gallery ID as received by
    *                   {@link #getRecentGalleryApps()}
-   * @return  a list of comments
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count the maximum number of comments
+   * @return  the comments and the cursor of the next page
    */
-  List<GalleryComment> getComments(long galleryId);
+  GalleryCommentListResult getComments(long galleryId, String cursor, int count);
 
   /**
    * publish a comment for a gallery app
@@ -239,6 +291,14 @@ public interface GalleryService extends RemoteService {
    */
   List<GalleryApp> remixedTo(long galleryId);
 
+  /**
+   * get the remix tree of an app: the apps it was remixed from and the
+   * apps remixed from it, up to depth levels each way
+   * @param galleryId the id of the app
+   * @param depth the number of levels
+   */
+  GalleryAppLineage getRemixLineage(long galleryId, int depth);
+
   /**
    * send a message from system
    * @param senderId sender id
@@ -249,10 +309,18 @@ public interface GalleryService extends RemoteService {
   long sendMessageFromSystem(String senderId, String receiverId, String message);
 
   /**
-   * get all messages of current user
-   * @return list of Message
+   * get one page of the messages of current user, newest first
+   * @param cursor cursor from the previous page, or null for the first page
+   * @param count the maximum number of messages
+   * @return MessageListResult messages and the cursor of the next page
+   */
+  MessageListResult getMessages(String cursor, int count);
+
+  /**
+   * get the number of unread messages of current user
+   * @return number of unread messages
    */
-  List<Message> getMessages();
+  int getUnreadMessageCount();
 
   /**
    * get message based on given message id
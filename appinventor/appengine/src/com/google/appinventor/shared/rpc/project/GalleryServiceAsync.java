@@ -69,11 +69,21 @@ public interface GalleryServiceAsync {
    */
   void getRecentApps(int start, int count, AsyncCallback<GalleryAppListResult> callback);
 
+  /**
+   * @see @link{@link GalleryService#getRecentAppsAfter(String, int)
+   */
+  void getRecentAppsAfter(String cursor, int count, AsyncCallback<GalleryAppListResult> callback);
+
   /**
    * @see @link{@link GalleryService#getFeaturedApp(int, int)
    */
   void getFeaturedApp(int start, int count, AsyncCallback<GalleryAppListResult> callback);
 
+  /**
+   * @see @link{@link GalleryService#getFeaturedAppAfter(String, int)
+   */
+  void getFeaturedAppAfter(String cursor, int count, AsyncCallback<GalleryAppListResult> callback);
+
   /**
    * @see @link{@link GalleryService#isFeatured(long)
    */
@@ -89,25 +99,43 @@ public interface GalleryServiceAsync {
    */
   void getMostDownloadedApps(int start, int count, AsyncCallback<GalleryAppListResult> callback);
 
+  /**
+   * @see @link{@link GalleryService#getMostDownloadedAppsAfter(String, int)
+   */
+  void getMostDownloadedAppsAfter(String cursor, int count, AsyncCallback<GalleryAppListResult> callback);
+
   /**
    * @see @link{@link GalleryService#getDeveloperApps(String, int, int)
    */
   void getDeveloperApps(String userId, int start, int count, AsyncCallback<GalleryAppListResult> callback);
 
+  /**
+   * @see @link{@link GalleryService#getDeveloperAppsAfter(String, String, int)
+   */
+  void getDeveloperAppsAfter(String userId, String cursor, int count,
+      AsyncCallback<GalleryAppListResult> callback);
+
   /**
    * @see @link{@link GalleryService#findApps(String, int, int)
    */
   void findApps(String keywords, int start, int count, AsyncCallback<GalleryAppListResult> callback);
 
+  /**
+   * @see @link{@link GalleryService#findAppsAfter(String, String, int)
+   */
+  void findAppsAfter(String keywords, String cursor, int count,
+      AsyncCallback<GalleryAppListResult> callback);
+
    /**
    * @see @link{@link GalleryService#getApp(long)
    */
   void getApp(long galleryId, AsyncCallback<GalleryApp> callback);
 
   /**
-   * @see @link{@link GalleryService#getComments(long)
+   * @see @link{@link GalleryService#getComments(long, String, int)
    */
-  void getComments(long galleryId, AsyncCallback<List<GalleryComment>> callback);
+  void getComments(long galleryId, String cursor, int count,
+      AsyncCallback<GalleryCommentListResult> callback);
   /**
    * @see @link{@link GalleryService#publishApp(long, String, String, String, String, String)
    */
@@ -165,6 +193,11 @@ public interface GalleryServiceAsync {
    * @see @link{@link GalleryService#remixedTo(long)
    */
   void remixedTo(long galleryId, AsyncCallback<List<GalleryApp>> apps);
+
+  /**
+   * @see @link{@link GalleryService#getRemixLineage(long, int)
+   */
+  void getRemixLineage(long galleryId, int depth, AsyncCallback<GalleryAppLineage> callback);
   /**
    * @see @link{@link GalleryService#markReportAsResolved(long, long)
    */
@@ -184,9 +217,13 @@ public interface GalleryServiceAsync {
    */
   void sendMessageFromSystem(String senderId, String receiverId, String message, AsyncCallback<Long> callback);
   /**
-   * @see @link{@link GalleryService#getMessages(String)
+   * @see @link{@link GalleryService#getMessages(String, int)
+   */
+  void getMessages(String cursor, int count, AsyncCallback<MessageListResult> callback);
+  /**
+   * @see @link{@link GalleryService#getUnreadMessageCount()
    */
-  void getMessages(AsyncCallback<List<Message>> callback);
+  void getUnreadMessageCount(AsyncCallback<Integer> callback);
   /**
    * @see @link{@link GalleryService#getMessage(long)
    */
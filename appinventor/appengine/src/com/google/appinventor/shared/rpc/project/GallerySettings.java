@@ -20,6 +20,8 @@ public class GallerySettings implements IsSerializable {
   private String GALLERYPROJECTDIRFIXED="gallery/projects/"; // we put images here pre-publish
   private String SOURCEDIR="/aia";
   private String IMAGEDIR="/image";
+  private String THUMBNAILDIR="/thumbnail";  // scaled down copies of the image
+  private String MEDIUMDIR="/medium";
   private String GCSSERVERURLSTART= "/gs/";
   private String GCSCLIENTURLSTARTDEVSERVER="/gs/";
   private String GCSCLIENTURLSTART="http://storage.googleapis.com/";
@@ -120,6 +122,43 @@ public class GallerySettings implements IsSerializable {
     return url;
   }
 
+  /**
+   * get the cloud thumbnail url based on given galleryid  (Production Server)
+   * should be of form: http://storage.googleapis.com/galleryai2/gallery/apps/4796462844084224/thumbnail
+   * @param galleryId
+   * @return the url of cloud thumbnail
+   */
+  public String getCloudThumbnailURL(long galleryId) {
+    return GCSCLIENTURLSTART + getBucket() + APPSDIR + galleryId + THUMBNAILDIR;
+  }
+
+  /**
+   * get the cloud thumbnail location based on given galleryid  (Development Server)
+   * @param galleryId
+   * @return the location of cloud thumbnail
+   */
+  public String getCloudThumbnailLocation(long galleryId) {
+    return GCSCLIENTURLSTARTDEVSERVER + getBucket() + APPSDIR + galleryId + THUMBNAILDIR;
+  }
+
+  /**
+   * get the cloud medium image url based on given galleryid  (Production Server)
+   * @param galleryId
+   * @return the url of cloud medium image
+   */
+  public String getCloudMediumImageURL(long galleryId) {
+    return GCSCLIENTURLSTART + getBucket() + APPSDIR + galleryId + MEDIUMDIR;
+  }
+
+  /**
+   * get the cloud medium image location based on given galleryid  (Development Server)
+   * @param galleryId
+   * @return the location of cloud medium image
+   */
+  public String getCloudMediumImageLocation(long galleryId) {
+    return GCSCLIENTURLSTARTDEVSERVER + getBucket() + APPSDIR + galleryId + MEDIUMDIR;
+  }
+
   /**
    * get the image url based on given galleryid
    * @param galleryId gallery id
@@ -138,6 +177,24 @@ public class GallerySettings implements IsSerializable {
     return APPSDIRFIXED + galleryId + IMAGEDIR;
   }
 
+  /**
+   * get the key of the thumbnail of an image, stored next to it
+   * @param imageKey key of the image
+   * @return thumbnail key
+   */
+  public String getThumbnailKey(String imageKey) {
+    return imageKey.substring(0, imageKey.length() - IMAGEDIR.length()) + THUMBNAILDIR;
+  }
+
+  /**
+   * get the key of the medium size copy of an image, stored next to it
+   * @param imageKey key of the image
+   * @return medium image key
+   */
+  public String getMediumImageKey(String imageKey) {
+    return imageKey.substring(0, imageKey.length() - IMAGEDIR.length()) + MEDIUMDIR;
+  }
+
   /**
    * get the project image url based on given projectId   (Production Server)
    * @param projectId project id
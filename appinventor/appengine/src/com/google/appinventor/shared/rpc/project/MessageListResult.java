@@ -0,0 +1,51 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.shared.rpc.project;
+
+import java.util.List;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * MessageListResult is a wrapper class to store one page of a user's
+ * messages, newest first, and where the following page starts.
+ */
+public class MessageListResult implements IsSerializable {
+  List<Message> messages;   //sliced results
+  String cursor;            //where the next page starts, null if no more results
+
+  /**
+   * default constructor
+   */
+  public MessageListResult() {
+  }
+
+  /**
+   * constructor based on given parameters
+   * @param messages list of Message
+   * @param cursor opaque position of the next page, or null
+   */
+  public MessageListResult(List<Message> messages, String cursor) {
+    this.messages = messages;
+    this.cursor = cursor;
+  }
+
+  /**
+   * @return messages list of Message
+   */
+  public List<Message> getMessages() {
+    return messages;
+  }
+
+  /**
+   * @return cursor opaque position of the next page, or null if there
+   *   are no more messages
+   */
+  public String getCursor() {
+    return cursor;
+  }
+}
@@ -171,6 +171,19 @@ public interface ProjectService extends RemoteService {
    */
   ChecksumedLoadFile load2(long projectId, String fileId) throws ChecksumedFileException;
 
+  /**
+   * Loads several source files of a project, such as the form and blocks
+   * files of a screen, with one request. The files are read from storage
+   * together.
+   *
+   * @param projectId  project ID
+   * @param fileIds  project nodes whose source should be loaded
+   *
+   * @return  checksummed file objects, in the order of fileIds
+   */
+  List<ChecksumedLoadFile> load2(long projectId, List<String> fileIds)
+      throws ChecksumedFileException;
+
   /**
    * Attempt to record the project Id and error message when we detect a corruption
    * while loading a project.
@@ -304,4 +317,43 @@ public interface ProjectService extends RemoteService {
    */
   void log(String message);
 
+  /**
+   * Starts writing an archive of all of the user's projects in the
+   * background, unless such a job is already running.
+   *
+   * @return the status of the job
+   */
+  ExportAllProjectsStatus startExportAllProjects();
+
+  /**
+   * Returns the status of the user's last "export all projects" job.
+   *
+   * @return the status of the job, or null if the user never started one
+   */
+  ExportAllProjectsStatus getExportAllProjectsStatus();
+
+  /**
+   * Returns the saved versions of a project file, newest first. Only blocks
+   * files have saved versions.
+   *
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @return the saved versions of the file
+   */
+  List<FileVersion> getFileVersions(long projectId, String fileId);
+
+  /**
+   * Replaces the content of a project file with a saved version of it. The
+   * content it replaces is saved as a new version first.
+   *
+   * @param sessionId current session id
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @param versionId  ID of the version, as returned by
+   *                   {@link #getFileVersions(long, String)}
+   * @return modification date for project
+   */
+  long restoreFileVersion(String sessionId, long projectId, String fileId, long versionId)
+      throws InvalidSessionException;
+
 }
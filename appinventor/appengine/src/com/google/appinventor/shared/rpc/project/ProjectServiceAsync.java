@@ -101,6 +101,12 @@ public interface ProjectServiceAsync {
    */
   void load2(long projectId, String fileId, AsyncCallback<ChecksumedLoadFile> callback);
 
+  /**
+   * @see ProjectService#load2(long, List)
+   */
+  void load2(long projectId, List<String> fileIds,
+      AsyncCallback<List<ChecksumedLoadFile>> callback);
+
   /**
    * @see ProjectService#recordCorruption(long, String, String)
    */
@@ -158,4 +164,25 @@ public interface ProjectServiceAsync {
    */
   void log(String message, AsyncCallback<Void> callback);
 
+  /**
+   * @see ProjectService#startExportAllProjects()
+   */
+  void startExportAllProjects(AsyncCallback<ExportAllProjectsStatus> callback);
+
+  /**
+   * @see ProjectService#getExportAllProjectsStatus()
+   */
+  void getExportAllProjectsStatus(AsyncCallback<ExportAllProjectsStatus> callback);
+
+  /**
+   * @see ProjectService#getFileVersions(long, String)
+   */
+  void getFileVersions(long projectId, String fileId, AsyncCallback<List<FileVersion>> callback);
+
+  /**
+   * @see ProjectService#restoreFileVersion(String, long, String, long)
+   */
+  void restoreFileVersion(String sessionId, long projectId, String fileId, long versionId,
+      AsyncCallback<Long> callback);
+
 }
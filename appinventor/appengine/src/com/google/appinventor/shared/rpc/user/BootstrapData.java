@@ -0,0 +1,123 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.shared.rpc.user;
+
+import com.google.appinventor.shared.rpc.project.GallerySettings;
+import com.google.appinventor.shared.rpc.project.ProjectRootNode;
+import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object holding everything the IDE needs when it starts:
+ * the system configuration, the user's settings and projects, the built-in
+ * templates, the gallery settings and, if the user has one, the tree and
+ * settings of the current project.
+ *
+ */
+public class BootstrapData implements IsSerializable {
+  private Config config;
+
+  private String userSettings;
+
+  private List<UserProject> projectInfos;
+
+  private String templateData;
+
+  private GallerySettings gallerySettings;
+
+  private int motdCheckInterval;
+
+  // Id of the project to open, or 0 if there is none
+  private long currentProjectId;
+
+  private ProjectRootNode currentProjectRoot;
+
+  private String currentProjectSettings;
+
+  // Time spent on each part on the server, in the format of the
+  // Server-Timing header
+  private String timings;
+
+  public BootstrapData() {
+  }
+
+  public Config getConfig() {
+    return config;
+  }
+
+  public void setConfig(Config config) {
+    this.config = config;
+  }
+
+  public String getUserSettings() {
+    return userSettings;
+  }
+
+  public void setUserSettings(String userSettings) {
+    this.userSettings = userSettings;
+  }
+
+  public List<UserProject> getProjectInfos() {
+    return projectInfos;
+  }
+
+  public void setProjectInfos(List<UserProject> projectInfos) {
+    this.projectInfos = projectInfos;
+  }
+
+  public String getTemplateData() {
+    return templateData;
+  }
+
+  public void setTemplateData(String templateData) {
+    this.templateData = templateData;
+  }
+
+  public GallerySettings getGallerySettings() {
+    return gallerySettings;
+  }
+
+  public void setGallerySettings(GallerySettings gallerySettings) {
+    this.gallerySettings = gallerySettings;
+  }
+
+  public int getMotdCheckInterval() {
+    return motdCheckInterval;
+  }
+
+  public void setMotdCheckInterval(int motdCheckInterval) {
+    this.motdCheckInterval = motdCheckInterval;
+  }
+
+  public long getCurrentProjectId() {
+    return currentProjectId;
+  }
+
+  public ProjectRootNode getCurrentProjectRoot() {
+    return currentProjectRoot;
+  }
+
+  public String getCurrentProjectSettings() {
+    return currentProjectSettings;
+  }
+
+  public void setCurrentProject(long projectId, ProjectRootNode root, String settings) {
+    this.currentProjectId = projectId;
+    this.currentProjectRoot = root;
+    this.currentProjectSettings = settings;
+  }
+
+  public String getTimings() {
+    return timings;
+  }
+
+  public void setTimings(String timings) {
+    this.timings = timings;
+  }
+}
@@ -25,6 +25,18 @@ public interface UserInfoService extends RemoteService {
 
   Config getSystemConfig(String sessionId);
 
+  /**
+   * Retrieves everything the IDE needs when it starts, in one round trip:
+   * what getSystemConfig() returns, the user's settings and projects, the
+   * built-in templates, the gallery settings, the message of the day check
+   * interval and the current project's tree and settings.
+   *
+   * @param sessionId  the session id of the IDE
+   * @param pathToTemplatesDir  the directory of the built-in templates
+   * @return  the startup data
+   */
+  BootstrapData getBootstrapData(String sessionId, String pathToTemplatesDir);
+
   /**
    * Retrieves information about the current user
    *
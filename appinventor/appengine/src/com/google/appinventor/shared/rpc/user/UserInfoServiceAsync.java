@@ -21,6 +21,12 @@ public interface UserInfoServiceAsync {
    */
   void getSystemConfig(String sessionId, AsyncCallback<Config> callback);
 
+  /**
+   * @see UserInfoService#getBootstrapData(String, String)
+   */
+  void getBootstrapData(String sessionId, String pathToTemplatesDir,
+      AsyncCallback<BootstrapData> callback);
+
   /**
    * @see UserInfoService#getUserInformation()
    */
@@ -6,8 +6,8 @@
 
 package com.google.appinventor.server;
 
+import com.google.appinventor.server.storage.RawFileSource;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
-import com.google.appinventor.shared.rpc.project.RawFile;
 import com.riq.MockHttpServletRequest;
 import com.riq.MockHttpServletResponse;
 import org.junit.Before;
@@ -17,7 +17,9 @@ import org.powermock.api.easymock.PowerMock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
@@ -45,8 +47,8 @@ public class DownloadServletTest {
 
   private ProjectSourceZip dummyZip;
   private ProjectSourceZip dummyZipWithTitle;
-  private RawFile dummyApk;
-  private RawFile dummyFile;
+  private RawFileSource dummyApk;
+  private RawFileSource dummyFile;
 
   private FileExporterImpl exporterMock;
   private LocalUser localUserMock;
@@ -62,8 +64,17 @@ public class DownloadServletTest {
 
     dummyZip = new ProjectSourceZip(DUMMY_ZIP_FILENAME, new byte[] {}, 2);
     dummyZipWithTitle = new ProjectSourceZip(DUMMY_ZIP_FILENAME_WITH_TITLE, new byte[] {}, 2);
-    dummyApk = new RawFile(DUMMY_APK_FILENAME, new byte[] {});
-    dummyFile = new RawFile(DUMMY_FILENAME, new byte[] {});
+    dummyApk = makeRawFileSource("build/Android/" + DUMMY_APK_FILENAME, new byte[] {});
+    dummyFile = makeRawFileSource(DUMMY_FILENAME, "0123456789".getBytes());
+  }
+
+  private static RawFileSource makeRawFileSource(String fileName, final byte[] content) {
+    return new RawFileSource(fileName, content.length, "etag1") {
+      @Override
+      public InputStream open(long offset) {
+        return new ByteArrayInputStream(content, (int) offset, content.length - (int) offset);
+      }
+    };
   }
 
   private void checkResponseHeader(MockHttpServletResponse response, String header) {
@@ -125,7 +136,7 @@ public class DownloadServletTest {
   public void testDownloadProjectOutputFileWithoutTarget() throws IOException {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-output/1234");
-    expect(exporterMock.exportProjectOutputFile(USER_ID, PROJECT_ID, null))
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, null))
         .andReturn(dummyApk);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -141,7 +152,7 @@ public class DownloadServletTest {
   public void testDownloadProjectOutputFileWithTarget() throws IOException {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-output/1234/target1");
-    expect(exporterMock.exportProjectOutputFile(USER_ID, PROJECT_ID, "target1"))
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, "target1"))
         .andReturn(dummyApk);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -158,7 +169,7 @@ public class DownloadServletTest {
     IllegalArgumentException expectedException = new IllegalArgumentException();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-output/12345");
-    expect(exporterMock.exportProjectOutputFile(USER_ID, 12345L, null))
+    expect(exporterMock.openProjectOutputFile(USER_ID, 12345L, null))
         .andThrow(expectedException);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -176,7 +187,7 @@ public class DownloadServletTest {
     IllegalArgumentException expectedException = new IllegalArgumentException();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-output/1234/target3");
-    expect(exporterMock.exportProjectOutputFile(USER_ID, PROJECT_ID, "target3"))
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, "target3"))
         .andThrow(expectedException);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -193,7 +204,7 @@ public class DownloadServletTest {
   public void testDownloadFile() throws IOException {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "file/1234/" + FORM1_QUALIFIED_NAME);
-    expect(exporterMock.exportFile(USER_ID, PROJECT_ID, FORM1_QUALIFIED_NAME))
+    expect(exporterMock.openFile(USER_ID, PROJECT_ID, FORM1_QUALIFIED_NAME))
         .andReturn(dummyFile);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -209,7 +220,7 @@ public class DownloadServletTest {
     IllegalArgumentException expectedException = new IllegalArgumentException();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "file/12345/" + FORM1_QUALIFIED_NAME);
-    expect(exporterMock.exportFile(USER_ID, 12345L, FORM1_QUALIFIED_NAME))
+    expect(exporterMock.openFile(USER_ID, 12345L, FORM1_QUALIFIED_NAME))
         .andThrow(expectedException);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -228,7 +239,7 @@ public class DownloadServletTest {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "file/1234/" + FORM1_QUALIFIED_NAME + "1");
     String nonExistentFile = FORM1_QUALIFIED_NAME + "1";
-    expect(exporterMock.exportFile(USER_ID, PROJECT_ID, nonExistentFile))
+    expect(exporterMock.openFile(USER_ID, PROJECT_ID, nonExistentFile))
         .andThrow(expectedException);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -241,6 +252,41 @@ public class DownloadServletTest {
     PowerMock.verifyAll();
     }
 
+  @Test
+  public void testDownloadFileRange() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "file/1234/" + FORM1_QUALIFIED_NAME);
+    request.setHeader("Range", "bytes=4-");
+    request.setHeader("If-Range", "\"etag1\"");
+    expect(exporterMock.openFile(USER_ID, PROJECT_ID, FORM1_QUALIFIED_NAME))
+        .andReturn(dummyFile);
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    assertEquals(206, response.getStatus());
+    assertEquals("bytes 4-9/10", response.getHeaders("Content-Range").get(0));
+    assertEquals("456789", response.getContentAsString());
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testDownloadFileRangeWithChangedFile() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "file/1234/" + FORM1_QUALIFIED_NAME);
+    request.setHeader("Range", "bytes=4-");
+    request.setHeader("If-Range", "\"etag0\"");
+    expect(exporterMock.openFile(USER_ID, PROJECT_ID, FORM1_QUALIFIED_NAME))
+        .andReturn(dummyFile);
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    assertEquals(200, response.getStatus());
+    assertEquals("0123456789", response.getContentAsString());
+    PowerMock.verifyAll();
+  }
+
   // TODO(user): Add testDownloadAllProjectsSource* to test
   // downloading all projects.
 }
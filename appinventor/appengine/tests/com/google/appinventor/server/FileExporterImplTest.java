@@ -6,6 +6,7 @@
 
 package com.google.appinventor.server;
 
+import com.google.appinventor.server.storage.RawFileSource;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.server.storage.UnauthorizedAccessException;
@@ -20,8 +21,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -141,6 +145,20 @@ public class FileExporterImplTest extends LocalDatastoreTestCase {
     assertTrue(Arrays.equals(TARGET1_CONTENT, file.getContent()));
   }
 
+  public void testOpenProjectOutputFile() throws IOException {
+    RawFileSource source = exporter.openProjectOutputFile(USER_ID, projectId, "target1");
+    assertEquals(TARGET1_QUALIFIED_NAME, source.getFileName());
+    assertEquals(TARGET1_CONTENT.length, source.getLength());
+    assertNotNull(source.getETag());
+    InputStream in = source.open(1);
+    try {
+      assertTrue(Arrays.equals(Arrays.copyOfRange(TARGET1_CONTENT, 1, TARGET1_CONTENT.length),
+          ByteStreams.toByteArray(in)));
+    } finally {
+      in.close();
+    }
+  }
+
   public void testExportProjectOutputFileWithNonExistingTraget() throws IOException {
     try {
       exporter.exportProjectOutputFile(USER_ID, projectId, "target3");
@@ -167,5 +185,33 @@ public class FileExporterImplTest extends LocalDatastoreTestCase {
     }
   }
 
-  // TODO(user): Add test of exportAllProjectsSourceZip().
+  public void testExportAllProjectsSourceZip() throws IOException {
+    // A second project with the same name is stored under another name
+    Project project = new Project(PROJECT_NAME);
+    project.setProjectType(FAKE_PROJECT_TYPE);
+    project.addTextFile(new TextFile(FORM1_QUALIFIED_NAME, FORM1_CONTENT));
+    storageIo.createProject(USER_ID, project, SETTINGS);
+
+    final List<Integer> progress = new ArrayList<Integer>();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int count = exporter.exportAllProjectsSourceZip(USER_ID, out,
+        new FileExporter.ExportProgressListener() {
+          @Override
+          public void onProjectExported(int projectsExported, int projectCount) {
+            assertEquals(2, projectCount);
+            progress.add(projectsExported);
+          }
+        });
+    assertEquals(2, count);
+    assertEquals(Arrays.asList(1, 2), progress);
+
+    ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+    List<String> names = new ArrayList<String>();
+    ZipEntry zipEntry;
+    while ((zipEntry = zis.getNextEntry()) != null) {
+      names.add(zipEntry.getName());
+    }
+    assertEquals(2, names.size());
+    assertEquals("duplicate-" + names.get(0), names.get(1));
+  }
 }
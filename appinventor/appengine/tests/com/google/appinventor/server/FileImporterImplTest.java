@@ -7,16 +7,20 @@
 package com.google.appinventor.server;
 
 import com.google.appinventor.common.testutils.TestUtils;
+import com.google.appinventor.server.project.youngandroid.YoungAndroidProjectService;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.shared.rpc.UploadResponse;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
+import com.google.common.io.InputSupplier;
 
 import junitx.framework.ListAssert;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -197,4 +201,55 @@ public class FileImporterImplTest extends LocalDatastoreTestCase {
       assertEquals(UploadResponse.Status.NOT_PROJECT_ARCHIVE, e.uploadResponse.getStatus());
     }
   }
+
+  public void testImportProjectFromTemplate() throws Exception {
+    final File zip = new File(TESTING_SOURCE_PATH + "ProjectWithAssets.zip");
+    final int[] opened = { 0 };
+    InputSupplier<InputStream> template = new InputSupplier<InputStream>() {
+      @Override
+      public InputStream getInput() throws IOException {
+        opened[0]++;
+        return new FileInputStream(zip);
+      }
+    };
+    String templateKey = "test:" + getName();
+    for (String projectName : new String[] { PROJECT_NAME_1, PROJECT_NAME_2 }) {
+      UserProject userProject =
+          fileImporter.importProjectFromTemplate(USER_ID, projectName, templateKey, template);
+      assertEquals(projectName, userProject.getProjectName());
+      long projectId = userProject.getProjectId();
+      List<String> projectSrcFiles = storageIo.getProjectSourceFiles(USER_ID, projectId);
+      ListAssert.assertContains(projectSrcFiles,
+          "src/appinventor/ai_joeuser/" + projectName + "/Screen1.scm");
+      ListAssert.assertContains(projectSrcFiles, "assets/kitty.png");
+      assertTrue(storageIo.downloadFile(USER_ID, projectId,
+          YoungAndroidProjectService.PROJECT_PROPERTIES_FILE_NAME, "UTF-8")
+          .contains("name=" + projectName));
+    }
+    // The second project was made from the parsed template
+    assertEquals(1, opened[0]);
+  }
+
+  public void testImportProjectFromTemplate_notAValidProjectArchive() throws Exception {
+    final File zip = new File(TESTING_SOURCE_PATH + "NotAValidProjectArchive.zip");
+    final int[] opened = { 0 };
+    InputSupplier<InputStream> template = new InputSupplier<InputStream>() {
+      @Override
+      public InputStream getInput() throws IOException {
+        opened[0]++;
+        return new FileInputStream(zip);
+      }
+    };
+    String templateKey = "test:" + getName();
+    for (int i = 0; i < 2; i++) {
+      try {
+        fileImporter.importProjectFromTemplate(USER_ID, PROJECT_NAME_1, templateKey, template);
+        fail();
+      } catch (FileImporterException e) {
+        assertEquals(UploadResponse.Status.NOT_PROJECT_ARCHIVE, e.uploadResponse.getStatus());
+      }
+    }
+    // Archives that are not valid are not kept
+    assertEquals(2, opened[0]);
+  }
 }
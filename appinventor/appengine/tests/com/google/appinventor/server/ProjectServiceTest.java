@@ -16,6 +16,7 @@ import com.google.appinventor.server.encryption.KeyczarEncryptor;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.shared.rpc.BlocksTruncatedException;
+import com.google.appinventor.shared.rpc.project.ChecksumedLoadFile;
 import com.google.appinventor.shared.rpc.project.FileDescriptor;
 import com.google.appinventor.shared.rpc.project.FileDescriptorWithContent;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
@@ -493,6 +494,47 @@ public class ProjectServiceTest {
     PowerMock.verifyAll();
   }
 
+  @Test
+  public void testLoadSeveralFiles() throws Exception {
+    expect(localUserMock.getUserId()).andReturn(USER_ID_ONE).anyTimes();
+    expect(localUserMock.getUser()).andReturn(storageIo.getUser(USER_ID_ONE)).anyTimes();
+    PowerMock.replayAll();
+    do_init();
+
+    NewYoungAndroidProjectParameters params = new NewYoungAndroidProjectParameters(
+        PACKAGE_BASE + PROJECT1_NAME);
+    long projectId = projectServiceImpl.newProject(
+        YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, PROJECT1_NAME, params).getProjectId();
+    ProjectRootNode root = projectServiceImpl.getProject(projectId);
+    String formFileId = findFileIdByName(root,
+        YOUNG_ANDROID_FORM_NAME + YoungAndroidSourceAnalyzer.FORM_PROPERTIES_EXTENSION);
+    String blocksFileId = findFileIdByName(root,
+        YOUNG_ANDROID_FORM_NAME + YoungAndroidSourceAnalyzer.BLOCKLY_SOURCE_EXTENSION);
+    assertNotNull(formFileId);
+    assertNotNull(blocksFileId);
+    String formContent = YOUNG_ANDROID_COMMENT1 + projectServiceImpl.load(projectId, formFileId);
+    // Long enough not to be taken for a truncated workspace
+    String blocksContent = "<xml>" + YOUNG_ANDROID_COMMENT + YOUNG_ANDROID_COMMENT1
+        + YOUNG_ANDROID_COMMENT2 + YOUNG_ANDROID_COMMENT + "</xml>";
+    projectServiceImpl.save("test-session", projectId, formFileId, formContent);
+    projectServiceImpl.save("test-session", projectId, blocksFileId, blocksContent);
+
+    // The contents come back in the order of the file ids, whatever it is
+    List<ChecksumedLoadFile> files = projectServiceImpl.load2(projectId,
+        Lists.newArrayList(blocksFileId, formFileId, blocksFileId));
+    assertEquals(3, files.size());
+    assertEquals(blocksContent, files.get(0).getContent());
+    assertEquals(formContent, files.get(1).getContent());
+    assertEquals(blocksContent, files.get(2).getContent());
+
+    files = projectServiceImpl.load2(projectId, Lists.newArrayList(formFileId, blocksFileId));
+    assertEquals(projectServiceImpl.load2(projectId, formFileId).getContent(),
+        files.get(0).getContent());
+    assertEquals(projectServiceImpl.load2(projectId, blocksFileId).getContent(),
+        files.get(1).getContent());
+    PowerMock.verifyAll();
+  }
+
   private Map<String, String> getTextFiles(String userId, long projectId) {
     Map<String, String> textFiles = new HashMap<String, String>();
     for (String fileId : storageIo.getProjectSourceFiles(userId, projectId)) {
@@ -0,0 +1,110 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.shared.rpc.project.youngandroid.NewYoungAndroidProjectParameters;
+import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
+import com.google.appinventor.shared.rpc.user.BootstrapData;
+import com.google.appinventor.shared.rpc.user.User;
+import com.google.common.io.Files;
+
+import java.io.File;
+
+/**
+ * Tests for {@link UserInfoServiceImpl}.
+ *
+ */
+public class UserInfoServiceTest extends LocalDatastoreTestCase {
+  private static final String USER_ID = "1500";
+  private static final String USER_EMAIL = "noname1500@domain.com";
+  private static final String OTHER_USER_ID = "1510";
+  private static final String OTHER_USER_EMAIL = "noname1510@domain.com";
+
+  private StorageIo storageIo;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    SystemProperty.environment.set(SystemProperty.Environment.Value.Development);
+    storageIo = StorageIoInstanceHolder.INSTANCE;
+  }
+
+  private void setUser(String userId, String email) {
+    storageIo.getUser(userId, email);
+    LocalUser.getInstance().set(
+        new User(userId, email, null, null, true, false, User.USER, "test-session"));
+  }
+
+  private long newProject(String projectName) {
+    NewYoungAndroidProjectParameters params = new NewYoungAndroidProjectParameters(
+        "com.domain.noname." + projectName);
+    return new ProjectServiceImpl().newProject(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        projectName, params).getProjectId();
+  }
+
+  private void setCurrentProject(String userId, long projectId) {
+    storageIo.storeSettings(userId,
+        "{\"GeneralSettings\":{\"CurrentProjectId\":\"" + projectId + "\"}}");
+  }
+
+  public void testBootstrapDataPreloadsCurrentProject() throws Exception {
+    setUser(USER_ID, USER_EMAIL);
+    newProject("Project1");
+    long projectId = newProject("Project2");
+    setCurrentProject(USER_ID, projectId);
+
+    File templatesDir = Files.createTempDir();
+    File templateDir = new File(templatesDir, "Template1");
+    assertTrue(templateDir.mkdir());
+    Files.write("{\"name\": \"Template1\"}".getBytes("UTF-8"),
+        new File(templateDir, "Template1.json"));
+
+    BootstrapData data = new UserInfoServiceImpl().getBootstrapData("test-session",
+        templatesDir.getPath());
+    assertEquals(USER_ID, data.getConfig().getUser().getUserId());
+    assertEquals(2, data.getProjectInfos().size());
+    assertEquals("[{\"name\": \"Template1\"}, ]", data.getTemplateData());
+    assertNotNull(data.getGallerySettings());
+    assertEquals(projectId, data.getCurrentProjectId());
+    assertNotNull(data.getCurrentProjectRoot());
+    assertEquals(projectId, data.getCurrentProjectRoot().getProjectId());
+    assertTrue(data.getTimings().contains("project;dur="));
+  }
+
+  public void testBootstrapDataWithoutTemplates() throws Exception {
+    setUser(USER_ID, USER_EMAIL);
+    long projectId = newProject("Project1");
+    setCurrentProject(USER_ID, projectId);
+
+    // The client retrieves the templates itself when they could not be read
+    File missing = new File(Files.createTempDir(), "missing");
+    BootstrapData data = new UserInfoServiceImpl().getBootstrapData("test-session",
+        missing.getPath());
+    assertNull(data.getTemplateData());
+    assertEquals(1, data.getProjectInfos().size());
+    assertEquals(projectId, data.getCurrentProjectId());
+    assertNotNull(data.getCurrentProjectRoot());
+  }
+
+  public void testBootstrapDataSkipsOtherUsersProject() throws Exception {
+    setUser(OTHER_USER_ID, OTHER_USER_EMAIL);
+    long otherProjectId = newProject("Project1");
+
+    // A current project that the user does not own is not preloaded
+    setUser(USER_ID, USER_EMAIL);
+    setCurrentProject(USER_ID, otherProjectId);
+    BootstrapData data = new UserInfoServiceImpl().getBootstrapData("test-session",
+        Files.createTempDir().getPath());
+    assertEquals(0, data.getProjectInfos().size());
+    assertEquals("[]", data.getTemplateData());
+    assertNull(data.getCurrentProjectRoot());
+    assertFalse(data.getTimings().contains("project;dur="));
+  }
+}
@@ -0,0 +1,61 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appinventor.server.LocalDatastoreTestCase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests for {@link InstrumentedStorageIo} and the counting of its calls in
+ * {@link StorageMetrics}.
+ *
+ */
+public class InstrumentedStorageIoTest extends LocalDatastoreTestCase {
+
+  private StorageIo storageIo;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    storageIo = InstrumentedStorageIo.wrap(new ObjectifyStorageIo());
+  }
+
+  public void testCallIsCountedAgainstItsMethod() {
+    StorageMetrics metrics = StorageMetrics.get();
+    long calls = metrics.getCalls("getUser");
+    long jobAttempts = metrics.getJobAttempts("getUser");
+    // Getting a new user creates it in a job
+    storageIo.getUser("1400");
+    assertEquals(calls + 1, metrics.getCalls("getUser"));
+    assertTrue(metrics.getJobAttempts("getUser") > jobAttempts);
+    assertNull(StorageMetrics.getCurrentOperation());
+  }
+
+  public void testCallOnAnotherThreadIsCountedAgainstItsMethod() throws Exception {
+    StorageMetrics metrics = StorageMetrics.get();
+    long jobAttempts = metrics.getJobAttempts("testOperation");
+    Callable<Void> call = new Callable<Void>() {
+      @Override
+      public Void call() {
+        StorageMetrics.get().recordJobAttempt();
+        return null;
+      }
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    StorageMetrics.setCurrentOperation("testOperation");
+    try {
+      executor.submit(StorageMetrics.inCurrentOperation(call)).get();
+    } finally {
+      StorageMetrics.setCurrentOperation(null);
+      executor.shutdown();
+    }
+    assertEquals(jobAttempts + 1, metrics.getJobAttempts("testOperation"));
+  }
+}
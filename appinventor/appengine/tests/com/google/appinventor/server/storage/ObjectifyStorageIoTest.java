@@ -20,7 +20,9 @@ import com.google.appengine.api.files.RecordReadChannel;
 import com.google.appengine.api.files.RecordWriteChannel;
 import com.google.appinventor.server.LocalDatastoreTestCase;
 import com.google.appinventor.server.storage.StoredData.ProjectData;
+import com.google.appinventor.server.storage.StoredData.WhiteListData;
 import com.google.appinventor.shared.rpc.BlocksTruncatedException;
+import com.google.appinventor.shared.rpc.project.FileVersion;
 import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.rpc.project.TextFile;
@@ -29,13 +31,18 @@ import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjec
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.storage.StorageUtil;
 
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyService;
+
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for {@link ObjectifyStorageIo}.
@@ -124,6 +131,21 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     assertEquals(USER_EMAIL_NEW, user4.getUserEmail());
   }
 
+  public void testGetUsers() {
+    final String USER_ID1 = "600";
+    final String USER_ID2 = "601";
+    final String USER_EMAIL1 = "user600@test.com";
+
+    storage.getUser(USER_ID1, USER_EMAIL1);
+    Map<String, User> users = storage.getUsers(Arrays.asList(USER_ID1, USER_ID2));
+    assertEquals(2, users.size());
+    assertEquals(USER_EMAIL1, users.get(USER_ID1).getUserEmail());
+    assertEquals(User.getDefaultName(USER_EMAIL1), users.get(USER_ID1).getUserName());
+    // Users that do not exist yet are created
+    assertEquals(USER_ID2, users.get(USER_ID2).getUserId());
+    assertEquals(USER_ID2, storage.getUser(USER_ID2).getUserId());
+  }
+
   public void testSetTosAccepted() {
     final String USER_ID = "100";
     ObjectifyStorageIo.requireTos.setForTest(true);
@@ -218,24 +240,22 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     }
   }
 
-  public void testCreateProjectDeletesBlobsOnRetry() {
+  public void testCreateProjectDoesNotReuploadOnRetry() {
     final String USER_ID = "730";
-    // 2nd blob creation fails with ConcurrentModificationException, which
-    // should cause the job to be retried. It should ultimately succeed
-    // and we should have 1 blob that got deleted.
-    FailingBlobFileService failingFileService = new FailingBlobFileService(2,
-        new ConcurrentModificationException("this is intentional"));
-    // storage doesn't really fail but we want to count deleted blobs
-    FailingJobObjectifyStorageIo storageIo = 
-        new FailingJobObjectifyStorageIo(0, failingFileService);
-    try {
-      storageIo.getUser(USER_ID);
-      storageIo.createProject(USER_ID, project, SETTINGS);
-    } catch (RuntimeException e) {
-      fail();
-    }
-    assertEquals(4, failingFileService.numBlobsCreated());
-    assertEquals(1, storageIo.numBlobsDeleted());
+    // we don't want blob creation to fail, but we do want to count blobs
+    FailingBlobFileService failingFileService = new FailingBlobFileService(0);
+    // the job that creates the project (the second one, after getUser's)
+    // conflicts once and is retried. The files were stored before the job,
+    // so the retry should neither store them again nor delete any.
+    ConflictingJobObjectifyStorageIo storageIo =
+        new ConflictingJobObjectifyStorageIo(2, failingFileService);
+    storageIo.getUser(USER_ID);
+    long projectId = storageIo.createProject(USER_ID, project, SETTINGS);
+    assertEquals(2, failingFileService.numBlobsCreated());
+    assertEquals(0, storageIo.numBlobsDeleted());
+    assertTrue(storageIo.getProjects(USER_ID).contains(projectId));
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1,
+        storageIo.downloadRawFile(USER_ID, projectId, RAW_FILE_NAME1)));
   }
 
   public void testUploadBeforeAdd() throws BlocksTruncatedException {
@@ -296,6 +316,30 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     }
   }
 
+  public void testManifestBuiltForOldProjects() {
+    final String USER_ID = "1050";
+    storage.getUser(USER_ID);
+    long projectId = storage.createProject(USER_ID, project, SETTINGS);
+    storage.addOutputFilesToProject(USER_ID, projectId, FILE_NAME_OUTPUT);
+
+    // Drop the manifest, as for a project created before manifests existed
+    ProjectData pd = storage.getProject(projectId);
+    assertTrue(pd.hasManifest);
+    pd.hasManifest = false;
+    pd.manifest = null;
+    ObjectifyService.begin().put(pd);
+
+    List<String> sourceFiles = storage.getProjectSourceFiles(USER_ID, projectId);
+    assertEquals(4, sourceFiles.size());
+    assertTrue(sourceFiles.contains(RAW_FILE_NAME1));
+    assertEquals(Arrays.asList(FILE_NAME_OUTPUT),
+        storage.getProjectOutputFiles(USER_ID, projectId));
+    assertTrue(storage.getProject(projectId).hasManifest);
+
+    storage.deleteFile(USER_ID, projectId, RAW_FILE_NAME1);
+    assertFalse(storage.getProjectSourceFiles(USER_ID, projectId).contains(RAW_FILE_NAME1));
+  }
+
   public void testUpdateModificationTime() throws BlocksTruncatedException {
     final String USER_ID = "1100";
     storage.getUser(USER_ID);
@@ -383,6 +427,84 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     assertFalse(storage.getProjectOutputFiles(USER_ID, projectId).contains(FILE_NAME_OUTPUT));
   }
 
+  public void testBulkUploadAndDeleteFiles() {
+    final String USER_ID = "1250";
+    storage.getUser(USER_ID);
+    long projectId = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    storage.addOutputFilesToProject(USER_ID, projectId, FILE_NAME1, FILE_NAME_OUTPUT);
+    Map<String, byte[]> contents = new HashMap<String, byte[]>();
+    contents.put(FILE_NAME1, RAW_FILE_CONTENT1);
+    contents.put(FILE_NAME_OUTPUT, FILE_CONTENT_OUTPUT);
+    storage.uploadRawFilesForce(projectId, USER_ID, contents);
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, projectId, FILE_NAME1)));
+    assertTrue(Arrays.equals(FILE_CONTENT_OUTPUT,
+        storage.downloadRawFile(USER_ID, projectId, FILE_NAME_OUTPUT)));
+
+    storage.deleteFiles(USER_ID, projectId, Arrays.asList(FILE_NAME1, FILE_NAME_OUTPUT));
+    assertTrue(storage.getProjectOutputFiles(USER_ID, projectId).isEmpty());
+  }
+
+  public void testDownloadRawFiles() {
+    final String USER_ID = "1260";
+    storage.getUser(USER_ID);
+    long projectId = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    storage.addOutputFilesToProject(USER_ID, projectId, FILE_NAME1, FILE_NAME_OUTPUT);
+    Map<String, byte[]> contents = new HashMap<String, byte[]>();
+    contents.put(FILE_NAME1, RAW_FILE_CONTENT1);
+    contents.put(FILE_NAME_OUTPUT, FILE_CONTENT_OUTPUT);
+    storage.uploadRawFilesForce(projectId, USER_ID, contents);
+    List<byte[]> downloaded = storage.downloadRawFiles(USER_ID, projectId,
+        Arrays.asList(FILE_NAME_OUTPUT, FILE_NAME1));
+    assertEquals(2, downloaded.size());
+    assertTrue(Arrays.equals(FILE_CONTENT_OUTPUT, downloaded.get(0)));
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT1, downloaded.get(1)));
+    try {
+      storage.downloadRawFiles(USER_ID, projectId, Arrays.asList(FILE_NAME1, "nosuchfile"));
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+  }
+
+  public void testRequestCacheSeesOwnWrites() {
+    final String USER_ID = "1260";
+    storage.getUser(USER_ID);
+    RequestCache.begin();
+    try {
+      assertTrue(storage.getProjects(USER_ID).isEmpty());
+      long projectId = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE,
+          FORM_QUALIFIED_NAME);
+      assertTrue(storage.getProjects(USER_ID).contains(projectId));
+      assertEquals(SETTINGS, storage.loadProjectSettings(USER_ID, projectId));
+      storage.storeProjectSettings(USER_ID, projectId, "");
+      assertEquals("", storage.loadProjectSettings(USER_ID, projectId));
+      assertEquals("", storage.loadSettings(USER_ID));
+      storage.storeSettings(USER_ID, SETTINGS);
+      assertEquals(SETTINGS, storage.loadSettings(USER_ID));
+      storage.deleteProject(USER_ID, projectId);
+      assertFalse(storage.getProjects(USER_ID).contains(projectId));
+    } finally {
+      RequestCache.end();
+    }
+  }
+
+  public void testGetUserProjects() {
+    final String USER_ID = "1270";
+    storage.getUser(USER_ID);
+    long projectId1 = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    long projectId2 = createProject(USER_ID, PROJECT_NAME + "2", FAKE_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    List<UserProject> userProjects = storage.getUserProjects(USER_ID,
+        Arrays.asList(projectId2, projectId1, projectId2 + 1000));
+    assertEquals(2, userProjects.size());
+    assertEquals(projectId2, userProjects.get(0).getProjectId());
+    assertEquals(PROJECT_NAME + "2", userProjects.get(0).getProjectName());
+    assertEquals(projectId1, userProjects.get(1).getProjectId());
+    assertEquals(PROJECT_NAME, userProjects.get(1).getProjectName());
+  }
+
   public void testAddRemoveUserFile() {
     // Note that neither FILE_NAME1 nor FILE_NAME_OUTPUT should exist
     // at the start of this test
@@ -522,6 +644,80 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
 //    assertTrue(storage.isBlobFile(projectId, BLOCK_FILE_NAME)); // small block files go to datastore now
  }
 
+  public void testCompressedSourceFiles()
+      throws BlocksTruncatedException, UnsupportedEncodingException {
+    final String USER_ID = "1320";
+    final String BKY_FILE_NAME = "src/Screen1.bky";
+    StringBuilder blocks = new StringBuilder("<xml>");
+    for (int i = 0; i < 5000; i++) {
+      blocks.append("<block type=\"text\" id=\"").append(i).append("\"></block>");
+    }
+    blocks.append("</xml>");
+    byte[] content = blocks.toString().getBytes(StorageUtil.DEFAULT_CHARSET);
+
+    storage.getUser(USER_ID);
+    long projectId = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId, false, BKY_FILE_NAME);
+    storage.uploadRawFile(projectId, BKY_FILE_NAME, USER_ID, true, content);
+    // Compressed, the blocks fit in the datastore
+    assertFalse(storage.isBlobFile(projectId, BKY_FILE_NAME));
+    assertTrue(Arrays.equals(content, storage.downloadRawFile(USER_ID, projectId, BKY_FILE_NAME)));
+
+    // An empty workspace still may not replace compressed blocks
+    try {
+      storage.uploadRawFile(projectId, BKY_FILE_NAME, USER_ID, false, new byte[0]);
+      fail();
+    } catch (BlocksTruncatedException e) {
+      // expected
+    }
+  }
+
+  public void testFileVersions() throws BlocksTruncatedException, UnsupportedEncodingException {
+    final String USER_ID = "1330";
+    final String BKY_FILE_NAME = "src/Screen1.bky";
+    StringBuilder blocks = new StringBuilder("<xml>");
+    for (int i = 0; i < 500; i++) {
+      blocks.append("<block type=\"text\" id=\"").append(i).append("\"></block>");
+    }
+    byte[] content1 = (blocks + "</xml>").getBytes(StorageUtil.DEFAULT_CHARSET);
+    byte[] content2 = (blocks + "<block type=\"math_number\"></block></xml>")
+        .getBytes(StorageUtil.DEFAULT_CHARSET);
+
+    ObjectifyStorageIo.versionIntervalMins.setForTest(0);
+    try {
+      storage.getUser(USER_ID);
+      long projectId = createProject(
+          USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+          FORM_QUALIFIED_NAME);
+      storage.addSourceFilesToProject(USER_ID, projectId, false, BKY_FILE_NAME);
+      storage.uploadRawFile(projectId, BKY_FILE_NAME, USER_ID, true, content1);
+      // Saving the same content again adds no version
+      storage.uploadRawFile(projectId, BKY_FILE_NAME, USER_ID, true, content1);
+      storage.uploadRawFile(projectId, BKY_FILE_NAME, USER_ID, true, content2);
+
+      List<FileVersion> versions = storage.getFileVersions(USER_ID, projectId, BKY_FILE_NAME);
+      assertEquals(2, versions.size());
+      assertEquals(content2.length, versions.get(0).getSize());
+      assertTrue(Arrays.equals(content2, storage.downloadFileVersion(USER_ID, projectId,
+          BKY_FILE_NAME, versions.get(0).getId())));
+      assertTrue(Arrays.equals(content1, storage.downloadFileVersion(USER_ID, projectId,
+          BKY_FILE_NAME, versions.get(1).getId())));
+
+      storage.restoreFileVersion(USER_ID, projectId, BKY_FILE_NAME, versions.get(1).getId());
+      assertTrue(Arrays.equals(content1,
+          storage.downloadRawFile(USER_ID, projectId, BKY_FILE_NAME)));
+      assertEquals(3, storage.getFileVersions(USER_ID, projectId, BKY_FILE_NAME).size());
+
+      // The versions go along with the file
+      storage.deleteFile(USER_ID, projectId, BKY_FILE_NAME);
+      assertTrue(storage.getFileVersions(USER_ID, projectId, BKY_FILE_NAME).isEmpty());
+    } finally {
+      ObjectifyStorageIo.versionIntervalMins.setForTest(60);
+    }
+  }
+
   public void testGetProject() {
     final String USER_ID = "1400";
     storage.getUser(USER_ID);
@@ -541,6 +737,22 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     assertNull(result);
   }
 
+  public void testCheckWhiteList() {
+    WhiteListData entry = new WhiteListData();
+    entry.emailLower = "listed@test.com";
+    ObjectifyService.begin().put(entry);
+
+    assertTrue(storage.checkWhiteList("listed@test.com"));
+    assertTrue(storage.checkWhiteList("Listed@Test.com"));
+    assertFalse(storage.checkWhiteList("unlisted@test.com"));
+
+    // New entries are not seen until the cached answers expire
+    WhiteListData newEntry = new WhiteListData();
+    newEntry.emailLower = "unlisted@test.com";
+    ObjectifyService.begin().put(newEntry);
+    assertFalse(storage.checkWhiteList("unlisted@test.com"));
+  }
+
   public void testWrongUserThrowsException() throws Exception {
     final String USER_ID = "1600";
     final String USER_ID2 = "1700";
@@ -602,6 +814,46 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     }
   }
   
+  /*
+   * Makes the Nth job conflict (with a ConcurrentModificationException) the
+   * first time it runs, so that it is retried.
+   */
+  private static class ConflictingJobObjectifyStorageIo extends FailingJobObjectifyStorageIo {
+    private final int conflictingRun;
+    private int run;
+
+    ConflictingJobObjectifyStorageIo(int conflictingRun, FileService fileService) {
+      super(0, fileService);
+      this.conflictingRun = conflictingRun;
+      run = 0;
+    }
+
+    @Override
+    void runJobWithRetries(final JobRetryHelper job) throws ObjectifyException {
+      if (++run != conflictingRun) {
+        super.runJobWithRetries(job);
+        return;
+      }
+      super.runJobWithRetries(new JobRetryHelper() {
+        private boolean conflicted = false;
+
+        @Override
+        public void run(Objectify datastore) throws ObjectifyException {
+          job.run(datastore);
+          if (!conflicted) {
+            conflicted = true;
+            throw new ConcurrentModificationException("this is intentional");
+          }
+        }
+
+        @Override
+        public void onNonFatalError() {
+          job.onNonFatalError();
+        }
+      });
+    }
+  }
+
   /* 
    * Fail on Nth blob create, where N is the value of the failingBlobNum
    * argument to the constructor. Also allows counting attempted blob creations.
@@ -0,0 +1,362 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appinventor.server.LocalDatastoreTestCase;
+import com.google.appinventor.server.flags.Flag;
+import com.google.appinventor.server.project.youngandroid.YoungAndroidProjectService;
+import com.google.appinventor.shared.rpc.project.Project;
+import com.google.appinventor.shared.rpc.project.RawFile;
+import com.google.appinventor.shared.rpc.project.TextFile;
+import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.base.Charsets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.logging.LogRecord;
+
+/**
+ * Benchmark of the storage operations behind the project RPCs, run against
+ * the local datastore.
+ *
+ * <p>For projects of different file counts and file sizes, and users with
+ * different numbers of projects, it reports the rate, latency percentiles and
+ * datastore calls of each operation. The file sizes are sizes once encoded
+ * (see {@link ContentCodec}), and cross the threshold at which
+ * {@link ObjectifyStorageIo#useBlobstoreForFile} and
+ * {@link ObjectifyStorageIo#useGCSforFile} move blocks files out of the
+ * datastore. Which of the two is used depends on the "use.gcs" flag; it is
+ * false unless set for the run, and the report says which one was used.
+ *
+ * <p>This is not run with the tests, as its name does not end in "Test". Run
+ * it with
+ * <pre>
+ *   ant AiServerLibTests -Dtest_name=com.google.appinventor.server.storage.StorageIoBenchmark
+ * </pre>
+ * and find the report in the output of the test. The system property
+ * "benchmark.iterations" sets how many times each operation is timed.
+ *
+ */
+public class StorageIoBenchmark extends LocalDatastoreTestCase {
+
+  private static final String USER_EMAIL_DOMAIN = "@benchmark.com";
+  private static final String PROJECT_NAME_PREFIX = "Benchmark";
+
+  // The scenarios: files per project, encoded bytes per file and projects
+  // per user. Blocks files past 50000 encoded bytes leave the datastore.
+  private static final int[] FILE_COUNTS = { 5, 25 };
+  private static final int[] FILE_SIZES = { 1000, 60000, 200000 };
+  private static final int[] PROJECTS_PER_USER = { 1, 10 };
+
+  private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 10);
+
+  private StorageIo storageIo;
+  private YoungAndroidProjectService projectService;
+  private DatastoreCallCounter counter;
+  private final Random random = new Random(42);
+  private int userCount;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    storageIo = new ObjectifyStorageIo();
+    projectService = new YoungAndroidProjectService(storageIo);
+    counter = new DatastoreCallCounter(ApiProxy.getDelegate());
+    ApiProxy.setDelegate(counter);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    ApiProxy.setDelegate(counter.delegate);
+    super.tearDown();
+  }
+
+  public void testBenchmark() throws Exception {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("%-22s %6s %8s %8s %9s %9s %9s  %s%n",
+        "operation", "files", "size", "projects", "ops/sec", "p50 ms", "p99 ms",
+        "datastore calls per op"));
+    for (int fileCount : FILE_COUNTS) {
+      for (int fileSize : FILE_SIZES) {
+        for (int projectsPerUser : PROJECTS_PER_USER) {
+          for (Stats stats : runScenario(fileCount, fileSize, projectsPerUser)) {
+            report.append(String.format("%-22s %6d %8d %8d %9.1f %9.2f %9.2f  %s%n",
+                stats.operation, fileCount, fileSize, projectsPerUser, stats.opsPerSecond(),
+                stats.percentileMillis(50), stats.percentileMillis(99),
+                stats.callsPerOp()));
+          }
+        }
+      }
+    }
+    if (Flag.createFlag("use.gcs", false).get()) {
+      report.append("Large files went to GCS.\n");
+    } else {
+      report.append("GCS was not exercised: use.gcs is false, so large files went to the"
+          + " Blobstore.\n");
+    }
+    System.out.println(report);
+  }
+
+  /*
+   * Times each operation on projects of fileCount files of fileSize bytes,
+   * owned by users that have projectsPerUser projects.
+   */
+  private List<Stats> runScenario(int fileCount, int fileSize, int projectsPerUser)
+      throws Exception {
+    Map<String, Stats> results = new LinkedHashMap<String, Stats>();
+    for (String operation : new String[] { "createProject", "save2", "load2",
+        "getProjectInfos", "exportProjectSourceZip", "copyProject", "deleteProject" }) {
+      results.put(operation, new Stats(operation));
+    }
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      final String userId = "benchmark" + (userCount++);
+      storageIo.getUser(userId, userId + USER_EMAIL_DOMAIN);
+
+      final List<Long> projectIds = new ArrayList<Long>();
+      for (int p = 0; p < projectsPerUser; p++) {
+        final Project project = makeProject(PROJECT_NAME_PREFIX + p, userId, fileCount, fileSize);
+        time(results.get("createProject"), new Operation() {
+          @Override
+          public void run() {
+            projectIds.add(storageIo.createProject(userId, project,
+                YoungAndroidProjectService.getProjectSettings("", "1", "1.0", "false")));
+          }
+        });
+      }
+      final long projectId = projectIds.get(0);
+      final String blocksFile = blocksFileName(PROJECT_NAME_PREFIX + 0, 0);
+      final String content = textOfEncodedSize(blocksFile, fileSize);
+
+      time(results.get("save2"), new Operation() {
+        @Override
+        public void run() throws Exception {
+          projectService.save2(userId, projectId, blocksFile, true, content);
+        }
+      });
+      time(results.get("load2"), new Operation() {
+        @Override
+        public void run() throws Exception {
+          projectService.load2(userId, projectId, blocksFile);
+        }
+      });
+      time(results.get("getProjectInfos"), new Operation() {
+        @Override
+        public void run() {
+          // As ProjectServiceImpl.getProjectInfos() does
+          for (long id : storageIo.getProjects(userId)) {
+            storageIo.getUserProject(userId, id);
+          }
+        }
+      });
+      time(results.get("exportProjectSourceZip"), new Operation() {
+        @Override
+        public void run() throws Exception {
+          storageIo.exportProjectSourceZip(userId, projectId, true, false, null);
+        }
+      });
+      final long[] copyId = new long[1];
+      time(results.get("copyProject"), new Operation() {
+        @Override
+        public void run() {
+          copyId[0] = projectService.copyProject(userId, projectId, PROJECT_NAME_PREFIX + "Copy");
+        }
+      });
+      time(results.get("deleteProject"), new Operation() {
+        @Override
+        public void run() {
+          projectService.deleteProject(userId, copyId[0]);
+        }
+      });
+    }
+    return new ArrayList<Stats>(results.values());
+  }
+
+  private interface Operation {
+    void run() throws Exception;
+  }
+
+  /*
+   * Runs the operation as a request would, and adds its latency and
+   * datastore calls to stats.
+   */
+  private void time(Stats stats, Operation operation) throws Exception {
+    counter.reset();
+    RequestCache.begin();
+    long start = System.nanoTime();
+    try {
+      operation.run();
+    } finally {
+      stats.latencies.add(System.nanoTime() - start);
+      RequestCache.end();
+    }
+    stats.add(counter.snapshot());
+  }
+
+  /*
+   * Makes a project with a properties file and fileCount other files of
+   * fileSize encoded bytes: one form and one blocks file per screen, and an
+   * asset for every third file.
+   */
+  private Project makeProject(String projectName, String userId, int fileCount, int fileSize) {
+    Project project = new Project(projectName);
+    project.setProjectType(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE);
+    String qualifiedName = "com.benchmark." + userId + "." + projectName + ".Screen1";
+    project.addTextFile(new TextFile(YoungAndroidProjectService.PROJECT_PROPERTIES_FILE_NAME,
+        YoungAndroidProjectService.getProjectPropertiesFileContents(projectName, qualifiedName,
+            null, "1", "1.0", "false")));
+    for (int i = 0; i < fileCount; i++) {
+      if (i % 3 == 2) {
+        byte[] asset = new byte[fileSize];
+        random.nextBytes(asset);
+        project.addRawFile(new RawFile("assets/asset" + i + ".png", asset));
+      } else if (i % 3 == 1) {
+        String fileName = blocksFileName(projectName, i / 3);
+        project.addTextFile(new TextFile(fileName, textOfEncodedSize(fileName, fileSize)));
+      } else {
+        String fileName = "src/com/benchmark/" + projectName + "/Screen" + (i / 3) + ".scm";
+        project.addTextFile(new TextFile(fileName, textOfEncodedSize(fileName, fileSize)));
+      }
+    }
+    return project;
+  }
+
+  private static String blocksFileName(String projectName, int screen) {
+    return "src/com/benchmark/" + projectName + "/Screen" + screen + ".bky";
+  }
+
+  /*
+   * Makes random text for the given file that is at least encodedSize bytes
+   * once encoded, and barely more. Random text hardly compresses, so the
+   * sizes are not shrunk below the storage thresholds by the encoding.
+   */
+  private String textOfEncodedSize(String fileName, int encodedSize) {
+    StringBuilder text = new StringBuilder(encodedSize * 2);
+    int encodedLength = 0;
+    while (encodedLength < encodedSize) {
+      for (int i = Math.max(encodedSize - encodedLength, 16); i > 0; i--) {
+        text.append((char) ('!' + random.nextInt('~' - '!' + 1)));
+      }
+      encodedLength = ContentCodec.encode(fileName,
+          text.toString().getBytes(Charsets.UTF_8)).bytes.length;
+    }
+    return text.toString();
+  }
+
+  /*
+   * The latencies and datastore calls of one operation in one scenario.
+   */
+  private static class Stats {
+    final String operation;
+    final List<Long> latencies = new ArrayList<Long>();
+    final Map<String, Integer> calls = new TreeMap<String, Integer>();
+
+    Stats(String operation) {
+      this.operation = operation;
+    }
+
+    void add(Map<String, Integer> opCalls) {
+      for (Map.Entry<String, Integer> entry : opCalls.entrySet()) {
+        Integer count = calls.get(entry.getKey());
+        calls.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue());
+      }
+    }
+
+    double opsPerSecond() {
+      long total = 0;
+      for (long latency : latencies) {
+        total += latency;
+      }
+      return (total == 0) ? 0 : latencies.size() * 1e9 / total;
+    }
+
+    double percentileMillis(int percentile) {
+      List<Long> sorted = new ArrayList<Long>(latencies);
+      Collections.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+      return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    String callsPerOp() {
+      StringBuilder result = new StringBuilder();
+      for (Map.Entry<String, Integer> entry : calls.entrySet()) {
+        if (result.length() > 0) {
+          result.append(", ");
+        }
+        result.append(entry.getKey()).append('=')
+            .append(String.format("%.1f", entry.getValue() / (double) latencies.size()));
+      }
+      return result.toString();
+    }
+  }
+
+  /*
+   * Counts the datastore calls made through the API proxy, by method.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static class DatastoreCallCounter implements ApiProxy.Delegate {
+    private static final String DATASTORE_PACKAGE = "datastore_v3";
+
+    final ApiProxy.Delegate delegate;
+    private Map<String, Integer> calls = new TreeMap<String, Integer>();
+
+    DatastoreCallCounter(ApiProxy.Delegate delegate) {
+      this.delegate = delegate;
+    }
+
+    synchronized void reset() {
+      calls = new TreeMap<String, Integer>();
+    }
+
+    synchronized Map<String, Integer> snapshot() {
+      return new TreeMap<String, Integer>(calls);
+    }
+
+    private synchronized void count(String packageName, String methodName) {
+      if (DATASTORE_PACKAGE.equals(packageName)) {
+        Integer count = calls.get(methodName);
+        calls.put(methodName, (count == null ? 0 : count) + 1);
+      }
+    }
+
+    @Override
+    public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName,
+        String methodName, byte[] request) {
+      count(packageName, methodName);
+      return delegate.makeSyncCall(environment, packageName, methodName, request);
+    }
+
+    @Override
+    public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment, String packageName,
+        String methodName, byte[] request, ApiProxy.ApiConfig apiConfig) {
+      count(packageName, methodName);
+      return delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+    }
+
+    @Override
+    public void log(ApiProxy.Environment environment, LogRecord record) {
+      delegate.log(environment, record);
+    }
+
+    @Override
+    public void flushLogs(ApiProxy.Environment environment) {
+      delegate.flushLogs(environment);
+    }
+
+    @Override
+    public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+      return delegate.getRequestThreads(environment);
+    }
+  }
+}